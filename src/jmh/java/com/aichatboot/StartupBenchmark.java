@@ -0,0 +1,117 @@
+package com.aichatboot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of the packaged application until {@code /actuator/health/readiness} answers 200, and
+ * its resident memory (rssKb, Linux only) at that moment, per build flavour:
+ * <ul>
+ *   <li>{@code jar}: {@code mvn package}</li>
+ *   <li>{@code cds}: {@code mvn -Pcds package}, AOT-processed and started with the CDS archive</li>
+ *   <li>{@code native}: {@code mvn -Pnative native:compile}</li>
+ * </ul>
+ * Each flavour has to be built first; run from the project root, e.g.
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="StartupBenchmark -p flavour=jar,cds"}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final Path TARGET = Path.of("target");
+    private static final String ARTIFACT = "React-Spring-AI-Application";
+    private static final String JAR = ARTIFACT + "-0.0.1-SNAPSHOT.jar";
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(1);
+
+    @Param({"jar", "cds", "native"})
+    String flavour;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Memory {
+        public long rssKb;
+    }
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+    private Process app;
+
+    @Benchmark
+    public int startUntilReady(Memory memory) throws Exception {
+        int port = freePort();
+        ProcessBuilder builder = new ProcessBuilder(command(port))
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        if ("cds".equals(flavour)) builder.directory(TARGET.resolve("cds").toFile());
+        builder.environment().putIfAbsent("OPENAI_API_KEY", "startup-benchmark");
+        app = builder.start();
+
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(1)).build();
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!app.isAlive()) throw new IllegalStateException(flavour + " exited with " + app.exitValue());
+            try {
+                if (http.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    memory.rssKb = rssKb(app.pid());
+                    return 200;
+                }
+            } catch (IOException notListeningYet) {
+                // keep polling
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException(flavour + " not ready within " + START_TIMEOUT);
+    }
+
+    @TearDown(Level.Iteration)
+    public void stop() throws InterruptedException {
+        if (app == null) return;
+        app.destroy();
+        if (!app.waitFor(10, TimeUnit.SECONDS)) app.destroyForcibly().waitFor();
+        app = null;
+    }
+
+    private List<String> command(int port) {
+        String portArg = "--server.port=" + port;
+        return switch (flavour) {
+            case "jar" -> List.of("java", "-jar", TARGET.resolve(JAR).toString(), portArg);
+            case "cds" -> List.of("java", "-XX:SharedArchiveFile=application.jsa", "-Dspring.aot.enabled=true",
+                    "-jar", JAR, portArg);
+            case "native" -> List.of(TARGET.resolve(ARTIFACT).toString(), portArg);
+            default -> throw new IllegalArgumentException("Unknown flavour " + flavour);
+        };
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * VmRSS from /proc, 0 where that does not exist
+     */
+    private static long rssKb(long pid) throws IOException {
+        Path status = Path.of("/proc", Long.toString(pid), "status");
+        if (!Files.exists(status)) return 0;
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", ""));
+        }
+        return 0;
+    }
+}
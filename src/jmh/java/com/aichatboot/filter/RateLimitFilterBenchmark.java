@@ -0,0 +1,60 @@
+package com.aichatboot.filter;
+
+import com.aichatboot.ratelimit.LocalRateLimiterBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimitFilter#doFilterInternal} under contention: 8 threads hitting either one hot client
+ * key or a spread of client IPs. The limit is set high enough that every request is admitted, so the
+ * numbers show bucket lookup and consumption cost rather than rejections.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class RateLimitFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (req, res) -> { };
+
+    @Param({"1", "10000"})
+    int distinctClients;
+
+    private RateLimitFilter filter;
+    private String[] clientIps;
+
+    @Setup
+    public void setUp() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        filter = new RateLimitFilter(new LocalRateLimiterBackend(Long.MAX_VALUE / 2, Duration.ofMinutes(1),
+                100_000, Duration.ofMinutes(2), registry), registry);
+
+        clientIps = new String[distinctClients];
+        for (int i = 0; i < distinctClients; i++) {
+            clientIps[i] = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Exchange {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/chat");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public int doFilterInternal(Exchange exchange) throws Exception {
+        exchange.request.setRemoteAddr(clientIps[ThreadLocalRandom.current().nextInt(clientIps.length)]);
+        filter.doFilterInternal(exchange.request, exchange.response, NO_OP_CHAIN);
+        return exchange.response.getStatus();
+    }
+}
@@ -0,0 +1,98 @@
+package com.aichatboot.retrieval;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Top-k lookup latency of the HNSW index against a brute-force scan of the same mapped vectors,
+ * which is what every query would cost without the graph. Building the larger index takes a few
+ * minutes of setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorIndexBenchmark {
+
+    private static final int DIMENSIONS = 256;
+    private static final int K = 4;
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    int size;
+
+    @Param({"64"})
+    int efSearch;
+
+    private Path dir;
+    private MappedVectors vectors;
+    private HnswIndex index;
+    private float[][] queries;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("vector-index-bench");
+        vectors = new MappedVectors(dir.resolve("vectors.bin"), DIMENSIONS);
+        index = new HnswIndex(vectors, dir.resolve("graph.bin"), 16, 100, 42);
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < size; i++) index.add(randomVector(random));
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) queries[i] = HnswIndex.normalize(randomVector(random));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+        }
+    }
+
+    private static float[] randomVector(SplittableRandom random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) vector[i] = (float) (random.nextDouble() * 2 - 1);
+        return vector;
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> hnsw(Cursor cursor) {
+        return index.search(queries[cursor.next++ & (QUERIES - 1)], K, efSearch);
+    }
+
+    @Benchmark
+    public int[] bruteForce(Cursor cursor) {
+        float[] query = queries[cursor.next++ & (QUERIES - 1)];
+        int[] best = new int[K];
+        float[] scores = new float[K];
+        Arrays.fill(scores, Float.NEGATIVE_INFINITY);
+        for (int id = 0; id < size; id++) {
+            float score = vectors.dot(id, query);
+            if (score <= scores[K - 1]) continue;
+            int i = K - 1;
+            while (i > 0 && scores[i - 1] < score) {
+                scores[i] = scores[i - 1];
+                best[i] = best[i - 1];
+                i--;
+            }
+            scores[i] = score;
+            best[i] = id;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,97 @@
+package com.aichatboot.service;
+
+import com.aichatboot.cache.ResponseCache;
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.logging.ChatRequestLogger;
+import com.aichatboot.quota.TokenEstimator;
+import com.aichatboot.quota.TokenQuotaService;
+import com.aichatboot.retrieval.RetrievalService;
+import com.aichatboot.tokenizer.ContextTrimmer;
+import com.aichatboot.tokenizer.TokenCounter;
+import com.aichatboot.upstream.AdaptiveConcurrencyLimiter;
+import com.aichatboot.upstream.RetryPolicy;
+import com.aichatboot.upstream.UpstreamRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request overhead of the chat hot path against {@link StubUpstream}: request body assembly and
+ * serialization and the end-to-end sync/stream pipelines. Cache,
+ * coalescing, quotas and the concurrency limiter are disabled so every invocation takes the full upstream path.
+ * <p>
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="ChatServiceBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatServiceBenchmark {
+
+    @Param({"1", "20"})
+    int historyTurns;
+
+    private ObjectMapper objectMapper;
+    private ChatService chatService;
+    private ChatRequest request;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        StubUpstream upstream = new StubUpstream(200, 1024);
+        chatService = newChatService(upstream, objectMapper);
+
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < historyTurns; i++) {
+            messages.add(new ChatMessage("user", "Question number " + i + " about Spring WebFlux backpressure?"));
+            messages.add(new ChatMessage("assistant", "Answer number " + i + ": Reactor propagates demand upstream."));
+        }
+        messages.add(new ChatMessage("user", "And how does that apply to SSE?"));
+        request = new ChatRequest();
+        request.setMessages(messages);
+    }
+
+    /**
+     * Cache, coalescing, quotas and the limiter off, so every call takes the full upstream path
+     */
+    static ChatService newChatService(StubUpstream upstream, ObjectMapper objectMapper) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new ChatService(UpstreamRouter.single(upstream.webClient(), "bench", registry), objectMapper,
+                new ResponseCache(false, 0, 0, Duration.ZERO, false, 1.0, registry),
+                new RequestCoalescer(false, registry),
+                new TokenQuotaService(false, 0, 0, "", "", new TokenEstimator(), registry),
+                new AdaptiveConcurrencyLimiter(false, 0, 0, 0, 0, Duration.ZERO, Duration.ZERO, 1.0, 1.0, 1.0, registry),
+                new RetryPolicy(1, Duration.ZERO, Duration.ZERO, registry),
+                new ContextTrimmer(new TokenCounter("gpt-4.1-mini", "", 10_000), true, "gpt-4.1-mini", 0, 0, 64, 1024),
+                new PromptPrefixTracker(registry, 0),
+                new RetrievalService(null, null, registry, false, "", 0, 0, 0, 0, 0, 0, 0, Duration.ZERO),
+                registry,
+                new ChatRequestLogger(false, 0, 0, false),
+                "gpt-4.1-mini", 1500, 0.2, 500, DataSize.ofMegabytes(4));
+    }
+
+    @Benchmark
+    public Object buildAndSerializeRequest() throws Exception {
+        return chatService.buildRequest(chatService.prepareMessages(request), chatService.optionsFor(request), false);
+    }
+
+    @Benchmark
+    public Object syncCompletionEndToEnd() {
+        return chatService.completion(request).block();
+    }
+
+    @Benchmark
+    public void streamCompletionEndToEnd(Blackhole bh) {
+        chatService.streamCompletion(request).doOnNext(bh::consume).blockLast();
+    }
+}
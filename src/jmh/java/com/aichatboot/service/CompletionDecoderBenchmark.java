@@ -0,0 +1,77 @@
+package com.aichatboot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sync completions/second and bytes allocated per completion (run with {@code -prof gc}, see
+ * gc.alloc.rate.norm) for the incremental decoder against the previous path, which aggregated the
+ * body into a String ({@code bodyToMono(String.class)}) and parsed it into a tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CompletionDecoderBenchmark {
+
+    private static final int FRAME_SIZE = 8192;
+
+    @Param({"200", "4000"})
+    int completionTokens;
+
+    @Param({"1", "4"})
+    int choices;
+
+    private CompletionDecoder decoder;
+    private LegacyCompletionParser legacy;
+    private List<byte[]> frames;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        decoder = new CompletionDecoder(objectMapper.getFactory(), Long.MAX_VALUE);
+        legacy = new LegacyCompletionParser(objectMapper);
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < completionTokens; i++) content.append(" token").append(i);
+        StringBuilder body = new StringBuilder("{\"id\":\"chatcmpl-bench\",\"object\":\"chat.completion\",\"choices\":[");
+        for (int c = 0; c < choices; c++) {
+            if (c > 0) body.append(',');
+            body.append("{\"index\":").append(c).append(",\"message\":{\"role\":\"assistant\",\"content\":\"")
+                    .append(content).append("\"},\"logprobs\":null,\"finish_reason\":\"stop\"}");
+        }
+        body.append("],\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":").append(completionTokens * choices)
+                .append(",\"total_tokens\":").append(120 + completionTokens * choices).append("}}");
+
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        frames = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += FRAME_SIZE) {
+            frames.add(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + FRAME_SIZE)));
+        }
+    }
+
+    @Benchmark
+    public Object incrementalDecoder() {
+        Flux<DataBuffer> body = Flux.fromIterable(frames).map(DefaultDataBufferFactory.sharedInstance::wrap);
+        return decoder.decode(body).block();
+    }
+
+    @Benchmark
+    public Object legacyStringAndTree() throws Exception {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (byte[] frame : frames) joined.write(frame);
+        return legacy.parseCompletion(joined.toString(StandardCharsets.UTF_8));
+    }
+}
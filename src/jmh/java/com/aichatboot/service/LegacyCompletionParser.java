@@ -0,0 +1,52 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.Usage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.UUID;
+
+/**
+ * Copy of the String/tree based sync response parsing that {@link CompletionDecoder} replaced, kept as a benchmark baseline.
+ */
+class LegacyCompletionParser {
+
+    private final ObjectMapper objectMapper;
+
+    LegacyCompletionParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    ChatResponse parseCompletion(String responseBody) throws JsonProcessingException {
+        JsonNode root = objectMapper.readTree(responseBody);
+        JsonNode choices = root.path("choices");
+
+        StringBuilder aggregated = new StringBuilder();
+        if (choices.isArray()) {
+            for (JsonNode c : choices) {
+                JsonNode message = c.path("message");
+                if (!message.isMissingNode()) {
+                    aggregated.append(message.path("content").asText(""));
+                }
+            }
+        }
+
+        ChatResponse response = new ChatResponse(
+                root.path("id").asText(UUID.randomUUID().toString()),
+                aggregated.toString().trim()
+        );
+
+        JsonNode usage = root.path("usage");
+        if (usage.isObject()) {
+            Usage reported = new Usage(
+                    usage.path("prompt_tokens").asLong(),
+                    usage.path("completion_tokens").asLong(),
+                    usage.path("total_tokens").asLong());
+            reported.setCachedTokens(usage.path("prompt_tokens_details").path("cached_tokens").asLong());
+            response.setUsage(reported);
+        }
+        return response;
+    }
+}
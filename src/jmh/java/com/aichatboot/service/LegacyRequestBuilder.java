@@ -0,0 +1,64 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy of the map based request assembly that {@link UpstreamRequestWriter} replaced, kept as a benchmark baseline.
+ */
+class LegacyRequestBuilder {
+
+    private final ObjectMapper objectMapper;
+    private final String model;
+    private final int maxTokens;
+    private final double temperature;
+
+    LegacyRequestBuilder(ObjectMapper objectMapper, String model, int maxTokens, double temperature) {
+        this.objectMapper = objectMapper;
+        this.model = model;
+        this.maxTokens = maxTokens;
+        this.temperature = temperature;
+    }
+
+    String serialize(ChatRequest request, boolean stream) throws Exception {
+        return objectMapper.writeValueAsString(buildRequest(prepareMessages(request), stream));
+    }
+
+    private Map<String, Object> buildRequest(List<Map<String, String>> messages, boolean stream) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", model);
+        body.put("temperature", temperature);
+        body.put("max_tokens", maxTokens);
+        body.put("stream", stream);
+        body.put("messages", messages);
+        if (stream) {
+            body.put("stream_options", Map.of("include_usage", true));
+        }
+        return body;
+    }
+
+    private List<Map<String, String>> prepareMessages(ChatRequest request) {
+        List<Map<String, String>> messages = new ArrayList<>();
+
+        messages.add(Map.of(
+                "role", "system",
+                "content", "You are a helpful assistant. Provide concise answers."
+        ));
+
+        if (request.getMessages() != null && !request.getMessages().isEmpty()) {
+            for (ChatMessage m : request.getMessages()) {
+                messages.add(Map.of("role", m.getRole(), "content", m.getContent()));
+            }
+        } else {
+            messages.add(Map.of("role", "user", "content", request.getPrompt()));
+        }
+
+        return messages;
+    }
+}
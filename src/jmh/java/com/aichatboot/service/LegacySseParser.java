@@ -0,0 +1,51 @@
+package com.aichatboot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy of the line/tree based parser that {@link SseTokenDecoder} replaced, kept as a benchmark baseline.
+ */
+class LegacySseParser {
+
+    private final ObjectMapper objectMapper;
+
+    LegacySseParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    Flux<String> extractTextFromSSE(String raw) {
+        try {
+            List<String> outputs = new ArrayList<>();
+            String[] lines = raw.split("\n");
+
+            for (String line : lines) {
+                line = line.trim();
+
+                if (line.equals("data: [DONE]") || line.equals("[DONE]")) continue;
+                if (line.startsWith("data:")) line = line.substring(5).trim();
+                if (line.isEmpty()) continue;
+
+                JsonNode json = objectMapper.readTree(line);
+                JsonNode choices = json.path("choices");
+
+                if (choices.isArray()) {
+                    for (JsonNode c : choices) {
+                        JsonNode delta = c.path("delta");
+                        String token = delta.path("content").asText(null);
+                        if (token != null) {
+                            outputs.add(token);
+                        }
+                    }
+                }
+            }
+            return Flux.fromIterable(outputs);
+        } catch (Exception e) {
+            return Flux.empty();
+        }
+    }
+}
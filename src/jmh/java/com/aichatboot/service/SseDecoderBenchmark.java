@@ -0,0 +1,77 @@
+package com.aichatboot.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens/second and bytes allocated per token (run with {@code -prof gc}, see gc.alloc.rate.norm)
+ * for the streaming SSE decoder against the previous String/JsonNode based parser.
+ * <p>
+ * The legacy input is pre-split into lines, which is what {@code bodyToFlux(String.class)} used to
+ * hand it; the cost of that line decoding is therefore not charged to the baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SseDecoderBenchmark.TOKENS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SseDecoderBenchmark {
+
+    static final int TOKENS = 256;
+
+    @Param({"512", "4096"})
+    int frameSize;
+
+    private SseTokenDecoder decoder;
+    private LegacySseParser legacy;
+    private List<byte[]> frames;
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        decoder = new SseTokenDecoder(objectMapper.getFactory());
+        legacy = new LegacySseParser(objectMapper);
+
+        StringBuilder payload = new StringBuilder();
+        lines = new ArrayList<>();
+        for (int i = 0; i < TOKENS; i++) {
+            String line = "data: {\"id\":\"chatcmpl-9x\",\"object\":\"chat.completion.chunk\",\"created\":1717000000,"
+                    + "\"model\":\"gpt-4.1-mini\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\" token" + i
+                    + "\"},\"logprobs\":null,\"finish_reason\":null}]}";
+            payload.append(line).append("\n\n");
+            lines.add(line);
+        }
+        payload.append("data: [DONE]\n\n");
+        lines.add("data: [DONE]");
+
+        byte[] bytes = payload.toString().getBytes(StandardCharsets.UTF_8);
+        frames = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += frameSize) {
+            frames.add(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + frameSize)));
+        }
+    }
+
+    @Benchmark
+    public void streamingDecoder(Blackhole bh) {
+        Flux<DataBuffer> body = Flux.fromIterable(frames).map(DefaultDataBufferFactory.sharedInstance::wrap);
+        decoder.decode(body).doOnNext(bh::consume).blockLast();
+    }
+
+    @Benchmark
+    public void legacyLineParser(Blackhole bh) {
+        Flux.fromIterable(lines).flatMap(legacy::extractTextFromSSE).doOnNext(bh::consume).blockLast();
+    }
+}
@@ -0,0 +1,65 @@
+package com.aichatboot.service;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-process OpenAI stand-in for benchmarks: answers /chat/completions from canned payloads
+ * without touching the network, so only our own per-request overhead is measured.
+ */
+final class StubUpstream {
+
+    private final byte[] syncBody;
+    private final List<byte[]> streamFrames;
+
+    StubUpstream(int completionTokens, int frameSize) {
+        StringBuilder content = new StringBuilder();
+        StringBuilder sse = new StringBuilder();
+        for (int i = 0; i < completionTokens; i++) {
+            content.append(" token").append(i);
+            sse.append("data: {\"id\":\"chatcmpl-stub\",\"object\":\"chat.completion.chunk\",\"model\":\"gpt-4.1-mini\",")
+                    .append("\"choices\":[{\"index\":0,\"delta\":{\"content\":\" token").append(i)
+                    .append("\"},\"finish_reason\":null}]}\n\n");
+        }
+        sse.append("data: [DONE]\n\n");
+
+        this.syncBody = ("{\"id\":\"chatcmpl-stub\",\"object\":\"chat.completion\",\"model\":\"gpt-4.1-mini\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"" + content
+                + "\"},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":" + completionTokens
+                + ",\"total_tokens\":" + (120 + completionTokens) + "}}").getBytes(StandardCharsets.UTF_8);
+
+        byte[] sseBytes = sse.toString().getBytes(StandardCharsets.UTF_8);
+        this.streamFrames = new ArrayList<>();
+        for (int offset = 0; offset < sseBytes.length; offset += frameSize) {
+            streamFrames.add(Arrays.copyOfRange(sseBytes, offset, Math.min(sseBytes.length, offset + frameSize)));
+        }
+    }
+
+    WebClient webClient() {
+        ExchangeFunction exchange = request -> {
+            boolean stream = request.headers().getAccept().contains(MediaType.TEXT_EVENT_STREAM);
+            Flux<DataBuffer> body = stream
+                    ? Flux.fromIterable(streamFrames).map(DefaultDataBufferFactory.sharedInstance::wrap)
+                    : Mono.fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(syncBody)).flux();
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, stream ? MediaType.TEXT_EVENT_STREAM_VALUE : MediaType.APPLICATION_JSON_VALUE)
+                    .body(body)
+                    .build());
+        };
+        return WebClient.builder().baseUrl("http://stub").exchangeFunction(exchange).build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.aichatboot.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.ServerSentEventHttpMessageWriter;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams/second (1/score = CPU per stream on one thread) and SSE events/second for one streamed
+ * answer written through {@link ServerSentEventHttpMessageWriter}, with and without
+ * {@link TokenCoalescer}. Tokens arrive back to back, the case where coalescing saves the most.
+ * <p>
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="TokenCoalescingBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenCoalescingBenchmark {
+
+    static final int TOKENS = 256;
+    private static final ResolvableType EVENT_TYPE =
+            ResolvableType.forClassWithGenerics(ServerSentEvent.class, String.class);
+
+    @Param({"false", "true"})
+    boolean coalesce;
+
+    private final ServerSentEventHttpMessageWriter writer = new ServerSentEventHttpMessageWriter();
+    private TokenCoalescer coalescer;
+    private List<String> tokens;
+
+    /** SSE events written, reported by JMH as events/second next to the primary score */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Events {
+        public long events;
+    }
+
+    @Setup
+    public void setUp() {
+        coalescer = new TokenCoalescer(true, 16, 1024, Duration.ofMillis(30));
+        tokens = new ArrayList<>(TOKENS);
+        for (int i = 0; i < TOKENS; i++) tokens.add(" token" + i);
+    }
+
+    @Benchmark
+    public void stream(Events counters) {
+        Flux<String> stream = Flux.fromIterable(tokens);
+        if (coalesce) stream = coalescer.coalesce(stream);
+
+        Flux<ServerSentEvent<String>> events = stream
+                .map(token -> ServerSentEvent.builder(token).build())
+                .doOnNext(event -> counters.events++);
+
+        MockServerHttpResponse response = new MockServerHttpResponse();
+        response.setWriteHandler(body -> body.doOnNext(DataBufferUtils::release).then());
+        writer.write(events, EVENT_TYPE, MediaType.TEXT_EVENT_STREAM, response, Map.of()).block();
+    }
+}
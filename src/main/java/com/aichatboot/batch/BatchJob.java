@@ -0,0 +1,92 @@
+package com.aichatboot.batch;
+
+import com.aichatboot.dto.BatchItemResult;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch running in the background; results are collected in completion order until polled.
+ */
+public class BatchJob {
+
+    public enum Status { RUNNING, COMPLETED, CANCELLED }
+
+    private final String id;
+    private final String owner;
+    private final long createdAt;
+    private final int total;
+    private final List<BatchItemResult> results = new ArrayList<>();
+    private int failed;
+    private Status status = Status.RUNNING;
+    private long finishedAt;
+    private Disposable subscription;
+
+    BatchJob(String id, String owner, long createdAt, int total) {
+        this.id = id;
+        this.owner = owner;
+        this.createdAt = createdAt;
+        this.total = total;
+    }
+
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+    public long getCreatedAt() { return createdAt; }
+    public int getTotal() { return total; }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized int getFailed() {
+        return failed;
+    }
+
+    public synchronized List<BatchItemResult> results() {
+        return new ArrayList<>(results);
+    }
+
+    synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    synchronized void add(BatchItemResult result) {
+        results.add(result);
+        if (!"ok".equals(result.getStatus())) failed++;
+    }
+
+    synchronized void finish(Status outcome, long now) {
+        if (status != Status.RUNNING) return;
+        status = outcome;
+        finishedAt = now;
+    }
+
+    void attach(Disposable subscription) {
+        Disposable running;
+        synchronized (this) {
+            if (status == Status.RUNNING) {
+                this.subscription = subscription;
+                return;
+            }
+            running = subscription;
+        }
+        // cancelled before the subscription was handed over
+        running.dispose();
+    }
+
+    /**
+     * @return false when the job had already finished
+     */
+    boolean cancel(long now) {
+        Disposable running;
+        synchronized (this) {
+            if (status != Status.RUNNING) return false;
+            status = Status.CANCELLED;
+            finishedAt = now;
+            running = subscription;
+        }
+        if (running != null) running.dispose();
+        return true;
+    }
+}
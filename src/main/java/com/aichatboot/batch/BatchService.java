@@ -0,0 +1,270 @@
+package com.aichatboot.batch;
+
+import com.aichatboot.dto.BatchItemResult;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.exception.BatchJobNotFoundException;
+import com.aichatboot.exception.ChatError;
+import com.aichatboot.exception.CircuitOpenException;
+import com.aichatboot.exception.InvalidBatchException;
+import com.aichatboot.exception.UpstreamOverloadedException;
+import com.aichatboot.service.ChatService;
+import com.aichatboot.upstream.Priority;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs lists of chat requests as sync completions, at most {@code parallelism} at a time per batch.
+ * <p>
+ * Items go through the regular {@link ChatService} path (cache, quota, retries, routing) but queue
+ * at {@link Priority#BULK}, so they only ever use a share of the upstream concurrency limit and
+ * wait behind chat traffic. An item that finds the queue full is retried with backoff instead of
+ * failing the batch; every other failure, including an item that breaks the {@link ChatRequest}
+ * constraints, becomes that item's error result.
+ * <p>
+ * Jobs submitted in the background are kept in memory, at most {@code maxJobs}; finished jobs are
+ * dropped {@code jobTtl} after they end, or earlier when room is needed for a new one.
+ */
+@Service
+public class BatchService {
+
+    private final Logger log = LoggerFactory.getLogger(BatchService.class);
+
+    private final ChatService chatService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int parallelism;
+    private final int maxItems;
+    private final int maxJobs;
+    private final long jobTtlMillis;
+    private final int overloadRetries;
+    private final Duration overloadBackoff;
+    private final LongSupplier clockMillis;
+
+    private final LinkedHashMap<String, BatchJob> jobs = new LinkedHashMap<>();
+    private final Counter itemsOk;
+    private final Counter itemsFailed;
+
+    @Autowired
+    public BatchService(ChatService chatService,
+                        ObjectMapper objectMapper,
+                        Validator validator,
+                        MeterRegistry meterRegistry,
+                        @Value("${chat.batch.parallelism:4}") int parallelism,
+                        @Value("${chat.batch.max-items:1000}") int maxItems,
+                        @Value("${chat.batch.max-jobs:100}") int maxJobs,
+                        @Value("${chat.batch.job-ttl:1h}") Duration jobTtl,
+                        @Value("${chat.batch.overload-retries:5}") int overloadRetries,
+                        @Value("${chat.batch.overload-backoff:1s}") Duration overloadBackoff) {
+        this(chatService, objectMapper, validator, meterRegistry, parallelism, maxItems, maxJobs, jobTtl,
+                overloadRetries, overloadBackoff, System::currentTimeMillis);
+    }
+
+    BatchService(ChatService chatService, ObjectMapper objectMapper, Validator validator, MeterRegistry meterRegistry,
+                 int parallelism, int maxItems, int maxJobs, Duration jobTtl, int overloadRetries,
+                 Duration overloadBackoff, LongSupplier clockMillis) {
+        this.chatService = chatService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxItems = maxItems;
+        this.maxJobs = maxJobs;
+        this.jobTtlMillis = jobTtl.toMillis();
+        this.overloadRetries = overloadRetries;
+        this.overloadBackoff = overloadBackoff;
+        this.clockMillis = clockMillis;
+
+        this.itemsOk = Counter.builder("chat.batch.items")
+                .description("Batch items processed")
+                .tag("outcome", "ok").register(meterRegistry);
+        this.itemsFailed = Counter.builder("chat.batch.items")
+                .description("Batch items processed")
+                .tag("outcome", "error").register(meterRegistry);
+        Gauge.builder("chat.batch.jobs.running", this, BatchService::runningJobs)
+                .description("Background batch jobs still running")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Parse an NDJSON upload, one {@link ChatRequest} per non-blank line
+     *
+     * @throws InvalidBatchException naming the first line that is not a request
+     */
+    public List<ChatRequest> parseNdjson(String body) {
+        List<ChatRequest> requests = new ArrayList<>();
+        if (body == null) return requests;
+        int lineNumber = 0;
+        for (String line : body.split("\r?\n")) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            if (requests.size() == maxItems) {
+                throw new InvalidBatchException("Batch has more than " + maxItems + " items");
+            }
+            try {
+                requests.add(objectMapper.readValue(line, ChatRequest.class));
+            } catch (JsonProcessingException e) {
+                throw new InvalidBatchException("Line " + lineNumber + " is not a chat request");
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * Results in completion order, one per request; cancelling stops the items not yet finished
+     *
+     * @throws InvalidBatchException when the batch is empty or larger than {@code maxItems}
+     */
+    public Flux<BatchItemResult> run(List<ChatRequest> requests, String tenant) {
+        validate(requests);
+        return Flux.range(0, requests.size())
+                .flatMap(index -> runItem(index, requests.get(index), tenant), parallelism)
+                .doOnNext(result -> ("ok".equals(result.getStatus()) ? itemsOk : itemsFailed).increment());
+    }
+
+    /**
+     * Start the batch in the background
+     *
+     * @throws UpstreamOverloadedException when {@code maxJobs} jobs are still running
+     */
+    public BatchJob submit(List<ChatRequest> requests, String tenant) {
+        validate(requests);
+        long now = clockMillis.getAsLong();
+        BatchJob job = new BatchJob(UUID.randomUUID().toString(), tenant, now, requests.size());
+        synchronized (jobs) {
+            evict(now);
+            // make room by forgetting the oldest finished jobs early
+            Iterator<BatchJob> oldest = jobs.values().iterator();
+            while (jobs.size() >= maxJobs && oldest.hasNext()) {
+                if (oldest.next().getStatus() != BatchJob.Status.RUNNING) oldest.remove();
+            }
+            if (jobs.size() >= maxJobs) {
+                throw new UpstreamOverloadedException("Too many batch jobs running", 30);
+            }
+            jobs.put(job.getId(), job);
+        }
+        job.attach(run(requests, tenant).subscribe(
+                job::add,
+                error -> {
+                    // items carry their own errors, so this is a bug rather than a failed call
+                    log.error("Batch job {} aborted", job.getId(), error);
+                    job.finish(BatchJob.Status.COMPLETED, clockMillis.getAsLong());
+                },
+                () -> job.finish(BatchJob.Status.COMPLETED, clockMillis.getAsLong())));
+        log.info("Batch job {} started with {} items", job.getId(), requests.size());
+        return job;
+    }
+
+    /**
+     * @throws BatchJobNotFoundException when the id is unknown, expired or belongs to another tenant
+     */
+    public BatchJob get(String id, String tenant) {
+        BatchJob job;
+        synchronized (jobs) {
+            evict(clockMillis.getAsLong());
+            job = jobs.get(id);
+        }
+        if (job == null || !job.getOwner().equals(tenant)) throw new BatchJobNotFoundException(id);
+        return job;
+    }
+
+    /**
+     * Stop a running job; the results collected so far stay available until it expires
+     */
+    public BatchJob cancel(String id, String tenant) {
+        BatchJob job = get(id, tenant);
+        if (job.cancel(clockMillis.getAsLong())) {
+            log.info("Batch job {} cancelled after {} of {} items", id, job.results().size(), job.getTotal());
+        }
+        return job;
+    }
+
+    private Mono<BatchItemResult> runItem(int index, ChatRequest request, String tenant) {
+        if (!hasContent(request)) {
+            return Mono.just(BatchItemResult.failed(index, "bad_request", "Either prompt or messages is required", 0));
+        }
+        String violation = firstViolation(request);
+        if (violation != null) {
+            return Mono.just(BatchItemResult.failed(index, "bad_request", violation, 0));
+        }
+        return Mono.defer(() -> chatService.completion(request, tenant, Priority.BULK))
+                .retryWhen(Retry.backoff(overloadRetries, overloadBackoff)
+                        .filter(error -> error instanceof UpstreamOverloadedException
+                                && !(error instanceof CircuitOpenException))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .map(response -> BatchItemResult.ok(index, response))
+                .onErrorResume(error -> {
+                    ChatError chatError = ChatError.of(error);
+                    log.debug("Batch item {} failed with {}", index, chatError.code());
+                    return Mono.just(BatchItemResult.failed(index, chatError.code(), chatError.message(),
+                            chatError.retryAfterSeconds()));
+                });
+    }
+
+    private void validate(List<ChatRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new InvalidBatchException("Batch has no items");
+        }
+        if (requests.size() > maxItems) {
+            throw new InvalidBatchException("Batch has more than " + maxItems + " items");
+        }
+    }
+
+    /**
+     * The same checks {@code @Valid} applies to single requests; null when the item passes
+     */
+    private String firstViolation(ChatRequest request) {
+        Set<ConstraintViolation<ChatRequest>> violations = validator.validate(request);
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                .sorted()
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static boolean hasContent(ChatRequest request) {
+        if (request == null) return false;
+        if (request.getMessages() != null && !request.getMessages().isEmpty()) return true;
+        return request.getPrompt() != null && !request.getPrompt().isBlank();
+    }
+
+    /**
+     * Drop jobs that finished more than {@code jobTtl} ago; caller holds the lock
+     */
+    private void evict(long now) {
+        Iterator<Map.Entry<String, BatchJob>> it = jobs.entrySet().iterator();
+        while (it.hasNext()) {
+            BatchJob job = it.next().getValue();
+            if (job.getStatus() != BatchJob.Status.RUNNING && now - job.getFinishedAt() > jobTtlMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private double runningJobs() {
+        synchronized (jobs) {
+            return jobs.values().stream().filter(job -> job.getStatus() == BatchJob.Status.RUNNING).count();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.aichatboot.cache;
+
+/**
+ * Lookup key produced by {@link ResponseCache#keyFor}.
+ *
+ * @param hash           exact key over request options and every message
+ * @param contextHash    key over request options and every message except the last one's content
+ * @param similarityText normalized last user prompt, or null when the similarity tier does not apply
+ */
+public record CacheKey(String hash, String contextHash, String similarityText) {
+}
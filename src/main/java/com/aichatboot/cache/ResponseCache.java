@@ -0,0 +1,321 @@
+package com.aichatboot.cache;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory cache of completed answers.
+ * <p>
+ * Exact tier: keyed by a hash of model, temperature, max_tokens and the normalized message list.
+ * Similarity tier (optional): when the exact key misses, answers cached for the same conversation
+ * context are reused if the last user prompt is close enough (cosine over hashed character trigrams).
+ * Eviction is LRU by entry count and approximate byte size, plus a per-entry TTL.
+ */
+@Component
+public class ResponseCache {
+
+    private static final int VECTOR_DIMENSIONS = 256;
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+
+    private final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final boolean similarityEnabled;
+    private final double similarityThreshold;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, List<Entry>> byContext = new HashMap<>();
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter similarHits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter ttlEvictions;
+
+    @Autowired
+    public ResponseCache(
+            @Value("${chat.cache.enabled:true}") boolean enabled,
+            @Value("${chat.cache.max-entries:10000}") int maxEntries,
+            @Value("${chat.cache.max-bytes:67108864}") long maxBytes,
+            @Value("${chat.cache.ttl:PT1H}") Duration ttl,
+            @Value("${chat.cache.similarity.enabled:false}") boolean similarityEnabled,
+            @Value("${chat.cache.similarity.threshold:0.92}") double similarityThreshold,
+            MeterRegistry meterRegistry
+    ) {
+        this(enabled, maxEntries, maxBytes, ttl, similarityEnabled, similarityThreshold, meterRegistry, System::nanoTime);
+    }
+
+    ResponseCache(boolean enabled, int maxEntries, long maxBytes, Duration ttl,
+                  boolean similarityEnabled, double similarityThreshold,
+                  MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl.toNanos();
+        this.similarityEnabled = similarityEnabled;
+        this.similarityThreshold = similarityThreshold;
+        this.clock = clock;
+
+        this.hits = Counter.builder("chat.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.similarHits = Counter.builder("chat.cache.requests").tag("result", "similar_hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder("chat.cache.evictions").tag("cause", "size").register(meterRegistry);
+        this.ttlEvictions = Counter.builder("chat.cache.evictions").tag("cause", "ttl").register(meterRegistry);
+        Gauge.builder("chat.cache.entries", this, ResponseCache::size).register(meterRegistry);
+        Gauge.builder("chat.cache.bytes", this, ResponseCache::bytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Build the cache key for an outgoing OpenAI request.
+     */
+    public CacheKey keyFor(String model, double temperature, int maxTokens, List<ChatMessage> messages) {
+        MessageDigest digest = sha256();
+        update(digest, model);
+        update(digest, Double.toString(temperature));
+        update(digest, Integer.toString(maxTokens));
+
+        int last = messages.size() - 1;
+        for (int i = 0; i < last; i++) {
+            update(digest, messages.get(i).getRole());
+            update(digest, normalize(messages.get(i).getContent()));
+        }
+        String lastRole = last >= 0 ? messages.get(last).getRole() : "";
+        String lastContent = last >= 0 ? normalize(messages.get(last).getContent()) : "";
+        update(digest, lastRole);
+
+        MessageDigest contextDigest = clone(digest);
+        update(digest, lastContent);
+
+        HexFormat hex = HexFormat.of();
+        String similarityText = "user".equals(lastRole) ? lastContent.toLowerCase(Locale.ROOT) : null;
+        return new CacheKey(hex.formatHex(digest.digest()), hex.formatHex(contextDigest.digest()), similarityText);
+    }
+
+    public Optional<ChatResponse> get(CacheKey key) {
+        if (!enabled) return Optional.empty();
+        long now = clock.getAsLong();
+
+        synchronized (this) {
+            Entry exact = entries.get(key.hash());
+            if (exact != null) {
+                if (!exact.isExpired(now)) {
+                    hits.increment();
+                    return Optional.of(exact.toResponse());
+                }
+                remove(exact);
+                ttlEvictions.increment();
+            }
+
+            if (similarityEnabled && key.similarityText() != null) {
+                Entry similar = findSimilar(key, now);
+                if (similar != null) {
+                    entries.get(similar.key); // touch LRU order
+                    similarHits.increment();
+                    return Optional.of(similar.toResponse());
+                }
+            }
+        }
+
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public void put(CacheKey key, ChatResponse response) {
+        if (!enabled || response == null || response.getText() == null) return;
+
+        float[] vector = similarityEnabled && key.similarityText() != null ? vectorize(key.similarityText()) : null;
+        long size = ENTRY_OVERHEAD_BYTES
+                + 2L * (response.getText().length() + (response.getId() == null ? 0 : response.getId().length()))
+                + (vector == null ? 0 : 4L * vector.length);
+        if (size > maxBytes) {
+            log.debug("Skipping cache store, answer of {} bytes exceeds cache capacity", size);
+            return;
+        }
+
+        Entry entry = new Entry(key.hash(), key.contextHash(), response.getId(), response.getText(),
+                vector, size, clock.getAsLong() + ttlNanos);
+
+        synchronized (this) {
+            Entry previous = entries.get(key.hash());
+            if (previous != null) remove(previous);
+
+            entries.put(entry.key, entry);
+            totalBytes += entry.size;
+            if (vector != null) {
+                byContext.computeIfAbsent(entry.contextKey, k -> new ArrayList<>()).add(entry);
+            }
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while ((entries.size() > maxEntries || totalBytes > maxBytes) && eldest.hasNext()) {
+                Entry victim = eldest.next();
+                eldest.remove();
+                detach(victim);
+                sizeEvictions.increment();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return totalBytes;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byContext.clear();
+        totalBytes = 0;
+    }
+
+    private Entry findSimilar(CacheKey key, long now) {
+        List<Entry> candidates = byContext.get(key.contextHash());
+        if (candidates == null || candidates.isEmpty()) return null;
+
+        float[] query = vectorize(key.similarityText());
+        Entry best = null;
+        double bestScore = similarityThreshold;
+        for (Entry candidate : candidates) {
+            if (candidate.isExpired(now)) continue;
+            double score = dot(query, candidate.vector);
+            if (score >= bestScore) {
+                bestScore = score;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.key);
+        detach(entry);
+    }
+
+    private void detach(Entry entry) {
+        totalBytes -= entry.size;
+        if (entry.vector == null) return;
+        List<Entry> group = byContext.get(entry.contextKey);
+        if (group != null) {
+            group.remove(entry);
+            if (group.isEmpty()) byContext.remove(entry.contextKey);
+        }
+    }
+
+    /**
+     * Hashed character-trigram vector, L2 normalized so that a dot product is the cosine similarity.
+     */
+    static float[] vectorize(String text) {
+        float[] vector = new float[VECTOR_DIMENSIONS];
+        String padded = " " + text + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            int h = padded.charAt(i) * 961 + padded.charAt(i + 1) * 31 + padded.charAt(i + 2);
+            vector[Math.floorMod(h, VECTOR_DIMENSIONS)] += 1f;
+        }
+        double norm = 0;
+        for (float v : vector) norm += v * v;
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) vector[i] *= inv;
+        }
+        return vector;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    static String normalize(String content) {
+        if (content == null) return "";
+        StringBuilder sb = new StringBuilder(content.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) sb.append(' ');
+                sb.append(c);
+                pendingSpace = false;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static MessageDigest clone(MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("SHA-256 digest is not cloneable", e);
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final String contextKey;
+        final String id;
+        final String text;
+        final float[] vector;
+        final long size;
+        final long expiresAt;
+
+        Entry(String key, String contextKey, String id, String text, float[] vector, long size, long expiresAt) {
+            this.key = key;
+            this.contextKey = contextKey;
+            this.id = id;
+            this.text = text;
+            this.vector = vector;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+
+        ChatResponse toResponse() {
+            ChatResponse response = new ChatResponse(id, text);
+            response.setCached(true);
+            return response;
+        }
+    }
+}
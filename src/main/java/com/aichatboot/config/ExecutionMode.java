@@ -0,0 +1,17 @@
+package com.aichatboot.config;
+
+/**
+ * How POST /api/v1/chat waits for the upstream completion.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Return a Mono; the servlet thread is released while OpenAI is generating.
+     */
+    REACTIVE,
+
+    /**
+     * Block the servlet thread until the completion arrives (legacy behaviour).
+     */
+    BLOCKING
+}
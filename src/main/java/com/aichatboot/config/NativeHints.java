@@ -0,0 +1,40 @@
+package com.aichatboot.config;
+
+import com.aichatboot.dto.BatchItemResult;
+import com.aichatboot.dto.BatchJobResponse;
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.ChatSocketMessage;
+import com.aichatboot.dto.ConversationMessageRequest;
+import com.aichatboot.dto.ConversationResponse;
+import com.aichatboot.dto.DocumentRequest;
+import com.aichatboot.dto.DocumentResponse;
+import com.aichatboot.dto.Usage;
+import com.aichatboot.retrieval.RetrievedChunk;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * What a native image cannot find out by itself: the DTOs Jackson binds outside of controller
+ * signatures (WebSocket frames, NDJSON batches, conversation files, SSE usage) and the jtokkit
+ * BPE tables, which are loaded as classpath resources. Controller bodies are covered by Spring's
+ * own AOT processing, except for the document API, which is only there when retrieval was enabled
+ * at build time.
+ */
+public class NativeHints implements RuntimeHintsRegistrar {
+
+    static final Class<?>[] BOUND_TYPES = {
+            ChatRequest.class, ChatResponse.class, ChatMessage.class, Usage.class, ChatSocketMessage.class,
+            ConversationMessageRequest.class, ConversationResponse.class,
+            BatchItemResult.class, BatchJobResponse.class,
+            DocumentRequest.class, DocumentResponse.class, RetrievedChunk.class
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), BOUND_TYPES);
+        hints.resources().registerPattern("com/knuddels/jtokkit/*.tiktoken");
+    }
+}
@@ -1,24 +1,100 @@
 package com.aichatboot.config;
 
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.function.Function;
 
 @Configuration
 public class OpenAIConfig {
 
+    private final Logger log = LoggerFactory.getLogger(OpenAIConfig.class);
+
     @Value("${openai.api.base-url:https://api.openai.com/v1}")
     private String baseUrl;
 
     @Value("${openai.api.key:${OPENAI_API_KEY:TEST_KEY_DEFAULT}}") // fallback for test
     private String apiKey;
 
+    // Connection pool
+    @Value("${openai.http.pool.max-connections:500}")
+    private int maxConnections;
+
+    @Value("${openai.http.pool.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${openai.http.pool.pending-acquire-timeout:10s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${openai.http.pool.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${openai.http.pool.max-life-time:5m}")
+    private Duration maxLifeTime;
+
+    @Value("${openai.http.pool.evict-in-background:30s}")
+    private Duration evictInBackground;
+
+    @Value("${openai.http.pool.metrics-enabled:true}")
+    private boolean metricsEnabled;
+
+    // Timeouts / protocol
+    @Value("${openai.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${openai.http.response-timeout:60s}")
+    private Duration responseTimeout;
+
+    @Value("${openai.http.http2.enabled:false}")
+    private boolean http2Enabled;
+
+    // Sync completions are decoded incrementally, so only error bodies and the like are aggregated
+    @Value("${openai.http.max-in-memory-size:256KB}")
+    private DataSize maxInMemorySize;
+
+    // Warm-up
+    @Value("${openai.http.warmup.enabled:true}")
+    private boolean warmupEnabled;
+
+    @Value("${openai.http.warmup.connections:0}")
+    private int warmupConnections;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider openAiConnectionProvider() {
+        return ConnectionProvider.builder("openai")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                // Reuse the most recently released connection so surplus ones go idle and get evicted
+                .lifo()
+                .metrics(metricsEnabled)
+                .build();
+    }
+
     @Bean
-    public WebClient openAiWebClient() {
+    public WebClient openAiWebClient(ConnectionProvider openAiConnectionProvider,
+                                     ObjectProvider<ObservationRegistry> observationRegistry) {
 
         // Warn if using test key
         if ("TEST_KEY_DEFAULT".equals(apiKey)) {
@@ -26,12 +102,28 @@ public class OpenAIConfig {
         }
 
         ExchangeStrategies strategies = ExchangeStrategies.builder()
-                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
                 .build();
 
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(openAiConnectionProvider)
                 .compress(true)
-                .followRedirect(true);
+                .followRedirect(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(responseTimeout)
+                .metrics(metricsEnabled, Function.identity());
+
+        if (http2Enabled) {
+            // h2 over TLS is negotiated with ALPN, plain http upgrades with h2c; both fall back to HTTP/1.1
+            httpClient = baseUrl.startsWith("https")
+                    ? httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                    : httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+
+        if (warmupEnabled) {
+            // Load event loops, native transport and the DNS resolver before the first request
+            httpClient.warmup().block(Duration.ofSeconds(10));
+        }
 
         return WebClient.builder()
                 .baseUrl(baseUrl)
@@ -39,6 +131,30 @@ public class OpenAIConfig {
                 .defaultHeader("Content-Type", "application/json")
                 .exchangeStrategies(strategies)
                 .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // http.client.requests metrics, and a child span per call when tracing is on
+                .observationRegistry(observationRegistry.getIfAvailable(() -> ObservationRegistry.NOOP))
                 .build();
     }
+
+    /**
+     * Optionally open pooled connections (TCP + TLS) once the app is ready, so the first burst
+     * does not pay the handshakes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prewarmConnections(ApplicationReadyEvent event) {
+        if (!warmupEnabled || warmupConnections <= 0) return;
+
+        WebClient webClient = event.getApplicationContext().getBean("openAiWebClient", WebClient.class);
+        Flux.range(0, warmupConnections)
+                .flatMap(i -> webClient.get()
+                        .uri("/models")
+                        .retrieve()
+                        .toBodilessEntity()
+                        .onErrorResume(e -> {
+                            log.debug("Connection pre-warm request failed: {}", e.toString());
+                            return Mono.empty();
+                        }), warmupConnections)
+                .count()
+                .subscribe(n -> log.info("Pre-warmed {} OpenAI connections", warmupConnections));
+    }
 }
@@ -0,0 +1,35 @@
+package com.aichatboot.config;
+
+import com.aichatboot.quota.TokenQuotaService;
+import com.aichatboot.websocket.ChatWebSocketHandler;
+import com.aichatboot.websocket.TenantHandshakeInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(name = "spring.websocket.enabled", havingValue = "true", matchIfMissing = true)
+public class WebSocketConfig implements WebSocketConfigurer {
+
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    private final TokenQuotaService quotaService;
+
+    @Value("${app.cors.allowed-origins:http://localhost:3000}")
+    private String allowedOrigins;
+
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler, TokenQuotaService quotaService) {
+        this.chatWebSocketHandler = chatWebSocketHandler;
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .addInterceptors(new TenantHandshakeInterceptor(quotaService))
+                .setAllowedOrigins((allowedOrigins + ",http://localhost:5173").split(","));
+    }
+}
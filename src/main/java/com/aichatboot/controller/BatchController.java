@@ -0,0 +1,88 @@
+package com.aichatboot.controller;
+
+import com.aichatboot.batch.BatchJob;
+import com.aichatboot.batch.BatchService;
+import com.aichatboot.dto.BatchItemResult;
+import com.aichatboot.dto.BatchJobResponse;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.filter.RateLimitFilter;
+import com.aichatboot.quota.TokenQuotaService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Batch completions: upload a JSON array or NDJSON of chat requests and get NDJSON results back
+ * as items finish, or submit them as a background job and poll it. Jobs belong to the tenant
+ * (configured X-API-Key, else client IP) that submitted them.
+ */
+@RestController
+@RequestMapping("/api/v1/chat/batch")
+@CrossOrigin(origins = "http://localhost:5173") // Allow React dev server
+public class BatchController {
+
+    private final BatchService batchService;
+    private final TokenQuotaService quotaService;
+
+    public BatchController(BatchService batchService, TokenQuotaService quotaService) {
+        this.batchService = batchService;
+        this.quotaService = quotaService;
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchItemResult> run(@RequestBody List<ChatRequest> requests,
+                                     @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                     @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return batchService.run(requests, quotaService.tenantOf(apiKey, clientIp));
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchItemResult> runNdjson(@RequestBody String body,
+                                           @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                           @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return batchService.run(batchService.parseNdjson(body), quotaService.tenantOf(apiKey, clientIp));
+    }
+
+    @PostMapping(value = "/jobs", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public BatchJobResponse submit(@RequestBody List<ChatRequest> requests,
+                                   @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                   @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(batchService.submit(requests, quotaService.tenantOf(apiKey, clientIp)), false);
+    }
+
+    @PostMapping(value = "/jobs", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public BatchJobResponse submitNdjson(@RequestBody String body,
+                                         @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                         @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(batchService.submit(batchService.parseNdjson(body),
+                quotaService.tenantOf(apiKey, clientIp)), false);
+    }
+
+    /**
+     * Progress and the results collected so far, in completion order
+     */
+    @GetMapping("/jobs/{id}")
+    public BatchJobResponse get(@PathVariable String id,
+                                @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(batchService.get(id, quotaService.tenantOf(apiKey, clientIp)), true);
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public BatchJobResponse cancel(@PathVariable String id,
+                                   @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                   @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(batchService.cancel(id, quotaService.tenantOf(apiKey, clientIp)), false);
+    }
+
+    private BatchJobResponse toResponse(BatchJob job, boolean withResults) {
+        List<BatchItemResult> results = job.results();
+        return new BatchJobResponse(job.getId(), job.getStatus().name().toLowerCase(), job.getCreatedAt(),
+                job.getTotal(), results.size(), job.getFailed(), withResults ? results : null);
+    }
+}
@@ -1,8 +1,15 @@
 package com.aichatboot.controller;
 
+import com.aichatboot.config.ExecutionMode;
 import com.aichatboot.dto.ChatRequest;
 import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.filter.RateLimitFilter;
+import com.aichatboot.filter.RateLimitRefund;
+import com.aichatboot.quota.TokenQuotaService;
 import com.aichatboot.service.ChatService;
+import com.aichatboot.service.TokenCoalescer;
+import com.aichatboot.stream.ResumableStreams;
+import com.aichatboot.stream.StreamJournal;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +19,9 @@ import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/v1/chat")
@@ -20,38 +30,96 @@ import reactor.core.publisher.Flux;
 public class ChatController {
 
     private final ChatService chatService;
+    private final TokenCoalescer tokenCoalescer;
+    private final ResumableStreams resumableStreams;
+    private final TokenQuotaService quotaService;
     private final Logger logger = LoggerFactory.getLogger(ChatController.class);
 
     @Value("${openai.stream.enabled:true}")
     private boolean streamEnabled;
 
-    public ChatController(ChatService chatService) {
+    @Value("${chat.execution.mode:reactive}")
+    private ExecutionMode executionMode = ExecutionMode.REACTIVE;
+
+    public ChatController(ChatService chatService, TokenCoalescer tokenCoalescer, ResumableStreams resumableStreams,
+                          TokenQuotaService quotaService) {
         this.chatService = chatService;
+        this.tokenCoalescer = tokenCoalescer;
+        this.resumableStreams = resumableStreams;
+        this.quotaService = quotaService;
     }
 
+    /**
+     * Failures are answered by GlobalExceptionHandler; upstream faults give the rate limit token back
+     */
     @PostMapping
-    public ChatResponse chat(@Valid @RequestBody ChatRequest request) {
-        logger.debug("Received synchronous chat request, stream={}", request.getStream());
+    public Mono<ChatResponse> chat(@Valid @RequestBody ChatRequest request,
+                                   @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                   @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp,
+                                   @RequestAttribute(value = RateLimitFilter.REFUND_ATTRIBUTE, required = false) RateLimitRefund refund) {
+        logger.debug("Received synchronous chat request, stream={}, mode={}", request.getStream(), executionMode);
+        String tenant = quotaService.tenantOf(apiKey, clientIp);
         try {
-            return chatService.createCompletion(request);
-        } catch (Exception ex) {
-            logger.error("Error during synchronous chat completion", ex);
-            return new ChatResponse("ERROR-" + System.currentTimeMillis(),
-                    "[[ERROR: " + ex.getMessage() + "]]");
+            if (executionMode == ExecutionMode.BLOCKING) {
+                return Mono.just(chatService.createCompletion(request, tenant));
+            }
+            return chatService.completion(request, tenant)
+                    .doOnError(ex -> StreamErrors.refundIfUpstreamFault(ex, refund));
+        } catch (RuntimeException ex) {
+            StreamErrors.refundIfUpstreamFault(ex, refund);
+            throw ex;
         }
     }
 
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<ServerSentEvent<String>> stream(@Valid @RequestBody ChatRequest request) {
+    public Flux<ServerSentEvent<String>> stream(@Valid @RequestBody ChatRequest request,
+                                                @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                                @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp,
+                                                @RequestAttribute(value = RateLimitFilter.REFUND_ATTRIBUTE, required = false) RateLimitRefund refund) {
         if (!streamEnabled) {
             return Flux.just(ServerSentEvent.builder("Streaming disabled on server").build());
         }
-        Flux<String> stream = chatService.streamCompletion(request);
-        if (stream == null) stream = Flux.just("[[NO DATA]]");
+        String tenant = quotaService.tenantOf(apiKey, clientIp);
+        Flux<String> stream;
+        try {
+            stream = chatService.streamCompletion(request, tenant);
+        } catch (RuntimeException ex) {
+            StreamErrors.refundIfUpstreamFault(ex, refund);
+            throw ex; // answered by GlobalExceptionHandler before the stream starts
+        }
+        if (tokenCoalescer.appliesTo(request)) stream = tokenCoalescer.coalesce(stream);
 
+        if (resumableStreams.isEnabled()) {
+            Optional<StreamJournal> journal = resumableStreams.start(tenant, stream);
+            if (journal.isPresent()) return replay(journal.get(), 0, refund);
+        }
         return stream
                 .map(token -> ServerSentEvent.builder(token).build())
-                .doOnError(e -> logger.error("Error during streaming chat", e))
-                .onErrorResume(e -> Flux.just(ServerSentEvent.builder("[[STREAM ERROR: " + e.getMessage() + "]]").build()));
+                .onErrorResume(e -> StreamErrors.errorEvent(e, refund));
+    }
+
+    /**
+     * Reconnect to a stream started by {@link #stream}; with {@code Last-Event-ID} only the frames
+     * after that event are sent, without it the stream is replayed from the start
+     */
+    @GetMapping(value = "/stream/{streamId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> resume(@PathVariable String streamId,
+                                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                                @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp,
+                                                @RequestAttribute(value = RateLimitFilter.REFUND_ATTRIBUTE, required = false) RateLimitRefund refund) {
+        StreamJournal journal = resumableStreams.get(streamId, quotaService.tenantOf(apiKey, clientIp));
+        long from = ResumableStreams.resumeOffset(streamId, lastEventId);
+        journal.checkAvailable(from); // answered with 410 by GlobalExceptionHandler
+        logger.debug("Resuming stream {} at frame {}", streamId, from);
+        return replay(journal, from, refund);
+    }
+
+    private Flux<ServerSentEvent<String>> replay(StreamJournal journal, long from, RateLimitRefund refund) {
+        return journal.read(from)
+                .map(frame -> ServerSentEvent.builder(frame.text())
+                        .id(ResumableStreams.eventId(journal.getId(), frame.offset()))
+                        .build())
+                .onErrorResume(e -> StreamErrors.errorEvent(e, refund));
     }
 }
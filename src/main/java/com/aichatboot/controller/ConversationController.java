@@ -0,0 +1,96 @@
+package com.aichatboot.controller;
+
+import com.aichatboot.conversation.Conversation;
+import com.aichatboot.conversation.ConversationService;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.ConversationMessageRequest;
+import com.aichatboot.dto.ConversationResponse;
+import com.aichatboot.filter.RateLimitFilter;
+import com.aichatboot.filter.RateLimitRefund;
+import com.aichatboot.quota.TokenQuotaService;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Server-side conversations: create once, then post only the new user message per turn.
+ * Conversations belong to the tenant (configured X-API-Key, else client IP) that created them.
+ */
+@RestController
+@RequestMapping("/api/v1/conversations")
+@Validated
+@CrossOrigin(origins = "http://localhost:5173") // Allow React dev server
+public class ConversationController {
+
+    private final ConversationService conversationService;
+    private final TokenQuotaService quotaService;
+
+    public ConversationController(ConversationService conversationService, TokenQuotaService quotaService) {
+        this.conversationService = conversationService;
+        this.quotaService = quotaService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public ConversationResponse create(@RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                       @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(conversationService.create(quotaService.tenantOf(apiKey, clientIp)));
+    }
+
+    @GetMapping("/{id}")
+    public ConversationResponse get(@PathVariable String id,
+                                    @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                    @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        return toResponse(conversationService.get(id, quotaService.tenantOf(apiKey, clientIp)));
+    }
+
+    @DeleteMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void delete(@PathVariable String id,
+                       @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                       @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp) {
+        conversationService.delete(id, quotaService.tenantOf(apiKey, clientIp));
+    }
+
+    @PostMapping("/{id}/messages")
+    public Mono<ChatResponse> send(@PathVariable String id,
+                                   @Valid @RequestBody ConversationMessageRequest message,
+                                   @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                   @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp,
+                                   @RequestAttribute(value = RateLimitFilter.REFUND_ATTRIBUTE, required = false) RateLimitRefund refund) {
+        try {
+            return conversationService.send(id, quotaService.tenantOf(apiKey, clientIp), message)
+                    .doOnError(ex -> StreamErrors.refundIfUpstreamFault(ex, refund));
+        } catch (RuntimeException ex) {
+            StreamErrors.refundIfUpstreamFault(ex, refund);
+            throw ex;
+        }
+    }
+
+    @PostMapping(value = "/{id}/messages/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> stream(@PathVariable String id,
+                                                @Valid @RequestBody ConversationMessageRequest message,
+                                                @RequestHeader(value = "X-API-Key", required = false) String apiKey,
+                                                @RequestAttribute(value = RateLimitFilter.CLIENT_IP_ATTRIBUTE, required = false) String clientIp,
+                                                @RequestAttribute(value = RateLimitFilter.REFUND_ATTRIBUTE, required = false) RateLimitRefund refund) {
+        Flux<String> tokens;
+        try {
+            tokens = conversationService.stream(id, quotaService.tenantOf(apiKey, clientIp), message);
+        } catch (RuntimeException ex) {
+            StreamErrors.refundIfUpstreamFault(ex, refund);
+            throw ex;
+        }
+        return tokens
+                .map(token -> ServerSentEvent.builder(token).build())
+                .onErrorResume(e -> StreamErrors.errorEvent(e, refund));
+    }
+
+    private ConversationResponse toResponse(Conversation conversation) {
+        return new ConversationResponse(conversation.getId(), conversation.getCreatedAt(), conversation.messages());
+    }
+}
@@ -0,0 +1,82 @@
+package com.aichatboot.controller;
+
+import com.aichatboot.dto.DocumentRequest;
+import com.aichatboot.dto.DocumentResponse;
+import com.aichatboot.exception.DocumentAccessDeniedException;
+import com.aichatboot.retrieval.RetrievalService;
+import com.aichatboot.retrieval.RetrievedChunk;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Documents for retrieval-augmented answers: ingested documents are searched on every completion
+ * that does not opt out with {@code "retrieval": false}. Only mapped when
+ * {@code chat.retrieval.enabled=true}.
+ * <p>
+ * The index is shared by all tenants and its text goes into their prompts, so ingesting and searching
+ * need an X-API-Key listed in {@code chat.retrieval.admin-keys}; with none configured both answer 403.
+ */
+@RestController
+@RequestMapping("/api/v1/documents")
+@ConditionalOnProperty(name = "chat.retrieval.enabled", havingValue = "true")
+@CrossOrigin(origins = "http://localhost:5173") // Allow React dev server
+public class DocumentController {
+
+    private static final int MAX_K = 50;
+
+    private final RetrievalService retrievalService;
+    private final List<byte[]> adminKeys;
+
+    public DocumentController(RetrievalService retrievalService,
+                              @Value("${chat.retrieval.admin-keys:}") String adminKeys) {
+        this.retrievalService = retrievalService;
+        this.adminKeys = parseKeys(adminKeys);
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<DocumentResponse> ingest(@Valid @RequestBody DocumentRequest document,
+                                         @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        requireAdmin(apiKey);
+        return retrievalService.ingest(document.getId(), document.getText());
+    }
+
+    /**
+     * The chunks a completion asking {@code q} would get, for checking what the index holds
+     */
+    @GetMapping("/search")
+    public Mono<List<RetrievedChunk>> search(@RequestParam String q,
+                                             @RequestParam(defaultValue = "4") int k,
+                                             @RequestHeader(value = "X-API-Key", required = false) String apiKey) {
+        requireAdmin(apiKey);
+        return retrievalService.retrieve(q, Math.max(1, Math.min(k, MAX_K)));
+    }
+
+    private void requireAdmin(String apiKey) {
+        if (apiKey != null) {
+            byte[] presented = apiKey.trim().getBytes(StandardCharsets.UTF_8);
+            for (byte[] key : adminKeys) {
+                if (MessageDigest.isEqual(key, presented)) return;
+            }
+        }
+        throw new DocumentAccessDeniedException();
+    }
+
+    private static List<byte[]> parseKeys(String spec) {
+        List<byte[]> keys = new ArrayList<>();
+        if (spec == null || spec.isBlank()) return keys;
+        for (String key : spec.split(",")) {
+            if (!key.isBlank()) keys.add(key.trim().getBytes(StandardCharsets.UTF_8));
+        }
+        return keys;
+    }
+}
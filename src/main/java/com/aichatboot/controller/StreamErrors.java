@@ -0,0 +1,33 @@
+package com.aichatboot.controller;
+
+import com.aichatboot.exception.ChatError;
+import com.aichatboot.filter.RateLimitRefund;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+/**
+ * Ends a failed SSE stream with a typed {@code event: error} carrying a {@link ChatError} as JSON,
+ * so clients never mistake an error for answer text.
+ */
+final class StreamErrors {
+
+    static final String ERROR_EVENT = "error";
+
+    private static final Logger log = LoggerFactory.getLogger(StreamErrors.class);
+
+    private StreamErrors() {
+    }
+
+    static Flux<ServerSentEvent<String>> errorEvent(Throwable error, RateLimitRefund refund) {
+        ChatError chatError = ChatError.of(error);
+        log.warn("Streaming chat failed with {}: {}", chatError.code(), error.toString());
+        refundIfUpstreamFault(error, refund);
+        return Flux.just(ServerSentEvent.builder(chatError.toJson()).event(ERROR_EVENT).build());
+    }
+
+    static void refundIfUpstreamFault(Throwable error, RateLimitRefund refund) {
+        if (refund != null && ChatError.isUpstreamFault(error)) refund.refund();
+    }
+}
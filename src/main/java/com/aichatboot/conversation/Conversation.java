@@ -0,0 +1,71 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Server-side chat history. Holds at most {@code maxMessages}; the oldest turns are dropped first.
+ * The owning tenant is only kept as a SHA-256 hash, since it may be an API key and conversations
+ * can be written to disk.
+ */
+public class Conversation {
+
+    private final String id;
+    private final String ownerHash;
+    private final long createdAt;
+    private final int maxMessages;
+    private final ArrayDeque<ChatMessage> messages = new ArrayDeque<>();
+    private volatile long lastAccess;
+
+    public Conversation(String id, String ownerHash, long createdAt, int maxMessages) {
+        this.id = id;
+        this.ownerHash = ownerHash;
+        this.createdAt = createdAt;
+        this.maxMessages = maxMessages;
+        this.lastAccess = createdAt;
+    }
+
+    public String getId() { return id; }
+    public String getOwnerHash() { return ownerHash; }
+    public long getCreatedAt() { return createdAt; }
+    public long getLastAccess() { return lastAccess; }
+
+    public boolean isOwnedBy(String tenant) {
+        return MessageDigest.isEqual(ownerHash.getBytes(StandardCharsets.US_ASCII),
+                hashOwner(tenant).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static String hashOwner(String tenant) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(tenant.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void touch(long now) {
+        this.lastAccess = now;
+    }
+
+    synchronized void append(ChatMessage message) {
+        messages.addLast(message);
+        while (messages.size() > maxMessages) messages.removeFirst();
+    }
+
+    public synchronized int size() {
+        return messages.size();
+    }
+
+    /** Copy of the history, oldest first */
+    public synchronized List<ChatMessage> messages() {
+        return new ArrayList<>(messages);
+    }
+}
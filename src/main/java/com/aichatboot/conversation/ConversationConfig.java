@@ -0,0 +1,43 @@
+package com.aichatboot.conversation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class ConversationConfig {
+
+    /** memory = lost on restart, file = one NDJSON file per conversation under chat.conversations.file.dir */
+    @Value("${chat.conversations.store:memory}")
+    private String store;
+
+    @Value("${chat.conversations.max-conversations:10000}")
+    private int maxConversations;
+
+    @Value("${chat.conversations.max-messages:200}")
+    private int maxMessages;
+
+    @Value("${chat.conversations.ttl:24h}")
+    private Duration ttl;
+
+    @Value("${chat.conversations.file.dir:${java.io.tmpdir}/aichatboot-conversations}")
+    private String directory;
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConversationStore conversationStore(ObjectMapper objectMapper) {
+        InMemoryConversationStore memory = new InMemoryConversationStore(maxConversations, maxMessages, ttl);
+        if ("file".equalsIgnoreCase(store)) {
+            return new FileConversationStore(memory, Path.of(directory), ttl, objectMapper);
+        }
+        if (!"memory".equalsIgnoreCase(store)) {
+            throw new IllegalArgumentException("Unknown chat.conversations.store: " + store);
+        }
+        return memory;
+    }
+}
@@ -0,0 +1,135 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.ConversationMessageRequest;
+import com.aichatboot.exception.ConversationNotFoundException;
+import com.aichatboot.quota.TokenEstimator;
+import com.aichatboot.service.ChatService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Chat turns against server-side history: the client sends only the new message, the server
+ * appends it and forwards the most recent turns that fit {@code contextTokens}, so the payload per
+ * turn stays flat however long the conversation gets.
+ * <p>
+ * Old turns leave the window {@code trimStepTokens} at a time rather than one per turn, so
+ * consecutive turns send the same opening and the provider can serve it from its prompt cache.
+ */
+@Service
+public class ConversationService {
+
+    private final ConversationStore store;
+    private final ChatService chatService;
+    private final TokenEstimator tokenEstimator;
+    private final int contextTokens;
+    private final int trimStepTokens;
+
+    public ConversationService(ConversationStore store,
+                               ChatService chatService,
+                               TokenEstimator tokenEstimator,
+                               MeterRegistry meterRegistry,
+                               @Value("${chat.conversations.context-tokens:3000}") int contextTokens,
+                               @Value("${chat.conversations.trim-step-tokens:500}") int trimStepTokens) {
+        this.store = store;
+        this.chatService = chatService;
+        this.tokenEstimator = tokenEstimator;
+        this.contextTokens = contextTokens;
+        this.trimStepTokens = trimStepTokens;
+        Gauge.builder("chat.conversations", store, ConversationStore::size).register(meterRegistry);
+    }
+
+    public Conversation create(String owner) {
+        return store.create(owner);
+    }
+
+    /**
+     * @throws ConversationNotFoundException when the id is unknown, expired or owned by another tenant
+     */
+    public Conversation get(String id, String owner) {
+        return store.find(id)
+                .filter(c -> c.isOwnedBy(owner))
+                .orElseThrow(() -> new ConversationNotFoundException(id));
+    }
+
+    public void delete(String id, String owner) {
+        get(id, owner);
+        store.delete(id);
+    }
+
+    /**
+     * Complete the user turn with the windowed history; the turn and its answer are stored only
+     * when the completion succeeds
+     */
+    public Mono<ChatResponse> send(String id, String owner, ConversationMessageRequest message) {
+        Conversation conversation = get(id, owner);
+        ChatMessage userTurn = new ChatMessage("user", message.getContent());
+        return chatService.completion(requestFor(conversation, userTurn, message), owner)
+                .doOnNext(response -> {
+                    store.append(conversation, userTurn);
+                    store.append(conversation, new ChatMessage("assistant", response.getText()));
+                });
+    }
+
+    /**
+     * Streaming variant of {@link #send}; the turn is stored once the stream completes normally
+     */
+    public Flux<String> stream(String id, String owner, ConversationMessageRequest message) {
+        Conversation conversation = get(id, owner);
+        ChatMessage userTurn = new ChatMessage("user", message.getContent());
+        Flux<String> tokens = chatService.streamCompletion(requestFor(conversation, userTurn, message), owner);
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            return tokens
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        String text = answer.toString().trim();
+                        if (!text.isEmpty()) {
+                            store.append(conversation, userTurn);
+                            store.append(conversation, new ChatMessage("assistant", text));
+                        }
+                    });
+        });
+    }
+
+    private ChatRequest requestFor(Conversation conversation, ChatMessage userTurn, ConversationMessageRequest message) {
+        List<ChatMessage> history = conversation.messages();
+        history.add(userTurn);
+        ChatRequest request = new ChatRequest();
+        request.setMessages(contextWindow(history));
+        request.setConversationId(conversation.getId());
+        request.setBypassCache(message.getBypassCache());
+        return request;
+    }
+
+    /**
+     * Newest messages whose estimated size fits the context budget, cut in steps of
+     * {@code trimStepTokens}; the latest turn is always kept
+     */
+    List<ChatMessage> contextWindow(List<ChatMessage> history) {
+        int total = 0;
+        for (ChatMessage message : history) total += tokenEstimator.estimateMessageTokens(message.getContent());
+        int overflow = total - contextTokens;
+        if (overflow > 0 && trimStepTokens > 0) {
+            // history only grows at the end, so the cut stays on the same turn until the overflow
+            // passes the next step
+            overflow = (overflow + trimStepTokens - 1) / trimStepTokens * trimStepTokens;
+        }
+        int dropped = 0;
+        int start = 0;
+        while (dropped < overflow && start < history.size() - 1) {
+            dropped += tokenEstimator.estimateMessageTokens(history.get(start++).getContent());
+        }
+        // a window opening on an assistant turn reads as if the model spoke first
+        while (start < history.size() - 1 && !"user".equals(history.get(start).getRole())) start++;
+        return history.subList(start, history.size());
+    }
+}
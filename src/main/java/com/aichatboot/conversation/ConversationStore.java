@@ -0,0 +1,21 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+
+import java.util.Optional;
+
+/**
+ * Bounded storage for {@link Conversation}s; idle or least recently used conversations may be evicted.
+ */
+public interface ConversationStore {
+
+    Conversation create(String owner);
+
+    Optional<Conversation> find(String id);
+
+    void append(Conversation conversation, ChatMessage message);
+
+    boolean delete(String id);
+
+    long size();
+}
@@ -0,0 +1,178 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * {@link InMemoryConversationStore} backed by one append-only NDJSON file per conversation, so
+ * history survives restarts and memory evictions. The first line holds id/ownerHash/createdAt, each
+ * further line one message; appending a turn writes only that turn.
+ */
+public class FileConversationStore implements ConversationStore {
+
+    private static final Pattern ID = Pattern.compile("[0-9a-f\\-]{36}");
+    private static final long SWEEP_INTERVAL_MILLIS = Duration.ofMinutes(10).toMillis();
+
+    private final Logger log = LoggerFactory.getLogger(FileConversationStore.class);
+
+    private final InMemoryConversationStore memory;
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final long ttlMillis;
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    public FileConversationStore(InMemoryConversationStore memory, Path directory, Duration ttl,
+                                 ObjectMapper objectMapper) {
+        this.memory = memory;
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        this.ttlMillis = ttl.toMillis();
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot create conversation directory " + directory, e);
+        }
+    }
+
+    @Override
+    public Conversation create(String owner) {
+        sweepIfDue();
+        Conversation conversation = memory.create(owner);
+        write(conversation, header(conversation), StandardOpenOption.CREATE_NEW);
+        return conversation;
+    }
+
+    @Override
+    public Optional<Conversation> find(String id) {
+        Optional<Conversation> cached = memory.find(id);
+        if (cached.isPresent() || !ID.matcher(id).matches()) return cached;
+        return load(id);
+    }
+
+    @Override
+    public void append(Conversation conversation, ChatMessage message) {
+        // keep file order equal to memory order when turns of one conversation race
+        synchronized (conversation) {
+            memory.append(conversation, message);
+            write(conversation, json(message), StandardOpenOption.APPEND);
+        }
+    }
+
+    @Override
+    public boolean delete(String id) {
+        boolean removed = memory.delete(id);
+        if (!ID.matcher(id).matches()) return removed;
+        try {
+            return Files.deleteIfExists(file(id)) || removed;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot delete conversation " + id, e);
+        }
+    }
+
+    @Override
+    public long size() {
+        return memory.size();
+    }
+
+    private synchronized Optional<Conversation> load(String id) {
+        Optional<Conversation> raced = memory.find(id);
+        if (raced.isPresent()) return raced;
+
+        Path file = file(id);
+        try {
+            if (!Files.exists(file)) return Optional.empty();
+            if (memory.now() - Files.getLastModifiedTime(file).toMillis() > ttlMillis) {
+                Files.deleteIfExists(file);
+                return Optional.empty();
+            }
+
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty()) return Optional.empty();
+            JsonNode header = objectMapper.readTree(lines.get(0));
+            // files written before owners were hashed carry the tenant itself
+            String ownerHash = header.hasNonNull("ownerHash") ? header.get("ownerHash").asText()
+                    : Conversation.hashOwner(header.path("owner").asText());
+            Conversation conversation = new Conversation(id, ownerHash,
+                    header.path("createdAt").asLong(), memory.maxMessages());
+            for (String line : lines.subList(1, lines.size())) {
+                if (!line.isBlank()) conversation.append(objectMapper.readValue(line, ChatMessage.class));
+            }
+            conversation.touch(memory.now());
+            if (lines.size() - 1 > 2 * memory.maxMessages()) compact(conversation);
+
+            memory.put(conversation);
+            return Optional.of(conversation);
+        } catch (IOException e) {
+            log.warn("Cannot load conversation {}: {}", id, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /** Rewrite a file that grew far beyond the messages still kept */
+    private void compact(Conversation conversation) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(header(conversation));
+        for (ChatMessage message : conversation.messages()) lines.add(json(message));
+        Path tmp = directory.resolve(conversation.getId() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        Files.move(tmp, file(conversation.getId()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void write(Conversation conversation, String line, StandardOpenOption mode) {
+        try {
+            Files.writeString(file(conversation.getId()), line + "\n", StandardCharsets.UTF_8,
+                    mode, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot persist conversation " + conversation.getId(), e);
+        }
+    }
+
+    private void sweepIfDue() {
+        long now = memory.now();
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) return;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.ndjson")) {
+            for (Path file : files) {
+                if (now - Files.getLastModifiedTime(file).toMillis() > ttlMillis) Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Conversation file sweep failed: {}", e.getMessage());
+        }
+    }
+
+    private String header(Conversation conversation) {
+        return json(Map.of("id", conversation.getId(), "ownerHash", conversation.getOwnerHash(),
+                "createdAt", conversation.getCreatedAt()));
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + ".ndjson");
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * LRU map of conversations, capped at {@code maxConversations}; conversations idle for longer than
+ * {@code ttl} expire.
+ */
+public class InMemoryConversationStore implements ConversationStore {
+
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxConversations;
+    private final int maxMessages;
+    private final long ttlMillis;
+    private final LongSupplier clockMillis;
+
+    public InMemoryConversationStore(int maxConversations, int maxMessages, Duration ttl) {
+        this(maxConversations, maxMessages, ttl, System::currentTimeMillis);
+    }
+
+    InMemoryConversationStore(int maxConversations, int maxMessages, Duration ttl, LongSupplier clockMillis) {
+        this.maxConversations = maxConversations;
+        this.maxMessages = maxMessages;
+        this.ttlMillis = ttl.toMillis();
+        this.clockMillis = clockMillis;
+    }
+
+    @Override
+    public Conversation create(String owner) {
+        Conversation conversation = new Conversation(UUID.randomUUID().toString(), Conversation.hashOwner(owner),
+                clockMillis.getAsLong(), maxMessages);
+        put(conversation);
+        return conversation;
+    }
+
+    @Override
+    public synchronized Optional<Conversation> find(String id) {
+        Conversation conversation = conversations.get(id);
+        if (conversation == null) return Optional.empty();
+        long now = clockMillis.getAsLong();
+        if (expired(conversation, now)) {
+            conversations.remove(id);
+            return Optional.empty();
+        }
+        conversation.touch(now);
+        return Optional.of(conversation);
+    }
+
+    @Override
+    public void append(Conversation conversation, ChatMessage message) {
+        conversation.append(message);
+        conversation.touch(clockMillis.getAsLong());
+    }
+
+    @Override
+    public synchronized boolean delete(String id) {
+        return conversations.remove(id) != null;
+    }
+
+    @Override
+    public synchronized long size() {
+        return conversations.size();
+    }
+
+    /**
+     * Insert (or re-insert after loading from elsewhere), evicting expired and then least recently
+     * used conversations over the cap.
+     */
+    synchronized void put(Conversation conversation) {
+        conversations.put(conversation.getId(), conversation);
+        if (conversations.size() <= maxConversations) return;
+
+        long now = clockMillis.getAsLong();
+        conversations.values().removeIf(c -> expired(c, now));
+        Iterator<Map.Entry<String, Conversation>> eldest = conversations.entrySet().iterator();
+        while (conversations.size() > maxConversations && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    boolean expired(Conversation conversation, long now) {
+        return now - conversation.getLastAccess() > ttlMillis;
+    }
+
+    long now() {
+        return clockMillis.getAsLong();
+    }
+
+    int maxMessages() {
+        return maxMessages;
+    }
+}
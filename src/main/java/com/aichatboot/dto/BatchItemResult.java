@@ -0,0 +1,53 @@
+package com.aichatboot.dto;
+
+/**
+ * Outcome of one batch item: {@code response} when it succeeded, otherwise {@code code},
+ * {@code message} and, when retrying makes sense, {@code retryAfter}.
+ * {@code index} is the item's position in the uploaded batch, as results arrive in completion order.
+ */
+public class BatchItemResult {
+    private int index;
+    private String status;
+    private ChatResponse response;
+    private String code;
+    private String message;
+    private Long retryAfter;
+
+    public BatchItemResult() {}
+
+    public static BatchItemResult ok(int index, ChatResponse response) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = "ok";
+        result.response = response;
+        return result;
+    }
+
+    public static BatchItemResult failed(int index, String code, String message, long retryAfterSeconds) {
+        BatchItemResult result = new BatchItemResult();
+        result.index = index;
+        result.status = "error";
+        result.code = code;
+        result.message = message;
+        result.retryAfter = retryAfterSeconds > 0 ? retryAfterSeconds : null;
+        return result;
+    }
+
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public ChatResponse getResponse() { return response; }
+    public void setResponse(ChatResponse response) { this.response = response; }
+
+    public String getCode() { return code; }
+    public void setCode(String code) { this.code = code; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public Long getRetryAfter() { return retryAfter; }
+    public void setRetryAfter(Long retryAfter) { this.retryAfter = retryAfter; }
+}
@@ -0,0 +1,46 @@
+package com.aichatboot.dto;
+
+import java.util.List;
+
+public class BatchJobResponse {
+    private String id;
+    private String status;
+    private long createdAt;
+    private int total;
+    private int completed;
+    private int failed;
+    private List<BatchItemResult> results;
+
+    public BatchJobResponse() {}
+    public BatchJobResponse(String id, String status, long createdAt, int total, int completed, int failed,
+                            List<BatchItemResult> results) {
+        this.id = id;
+        this.status = status;
+        this.createdAt = createdAt;
+        this.total = total;
+        this.completed = completed;
+        this.failed = failed;
+        this.results = results;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+
+    public int getCompleted() { return completed; }
+    public void setCompleted(int completed) { this.completed = completed; }
+
+    public int getFailed() { return failed; }
+    public void setFailed(int failed) { this.failed = failed; }
+
+    public List<BatchItemResult> getResults() { return results; }
+    public void setResults(List<BatchItemResult> results) { this.results = results; }
+}
@@ -0,0 +1,27 @@
+package com.aichatboot.dto;
+
+/**
+ * One of several completions returned for the same prompt.
+ */
+public class ChatChoice {
+    private int index;
+    private String text;
+    private String finishReason;
+
+    public ChatChoice() {}
+    public ChatChoice(int index, String text, String finishReason) {
+        this.index = index;
+        this.text = text;
+        this.finishReason = finishReason;
+    }
+
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    /** {@code stop}, {@code length}, {@code content_filter}, ... as reported by the upstream */
+    public String getFinishReason() { return finishReason; }
+    public void setFinishReason(String finishReason) { this.finishReason = finishReason; }
+}
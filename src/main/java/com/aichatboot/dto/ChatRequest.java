@@ -1,7 +1,11 @@
 package com.aichatboot.dto;
 
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import java.util.List;
 
 public class ChatRequest {
@@ -17,6 +21,45 @@ public class ChatRequest {
     @NotNull
     private Boolean stream = Boolean.FALSE;
 
+    /**
+     * Skip the response cache for this request (neither read nor stored).
+     */
+    private Boolean bypassCache = Boolean.FALSE;
+
+    /**
+     * Group streamed tokens into fewer SSE events; null uses the server default.
+     */
+    private Boolean coalesce;
+
+    /**
+     * Per-request overrides of the configured model options; null keeps the server default.
+     */
+    @Size(max = 100)
+    private String model;
+
+    @DecimalMin("0.0")
+    @DecimalMax("2.0")
+    private Double temperature;
+
+    @Positive
+    private Integer maxTokens;
+
+    /**
+     * Replaces the default system prompt.
+     */
+    private String systemPrompt;
+
+    /**
+     * Groups the turns of one conversation, so prompt-cache reuse between them can be tracked.
+     */
+    @Size(max = 100)
+    private String conversationId;
+
+    /**
+     * Set to false to answer without looking up the document index; null uses the server default.
+     */
+    private Boolean retrieval;
+
     public List<ChatMessage> getMessages() { return messages; }
     public void setMessages(List<ChatMessage> messages) { this.messages = messages; }
 
@@ -25,4 +68,28 @@ public class ChatRequest {
 
     public Boolean getStream() { return stream; }
     public void setStream(Boolean stream) { this.stream = stream; }
+
+    public Boolean getBypassCache() { return bypassCache; }
+    public void setBypassCache(Boolean bypassCache) { this.bypassCache = bypassCache; }
+
+    public Boolean getCoalesce() { return coalesce; }
+    public void setCoalesce(Boolean coalesce) { this.coalesce = coalesce; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public Double getTemperature() { return temperature; }
+    public void setTemperature(Double temperature) { this.temperature = temperature; }
+
+    public Integer getMaxTokens() { return maxTokens; }
+    public void setMaxTokens(Integer maxTokens) { this.maxTokens = maxTokens; }
+
+    public String getSystemPrompt() { return systemPrompt; }
+    public void setSystemPrompt(String systemPrompt) { this.systemPrompt = systemPrompt; }
+
+    public String getConversationId() { return conversationId; }
+    public void setConversationId(String conversationId) { this.conversationId = conversationId; }
+
+    public Boolean getRetrieval() { return retrieval; }
+    public void setRetrieval(Boolean retrieval) { this.retrieval = retrieval; }
 }
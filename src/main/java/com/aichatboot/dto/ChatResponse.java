@@ -1,8 +1,16 @@
 package com.aichatboot.dto;
 
+import java.util.List;
+
 public class ChatResponse {
     private String id;
     private String text;
+    private String finishReason;
+    private List<ChatChoice> choices;
+    private boolean cached;
+    private Usage usage;
+    private Integer promptTokens;
+    private Integer droppedMessages;
 
     public ChatResponse() {}
     public ChatResponse(String id, String text) { this.id = id; this.text = text; }
@@ -12,4 +20,26 @@ public class ChatResponse {
 
     public String getText() { return text; }
     public void setText(String text) { this.text = text; }
+
+    /** Why the (first) completion ended, e.g. {@code length} when max_tokens cut it off */
+    public String getFinishReason() { return finishReason; }
+    public void setFinishReason(String finishReason) { this.finishReason = finishReason; }
+
+    /** All completions, only set when the upstream returned more than one */
+    public List<ChatChoice> getChoices() { return choices; }
+    public void setChoices(List<ChatChoice> choices) { this.choices = choices; }
+
+    public boolean isCached() { return cached; }
+    public void setCached(boolean cached) { this.cached = cached; }
+
+    public Usage getUsage() { return usage; }
+    public void setUsage(Usage usage) { this.usage = usage; }
+
+    /** Local count of the prompt that was sent, before the upstream reports usage */
+    public Integer getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(Integer promptTokens) { this.promptTokens = promptTokens; }
+
+    /** Older messages left out to fit the context window */
+    public Integer getDroppedMessages() { return droppedMessages; }
+    public void setDroppedMessages(Integer droppedMessages) { this.droppedMessages = droppedMessages; }
 }
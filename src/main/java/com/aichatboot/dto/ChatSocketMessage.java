@@ -0,0 +1,75 @@
+package com.aichatboot.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One frame on the {@code /ws/chat} socket. Many streams share a connection, told apart by {@code streamId}.
+ * <p>
+ * Client to server: {@code start} (with {@code request}) and {@code cancel}.
+ * Server to client: {@code token} (with {@code data}), {@code done} and {@code error} (with {@code code}).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatSocketMessage {
+
+    public static final String START = "start";
+    public static final String CANCEL = "cancel";
+    public static final String TOKEN = "token";
+    public static final String DONE = "done";
+    public static final String ERROR = "error";
+
+    private String type;
+    private String streamId;
+    private ChatRequest request;
+    private String data;
+    private String code;
+    private String message;
+    private Long retryAfter;
+
+    public ChatSocketMessage() {}
+
+    public static ChatSocketMessage token(String streamId, String data) {
+        ChatSocketMessage msg = new ChatSocketMessage();
+        msg.type = TOKEN;
+        msg.streamId = streamId;
+        msg.data = data;
+        return msg;
+    }
+
+    public static ChatSocketMessage done(String streamId) {
+        ChatSocketMessage msg = new ChatSocketMessage();
+        msg.type = DONE;
+        msg.streamId = streamId;
+        return msg;
+    }
+
+    public static ChatSocketMessage error(String streamId, String code, String message) {
+        ChatSocketMessage msg = new ChatSocketMessage();
+        msg.type = ERROR;
+        msg.streamId = streamId;
+        msg.code = code;
+        msg.message = message;
+        return msg;
+    }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getStreamId() { return streamId; }
+    public void setStreamId(String streamId) { this.streamId = streamId; }
+
+    public ChatRequest getRequest() { return request; }
+    public void setRequest(ChatRequest request) { this.request = request; }
+
+    public String getData() { return data; }
+    public void setData(String data) { this.data = data; }
+
+    public String getCode() { return code; }
+    public void setCode(String code) { this.code = code; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    /** Seconds until a rejected stream may be retried, for rate limit, quota and overload errors */
+    public Long getRetryAfter() { return retryAfter; }
+    public void setRetryAfter(Long retryAfter) { this.retryAfter = retryAfter; }
+}
@@ -0,0 +1,20 @@
+package com.aichatboot.dto;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * The next user turn of a server-side conversation; earlier turns are not resent.
+ */
+public class ConversationMessageRequest {
+
+    @NotBlank
+    private String content;
+
+    private Boolean bypassCache = Boolean.FALSE;
+
+    public String getContent() { return content; }
+    public void setContent(String content) { this.content = content; }
+
+    public Boolean getBypassCache() { return bypassCache; }
+    public void setBypassCache(Boolean bypassCache) { this.bypassCache = bypassCache; }
+}
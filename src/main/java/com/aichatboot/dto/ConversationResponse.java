@@ -0,0 +1,25 @@
+package com.aichatboot.dto;
+
+import java.util.List;
+
+public class ConversationResponse {
+    private String id;
+    private long createdAt;
+    private List<ChatMessage> messages;
+
+    public ConversationResponse() {}
+    public ConversationResponse(String id, long createdAt, List<ChatMessage> messages) {
+        this.id = id;
+        this.createdAt = createdAt;
+        this.messages = messages;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public List<ChatMessage> getMessages() { return messages; }
+    public void setMessages(List<ChatMessage> messages) { this.messages = messages; }
+}
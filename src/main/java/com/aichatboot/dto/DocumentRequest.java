@@ -0,0 +1,25 @@
+package com.aichatboot.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+
+/**
+ * A document to chunk, embed and add to the retrieval index.
+ */
+public class DocumentRequest {
+
+    /**
+     * Caller-chosen id, shown with the chunks it contributes; null gets a random one.
+     */
+    @Size(max = 200)
+    private String id;
+
+    @NotBlank
+    private String text;
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+}
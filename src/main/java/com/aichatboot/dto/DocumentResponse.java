@@ -0,0 +1,18 @@
+package com.aichatboot.dto;
+
+public class DocumentResponse {
+    private String id;
+    private int chunks;
+
+    public DocumentResponse() {}
+    public DocumentResponse(String id, int chunks) {
+        this.id = id;
+        this.chunks = chunks;
+    }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public int getChunks() { return chunks; }
+    public void setChunks(int chunks) { this.chunks = chunks; }
+}
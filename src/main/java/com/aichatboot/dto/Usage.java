@@ -0,0 +1,31 @@
+package com.aichatboot.dto;
+
+/**
+ * Token usage reported by OpenAI for one completion.
+ */
+public class Usage {
+    private long promptTokens;
+    private long completionTokens;
+    private long totalTokens;
+    /** Prompt tokens served from the provider's prompt cache ({@code prompt_tokens_details.cached_tokens}) */
+    private long cachedTokens;
+
+    public Usage() {}
+    public Usage(long promptTokens, long completionTokens, long totalTokens) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.totalTokens = totalTokens;
+    }
+
+    public long getPromptTokens() { return promptTokens; }
+    public void setPromptTokens(long promptTokens) { this.promptTokens = promptTokens; }
+
+    public long getCompletionTokens() { return completionTokens; }
+    public void setCompletionTokens(long completionTokens) { this.completionTokens = completionTokens; }
+
+    public long getTotalTokens() { return totalTokens; }
+    public void setTotalTokens(long totalTokens) { this.totalTokens = totalTokens; }
+
+    public long getCachedTokens() { return cachedTokens; }
+    public void setCachedTokens(long cachedTokens) { this.cachedTokens = cachedTokens; }
+}
@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Unknown, expired or foreign batch job id.
+ */
+public class BatchJobNotFoundException extends RuntimeException {
+
+    public BatchJobNotFoundException(String id) {
+        super("Batch job not found: " + id);
+    }
+}
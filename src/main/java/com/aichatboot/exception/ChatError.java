@@ -0,0 +1,86 @@
+package com.aichatboot.exception;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Client-facing form of a failed chat call: HTTP status, a stable machine-readable code and a
+ * message that does not leak upstream URLs or bodies. Used for error responses, typed SSE
+ * {@code error} events and WebSocket error frames alike.
+ *
+ * @param retryAfterSeconds when retrying makes sense, or 0 if unknown
+ */
+public record ChatError(HttpStatus status, String code, String message, long retryAfterSeconds) {
+
+    public static ChatError of(Throwable error) {
+        if (error instanceof QuotaExceededException e) {
+            return new ChatError(HttpStatus.TOO_MANY_REQUESTS, "quota_exceeded", e.getMessage(),
+                    Math.max(0, e.getRetryAfterSeconds()));
+        }
+        if (error instanceof CircuitOpenException e) {
+            return new ChatError(HttpStatus.SERVICE_UNAVAILABLE, "upstream_unavailable", e.getMessage(), e.getRetryAfterSeconds());
+        }
+        if (error instanceof UpstreamOverloadedException e) {
+            return new ChatError(HttpStatus.SERVICE_UNAVAILABLE, "upstream_overloaded", e.getMessage(), e.getRetryAfterSeconds());
+        }
+        if (error instanceof StreamExpiredException e) {
+            return new ChatError(HttpStatus.GONE, "stream_expired", e.getMessage(), 0);
+        }
+        if (error instanceof RequestTooLargeException e) {
+            return new ChatError(HttpStatus.PAYLOAD_TOO_LARGE, "request_too_large", e.getMessage(), 0);
+        }
+        if (error instanceof PromptTooLongException e) {
+            return new ChatError(HttpStatus.BAD_REQUEST, "prompt_too_long", e.getMessage(), 0);
+        }
+        if (error instanceof TimeoutException) {
+            return new ChatError(HttpStatus.GATEWAY_TIMEOUT, "upstream_timeout", "Upstream did not answer in time", 0);
+        }
+        if (error instanceof WebClientResponseException e) {
+            int status = e.getStatusCode().value();
+            if (status == 429) {
+                return new ChatError(HttpStatus.SERVICE_UNAVAILABLE, "upstream_rate_limited",
+                        "Upstream is rate limiting requests", retryAfterSeconds(e));
+            }
+            return new ChatError(HttpStatus.BAD_GATEWAY, "upstream_error", "Upstream answered " + status, 0);
+        }
+        if (error instanceof WebClientRequestException) {
+            return new ChatError(HttpStatus.BAD_GATEWAY, "upstream_unreachable", "Upstream could not be reached", 0);
+        }
+        if (error instanceof UpstreamException e) {
+            return new ChatError(HttpStatus.BAD_GATEWAY, "upstream_error", e.getMessage(), 0);
+        }
+        return new ChatError(HttpStatus.INTERNAL_SERVER_ERROR, "internal_error", "Internal server error", 0);
+    }
+
+    /**
+     * Failures the client is not to blame for; their rate limit token is given back
+     */
+    public static boolean isUpstreamFault(Throwable error) {
+        HttpStatus status = of(error).status();
+        return status == HttpStatus.BAD_GATEWAY || status == HttpStatus.SERVICE_UNAVAILABLE
+                || status == HttpStatus.GATEWAY_TIMEOUT;
+    }
+
+    /**
+     * {@code {"code":"...","message":"...","retryAfter":n}}, the payload of SSE error events
+     */
+    public String toJson() {
+        String text = message != null ? message : "";
+        StringBuilder json = new StringBuilder(64 + text.length())
+                .append("{\"code\":\"").append(code)
+                .append("\",\"message\":\"").append(JsonStringEncoder.getInstance().quoteAsString(text))
+                .append('"');
+        if (retryAfterSeconds > 0) json.append(",\"retryAfter\":").append(retryAfterSeconds);
+        return json.append('}').toString();
+    }
+
+    private static long retryAfterSeconds(WebClientResponseException e) {
+        String value = e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        return value != null && !value.isBlank() && value.chars().allMatch(Character::isDigit) ? Long.parseLong(value) : 0;
+    }
+}
@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Every upstream endpoint's circuit breaker is open: calls fail fast until one probes healthy again.
+ */
+public class CircuitOpenException extends UpstreamOverloadedException {
+
+    public CircuitOpenException(String message, long retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Unknown, expired or foreign conversation id.
+ */
+public class ConversationNotFoundException extends RuntimeException {
+
+    public ConversationNotFoundException(String id) {
+        super("Conversation not found: " + id);
+    }
+}
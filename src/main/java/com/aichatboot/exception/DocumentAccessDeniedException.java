@@ -0,0 +1,12 @@
+package com.aichatboot.exception;
+
+/**
+ * The caller's X-API-Key is not one of {@code chat.retrieval.admin-keys}; the retrieval index is shared by
+ * every tenant, so only operators may add to it or read it back.
+ */
+public class DocumentAccessDeniedException extends RuntimeException {
+
+    public DocumentAccessDeniedException() {
+        super("Documents can only be managed with an admin API key");
+    }
+}
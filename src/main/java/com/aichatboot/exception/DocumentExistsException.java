@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * A document with this id is already in the retrieval index; the index is append-only.
+ */
+public class DocumentExistsException extends RuntimeException {
+
+    public DocumentExistsException(String id) {
+        super("Document already indexed: " + id);
+    }
+}
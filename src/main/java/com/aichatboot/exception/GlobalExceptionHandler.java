@@ -2,17 +2,108 @@ package com.aichatboot.exception;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
     private final Logger log = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    @ExceptionHandler(ConversationNotFoundException.class)
+    public ResponseEntity<?> handleConversationNotFound(ConversationNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(StreamNotFoundException.class)
+    public ResponseEntity<?> handleStreamNotFound(StreamNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(StreamExpiredException.class)
+    public ResponseEntity<?> handleStreamExpired(StreamExpiredException ex) {
+        return ResponseEntity.status(HttpStatus.GONE)
+                .body(Map.of("error", ex.getMessage(), "code", "stream_expired"));
+    }
+
+    @ExceptionHandler(BatchJobNotFoundException.class)
+    public ResponseEntity<?> handleBatchJobNotFound(BatchJobNotFoundException ex) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<?> handleInvalidBatch(InvalidBatchException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(DocumentExistsException.class)
+    public ResponseEntity<?> handleDocumentExists(DocumentExistsException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(DocumentAccessDeniedException.class)
+    public ResponseEntity<?> handleDocumentAccessDenied(DocumentAccessDeniedException ex) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(PromptTooLongException.class)
+    public ResponseEntity<?> handlePromptTooLong(PromptTooLongException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(RequestTooLargeException.class)
+    public ResponseEntity<?> handleRequestTooLarge(RequestTooLargeException ex) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<?> handleQuotaExceeded(QuotaExceededException ex) {
+        log.debug("Quota exceeded: {}", ex.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+        if (ex.getRetryAfterSeconds() > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()));
+        }
+        return response.body(Map.of("error", ex.getMessage()));
+    }
+
+    @ExceptionHandler(UpstreamOverloadedException.class)
+    public ResponseEntity<?> handleUpstreamOverloaded(UpstreamOverloadedException ex) {
+        log.warn("Shedding request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(ex.getRetryAfterSeconds()))
+                .body(Map.of("error", ex.getMessage()));
+    }
+
+    /**
+     * Upstream failures that survived retries, reported with a stable code instead of upstream details
+     */
+    @ExceptionHandler({UpstreamException.class, WebClientResponseException.class,
+            WebClientRequestException.class, TimeoutException.class})
+    public ResponseEntity<?> handleUpstreamFailure(Exception ex) {
+        ChatError error = ChatError.of(ex);
+        log.warn("Upstream call failed with {}: {}", error.code(), ex.toString());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(error.status());
+        if (error.retryAfterSeconds() > 0) {
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(error.retryAfterSeconds()));
+        }
+        return response.body(Map.of("error", error.message(), "code", error.code()));
+    }
+
     @ExceptionHandler(IllegalStateException.class)
     public ResponseEntity<?> handleIllegalState(IllegalStateException ex) {
         log.error("IllegalState", ex);
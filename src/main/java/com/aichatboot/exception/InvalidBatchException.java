@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Batch upload that is empty, too large or not parseable.
+ */
+public class InvalidBatchException extends RuntimeException {
+
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
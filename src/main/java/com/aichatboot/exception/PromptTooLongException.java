@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * The system prompt and latest message alone do not fit the model's context window.
+ */
+public class PromptTooLongException extends RuntimeException {
+
+    public PromptTooLongException(String message) {
+        super(message);
+    }
+}
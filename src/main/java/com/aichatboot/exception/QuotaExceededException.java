@@ -0,0 +1,21 @@
+package com.aichatboot.exception;
+
+/**
+ * The tenant's token budget cannot cover the request right now.
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    /**
+     * @param retryAfterSeconds when the request would fit again, or -1 if it never fits the budget
+     */
+    public QuotaExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
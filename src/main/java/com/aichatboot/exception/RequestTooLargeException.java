@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Inbound chat request over the configured body size or message count.
+ */
+public class RequestTooLargeException extends RuntimeException {
+
+    public RequestTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,12 @@
+package com.aichatboot.exception;
+
+/**
+ * The frames a client asked to resume from are no longer journaled, or the stream was abandoned
+ * before it finished.
+ */
+public class StreamExpiredException extends RuntimeException {
+
+    public StreamExpiredException(String message) {
+        super(message);
+    }
+}
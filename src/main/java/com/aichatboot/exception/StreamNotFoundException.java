@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Unknown, expired or foreign stream id on resume.
+ */
+public class StreamNotFoundException extends RuntimeException {
+
+    public StreamNotFoundException(String id) {
+        super("Stream not found: " + id);
+    }
+}
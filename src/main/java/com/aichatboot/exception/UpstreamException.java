@@ -0,0 +1,15 @@
+package com.aichatboot.exception;
+
+/**
+ * Error reported by the OpenAI-compatible upstream (error payload or unusable response).
+ */
+public class UpstreamException extends RuntimeException {
+
+    public UpstreamException(String message) {
+        super(message);
+    }
+
+    public UpstreamException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,18 @@
+package com.aichatboot.exception;
+
+/**
+ * The upstream concurrency limit and its wait queue are full, or the upstream asked us to back off.
+ */
+public class UpstreamOverloadedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,11 @@
+package com.aichatboot.exception;
+
+/**
+ * Upstream answer larger than {@code openai.http.max-response-size}; retrying would only repeat it.
+ */
+public class UpstreamResponseTooLargeException extends UpstreamException {
+
+    public UpstreamResponseTooLargeException(String message) {
+        super(message);
+    }
+}
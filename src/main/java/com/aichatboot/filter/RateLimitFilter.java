@@ -1,47 +1,67 @@
 package com.aichatboot.filter;
 
-import io.github.bucket4j.Bandwidth;
-import io.github.bucket4j.Bucket;
-import io.github.bucket4j.Refill;
+import com.aichatboot.ratelimit.RateLimitDecision;
+import com.aichatboot.ratelimit.RateLimiterBackend;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
-import java.time.Duration;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class RateLimitFilter extends OncePerRequestFilter {
 
-    private final ConcurrentHashMap<String, Bucket> cache = new ConcurrentHashMap<>();
+    /** Request attribute holding the resolved client IP for downstream handlers */
+    public static final String CLIENT_IP_ATTRIBUTE = "com.aichatboot.filter.RateLimitFilter.clientIp";
 
-    @Value("${ratelimit.requests.per.minute:60}")
-    private long requestsPerMinute;
+    /** Request attribute holding the {@link RateLimitRefund} of an admitted request */
+    public static final String REFUND_ATTRIBUTE = "com.aichatboot.filter.RateLimitFilter.refund";
+
+    private final RateLimiterBackend backend;
+    private final Counter allowed;
+    private final Counter denied;
+
+    public RateLimitFilter(RateLimiterBackend backend, MeterRegistry meterRegistry) {
+        this.backend = backend;
+        this.allowed = Counter.builder("ratelimit.requests").tag("result", "allowed").register(meterRegistry);
+        this.denied = Counter.builder("ratelimit.requests").tag("result", "denied").register(meterRegistry);
+        Gauge.builder("ratelimit.keys", backend, RateLimiterBackend::trackedKeys).register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                     HttpServletResponse response,
                                     FilterChain filterChain) throws ServletException, IOException {
         String ip = extractClientIp(request);
-        Bucket bucket = cache.computeIfAbsent(ip, this::newBucket);
-        if (bucket.tryConsume(1)) {
+        request.setAttribute(CLIENT_IP_ATTRIBUTE, ip);
+        RateLimitDecision decision = backend.tryConsume(ip, 1);
+
+        response.setHeader("X-RateLimit-Limit", Long.toString(decision.limit()));
+        response.setHeader("X-RateLimit-Remaining", Long.toString(Math.max(0, decision.remaining())));
+        response.setHeader("X-RateLimit-Reset", Long.toString(toSeconds(decision.nanosToFullReset())));
+
+        if (decision.allowed()) {
+            allowed.increment();
+            request.setAttribute(REFUND_ATTRIBUTE, new RateLimitRefund(backend, ip));
             filterChain.doFilter(request, response);
         } else {
+            denied.increment();
             response.setStatus(429);
+            response.setHeader("Retry-After", Long.toString(Math.max(1, toSeconds(decision.nanosToRetry()))));
             response.setContentType("application/json");
             response.getWriter().write("{\"error\":\"Too many requests\"}");
         }
     }
 
-    private Bucket newBucket(String key) {
-        Refill refill = Refill.intervally(requestsPerMinute, Duration.ofMinutes(1));
-        Bandwidth limit = Bandwidth.classic(requestsPerMinute, refill);
-        return Bucket.builder().addLimit(limit).build();
+    private static long toSeconds(long nanos) {
+        return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
     }
 
     private String extractClientIp(HttpServletRequest request) {
@@ -0,0 +1,25 @@
+package com.aichatboot.filter;
+
+import com.aichatboot.ratelimit.RateLimiterBackend;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The token a request took from its client's bucket, handed to controllers so it can be given
+ * back when the request fails for reasons outside the client's control. Refunds at most once.
+ */
+public class RateLimitRefund {
+
+    private final RateLimiterBackend backend;
+    private final String key;
+    private final AtomicBoolean refunded = new AtomicBoolean();
+
+    public RateLimitRefund(RateLimiterBackend backend, String key) {
+        this.backend = backend;
+        this.key = key;
+    }
+
+    public void refund() {
+        if (refunded.compareAndSet(false, true)) backend.refund(key, 1);
+    }
+}
@@ -0,0 +1,123 @@
+package com.aichatboot.filter;
+
+import com.aichatboot.exception.RequestTooLargeException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Caps the body size of API requests before Jackson binds them. A declared
+ * {@code Content-Length} over the limit is refused with 413 without reading the body; chunked
+ * bodies are counted while they are read and fail with {@link RequestTooLargeException} once they
+ * cross it. Batch submissions and document uploads get their own, larger limit.
+ */
+@Component
+public class RequestSizeFilter extends OncePerRequestFilter {
+
+    private static final String BATCH_PATH = "/api/v1/chat/batch";
+    private static final String DOCUMENTS_PATH = "/api/v1/documents";
+
+    private final long maxBytes;
+    private final long maxBatchBytes;
+
+    public RequestSizeFilter(@Value("${chat.request.max-bytes:1MB}") DataSize maxBytes,
+                             @Value("${chat.request.max-batch-bytes:16MB}") DataSize maxBatchBytes) {
+        this.maxBytes = maxBytes.toBytes();
+        this.maxBatchBytes = maxBatchBytes.toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String path = request.getRequestURI();
+        long limit = path.startsWith(BATCH_PATH) || path.startsWith(DOCUMENTS_PATH) ? maxBatchBytes : maxBytes;
+        long declared = request.getContentLengthLong();
+        if (declared > limit) {
+            response.setStatus(413);
+            response.setContentType("application/json");
+            response.getWriter().write("{\"error\":\"Request body exceeds " + limit + " bytes\"}");
+            return;
+        }
+        filterChain.doFilter(declared >= 0 ? request : new LimitedRequest(request, limit), response);
+    }
+
+    /** Request whose body stream fails once more than {@code limit} bytes have been read */
+    static final class LimitedRequest extends HttpServletRequestWrapper {
+
+        private final long limit;
+        private ServletInputStream body;
+
+        LimitedRequest(HttpServletRequest request, long limit) {
+            super(request);
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) body = new LimitedInputStream(super.getInputStream(), limit);
+            return body;
+        }
+    }
+
+    private static final class LimitedInputStream extends ServletInputStream {
+
+        private final ServletInputStream in;
+        private final long limit;
+        private long read;
+
+        LimitedInputStream(ServletInputStream in, long limit) {
+            this.in = in;
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = in.read(buffer, offset, length);
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) {
+            read += n;
+            if (read > limit) throw new RequestTooLargeException("Request body exceeds " + limit + " bytes");
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return in.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            in.setReadListener(readListener);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.aichatboot.logging;
+
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.Usage;
+
+/**
+ * What one chat request did, collected along the pipeline and logged once when it ends.
+ * Recording a streamed token is a counter increment; the answer text is only kept when the
+ * request was picked for payload sampling.
+ */
+public class ChatRequestLog {
+
+    private final String id;
+    private final String mode;
+    private final String tenant;
+    private final long startNanos;
+    private final String promptSample;
+    private final StringBuilder answerSample;
+
+    private volatile long firstTokenNanos;
+    private volatile int tokens;
+    private volatile int promptTokens;
+    private volatile int droppedMessages;
+    private volatile Usage usage;
+    private volatile String cache = "miss";
+    private volatile Throwable error;
+
+    ChatRequestLog(String id, String mode, String tenant, long startNanos, String promptSample) {
+        this.id = id;
+        this.mode = mode;
+        this.tenant = tenant;
+        this.startNanos = startNanos;
+        this.promptSample = promptSample;
+        this.answerSample = promptSample != null ? new StringBuilder() : null;
+    }
+
+    public void context(int promptTokens, int droppedMessages) {
+        this.promptTokens = promptTokens;
+        this.droppedMessages = droppedMessages;
+    }
+
+    public void cacheHit() {
+        cache = "hit";
+    }
+
+    public void cacheBypassed() {
+        cache = "bypass";
+    }
+
+    public void usage(Usage usage) {
+        this.usage = usage;
+    }
+
+    public void response(ChatResponse response) {
+        if (response.getUsage() != null) usage = response.getUsage();
+        if (answerSample != null && response.getText() != null) answerSample.append(response.getText());
+    }
+
+    /** Called from onNext, so never concurrently for one request */
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    public void token(String token) {
+        if (tokens++ == 0) firstTokenNanos = System.nanoTime();
+        if (answerSample != null) answerSample.append(token);
+    }
+
+    public void failed(Throwable error) {
+        this.error = error;
+    }
+
+    String id() { return id; }
+    String mode() { return mode; }
+    String tenant() { return tenant; }
+    long startNanos() { return startNanos; }
+    long firstTokenNanos() { return firstTokenNanos; }
+    int tokens() { return tokens; }
+    int promptTokens() { return promptTokens; }
+    int droppedMessages() { return droppedMessages; }
+    Usage usage() { return usage; }
+    String cache() { return cache; }
+    Throwable error() { return error; }
+    String promptSample() { return promptSample; }
+    String answerSample() { return answerSample != null ? answerSample.toString() : null; }
+}
@@ -0,0 +1,136 @@
+package com.aichatboot.logging;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.exception.ChatError;
+import com.aichatboot.quota.TokenQuotaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.SignalType;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static net.logstash.logback.argument.StructuredArguments.entries;
+
+/**
+ * Writes one summary event per chat request to the {@code chat.requests} logger: ids, timings,
+ * token counts, cache use and outcome, as structured fields for the JSON encoder.
+ * <p>
+ * Prompts and answers are only included for a {@code payloadSampleRate} share of requests,
+ * truncated and, unless disabled, with e-mail addresses, API keys and long digit runs masked.
+ * API-key tenants are logged as a hash of the key.
+ */
+@Component
+public class ChatRequestLogger {
+
+    private static final Logger log = LoggerFactory.getLogger("chat.requests");
+
+    private static final Pattern EMAIL = Pattern.compile("[\\w.+-]+@[\\w-]+(\\.[\\w-]+)+");
+    private static final Pattern SECRET = Pattern.compile("\\b(sk|pk|rk)-[A-Za-z0-9_-]{10,}");
+    private static final Pattern DIGITS = Pattern.compile("\\d[\\d -]{7,}\\d");
+
+    private final boolean enabled;
+    private final double payloadSampleRate;
+    private final int payloadMaxChars;
+    private final boolean redact;
+
+    public ChatRequestLogger(@Value("${chat.logging.summary.enabled:true}") boolean enabled,
+                             @Value("${chat.logging.payload.sample-rate:0.0}") double payloadSampleRate,
+                             @Value("${chat.logging.payload.max-chars:500}") int payloadMaxChars,
+                             @Value("${chat.logging.payload.redact:true}") boolean redact) {
+        this.enabled = enabled;
+        this.payloadSampleRate = payloadSampleRate;
+        this.payloadMaxChars = payloadMaxChars;
+        this.redact = redact;
+    }
+
+    public ChatRequestLog start(String mode, String tenant, ChatRequest request) {
+        boolean sampled = enabled && payloadSampleRate > 0
+                && ThreadLocalRandom.current().nextDouble() < payloadSampleRate;
+        return new ChatRequestLog(Long.toHexString(ThreadLocalRandom.current().nextLong()), mode,
+                tenantLabel(tenant), System.nanoTime(), sampled ? payload(lastUserText(request)) : null);
+    }
+
+    /**
+     * Log the summary; errors at WARN, everything else at INFO
+     */
+    public void finish(ChatRequestLog entry, SignalType signal) {
+        if (!enabled) return;
+        boolean failed = entry.error() != null;
+        if (failed ? !log.isWarnEnabled() : !log.isInfoEnabled()) return;
+
+        long now = System.nanoTime();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("requestId", entry.id());
+        fields.put("mode", entry.mode());
+        fields.put("tenant", entry.tenant());
+        fields.put("outcome", failed ? ChatError.of(entry.error()).code()
+                : signal == SignalType.CANCEL ? "cancelled" : "ok");
+        fields.put("durationMs", TimeUnit.NANOSECONDS.toMillis(now - entry.startNanos()));
+        if (entry.firstTokenNanos() != 0) {
+            fields.put("ttftMs", TimeUnit.NANOSECONDS.toMillis(entry.firstTokenNanos() - entry.startNanos()));
+            fields.put("streamedTokens", entry.tokens());
+        }
+        fields.put("cache", entry.cache());
+        fields.put("promptTokensEstimated", entry.promptTokens());
+        if (entry.droppedMessages() > 0) fields.put("droppedMessages", entry.droppedMessages());
+        if (entry.usage() != null) {
+            fields.put("promptTokens", entry.usage().getPromptTokens());
+            fields.put("completionTokens", entry.usage().getCompletionTokens());
+            fields.put("cachedTokens", entry.usage().getCachedTokens());
+        }
+        if (entry.promptSample() != null) {
+            fields.put("prompt", entry.promptSample());
+            fields.put("answer", payload(entry.answerSample()));
+        }
+
+        if (failed) {
+            log.warn("chat request {}: {}", entries(fields), entry.error().toString());
+        } else {
+            log.info("chat request {}", entries(fields));
+        }
+    }
+
+    String payload(String text) {
+        if (text == null) return null;
+        // mask the whole text first: a secret cut at the limit would no longer match
+        if (redact) {
+            text = EMAIL.matcher(text).replaceAll("[email]");
+            text = SECRET.matcher(text).replaceAll("[secret]");
+            text = DIGITS.matcher(text).replaceAll("[number]");
+        }
+        return text.length() > payloadMaxChars ? text.substring(0, payloadMaxChars) + "…" : text;
+    }
+
+    private static String lastUserText(ChatRequest request) {
+        List<ChatMessage> messages = request.getMessages();
+        if (messages != null) {
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                if ("user".equals(messages.get(i).getRole())) return messages.get(i).getContent();
+            }
+        }
+        return request.getPrompt();
+    }
+
+    /** API keys must never reach the logs; a short hash still groups a tenant's requests */
+    static String tenantLabel(String tenant) {
+        if (tenant == null || tenant.startsWith("ip:") || tenant.equals(TokenQuotaService.ANONYMOUS)) return tenant;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(tenant.getBytes(StandardCharsets.UTF_8));
+            return "key:" + HexFormat.of().formatHex(digest, 0, 4);
+        } catch (NoSuchAlgorithmException e) {
+            return "key";
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.aichatboot.quota;
+
+import io.github.bucket4j.Bucket;
+import io.micrometer.core.instrument.Counter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tokens taken from a tenant's budget before dispatch. Settled exactly once: with the real usage,
+ * with the full reservation when the outcome is unknown, or released when nothing was consumed.
+ */
+public class QuotaReservation {
+
+    /** Used when quotas are disabled or the request never reaches the upstream */
+    static final QuotaReservation NONE = new QuotaReservation(null, 0, null);
+
+    private final Bucket bucket;
+    private final long reservedTokens;
+    private final Counter charged;
+    private final AtomicBoolean settled = new AtomicBoolean();
+
+    QuotaReservation(Bucket bucket, long reservedTokens, Counter charged) {
+        this.bucket = bucket;
+        this.reservedTokens = reservedTokens;
+        this.charged = charged;
+    }
+
+    public long reservedTokens() {
+        return reservedTokens;
+    }
+
+    /**
+     * Charge {@code actualTokens} instead of the reservation: the difference is returned to the
+     * bucket, or taken on top of it (possibly going into debt) when the estimate was too low.
+     */
+    public void settle(long actualTokens) {
+        if (bucket == null || !settled.compareAndSet(false, true)) return;
+        long difference = reservedTokens - actualTokens;
+        if (difference > 0) {
+            bucket.addTokens(difference);
+        } else if (difference < 0) {
+            bucket.consumeIgnoringRateLimits(-difference);
+        }
+        charged.increment(actualTokens);
+    }
+
+    /** Keep the whole reservation, e.g. when a cancelled call may still have been billed */
+    public void settleAsReserved() {
+        settle(reservedTokens);
+    }
+
+    /** Nothing was consumed upstream */
+    public void release() {
+        settle(0);
+    }
+}
@@ -0,0 +1,46 @@
+package com.aichatboot.quota;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.tokenizer.TokenCounter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Prompt size used to reserve quota before dispatch. Uses the model's BPE {@link TokenCounter} when
+ * available, otherwise about 4 characters per token plus the per-message framing of the chat format.
+ * The real usage is reconciled afterwards either way.
+ */
+@Component
+public class TokenEstimator {
+
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int REPLY_PRIMING_TOKENS = 3;
+
+    private final TokenCounter tokenCounter;
+
+    public TokenEstimator() {
+        this(null);
+    }
+
+    @Autowired
+    public TokenEstimator(TokenCounter tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
+
+    public int estimatePromptTokens(List<ChatMessage> messages) {
+        if (tokenCounter != null) return tokenCounter.countPrompt(messages);
+        int tokens = REPLY_PRIMING_TOKENS;
+        for (ChatMessage message : messages) {
+            tokens += estimateMessageTokens(message.getContent());
+        }
+        return tokens;
+    }
+
+    /** One message including its framing */
+    public int estimateMessageTokens(String content) {
+        if (tokenCounter != null) return tokenCounter.countMessage(content);
+        return TOKENS_PER_MESSAGE + (content == null ? 0 : (content.length() + 3) / 4);
+    }
+}
@@ -0,0 +1,205 @@
+package com.aichatboot.quota;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.exception.QuotaExceededException;
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tenant token budgets.
+ * <p>
+ * Each tenant (configured API key, else client IP) has a bucket holding {@code burstTokens} that
+ * refills at {@code tokensPerMinute}. A request reserves its estimated prompt tokens plus {@code max_tokens}
+ * before dispatch and is settled against the usage OpenAI reports, so one heavy tenant cannot use
+ * up the shared upstream TPM limit.
+ */
+@Component
+public class TokenQuotaService {
+
+    public static final String ANONYMOUS = "anonymous";
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final boolean enabled;
+    private final long tokensPerMinute;
+    private final long burstTokens;
+    private final Map<String, Long> tenantLimits;
+    private final Set<String> apiKeys;
+    private final long idleExpiryNanos;
+    private final TokenEstimator estimator;
+
+    private final ConcurrentHashMap<String, TenantBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    private final Counter rejections;
+    private final Counter reserved;
+    private final Counter charged;
+
+    @Autowired
+    public TokenQuotaService(@Value("${quota.enabled:true}") boolean enabled,
+                             @Value("${quota.tokens-per-minute:200000}") long tokensPerMinute,
+                             @Value("${quota.burst-tokens:400000}") long burstTokens,
+                             @Value("${quota.tenant-limits:}") String tenantLimits,
+                             @Value("${quota.api-keys:}") String apiKeys,
+                             TokenEstimator estimator,
+                             MeterRegistry meterRegistry) {
+        this(enabled, tokensPerMinute, burstTokens, parseTenantLimits(tenantLimits), parseApiKeys(apiKeys),
+                estimator, meterRegistry);
+    }
+
+    TokenQuotaService(boolean enabled, long tokensPerMinute, long burstTokens, Map<String, Long> tenantLimits,
+                      Set<String> apiKeys, TokenEstimator estimator, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.tokensPerMinute = tokensPerMinute;
+        this.burstTokens = Math.max(burstTokens, tokensPerMinute);
+        this.tenantLimits = tenantLimits;
+        this.apiKeys = new HashSet<>(apiKeys);
+        this.apiKeys.addAll(tenantLimits.keySet());
+        // twice the time an empty bucket needs to fill up again; an idle tenant is back at full budget
+        this.idleExpiryNanos = 2 * TimeUnit.MINUTES.toNanos(1) * this.burstTokens / Math.max(1, tokensPerMinute);
+        this.estimator = estimator;
+
+        this.rejections = Counter.builder("chat.quota.rejections").register(meterRegistry);
+        this.reserved = Counter.builder("chat.quota.tokens").tag("type", "reserved").register(meterRegistry);
+        this.charged = Counter.builder("chat.quota.tokens").tag("type", "charged").register(meterRegistry);
+        Gauge.builder("chat.quota.tenants", buckets, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Tenant identity for quota purposes: the API key when it is configured in {@code quota.api-keys}
+     * or {@code quota.tenant-limits}, otherwise the client IP. The header is not authenticated, so an
+     * unknown key must not buy a fresh budget.
+     */
+    public String tenantOf(String apiKey, String clientIp) {
+        if (apiKey != null && apiKeys.contains(apiKey.trim())) return apiKey.trim();
+        if (clientIp != null && !clientIp.isBlank()) return "ip:" + clientIp;
+        return ANONYMOUS;
+    }
+
+    /**
+     * Reserve the estimated prompt plus {@code maxTokens} from the tenant's budget.
+     *
+     * @throws QuotaExceededException when the budget cannot cover the request
+     */
+    public QuotaReservation reserve(String tenant, List<ChatMessage> messages, int maxTokens) {
+        if (!enabled) return QuotaReservation.NONE;
+        return reserve(tenant, estimator.estimatePromptTokens(messages), maxTokens);
+    }
+
+    /**
+     * Reserve an already counted prompt plus {@code maxTokens}.
+     *
+     * @throws QuotaExceededException when the budget cannot cover the request
+     */
+    public QuotaReservation reserve(String tenant, long promptTokens, int maxTokens) {
+        if (!enabled) return QuotaReservation.NONE;
+
+        long tokens = promptTokens + maxTokens;
+        long now = System.nanoTime();
+        TenantBucket tenantBucket = buckets.computeIfAbsent(tenant, this::newBucket);
+        tenantBucket.lastAccess = now;
+        sweepIfDue(now);
+
+        if (tokens > tenantBucket.capacity) {
+            rejections.increment();
+            throw new QuotaExceededException("Request needs ~" + tokens + " tokens, more than the tenant budget of "
+                    + tenantBucket.capacity, -1);
+        }
+
+        ConsumptionProbe probe = tenantBucket.bucket.tryConsumeAndReturnRemaining(tokens);
+        if (!probe.isConsumed()) {
+            rejections.increment();
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(probe.getNanosToWaitForRefill()) + 1);
+            throw new QuotaExceededException("Token quota exceeded", retryAfter);
+        }
+        reserved.increment(tokens);
+        return new QuotaReservation(tenantBucket.bucket, tokens, charged);
+    }
+
+    /** Tokens currently left in the tenant's budget */
+    public long availableTokens(String tenant) {
+        TenantBucket tenantBucket = buckets.get(tenant);
+        return tenantBucket == null ? limitFor(tenant)[1] : tenantBucket.bucket.getAvailableTokens();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private TenantBucket newBucket(String tenant) {
+        long[] limit = limitFor(tenant);
+        Bandwidth bandwidth = Bandwidth.classic(limit[1], Refill.greedy(limit[0], Duration.ofMinutes(1)));
+        return new TenantBucket(Bucket.builder().addLimit(bandwidth).build(), limit[1]);
+    }
+
+    /**
+     * @return {tokens per minute, burst capacity}; overrides keep the default burst ratio
+     */
+    private long[] limitFor(String tenant) {
+        Long override = tenantLimits.get(tenant);
+        if (override == null) return new long[]{tokensPerMinute, burstTokens};
+        long burst = Math.max(override, (long) (override * ((double) burstTokens / tokensPerMinute)));
+        return new long[]{override, burst};
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) return;
+        buckets.values().removeIf(b -> now - b.lastAccess >= idleExpiryNanos);
+    }
+
+    /**
+     * Parse {@code key=tokensPerMinute,key2=tokensPerMinute}
+     */
+    static Map<String, Long> parseTenantLimits(String spec) {
+        Map<String, Long> limits = new HashMap<>();
+        if (spec == null || spec.isBlank()) return limits;
+        for (String entry : spec.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Invalid quota.tenant-limits entry: " + entry);
+            limits.put(entry.substring(0, eq).trim(), Long.parseLong(entry.substring(eq + 1).trim()));
+        }
+        return limits;
+    }
+
+    /**
+     * Parse {@code key,key2}
+     */
+    static Set<String> parseApiKeys(String spec) {
+        Set<String> keys = new HashSet<>();
+        if (spec == null || spec.isBlank()) return keys;
+        for (String key : spec.split(",")) {
+            if (!key.isBlank()) keys.add(key.trim());
+        }
+        return keys;
+    }
+
+    private static final class TenantBucket {
+        final Bucket bucket;
+        final long capacity;
+        volatile long lastAccess = System.nanoTime();
+
+        TenantBucket(Bucket bucket, long capacity) {
+            this.bucket = bucket;
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.aichatboot.ratelimit;
+
+/**
+ * Token bucket snapshot kept in a {@link RateLimitStateStore}.
+ *
+ * @param tokens          available tokens (fractional, refilled continuously)
+ * @param updatedAtMillis wall-clock time of the last update; shared across nodes, so not nanoTime
+ */
+public record BucketState(double tokens, long updatedAtMillis) {
+}
@@ -0,0 +1,69 @@
+package com.aichatboot.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Single-process {@link RateLimitStateStore}. Behaves like a shared store with per-key TTL, so the
+ * shared backend can be exercised without external infrastructure.
+ */
+public class InMemoryRateLimitStateStore implements RateLimitStateStore {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 10_000;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+    private final LongSupplier clockMillis;
+
+    public InMemoryRateLimitStateStore() {
+        this(System::currentTimeMillis);
+    }
+
+    public InMemoryRateLimitStateStore(LongSupplier clockMillis) {
+        this.clockMillis = clockMillis;
+    }
+
+    @Override
+    public BucketState get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAtMillis <= clockMillis.getAsLong()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.state;
+    }
+
+    @Override
+    public boolean compareAndSet(String key, BucketState expected, BucketState update, Duration ttl) {
+        long now = clockMillis.getAsLong();
+        sweepIfDue(now);
+
+        Entry next = new Entry(update, now + ttl.toMillis());
+        Entry current = entries.get(key);
+        boolean live = current != null && current.expiresAtMillis > now;
+
+        if (expected == null) {
+            if (live) return false;
+            return current == null ? entries.putIfAbsent(key, next) == null : entries.replace(key, current, next);
+        }
+        if (!live || !current.state.equals(expected)) return false;
+        return entries.replace(key, current, next);
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now < due || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_MILLIS)) return;
+        entries.entrySet().removeIf(e -> e.getValue().expiresAtMillis <= now);
+    }
+
+    private record Entry(BucketState state, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,131 @@
+package com.aichatboot.ratelimit;
+
+import io.github.bucket4j.Bandwidth;
+import io.github.bucket4j.Bucket;
+import io.github.bucket4j.ConsumptionProbe;
+import io.github.bucket4j.Refill;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-node bucket4j buckets in a bounded map.
+ * <p>
+ * Buckets untouched for longer than {@code idleExpiry} are swept (an idle bucket has refilled, so
+ * dropping it changes nothing for the client). If the map still exceeds {@code maxKeys}, the least
+ * recently used buckets are evicted.
+ */
+public class LocalRateLimiterBackend implements RateLimiterBackend {
+
+    private static final long SWEEP_INTERVAL_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private final ConcurrentHashMap<String, Slot> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong();
+
+    private final long capacity;
+    private final Duration refillPeriod;
+    private final int maxKeys;
+    private final long idleExpiryNanos;
+    private final LongSupplier clock;
+
+    private final Counter idleEvictions;
+    private final Counter capacityEvictions;
+
+    public LocalRateLimiterBackend(long capacity, Duration refillPeriod, int maxKeys, Duration idleExpiry,
+                                   MeterRegistry meterRegistry) {
+        this(capacity, refillPeriod, maxKeys, idleExpiry, meterRegistry, System::nanoTime);
+    }
+
+    LocalRateLimiterBackend(long capacity, Duration refillPeriod, int maxKeys, Duration idleExpiry,
+                            MeterRegistry meterRegistry, LongSupplier clock) {
+        this.capacity = capacity;
+        this.refillPeriod = refillPeriod;
+        this.maxKeys = maxKeys;
+        this.idleExpiryNanos = idleExpiry.toNanos();
+        this.clock = clock;
+        this.idleEvictions = Counter.builder("ratelimit.evictions").tag("cause", "idle").register(meterRegistry);
+        this.capacityEvictions = Counter.builder("ratelimit.evictions").tag("cause", "capacity").register(meterRegistry);
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String key, long tokens) {
+        long now = clock.getAsLong();
+        Slot slot = buckets.get(key);
+        if (slot == null) {
+            slot = buckets.computeIfAbsent(key, k -> new Slot(newBucket()));
+            if (buckets.size() > maxKeys) {
+                evict(now, true);
+            }
+        }
+        slot.lastAccess = now;
+        sweepIfDue(now);
+
+        ConsumptionProbe probe = slot.bucket.tryConsumeAndReturnRemaining(tokens);
+        long nanosToFull = slot.bucket.estimateAbilityToConsume(capacity).getNanosToWaitForRefill();
+        return new RateLimitDecision(probe.isConsumed(), capacity, probe.getRemainingTokens(),
+                probe.isConsumed() ? 0 : probe.getNanosToWaitForRefill(), nanosToFull);
+    }
+
+    @Override
+    public void refund(String key, long tokens) {
+        Slot slot = buckets.get(key);
+        if (slot != null) slot.bucket.addTokens(tokens);
+    }
+
+    @Override
+    public long trackedKeys() {
+        return buckets.size();
+    }
+
+    private Bucket newBucket() {
+        Refill refill = Refill.intervally(capacity, refillPeriod);
+        Bandwidth limit = Bandwidth.classic(capacity, refill);
+        return Bucket.builder().addLimit(limit).build();
+    }
+
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) return;
+        evict(now, false);
+    }
+
+    /**
+     * Drop idle buckets; when {@code enforceCapacity} is set and that is not enough, drop the least
+     * recently used ones until the map is back under {@code maxKeys}.
+     */
+    private synchronized void evict(long now, boolean enforceCapacity) {
+        for (Map.Entry<String, Slot> e : buckets.entrySet()) {
+            if (now - e.getValue().lastAccess >= idleExpiryNanos && buckets.remove(e.getKey(), e.getValue())) {
+                idleEvictions.increment();
+            }
+        }
+        if (!enforceCapacity || buckets.size() <= maxKeys) return;
+
+        List<Map.Entry<String, Slot>> byAge = new ArrayList<>(buckets.entrySet());
+        byAge.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        // evict down to 90% so a scan does not trigger this on every new key
+        int target = (int) (maxKeys * 0.9);
+        for (int i = 0; i < byAge.size() && buckets.size() > target; i++) {
+            Map.Entry<String, Slot> victim = byAge.get(i);
+            if (buckets.remove(victim.getKey(), victim.getValue())) {
+                capacityEvictions.increment();
+            }
+        }
+    }
+
+    private static final class Slot {
+        final Bucket bucket;
+        volatile long lastAccess;
+
+        Slot(Bucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.aichatboot.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class RateLimitConfig {
+
+    @Value("${ratelimit.requests.per.minute:60}")
+    private long requestsPerMinute;
+
+    /** local = one bounded bucket map per node, shared = one bucket per key across all nodes */
+    @Value("${ratelimit.backend:local}")
+    private String backend;
+
+    @Value("${ratelimit.local.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${ratelimit.local.idle-expiry:2m}")
+    private Duration idleExpiry;
+
+    /** Single-node fallback; register a Redis/Hazelcast/JDBC-backed store to share state across nodes */
+    @Bean
+    @ConditionalOnMissingBean
+    public RateLimitStateStore rateLimitStateStore() {
+        return new InMemoryRateLimitStateStore();
+    }
+
+    @Bean
+    public RateLimiterBackend rateLimiterBackend(ObjectProvider<RateLimitStateStore> stateStore,
+                                                 MeterRegistry meterRegistry) {
+        Duration period = Duration.ofMinutes(1);
+        if ("shared".equalsIgnoreCase(backend)) {
+            return new SharedStateRateLimiterBackend(stateStore.getObject(), requestsPerMinute, period);
+        }
+        if (!"local".equalsIgnoreCase(backend)) {
+            throw new IllegalArgumentException("Unknown ratelimit.backend: " + backend);
+        }
+        return new LocalRateLimiterBackend(requestsPerMinute, period, maxKeys, idleExpiry, meterRegistry);
+    }
+}
@@ -0,0 +1,13 @@
+package com.aichatboot.ratelimit;
+
+/**
+ * Outcome of a rate limit check, with the values needed for X-RateLimit-* / Retry-After headers.
+ *
+ * @param allowed          whether the tokens were consumed
+ * @param limit            bucket capacity
+ * @param remaining        tokens left after this call
+ * @param nanosToRetry     when denied, time until enough tokens are available; 0 otherwise
+ * @param nanosToFullReset time until the bucket is full again
+ */
+public record RateLimitDecision(boolean allowed, long limit, long remaining, long nanosToRetry, long nanosToFullReset) {
+}
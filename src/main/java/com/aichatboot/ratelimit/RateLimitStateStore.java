@@ -0,0 +1,28 @@
+package com.aichatboot.ratelimit;
+
+import java.time.Duration;
+
+/**
+ * Shared key/value store for {@link SharedStateRateLimiterBackend}.
+ * <p>
+ * Implementations must provide an atomic compare-and-set (e.g. Redis WATCH/MULTI or a Lua script,
+ * a Hazelcast IMap#replace, a JDBC conditional update). {@link InMemoryRateLimitStateStore} is the
+ * single-node stand-in used by default and in tests.
+ */
+public interface RateLimitStateStore {
+
+    /**
+     * @return the current state, or null when the key is unknown or expired
+     */
+    BucketState get(String key);
+
+    /**
+     * Atomically replace {@code expected} (null meaning absent) with {@code update}.
+     *
+     * @param ttl how long the key may stay untouched before the store drops it
+     * @return false when another writer changed the key first
+     */
+    boolean compareAndSet(String key, BucketState expected, BucketState update, Duration ttl);
+
+    long size();
+}
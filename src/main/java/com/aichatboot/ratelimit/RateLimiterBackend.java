@@ -0,0 +1,22 @@
+package com.aichatboot.ratelimit;
+
+/**
+ * Storage and algorithm behind {@code RateLimitFilter}.
+ */
+public interface RateLimiterBackend {
+
+    /**
+     * Try to take {@code tokens} from the bucket identified by {@code key}.
+     */
+    RateLimitDecision tryConsume(String key, long tokens);
+
+    /**
+     * Give tokens back, e.g. when the request failed for reasons outside the client's control.
+     */
+    void refund(String key, long tokens);
+
+    /**
+     * Number of keys currently held by this node.
+     */
+    long trackedKeys();
+}
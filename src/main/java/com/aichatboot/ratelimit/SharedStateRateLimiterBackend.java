@@ -0,0 +1,114 @@
+package com.aichatboot.ratelimit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cluster-wide token bucket: state lives in a {@link RateLimitStateStore} shared by every node and
+ * is updated with optimistic compare-and-set, so the limit holds across the load balancer instead of
+ * being multiplied by the node count. Refill is continuous (capacity per period).
+ * <p>
+ * A key still contended after {@link #MAX_CAS_ATTEMPTS} tries is denied with a short retry: the
+ * hottest keys are the ones that must not slip past the limit.
+ */
+public class SharedStateRateLimiterBackend implements RateLimiterBackend {
+
+    private static final int MAX_CAS_ATTEMPTS = 8;
+    private static final long CONTENDED_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long CONTENTION_LOG_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final Logger log = LoggerFactory.getLogger(SharedStateRateLimiterBackend.class);
+
+    private final RateLimitStateStore store;
+    private final long capacity;
+    private final double tokensPerMilli;
+    private final Duration keyTtl;
+    private final LongSupplier clockMillis;
+
+    private final AtomicLong contendedDenials = new AtomicLong();
+    private final AtomicLong nextContentionLog = new AtomicLong(Long.MIN_VALUE);
+
+    public SharedStateRateLimiterBackend(RateLimitStateStore store, long capacity, Duration refillPeriod) {
+        this(store, capacity, refillPeriod, System::currentTimeMillis);
+    }
+
+    SharedStateRateLimiterBackend(RateLimitStateStore store, long capacity, Duration refillPeriod,
+                                  LongSupplier clockMillis) {
+        this.store = store;
+        this.capacity = capacity;
+        this.tokensPerMilli = (double) capacity / refillPeriod.toMillis();
+        // an untouched bucket is full again after one period, so it can be dropped then
+        this.keyTtl = refillPeriod;
+        this.clockMillis = clockMillis;
+    }
+
+    @Override
+    public RateLimitDecision tryConsume(String key, long tokens) {
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            BucketState current = store.get(key);
+            long now = clockMillis.getAsLong();
+            double available = refill(current, now);
+
+            if (available < tokens) {
+                long waitMillis = (long) Math.ceil((tokens - available) / tokensPerMilli);
+                return new RateLimitDecision(false, capacity, (long) available,
+                        TimeUnit.MILLISECONDS.toNanos(waitMillis), nanosToFull(available));
+            }
+
+            double left = available - tokens;
+            if (store.compareAndSet(key, current, new BucketState(left, now), keyTtl)) {
+                return new RateLimitDecision(true, capacity, (long) left, 0, nanosToFull(left));
+            }
+        }
+        // Heavy contention on one key: fail closed, the client retries once the burst has passed
+        contendedDenials.incrementAndGet();
+        logContention(key);
+        return new RateLimitDecision(false, capacity, 0, CONTENDED_RETRY_NANOS, nanosToFull(0));
+    }
+
+    /**
+     * Requests denied because their key stayed contended
+     */
+    long contendedDenials() {
+        return contendedDenials.get();
+    }
+
+    private void logContention(String key) {
+        long now = clockMillis.getAsLong();
+        long next = nextContentionLog.get();
+        if (now < next || !nextContentionLog.compareAndSet(next, now + CONTENTION_LOG_INTERVAL_MILLIS)) return;
+        log.warn("Rate limit state still contended after {} attempts, denied {} requests so far (last key {})",
+                MAX_CAS_ATTEMPTS, contendedDenials.get(), key);
+    }
+
+    @Override
+    public void refund(String key, long tokens) {
+        for (int attempt = 0; attempt < MAX_CAS_ATTEMPTS; attempt++) {
+            BucketState current = store.get(key);
+            if (current == null) return; // expired: the bucket is full anyway
+            long now = clockMillis.getAsLong();
+            double refunded = Math.min(capacity, refill(current, now) + tokens);
+            if (store.compareAndSet(key, current, new BucketState(refunded, now), keyTtl)) return;
+        }
+    }
+
+    @Override
+    public long trackedKeys() {
+        return store.size();
+    }
+
+    private double refill(BucketState state, long now) {
+        if (state == null) return capacity;
+        long elapsed = Math.max(0, now - state.updatedAtMillis());
+        return Math.min(capacity, state.tokens() + elapsed * tokensPerMilli);
+    }
+
+    private long nanosToFull(double available) {
+        return TimeUnit.MILLISECONDS.toNanos((long) Math.ceil((capacity - available) / tokensPerMilli));
+    }
+}
@@ -0,0 +1,140 @@
+package com.aichatboot.retrieval;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only file of chunk texts, addressed by the same id as their vector. Only the file offset
+ * of each chunk stays on the heap; texts are read back with positional reads when a search hits
+ * them.
+ * <p>
+ * A record is {@code int documentIdBytes, documentId, int chunkIndex, int textBytes, text}. A
+ * record cut short by a crash is dropped on open.
+ */
+class ChunkLog implements AutoCloseable {
+
+    private final FileChannel channel;
+    private long[] offsets = new long[1024];
+    private int size;
+    private long end;
+    private final Set<String> documents = new HashSet<>();
+
+    ChunkLog(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        scan();
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized boolean contains(String documentId) {
+        return documents.contains(documentId);
+    }
+
+    /**
+     * @return the id of the chunk
+     */
+    synchronized int append(String documentId, int chunkIndex, String text) throws IOException {
+        byte[] id = documentId.getBytes(StandardCharsets.UTF_8);
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(12 + id.length + body.length)
+                .putInt(id.length).put(id).putInt(chunkIndex).putInt(body.length).put(body)
+                .flip();
+        long position = end;
+        while (record.hasRemaining()) position += channel.write(record, position);
+        if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+        offsets[size] = end;
+        end = position;
+        documents.add(documentId);
+        return size++;
+    }
+
+    Chunk read(int id) throws IOException {
+        long offset;
+        synchronized (this) {
+            if (id < 0 || id >= size) throw new IllegalArgumentException("No chunk " + id);
+            offset = offsets[id];
+        }
+        ByteBuffer idLength = readFully(offset, 4);
+        int idBytes = idLength.getInt();
+        ByteBuffer head = readFully(offset + 4, idBytes + 8);
+        byte[] documentId = new byte[idBytes];
+        head.get(documentId);
+        int chunkIndex = head.getInt();
+        int textBytes = head.getInt();
+        ByteBuffer text = readFully(offset + 12 + idBytes, textBytes);
+        return new Chunk(new String(documentId, StandardCharsets.UTF_8), chunkIndex,
+                new String(text.array(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Forget chunks from {@code size} on, after a crash left them without their vector
+     */
+    synchronized void truncate(int size) throws IOException {
+        if (size >= this.size) return;
+        end = offsets[size];
+        this.size = size;
+        channel.truncate(end);
+        documents.clear();
+        for (int i = 0; i < size; i++) documents.add(read(i).documentId());
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    private void scan() throws IOException {
+        long length = channel.size();
+        long position = 0;
+        while (position + 12 <= length) {
+            try {
+                int idBytes = readFully(position, 4).getInt();
+                if (idBytes < 0 || position + 12 + idBytes > length) break;
+                ByteBuffer head = readFully(position + 4, idBytes + 8);
+                byte[] documentId = new byte[idBytes];
+                head.get(documentId);
+                head.getInt();
+                int textBytes = head.getInt();
+                long next = position + 12 + idBytes + textBytes;
+                if (textBytes < 0 || next > length) break;
+                if (size == offsets.length) offsets = Arrays.copyOf(offsets, size * 2);
+                offsets[size++] = position;
+                documents.add(new String(documentId, StandardCharsets.UTF_8));
+                position = next;
+            } catch (EOFException e) {
+                break;
+            }
+        }
+        end = position;
+        if (end < length) channel.truncate(end);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Chunk log ends inside a record");
+            }
+        }
+        return buffer.flip();
+    }
+
+    record Chunk(String documentId, int index, String text) {
+    }
+}
@@ -0,0 +1,209 @@
+package com.aichatboot.retrieval;
+
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.upstream.RetryPolicy;
+import com.aichatboot.upstream.UpstreamEndpoint;
+import com.aichatboot.upstream.UpstreamRouter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.BodyInserters;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Client for the OpenAI-compatible {@code POST /embeddings} of the configured upstreams.
+ * <p>
+ * Inputs go out in batches of {@code batchSize}; vectors are requested base64 encoded, a quarter
+ * of the size of JSON number arrays, though servers that answer with arrays are understood too.
+ */
+@Component
+public class EmbeddingClient {
+
+    private final UpstreamRouter upstreamRouter;
+    private final RetryPolicy retryPolicy;
+    private final JsonFactory jsonFactory;
+    private final String model;
+    private final int dimensions;
+    private final int batchSize;
+    private final int maxResponseBytes;
+
+    public EmbeddingClient(UpstreamRouter upstreamRouter,
+                           RetryPolicy retryPolicy,
+                           ObjectMapper objectMapper,
+                           @Value("${chat.retrieval.embedding-model:text-embedding-3-small}") String model,
+                           @Value("${chat.retrieval.dimensions:512}") int dimensions,
+                           @Value("${chat.retrieval.embedding-batch-size:64}") int batchSize,
+                           @Value("${chat.retrieval.embedding-max-response-size:16MB}") DataSize maxResponseSize) {
+        this.upstreamRouter = upstreamRouter;
+        this.retryPolicy = retryPolicy;
+        this.jsonFactory = objectMapper.getFactory();
+        this.model = model;
+        this.dimensions = dimensions;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxResponseBytes = (int) Math.min(Integer.MAX_VALUE, maxResponseSize.toBytes());
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return one vector per input, in input order
+     */
+    public Mono<List<float[]>> embed(List<String> inputs) {
+        if (inputs.isEmpty()) return Mono.just(List.of());
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i += batchSize) {
+            batches.add(inputs.subList(i, Math.min(inputs.size(), i + batchSize)));
+        }
+        return Flux.fromIterable(batches)
+                .concatMap(batch -> retryPolicy.apply(upstreamRouter.exchange(endpoint -> call(endpoint, batch))))
+                .collectList()
+                .map(results -> {
+                    List<float[]> vectors = new ArrayList<>(inputs.size());
+                    results.forEach(batch -> vectors.addAll(Arrays.asList(batch)));
+                    return vectors;
+                });
+    }
+
+    public Mono<float[]> embed(String input) {
+        return embed(List.of(input)).map(vectors -> vectors.get(0));
+    }
+
+    private Mono<float[][]> call(UpstreamEndpoint endpoint, List<String> batch) {
+        byte[] body;
+        try {
+            body = requestBody(batch);
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+        return DataBufferUtils.join(endpoint.getWebClient().post()
+                        .uri("/embeddings")
+                        .header("Authorization", "Bearer " + endpoint.getApiKey())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(BodyInserters.fromValue(body))
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class), maxResponseBytes)
+                .switchIfEmpty(Mono.error(() -> new UpstreamException("Empty embeddings response from upstream")))
+                .map(buffer -> {
+                    try (InputStream in = buffer.asInputStream(true)) {
+                        return parse(in, batch.size());
+                    } catch (IOException e) {
+                        throw new UpstreamException("Malformed embeddings response", e);
+                    }
+                });
+    }
+
+    byte[] requestBody(List<String> batch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 + batch.size() * 512);
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("model", model);
+            generator.writeArrayFieldStart("input");
+            for (String input : batch) generator.writeString(input);
+            generator.writeEndArray();
+            generator.writeNumberField("dimensions", dimensions);
+            generator.writeStringField("encoding_format", "base64");
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    float[][] parse(InputStream in, int expected) throws IOException {
+        float[][] vectors = new float[expected][];
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) throw new UpstreamException("Malformed embeddings response");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    int position = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readItem(parser, vectors, position++);
+                    }
+                } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                    throw new UpstreamException("Upstream error: " + readMessage(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        for (float[] vector : vectors) {
+            if (vector == null) throw new UpstreamException("Embeddings response misses inputs");
+        }
+        return vectors;
+    }
+
+    private void readItem(JsonParser parser, float[][] vectors, int position) throws IOException {
+        int index = position;
+        float[] vector = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("index".equals(field)) {
+                index = parser.getIntValue();
+            } else if ("embedding".equals(field)) {
+                vector = value == JsonToken.VALUE_STRING ? decodeBase64(parser.getText()) : readArray(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (index < 0 || index >= vectors.length || vector == null) {
+            throw new UpstreamException("Embeddings response has an unexpected item " + index);
+        }
+        if (vector.length != dimensions) {
+            throw new UpstreamException("Embedding has " + vector.length + " dimensions, configured are " + dimensions);
+        }
+        vectors[index] = vector;
+    }
+
+    private static float[] decodeBase64(String encoded) {
+        ByteBuffer bytes = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[bytes.remaining() / Float.BYTES];
+        bytes.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private float[] readArray(JsonParser parser) throws IOException {
+        float[] vector = new float[dimensions];
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (size == vector.length) vector = Arrays.copyOf(vector, size * 2 + 1);
+            vector[size++] = parser.getFloatValue();
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+
+    private static String readMessage(JsonParser parser) throws IOException {
+        String message = "unknown";
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("message".equals(field)) {
+                message = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,485 @@
+package com.aichatboot.retrieval;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate nearest neighbour index (HNSW, Malkov and Yashunin) over the unit vectors of a
+ * {@link MappedVectors} file, ranking by cosine similarity.
+ * <p>
+ * Vectors stay in the mapped file; the graph is held in primitive arrays, {@code 1 + 2m} ints per
+ * node on layer 0 plus {@code 1 + m} per upper layer the node reaches, and written to
+ * {@code graphFile} by {@link #save()}. Vectors appended after the last save, e.g. before a crash,
+ * are linked again on open; a graph that refers to more vectors than the file holds is rebuilt.
+ * Searches run concurrently; adds are serialised against them.
+ */
+class HnswIndex implements AutoCloseable {
+
+    record Hit(int id, float score) {
+    }
+
+    private static final int GRAPH_MAGIC = 0x484E5331; // "HNS1"
+    private static final int MAX_LAYER = 16;
+
+    private final MappedVectors vectors;
+    private final Path graphFile;
+    private final int m;
+    private final int m0;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Visited> visited = ThreadLocal.withInitial(Visited::new);
+
+    /** Per node: link count, then up to m0 ids */
+    private int[] layer0 = new int[0];
+    /** Per node and layer above 0: link count, then up to m ids; null for nodes only on layer 0 */
+    private int[][][] upper = new int[0][][];
+    private int nodes;
+    private int entryPoint = -1;
+    private int topLayer = -1;
+    private boolean dirty;
+
+    HnswIndex(MappedVectors vectors, Path graphFile, int m, int efConstruction, long seed) throws IOException {
+        this.vectors = vectors;
+        this.graphFile = graphFile;
+        // link counts are persisted as one byte
+        this.m = Math.min(64, Math.max(2, m));
+        this.m0 = 2 * this.m;
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.levelFactor = 1 / Math.log(this.m);
+        this.random = new SplittableRandom(seed);
+        boolean loaded;
+        try {
+            loaded = load();
+        } catch (EOFException e) {
+            loaded = false;
+        }
+        if (!loaded) {
+            layer0 = new int[0];
+            upper = new int[0][][];
+            nodes = 0;
+            entryPoint = -1;
+            topLayer = -1;
+        }
+        for (int id = nodes; id < vectors.size(); id++) link(id, vectors.get(id));
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return nodes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the id of the vector, equal to the number of vectors added before it
+     */
+    int add(float[] vector) throws IOException {
+        float[] unit = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            int id = vectors.append(unit);
+            link(id, unit);
+            return id;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param ef size of the candidate list on layer 0; higher finds more of the true top-k, slower
+     * @return at most {@code k} hits, most similar first
+     */
+    List<Hit> search(float[] query, int k, int ef) {
+        float[] unit = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) return List.of();
+            int ep = entryPoint;
+            for (int layer = topLayer; layer > 0; layer--) ep = greedy(unit, ep, layer);
+            Candidates found = searchLayer(unit, ep, Math.max(ef, k), 0);
+            int count = Math.min(k, found.size);
+            List<Hit> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) hits.add(new Hit(found.ids[i], found.scores[i]));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the graph next to the vectors, if anything was added since the last save
+     */
+    synchronized void save() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (!dirty) return;
+            vectors.force();
+            Path tmp = graphFile.resolveSibling(graphFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(GRAPH_MAGIC);
+                out.writeInt(m);
+                out.writeInt(nodes);
+                out.writeInt(entryPoint);
+                out.writeInt(topLayer);
+                int stride = m0 + 1;
+                for (int node = 0; node < nodes; node++) {
+                    writeLinks(out, layer0, node * stride);
+                    int[][] layers = upper[node];
+                    out.writeByte(layers == null ? 0 : layers.length);
+                    if (layers != null) {
+                        for (int[] links : layers) writeLinks(out, links, 0);
+                    }
+                }
+            }
+            Files.move(tmp, graphFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            save();
+        } finally {
+            vectors.close();
+        }
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) norm += v * v;
+        float[] unit = vector.clone();
+        if (norm == 0) return unit;
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < unit.length; i++) unit[i] *= scale;
+        return unit;
+    }
+
+    // ---- graph construction; callers hold the write lock ----
+
+    private void link(int id, float[] vector) {
+        int level = Math.min(MAX_LAYER, (int) (-Math.log(1 - random.nextDouble()) * levelFactor));
+        ensureCapacity(id + 1);
+        upper[id] = level == 0 ? null : new int[level][m + 1];
+        nodes = id + 1;
+        dirty = true;
+        if (entryPoint < 0) {
+            entryPoint = id;
+            topLayer = level;
+            return;
+        }
+
+        int ep = entryPoint;
+        for (int layer = topLayer; layer > level; layer--) ep = greedy(vector, ep, layer);
+        for (int layer = Math.min(level, topLayer); layer >= 0; layer--) {
+            Candidates candidates = searchLayer(vector, ep, efConstruction, layer);
+            int[] selected = selectDiverse(candidates.ids, candidates.scores, candidates.size, maxLinks(layer));
+            setLinks(id, layer, selected, selected.length);
+            for (int neighbour : selected) addLink(neighbour, id, layer);
+            ep = candidates.ids[0];
+        }
+        if (level > topLayer) {
+            topLayer = level;
+            entryPoint = id;
+        }
+    }
+
+    /**
+     * Keep a candidate only when it is closer to the base node than to every neighbour kept so
+     * far, so links spread in different directions instead of all pointing into one cluster
+     *
+     * @param ids candidates, most similar to the base node first
+     */
+    private int[] selectDiverse(int[] ids, float[] scores, int count, int max) {
+        int[] selected = new int[Math.min(count, max)];
+        int kept = 0;
+        for (int i = 0; i < count && kept < selected.length; i++) {
+            boolean diverse = true;
+            for (int j = 0; j < kept && diverse; j++) {
+                diverse = vectors.dot(ids[i], selected[j]) <= scores[i];
+            }
+            if (diverse) selected[kept++] = ids[i];
+        }
+        return kept == selected.length ? selected : Arrays.copyOf(selected, kept);
+    }
+
+    private void addLink(int node, int target, int layer) {
+        int max = maxLinks(layer);
+        int count = linkCount(node, layer);
+        if (count < max) {
+            int[] links = links(node, layer);
+            int base = base(node, layer);
+            links[base + 1 + count] = target;
+            links[base] = count + 1;
+            return;
+        }
+        int[] ids = new int[count + 1];
+        float[] scores = new float[count + 1];
+        for (int i = 0; i < count; i++) ids[i] = link(node, layer, i);
+        ids[count] = target;
+        for (int i = 0; i <= count; i++) scores[i] = vectors.dot(node, ids[i]);
+        sortDescending(ids, scores, count + 1);
+        int[] kept = selectDiverse(ids, scores, count + 1, max);
+        setLinks(node, layer, kept, kept.length);
+    }
+
+    private void ensureCapacity(int size) {
+        if (upper.length >= size) return;
+        int capacity = Math.max(size, upper.length + (upper.length >> 1) + 16);
+        upper = Arrays.copyOf(upper, capacity);
+        layer0 = Arrays.copyOf(layer0, capacity * (m0 + 1));
+    }
+
+    // ---- search ----
+
+    private int greedy(float[] query, int ep, int layer) {
+        int best = ep;
+        float bestScore = vectors.dot(ep, query);
+        int current;
+        do {
+            current = best;
+            int count = linkCount(current, layer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = link(current, layer, i);
+                float score = vectors.dot(neighbour, query);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = neighbour;
+                }
+            }
+        } while (best != current);
+        return best;
+    }
+
+    /**
+     * Best-first walk of one layer from {@code ep}, keeping the {@code ef} most similar nodes seen
+     */
+    private Candidates searchLayer(float[] query, int ep, int ef, int layer) {
+        Visited seen = visited.get().reset(nodes);
+        NodeHeap frontier = new NodeHeap(ef + 1, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+        float score = vectors.dot(ep, query);
+        seen.add(ep);
+        frontier.push(ep, score);
+        results.push(ep, score);
+        while (frontier.size > 0) {
+            if (results.size >= ef && frontier.topScore() < results.topScore()) break;
+            int current = frontier.pop();
+            int count = linkCount(current, layer);
+            for (int i = 0; i < count; i++) {
+                int neighbour = link(current, layer, i);
+                if (!seen.add(neighbour)) continue;
+                float s = vectors.dot(neighbour, query);
+                if (results.size < ef || s > results.topScore()) {
+                    frontier.push(neighbour, s);
+                    results.push(neighbour, s);
+                    if (results.size > ef) results.pop();
+                }
+            }
+        }
+        return results.drainDescending();
+    }
+
+    // ---- link storage ----
+
+    private int maxLinks(int layer) {
+        return layer == 0 ? m0 : m;
+    }
+
+    private int[] links(int node, int layer) {
+        return layer == 0 ? layer0 : upper[node][layer - 1];
+    }
+
+    private int base(int node, int layer) {
+        return layer == 0 ? node * (m0 + 1) : 0;
+    }
+
+    private int linkCount(int node, int layer) {
+        return links(node, layer)[base(node, layer)];
+    }
+
+    private int link(int node, int layer, int i) {
+        return links(node, layer)[base(node, layer) + 1 + i];
+    }
+
+    private void setLinks(int node, int layer, int[] ids, int count) {
+        int[] links = links(node, layer);
+        int base = base(node, layer);
+        links[base] = count;
+        System.arraycopy(ids, 0, links, base + 1, count);
+    }
+
+    private static void sortDescending(int[] ids, float[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+
+    // ---- persistence ----
+
+    private static void writeLinks(DataOutputStream out, int[] links, int base) throws IOException {
+        int count = links[base];
+        out.writeByte(count);
+        for (int i = 1; i <= count; i++) out.writeInt(links[base + i]);
+    }
+
+    private static void readLinks(DataInputStream in, int[] links, int base) throws IOException {
+        int count = in.readUnsignedByte();
+        links[base] = count;
+        for (int i = 1; i <= count; i++) links[base + i] = in.readInt();
+    }
+
+    /**
+     * @return false when there is no usable graph file and every vector has to be linked again
+     */
+    private boolean load() throws IOException {
+        if (!Files.exists(graphFile)) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graphFile)))) {
+            if (in.readInt() != GRAPH_MAGIC || in.readInt() != m) return false;
+            int count = in.readInt();
+            // a graph referring to vectors that did not make it to disk cannot be trusted
+            if (count > vectors.size()) return false;
+            entryPoint = in.readInt();
+            topLayer = in.readInt();
+            ensureCapacity(count);
+            int stride = m0 + 1;
+            for (int node = 0; node < count; node++) {
+                readLinks(in, layer0, node * stride);
+                int levels = in.readUnsignedByte();
+                if (levels > 0) {
+                    upper[node] = new int[levels][m + 1];
+                    for (int[] links : upper[node]) readLinks(in, links, 0);
+                }
+            }
+            nodes = count;
+            return true;
+        }
+    }
+
+    // ---- helpers ----
+
+    /** Nodes found by a layer search, most similar first */
+    private record Candidates(int[] ids, float[] scores, int size) {
+    }
+
+    /** Binary heap of node ids keyed by similarity; min-heap keeps the worst result on top */
+    private static final class NodeHeap {
+        private int[] ids;
+        private float[] scores;
+        private final boolean min;
+        int size;
+
+        NodeHeap(int capacity, boolean min) {
+            this.ids = new int[capacity];
+            this.scores = new float[capacity];
+            this.min = min;
+        }
+
+        float topScore() {
+            return scores[0];
+        }
+
+        void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) break;
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            float lastScore = scores[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && before(scores[child + 1], scores[child])) child++;
+                if (!before(scores[child], lastScore)) break;
+                ids[i] = ids[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            ids[i] = lastId;
+            scores[i] = lastScore;
+            return top;
+        }
+
+        /** Empties a min-heap into arrays ordered most similar first */
+        Candidates drainDescending() {
+            int count = size;
+            int[] sortedIds = new int[count];
+            float[] sortedScores = new float[count];
+            for (int i = count - 1; i >= 0; i--) {
+                sortedScores[i] = scores[0];
+                sortedIds[i] = pop();
+            }
+            return new Candidates(sortedIds, sortedScores, count);
+        }
+
+        private boolean before(float a, float b) {
+            return min ? a < b : a > b;
+        }
+    }
+
+    /** Visited marks of one search; bumping the epoch clears them without touching the array */
+    private static final class Visited {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        Visited reset(int size) {
+            if (marks.length < size) {
+                marks = new int[Math.max(size, marks.length + (marks.length >> 1))];
+                epoch = 0;
+            }
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+            return this;
+        }
+
+        boolean add(int node) {
+            if (marks[node] == epoch) return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
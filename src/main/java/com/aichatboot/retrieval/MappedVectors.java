@@ -0,0 +1,152 @@
+package com.aichatboot.retrieval;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only store of unit-length float vectors in a memory-mapped file, so the vectors live off
+ * the heap and survive restarts without being reloaded.
+ * <p>
+ * The file is a 64 byte header (magic, dimensions, count) followed by the vectors; it is mapped in
+ * segments of about 64MB, so growing it maps a new segment instead of remapping the whole file.
+ * Not thread-safe: {@link HnswIndex} serialises appends against reads.
+ */
+class MappedVectors implements AutoCloseable {
+
+    private static final int MAGIC = 0x56454331; // "VEC1"
+    private static final int HEADER_BYTES = 64;
+    private static final int SEGMENT_BYTES = 64 << 20;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int dimensions;
+    private final int perSegment;
+    private final List<MappedByteBuffer> mappings = new ArrayList<>();
+    private final List<FloatBuffer> segments = new ArrayList<>();
+    private final ThreadLocal<float[][]> scratch;
+    private int size;
+
+    MappedVectors(Path file, int dimensions) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt(0) == 0) {
+            header.putInt(0, MAGIC).putInt(4, dimensions).putInt(8, 0);
+        } else if (header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException(file + " is not a vector file");
+        } else if (header.getInt(4) != dimensions) {
+            channel.close();
+            throw new IOException(file + " holds " + header.getInt(4) + "-dimensional vectors, configured are "
+                    + dimensions);
+        }
+        this.dimensions = dimensions;
+        this.scratch = ThreadLocal.withInitial(() -> new float[2][dimensions]);
+        this.perSegment = Math.max(1, SEGMENT_BYTES / (dimensions * Float.BYTES));
+        this.size = header.getInt(8);
+        for (int mapped = 0; mapped < size; mapped += perSegment) mapSegment();
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param vector unit length, {@link #dimensions()} long
+     * @return the id of the vector, its position in the file
+     */
+    int append(float[] vector) throws IOException {
+        int id = size;
+        if (id / perSegment == segments.size()) mapSegment();
+        segment(id).put(offset(id), vector);
+        size = id + 1;
+        // the count goes last, so a crash never exposes a half written vector
+        header.putInt(8, size);
+        return id;
+    }
+
+    /**
+     * Forget the vectors from {@code size} on, after a crash left them without their chunk text
+     */
+    void truncate(int size) {
+        if (size >= this.size) return;
+        this.size = size;
+        header.putInt(8, size);
+    }
+
+    float dot(int id, float[] query) {
+        // a bulk copy and a loop over arrays is several times faster than indexed buffer reads
+        float[] vector = scratch.get()[0];
+        segment(id).get(offset(id), vector);
+        return dot(vector, query);
+    }
+
+    float dot(int a, int b) {
+        float[][] vectors = scratch.get();
+        segment(a).get(offset(a), vectors[0]);
+        segment(b).get(offset(b), vectors[1]);
+        return dot(vectors[0], vectors[1]);
+    }
+
+    /** Four running sums, so each add does not wait for the one before it */
+    private static float dot(float[] a, float[] b) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int end = a.length - 3; i < end; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < a.length; i++) s0 += a[i] * b[i];
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    float[] get(int id) {
+        float[] vector = new float[dimensions];
+        segment(id).get(offset(id), vector);
+        return vector;
+    }
+
+    /**
+     * Write dirty pages to disk; the OS does so eventually anyway
+     */
+    void force() {
+        mappings.forEach(MappedByteBuffer::force);
+        header.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private FloatBuffer segment(int id) {
+        return segments.get(id / perSegment);
+    }
+
+    private int offset(int id) {
+        return (id % perSegment) * dimensions;
+    }
+
+    private void mapSegment() throws IOException {
+        long position = HEADER_BYTES + (long) segments.size() * perSegment * dimensions * Float.BYTES;
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                (long) perSegment * dimensions * Float.BYTES);
+        mappings.add(mapped);
+        segments.add(mapped.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer());
+    }
+}
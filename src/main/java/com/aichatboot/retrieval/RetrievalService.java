@@ -0,0 +1,276 @@
+package com.aichatboot.retrieval;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.DocumentResponse;
+import com.aichatboot.exception.DocumentExistsException;
+import com.aichatboot.tokenizer.TokenCounter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Answers from our own documents: ingested documents are chunked, embedded through
+ * {@link EmbeddingClient} and kept in an {@link HnswIndex} under {@code dir}; before a completion
+ * the latest user message is embedded and the {@code topK} most similar chunks are put in front of
+ * it.
+ * <p>
+ * The index is append-only and shared by all tenants. The graph is saved at most every
+ * {@code saveInterval} and on shutdown; chunks added after the last save are linked again on
+ * start. When retrieval fails the completion goes ahead without context.
+ */
+@Service
+public class RetrievalService {
+
+    private final Logger log = LoggerFactory.getLogger(RetrievalService.class);
+
+    private final boolean enabled;
+    private final EmbeddingClient embeddingClient;
+    private final TextChunker chunker;
+    private final int topK;
+    private final int efSearch;
+    private final double minScore;
+    private final long saveIntervalMillis;
+    private final LongSupplier clockMillis;
+
+    private final ChunkLog chunks;
+    private final HnswIndex index;
+    private final Object ingestLock = new Object();
+    private volatile long lastSave;
+
+    private final Timer searchTimer;
+    private final Counter withContext;
+    private final Counter withoutContext;
+    private final Counter failed;
+
+    @Autowired
+    public RetrievalService(EmbeddingClient embeddingClient,
+                            TokenCounter tokenCounter,
+                            MeterRegistry meterRegistry,
+                            @Value("${chat.retrieval.enabled:false}") boolean enabled,
+                            @Value("${chat.retrieval.dir:${java.io.tmpdir}/aichatboot-retrieval}") String dir,
+                            @Value("${chat.retrieval.top-k:4}") int topK,
+                            @Value("${chat.retrieval.min-score:0.3}") double minScore,
+                            @Value("${chat.retrieval.chunk-tokens:400}") int chunkTokens,
+                            @Value("${chat.retrieval.chunk-overlap-tokens:50}") int overlapTokens,
+                            @Value("${chat.retrieval.hnsw.m:16}") int m,
+                            @Value("${chat.retrieval.hnsw.ef-construction:100}") int efConstruction,
+                            @Value("${chat.retrieval.hnsw.ef-search:64}") int efSearch,
+                            @Value("${chat.retrieval.save-interval:1m}") Duration saveInterval) {
+        this(embeddingClient, tokenCounter, meterRegistry, enabled, Path.of(dir), topK, minScore, chunkTokens,
+                overlapTokens, m, efConstruction, efSearch, saveInterval, System::currentTimeMillis);
+    }
+
+    RetrievalService(EmbeddingClient embeddingClient, TokenCounter tokenCounter, MeterRegistry meterRegistry,
+                     boolean enabled, Path dir, int topK, double minScore, int chunkTokens, int overlapTokens,
+                     int m, int efConstruction, int efSearch, Duration saveInterval, LongSupplier clockMillis) {
+        this.enabled = enabled;
+        this.embeddingClient = embeddingClient;
+        this.chunker = new TextChunker(tokenCounter, chunkTokens, overlapTokens);
+        this.topK = topK;
+        this.efSearch = efSearch;
+        this.minScore = minScore;
+        this.saveIntervalMillis = saveInterval.toMillis();
+        this.clockMillis = clockMillis;
+        this.lastSave = clockMillis.getAsLong();
+
+        if (enabled) {
+            try {
+                Files.createDirectories(dir);
+                this.chunks = new ChunkLog(dir.resolve("chunks.log"));
+                MappedVectors vectors = new MappedVectors(dir.resolve("vectors.bin"), embeddingClient.dimensions());
+                // a crash between writing a chunk and its vector leaves one of them behind
+                int size = Math.min(chunks.size(), vectors.size());
+                chunks.truncate(size);
+                vectors.truncate(size);
+                this.index = new HnswIndex(vectors, dir.resolve("graph.bin"), m, efConstruction, 42);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open retrieval index in " + dir, e);
+            }
+            log.info("Retrieval index in {} holds {} chunks", dir, index.size());
+        } else {
+            this.chunks = null;
+            this.index = null;
+        }
+
+        Gauge.builder("chat.retrieval.chunks", this, service -> service.enabled ? service.index.size() : 0)
+                .description("Document chunks in the retrieval index")
+                .register(meterRegistry);
+        this.searchTimer = Timer.builder("chat.retrieval.search")
+                .description("Index lookup per query, excluding the embedding call")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.withContext = retrievalCounter(meterRegistry, "context");
+        this.withoutContext = retrievalCounter(meterRegistry, "none");
+        this.failed = retrievalCounter(meterRegistry, "failed");
+    }
+
+    private static Counter retrievalCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("chat.retrieval.requests")
+                .description("Completions by whether document chunks were added to their prompt")
+                .tag("outcome", outcome).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Whether {@link #contextFor} is worth a call: retrieval on, not declined by the request, and
+     * something indexed
+     */
+    public boolean appliesTo(ChatRequest request) {
+        return enabled && !Boolean.FALSE.equals(request.getRetrieval()) && index.size() > 0
+                && queryOf(request) != null;
+    }
+
+    /**
+     * Chunk, embed and index a document
+     *
+     * @throws DocumentExistsException when {@code documentId} is already indexed
+     */
+    public Mono<DocumentResponse> ingest(String documentId, String text) {
+        checkEnabled();
+        String id = documentId != null ? documentId : UUID.randomUUID().toString();
+        if (chunks.contains(id)) throw new DocumentExistsException(id);
+        List<String> pieces = chunker.chunk(text);
+        return embeddingClient.embed(pieces)
+                // file writes and graph linking stay off the event loop
+                .publishOn(Schedulers.boundedElastic())
+                .map(vectors -> {
+                    store(id, pieces, vectors);
+                    return new DocumentResponse(id, pieces.size());
+                });
+    }
+
+    /**
+     * The chunks most similar to {@code query}, most similar first
+     */
+    public Mono<List<RetrievedChunk>> retrieve(String query, int k) {
+        checkEnabled();
+        return embeddingClient.embed(query)
+                .publishOn(Schedulers.boundedElastic())
+                .map(vector -> search(vector, k));
+    }
+
+    /**
+     * Chunks for the latest user message of {@code request}; empty, never an error, when
+     * retrieval fails
+     */
+    public Mono<List<RetrievedChunk>> contextFor(ChatRequest request) {
+        return retrieve(queryOf(request), topK)
+                .doOnNext(found -> (found.isEmpty() ? withoutContext : withContext).increment())
+                .onErrorResume(e -> {
+                    failed.increment();
+                    log.warn("Retrieval failed, answering without document context: {}", e.toString());
+                    return Mono.just(List.of());
+                });
+    }
+
+    /**
+     * The question with the retrieved chunks in front of it. Putting them in the latest message
+     * rather than the system prompt leaves the earlier turns an unchanged, cacheable prefix.
+     */
+    public static ChatMessage withContext(ChatMessage question, List<RetrievedChunk> context) {
+        if (context.isEmpty()) return question;
+        StringBuilder content = new StringBuilder("Answer using the following excerpts where they are relevant.\n");
+        for (int i = 0; i < context.size(); i++) {
+            RetrievedChunk chunk = context.get(i);
+            content.append("\n[").append(i + 1).append("] ").append(chunk.documentId()).append('\n')
+                    .append(chunk.text()).append('\n');
+        }
+        content.append("\nQuestion: ").append(question.getContent());
+        return new ChatMessage(question.getRole(), content.toString());
+    }
+
+    List<RetrievedChunk> search(float[] vector, int k) {
+        List<HnswIndex.Hit> hits = searchTimer.record(() -> index.search(vector, k, efSearch));
+        List<RetrievedChunk> found = new ArrayList<>(hits.size());
+        try {
+            for (HnswIndex.Hit hit : hits) {
+                if (hit.score() < minScore) break;
+                ChunkLog.Chunk chunk = chunks.read(hit.id());
+                found.add(new RetrievedChunk(chunk.documentId(), chunk.index(), chunk.text(), hit.score()));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read retrieval chunks", e);
+        }
+        return found;
+    }
+
+    int size() {
+        return enabled ? index.size() : 0;
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) return;
+        try {
+            index.close();
+        } finally {
+            chunks.close();
+        }
+    }
+
+    private void store(String id, List<String> pieces, List<float[]> vectors) {
+        try {
+            synchronized (ingestLock) {
+                // two requests for the same new id may both have passed the first check
+                if (chunks.contains(id)) throw new DocumentExistsException(id);
+                for (int i = 0; i < pieces.size(); i++) {
+                    // chunk first: on open, a chunk without vector is dropped, and the ids stay equal
+                    chunks.append(id, i, pieces.get(i));
+                    try {
+                        index.add(vectors.get(i));
+                    } catch (IOException e) {
+                        chunks.truncate(index.size());
+                        throw e;
+                    }
+                }
+            }
+            long now = clockMillis.getAsLong();
+            if (now - lastSave >= saveIntervalMillis) {
+                lastSave = now;
+                chunks.force();
+                index.save();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write retrieval index", e);
+        }
+    }
+
+    private void checkEnabled() {
+        if (!enabled) throw new IllegalStateException("Retrieval is disabled (chat.retrieval.enabled=false)");
+    }
+
+    /**
+     * The latest user message: the last history entry when it is a user turn, else the prompt
+     */
+    static String queryOf(ChatRequest request) {
+        List<ChatMessage> history = request.getMessages();
+        if (history != null && !history.isEmpty()) {
+            ChatMessage last = history.get(history.size() - 1);
+            return "user".equals(last.getRole()) && last.getContent() != null && !last.getContent().isBlank()
+                    ? last.getContent() : null;
+        }
+        return request.getPrompt() != null && !request.getPrompt().isBlank() ? request.getPrompt() : null;
+    }
+}
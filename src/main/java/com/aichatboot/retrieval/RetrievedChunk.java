@@ -0,0 +1,7 @@
+package com.aichatboot.retrieval;
+
+/**
+ * A document chunk found for a query, with its cosine similarity to it.
+ */
+public record RetrievedChunk(String documentId, int index, String text, float score) {
+}
@@ -0,0 +1,100 @@
+package com.aichatboot.retrieval;
+
+import com.aichatboot.tokenizer.TokenCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a document into chunks of at most about {@code chunkTokens} tokens along paragraph and
+ * sentence boundaries. Consecutive chunks share up to {@code overlapTokens} worth of trailing
+ * sentences, so a passage cut at a chunk border is still found whole in one of them.
+ */
+class TextChunker {
+
+    private static final Pattern PARAGRAPH = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private record Unit(String text, int tokens, boolean paragraphStart) {
+    }
+
+    private final TokenCounter tokenCounter;
+    private final int chunkTokens;
+    private final int overlapTokens;
+
+    TextChunker(TokenCounter tokenCounter, int chunkTokens, int overlapTokens) {
+        this.tokenCounter = tokenCounter;
+        this.chunkTokens = Math.max(16, chunkTokens);
+        this.overlapTokens = Math.max(0, Math.min(overlapTokens, this.chunkTokens / 2));
+    }
+
+    List<String> chunk(String text) {
+        List<String> chunks = new ArrayList<>();
+        List<Unit> current = new ArrayList<>();
+        int tokens = 0;
+        for (Unit unit : units(text)) {
+            if (tokens + unit.tokens() > chunkTokens && !current.isEmpty()) {
+                chunks.add(join(current));
+                // carry the tail over as overlap
+                int carried = 0;
+                int from = current.size();
+                while (from > 0 && carried + current.get(from - 1).tokens() <= overlapTokens) {
+                    carried += current.get(--from).tokens();
+                }
+                current = new ArrayList<>(current.subList(from, current.size()));
+                tokens = carried;
+            }
+            current.add(unit);
+            tokens += unit.tokens();
+        }
+        if (!current.isEmpty()) chunks.add(join(current));
+        return chunks;
+    }
+
+    private List<Unit> units(String text) {
+        List<Unit> units = new ArrayList<>();
+        for (String paragraph : PARAGRAPH.split(text.strip())) {
+            boolean first = true;
+            for (String sentence : SENTENCE.split(paragraph.strip())) {
+                if (sentence.isBlank()) continue;
+                String stripped = sentence.strip();
+                int tokens = tokenCounter.countUncached(stripped);
+                if (tokens <= chunkTokens) {
+                    units.add(new Unit(stripped, tokens, first));
+                } else {
+                    for (String piece : split(stripped)) {
+                        units.add(new Unit(piece, tokenCounter.countUncached(piece), first));
+                        first = false;
+                    }
+                }
+                first = false;
+            }
+        }
+        return units;
+    }
+
+    /**
+     * A sentence longer than a chunk is cut into runs of words; about three quarters of a token
+     * per word keeps the runs within the limit for prose
+     */
+    private List<String> split(String sentence) {
+        String[] words = WHITESPACE.split(sentence);
+        int perPiece = Math.max(1, chunkTokens * 3 / 4);
+        List<String> pieces = new ArrayList<>();
+        for (int i = 0; i < words.length; i += perPiece) {
+            pieces.add(String.join(" ", List.of(words).subList(i, Math.min(words.length, i + perPiece))));
+        }
+        return pieces;
+    }
+
+    private static String join(List<Unit> units) {
+        StringBuilder text = new StringBuilder();
+        for (Unit unit : units) {
+            if (!text.isEmpty()) text.append(unit.paragraphStart() ? "\n\n" : " ");
+            text.append(unit.text());
+        }
+        return text.toString();
+    }
+}
@@ -1,195 +1,546 @@
 package com.aichatboot.service;
 
+import com.aichatboot.cache.CacheKey;
+import com.aichatboot.cache.ResponseCache;
 import com.aichatboot.dto.ChatMessage;
 import com.aichatboot.dto.ChatRequest;
 import com.aichatboot.dto.ChatResponse;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.aichatboot.dto.Usage;
+import com.aichatboot.exception.PromptTooLongException;
+import com.aichatboot.exception.RequestTooLargeException;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.exception.UpstreamOverloadedException;
+import com.aichatboot.logging.ChatRequestLog;
+import com.aichatboot.logging.ChatRequestLogger;
+import com.aichatboot.quota.QuotaReservation;
+import com.aichatboot.quota.TokenQuotaService;
+import com.aichatboot.retrieval.RetrievalService;
+import com.aichatboot.retrieval.RetrievedChunk;
+import com.aichatboot.tokenizer.ContextTrimmer;
+import com.aichatboot.tokenizer.TrimResult;
+import com.aichatboot.upstream.AdaptiveConcurrencyLimiter;
+import com.aichatboot.upstream.Priority;
+import com.aichatboot.upstream.RetryPolicy;
+import com.aichatboot.upstream.UpstreamEndpoint;
+import com.aichatboot.upstream.UpstreamRouter;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Service
 public class ChatService {
 
     private final Logger log = LoggerFactory.getLogger(ChatService.class);
 
-    private final WebClient webClient;
-    private final ObjectMapper objectMapper;
-    private final String model;
-    private final int maxTokens;
-    private final double temperature;
+    private static final ChatMessage DEFAULT_SYSTEM_MESSAGE =
+            new ChatMessage("system", "You are a helpful assistant. Provide concise answers.");
 
-    @Value("${spring.ai.openai.api-key}")
-    private String openAiApiKey;
+    private final UpstreamRouter upstreamRouter;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final TokenQuotaService tokenQuotaService;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final RetryPolicy retryPolicy;
+    private final ContextTrimmer contextTrimmer;
+    private final PromptPrefixTracker prefixTracker;
+    private final RetrievalService retrievalService;
+    private final ChatRequestLogger requestLogger;
+    private final SseTokenDecoder sseTokenDecoder;
+    private final RequestOptions defaults;
+    private final UpstreamRequestWriter requestWriter;
+    private final CompletionDecoder completionDecoder;
+    private final int maxMessages;
+
+    private final AtomicInteger syncInFlight = new AtomicInteger();
+    private final AtomicInteger streamsInFlight = new AtomicInteger();
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+    private final Counter cachedTokens;
+    private final DistributionSummary streamThroughput;
 
     public ChatService(
-            WebClient openAiWebClient,
+            UpstreamRouter upstreamRouter,
             ObjectMapper objectMapper,
+            ResponseCache responseCache,
+            RequestCoalescer requestCoalescer,
+            TokenQuotaService tokenQuotaService,
+            AdaptiveConcurrencyLimiter concurrencyLimiter,
+            RetryPolicy retryPolicy,
+            ContextTrimmer contextTrimmer,
+            PromptPrefixTracker prefixTracker,
+            RetrievalService retrievalService,
+            MeterRegistry meterRegistry,
+            ChatRequestLogger requestLogger,
             @Value("${spring.ai.openai.chat.options.model:gpt-4.1-mini}") String model,
             @Value("${spring.ai.openai.chat.options.max-tokens:1500}") int maxTokens,
-            @Value("${spring.ai.openai.chat.options.temperature:0.2}") double temperature
+            @Value("${spring.ai.openai.chat.options.temperature:0.2}") double temperature,
+            @Value("${chat.request.max-messages:500}") int maxMessages,
+            @Value("${openai.http.max-response-size:4MB}") DataSize maxResponseSize
     ) {
-        this.webClient = openAiWebClient;
-        this.objectMapper = objectMapper;
-        this.model = model;
-        this.maxTokens = maxTokens;
-        this.temperature = temperature;
+        this.upstreamRouter = upstreamRouter;
+        this.responseCache = responseCache;
+        this.requestCoalescer = requestCoalescer;
+        this.tokenQuotaService = tokenQuotaService;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.retryPolicy = retryPolicy;
+        this.contextTrimmer = contextTrimmer;
+        this.prefixTracker = prefixTracker;
+        this.retrievalService = retrievalService;
+        this.requestLogger = requestLogger;
+        this.sseTokenDecoder = new SseTokenDecoder(objectMapper.getFactory());
+        this.defaults = new RequestOptions(model, temperature, maxTokens);
+        this.requestWriter = new UpstreamRequestWriter(objectMapper.getFactory(), defaults);
+        this.completionDecoder = new CompletionDecoder(objectMapper.getFactory(), maxResponseSize.toBytes());
+        this.maxMessages = maxMessages;
+
+        Gauge.builder("chat.requests.in.flight", syncInFlight, AtomicInteger::get)
+                .tag("mode", "sync").register(meterRegistry);
+        Gauge.builder("chat.requests.in.flight", streamsInFlight, AtomicInteger::get)
+                .tag("mode", "stream").register(meterRegistry);
+        this.promptTokens = Counter.builder("chat.tokens")
+                .description("Tokens billed by the upstream, from its usage report")
+                .tag("type", "prompt").register(meterRegistry);
+        this.completionTokens = Counter.builder("chat.tokens")
+                .description("Tokens billed by the upstream, from its usage report")
+                .tag("type", "completion").register(meterRegistry);
+        this.cachedTokens = Counter.builder("chat.tokens")
+                .description("Tokens billed by the upstream, from its usage report")
+                .tag("type", "cached").register(meterRegistry);
+        this.streamThroughput = DistributionSummary.builder("chat.stream.throughput")
+                .description("Completion tokens per second after the first token, per stream")
+                .baseUnit("tokens/s")
+                .register(meterRegistry);
     }
 
     /**
      * Build OpenAI request body
      */
-    private Map<String, Object> buildRequest(ChatRequest request, boolean stream) {
-        Map<String, Object> body = new HashMap<>();
-        body.put("model", model);
-        body.put("temperature", temperature);
-        body.put("max_tokens", maxTokens);
-        body.put("stream", stream);
-        body.put("messages", prepareMessages(request));
-        return body;
+    UpstreamRequest buildRequest(List<ChatMessage> messages, RequestOptions options, boolean stream) throws IOException {
+        return requestWriter.write(messages, options, stream);
+    }
+
+    RequestOptions optionsFor(ChatRequest request) {
+        return defaults.with(request);
     }
 
     /**
-     * Synchronous chat completion
+     * Synchronous chat completion (blocks the calling thread)
      */
     public ChatResponse createCompletion(ChatRequest request) {
-        try {
-            log.info("Calling OpenAI sync API → model={}", model);
+        return createCompletion(request, TokenQuotaService.ANONYMOUS);
+    }
 
-            String responseBody = webClient.post()
-                    .uri("/chat/completions")
-                    .header("Authorization", "Bearer " + openAiApiKey)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(BodyInserters.fromValue(buildRequest(request, false)))
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block(Duration.ofSeconds(60));
+    public ChatResponse createCompletion(ChatRequest request, String tenant) {
+        return completion(request, tenant).block();
+    }
 
-            log.debug("OpenAI response: {}", responseBody);
+    public Mono<ChatResponse> completion(ChatRequest request) {
+        return completion(request, TokenQuotaService.ANONYMOUS);
+    }
 
-            if (responseBody == null || responseBody.isBlank()) {
-                return new ChatResponse(UUID.randomUUID().toString(), "[[No response from OpenAI]]");
-            }
+    /**
+     * Non-blocking chat completion; the HTTP exchange runs on the Netty event loop. Transient
+     * upstream failures are retried; what remains is signalled through the Mono. When document
+     * retrieval applies, the exceptions below are signalled too, after the context lookup.
+     *
+     * @throws com.aichatboot.exception.QuotaExceededException when the tenant's token budget is used up
+     * @throws UpstreamOverloadedException when the upstream wait queue is full or every upstream's
+     *                                     circuit is open; also signalled through the Mono when
+     *                                     queueing times out
+     * @throws PromptTooLongException when the latest message alone does not fit the context window
+     * @throws RequestTooLargeException when the conversation has more than {@code maxMessages} messages
+     */
+    public Mono<ChatResponse> completion(ChatRequest request, String tenant) {
+        return completion(request, tenant, Priority.BATCH);
+    }
 
-            JsonNode root = objectMapper.readTree(responseBody);
-            JsonNode choices = root.path("choices");
+    /**
+     * Sync completion queued at the given priority; the batch API uses {@link Priority#BULK}
+     */
+    public Mono<ChatResponse> completion(ChatRequest request, String tenant, Priority priority) {
+        ChatRequestLog entry = requestLogger.start(priority == Priority.BULK ? "batch" : "sync", tenant, request);
+        Mono<ChatResponse> response;
+        try {
+            response = retrievalService.appliesTo(request)
+                    ? retrievalService.contextFor(request)
+                            .flatMap(retrieved -> completion(request, tenant, priority, entry, retrieved))
+                    : completion(request, tenant, priority, entry, List.of());
+        } catch (RuntimeException ex) {
+            entry.failed(ex);
+            requestLogger.finish(entry, SignalType.ON_ERROR);
+            throw ex;
+        }
+        return response
+                .doOnNext(entry::response)
+                .doOnError(entry::failed)
+                .doFinally(signal -> requestLogger.finish(entry, signal));
+    }
 
-            StringBuilder aggregated = new StringBuilder();
-            if (choices.isArray()) {
-                for (JsonNode c : choices) {
-                    JsonNode message = c.path("message");
-                    if (!message.isMissingNode()) {
-                        aggregated.append(message.path("content").asText(""));
-                    }
+    private Mono<ChatResponse> completion(ChatRequest request, String tenant, Priority priority,
+                                          ChatRequestLog entry, List<RetrievedChunk> retrieved) {
+        RequestOptions options = optionsFor(request);
+        TrimResult context;
+        List<ChatMessage> messages;
+        CacheKey cacheKey;
+        UpstreamRequest body;
+        try {
+            context = trimToContext(prepareMessages(request, retrieved), options);
+            entry.context(context.promptTokens(), context.droppedMessages());
+            messages = context.messages();
+            trackPrefix(request, tenant, messages);
+            cacheKey = cacheKeyFor(request, options, messages);
+            if (cacheKey == null) {
+                entry.cacheBypassed();
+            } else {
+                Optional<ChatResponse> cached = responseCache.get(cacheKey);
+                if (cached.isPresent()) {
+                    entry.cacheHit();
+                    return Mono.just(withTokenCounts(cached.get(), context));
                 }
             }
 
-            return new ChatResponse(
-                    root.path("id").asText(UUID.randomUUID().toString()),
-                    aggregated.toString().trim()
-            );
+            body = buildRequest(messages, options, false);
+        } catch (PromptTooLongException | RequestTooLargeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.error("OpenAI sync request failed", ex);
+            return Mono.error(ex);
+        }
+
+        upstreamRouter.checkAvailable();
+        concurrencyLimiter.checkAdmission();
+        QuotaReservation reservation = tokenQuotaService.reserve(tenant, context.promptTokens(), options.maxTokens());
+        AtomicBoolean leader = new AtomicBoolean();
+
+        try {
+            return requestCoalescer
+                    .coalesce(body, () -> {
+                        // only the caller that triggers the upstream call pays for it
+                        leader.set(true);
+                        // retries go around the limiter so backoff does not hold a permit
+                        return settleCompletion(
+                                retryPolicy.apply(concurrencyLimiter.run(priority,
+                                        () -> upstreamRouter.exchange(endpoint -> callCompletion(endpoint, body, cacheKey)))),
+                                reservation);
+                    })
+                    .doFinally(signal -> {
+                        if (!leader.get()) reservation.release();
+                    })
+                    .map(response -> withTokenCounts(response, context))
+                    .timeout(Duration.ofSeconds(60))
+                    .doOnSubscribe(subscription -> syncInFlight.incrementAndGet())
+                    .doFinally(signal -> syncInFlight.decrementAndGet());
 
         } catch (Exception ex) {
+            reservation.release();
             log.error("OpenAI sync request failed", ex);
-            return new ChatResponse(
-                    UUID.randomUUID().toString(),
-                    "[[ERROR: " + ex.getMessage() + "]]"
-            );
+            return Mono.error(ex);
+        }
+    }
+
+    /**
+     * Drop the oldest turns that do not fit the model's context window
+     */
+    private TrimResult trimToContext(List<ChatMessage> messages, RequestOptions options) {
+        TrimResult context = contextTrimmer.trim(messages, options.maxTokens());
+        if (context.droppedMessages() > 0) {
+            log.debug("Dropped {} old messages to fit the context window ({} prompt tokens)",
+                    context.droppedMessages(), context.promptTokens());
+        }
+        return context;
+    }
+
+    /**
+     * Turns of one conversation should extend the previous prompt; a changed prefix means the
+     * provider cannot reuse its prompt cache for them
+     */
+    private void trackPrefix(ChatRequest request, String tenant, List<ChatMessage> messages) {
+        if (request.getConversationId() == null) return;
+        if (!prefixTracker.observe(tenant + ":" + request.getConversationId(), messages)) {
+            log.debug("Prompt of conversation {} does not extend its previous turn", request.getConversationId());
         }
     }
 
+    private ChatResponse withTokenCounts(ChatResponse response, TrimResult context) {
+        response.setPromptTokens(context.promptTokens());
+        response.setDroppedMessages(context.droppedMessages());
+        return response;
+    }
+
+    /**
+     * Reconcile the reservation with the reported usage; failed calls are not charged
+     */
+    private Mono<ChatResponse> settleCompletion(Mono<ChatResponse> call, QuotaReservation reservation) {
+        return call
+                .doOnNext(response -> {
+                    if (response.getUsage() != null) {
+                        reservation.settle(response.getUsage().getTotalTokens());
+                        recordUsage(response.getUsage());
+                    }
+                })
+                .doOnError(ex -> reservation.release())
+                .doFinally(signal -> reservation.settleAsReserved());
+    }
+
+    private void recordUsage(Usage usage) {
+        promptTokens.increment(usage.getPromptTokens());
+        completionTokens.increment(usage.getCompletionTokens());
+        cachedTokens.increment(usage.getCachedTokens());
+        prefixTracker.recordUsage(usage);
+    }
+
+    /**
+     * Single upstream exchange for a sync completion, shared by coalesced callers
+     */
+    private Mono<ChatResponse> callCompletion(UpstreamEndpoint endpoint, UpstreamRequest body, CacheKey cacheKey) {
+        log.debug("Calling OpenAI sync API → endpoint={}, model={}", endpoint.getName(), modelOf(endpoint));
+
+        return endpoint.getWebClient().post()
+                .uri("/chat/completions")
+                .header("Authorization", "Bearer " + endpoint.getApiKey())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(requestWriter.forEndpoint(body, endpoint.getModel())))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .as(completionDecoder::decode)
+                .doOnNext(response -> {
+                    if (cacheKey != null && !response.getText().isEmpty()) {
+                        responseCache.put(cacheKey, response);
+                    }
+                });
+    }
+
     /**
      * Streaming completion using SSE
      */
     public Flux<String> streamCompletion(ChatRequest request) {
+        return streamCompletion(request, TokenQuotaService.ANONYMOUS);
+    }
+
+    /**
+     * Streaming completion using SSE. Failures before the first token are retried; later ones
+     * end the Flux with the error. When document retrieval applies, the exceptions below are
+     * signalled too, after the context lookup.
+     *
+     * @throws com.aichatboot.exception.QuotaExceededException when the tenant's token budget is used up
+     * @throws UpstreamOverloadedException when the upstream wait queue is full or every upstream's
+     *                                     circuit is open
+     * @throws PromptTooLongException when the latest message alone does not fit the context window
+     * @throws RequestTooLargeException when the conversation has more than {@code maxMessages} messages
+     */
+    public Flux<String> streamCompletion(ChatRequest request, String tenant) {
+        ChatRequestLog entry = requestLogger.start("stream", tenant, request);
+        Flux<String> tokens;
+        try {
+            tokens = retrievalService.appliesTo(request)
+                    ? retrievalService.contextFor(request)
+                            .flatMapMany(retrieved -> streamCompletion(request, tenant, entry, retrieved))
+                    : streamCompletion(request, tenant, entry, List.of());
+        } catch (RuntimeException ex) {
+            entry.failed(ex);
+            requestLogger.finish(entry, SignalType.ON_ERROR);
+            throw ex;
+        }
+        return tokens
+                .doOnNext(entry::token)
+                .doOnError(entry::failed)
+                .doFinally(signal -> requestLogger.finish(entry, signal));
+    }
+
+    private Flux<String> streamCompletion(ChatRequest request, String tenant, ChatRequestLog entry,
+                                          List<RetrievedChunk> retrieved) {
+        RequestOptions options = optionsFor(request);
+        TrimResult context;
+        List<ChatMessage> messages;
+        CacheKey cacheKey;
+        UpstreamRequest body;
         try {
-            log.info("Calling OpenAI STREAM API → model={}", model);
-
-            return webClient.post()
-                    .uri("/chat/completions")
-                    .header("Authorization", "Bearer " + openAiApiKey)
-                    .accept(MediaType.TEXT_EVENT_STREAM)
-                    .contentType(MediaType.APPLICATION_JSON)
-                    .body(BodyInserters.fromValue(buildRequest(request, true)))
-                    .retrieve()
-                    .bodyToFlux(String.class)
-                    .flatMap(this::extractTextFromSSE)
-                    .doOnNext(chunk -> log.debug("SSE token: {}", chunk))
-                    .onErrorResume(err -> {
-                        log.error("SSE stream error", err);
-                        return Flux.just("[[ERROR: " + err.getMessage() + "]]");
+            context = trimToContext(prepareMessages(request, retrieved), options);
+            entry.context(context.promptTokens(), context.droppedMessages());
+            messages = context.messages();
+            trackPrefix(request, tenant, messages);
+            cacheKey = cacheKeyFor(request, options, messages);
+            if (cacheKey == null) {
+                entry.cacheBypassed();
+            } else {
+                Optional<ChatResponse> cached = responseCache.get(cacheKey);
+                if (cached.isPresent()) {
+                    entry.cacheHit();
+                    return Flux.just(cached.get().getText());
+                }
+            }
+
+            body = buildRequest(messages, options, true);
+        } catch (PromptTooLongException | RequestTooLargeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            log.error("OpenAI streaming failed", ex);
+            return Flux.error(ex);
+        }
+
+        upstreamRouter.checkAvailable();
+        concurrencyLimiter.checkAdmission();
+        QuotaReservation reservation = tokenQuotaService.reserve(tenant, context.promptTokens(), options.maxTokens());
+        AtomicBoolean leader = new AtomicBoolean();
+
+        try {
+            return requestCoalescer
+                    .coalesceStream(body, () -> {
+                        leader.set(true);
+                        return settleStream(body, cacheKey, reservation, entry);
                     })
-                    .timeout(Duration.ofSeconds(120), Flux.just("[[STREAM TIMEOUT]]"));
+                    .doFinally(signal -> {
+                        if (!leader.get()) reservation.release();
+                    })
+                    .timeout(Duration.ofSeconds(120))
+                    .doOnSubscribe(subscription -> streamsInFlight.incrementAndGet())
+                    .doFinally(signal -> streamsInFlight.decrementAndGet());
 
         } catch (Exception ex) {
+            reservation.release();
             log.error("OpenAI streaming failed", ex);
-            return Flux.just("[[ERROR: " + ex.getMessage() + "]]");
+            return Flux.error(ex);
         }
     }
 
     /**
-     * Parse SSE chunks safely
+     * Upstream stream settled against its usage chunk. Lives as long as the shared upstream, so
+     * the leader's reservation is reconciled even if the leader itself disconnects early.
      */
-    private Flux<String> extractTextFromSSE(String raw) {
-        try {
-            List<String> outputs = new ArrayList<>();
-            String[] lines = raw.split("\n");
+    private Flux<String> settleStream(UpstreamRequest body, CacheKey cacheKey, QuotaReservation reservation,
+                                      ChatRequestLog entry) {
+        AtomicLong emitted = new AtomicLong();
+        AtomicLong firstTokenNanos = new AtomicLong();
+        AtomicLong streamedTokens = new AtomicLong();
+        return retryPolicy
+                .applyBeforeFirstValue(concurrencyLimiter.stream(Priority.INTERACTIVE,
+                        () -> upstreamRouter.stream(endpoint -> callStream(endpoint, body, cacheKey, usage -> {
+                            reservation.settle(usage.getTotalTokens());
+                            recordUsage(usage);
+                            entry.usage(usage);
+                            streamedTokens.set(usage.getCompletionTokens());
+                        }))))
+                .doOnNext(token -> {
+                    if (emitted.getAndIncrement() == 0) firstTokenNanos.set(System.nanoTime());
+                })
+                .doOnError(ex -> {
+                    if (emitted.get() == 0) reservation.release();
+                })
+                .doOnComplete(() -> recordThroughput(firstTokenNanos.get(),
+                        streamedTokens.get() > 0 ? streamedTokens.get() : emitted.get()))
+                .doFinally(signal -> reservation.settleAsReserved());
+    }
 
-            for (String line : lines) {
-                line = line.trim();
+    /**
+     * Decode speed of one stream; the first token is excluded as it mostly measures queueing
+     */
+    private void recordThroughput(long firstTokenNanos, long tokens) {
+        long elapsed = System.nanoTime() - firstTokenNanos;
+        if (firstTokenNanos == 0 || tokens < 2 || elapsed <= 0) return;
+        streamThroughput.record((tokens - 1) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    /**
+     * Single upstream SSE exchange, multicast to coalesced subscribers
+     */
+    private Flux<String> callStream(UpstreamEndpoint endpoint, UpstreamRequest body, CacheKey cacheKey,
+                                    Consumer<Usage> usageListener) {
+        log.debug("Calling OpenAI STREAM API → endpoint={}, model={}", endpoint.getName(), modelOf(endpoint));
 
-                if (line.equals("data: [DONE]") || line.equals("[DONE]")) continue;
-                if (line.startsWith("data:")) line = line.substring(5).trim();
-                if (line.isEmpty()) continue;
+        Flux<String> tokens = endpoint.getWebClient().post()
+                .uri("/chat/completions")
+                .header("Authorization", "Bearer " + endpoint.getApiKey())
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(requestWriter.forEndpoint(body, endpoint.getModel())))
+                .retrieve()
+                .bodyToFlux(DataBuffer.class)
+                .transform(buffers -> sseTokenDecoder.decode(buffers, usageListener));
 
-                JsonNode json = objectMapper.readTree(line);
-                JsonNode choices = json.path("choices");
+        return cacheKey != null ? cacheOnComplete(tokens, cacheKey) : tokens;
+    }
+
+    private String modelOf(UpstreamEndpoint endpoint) {
+        return endpoint.getModel() != null ? endpoint.getModel() : defaults.model();
+    }
 
-                if (choices.isArray()) {
-                    for (JsonNode c : choices) {
-                        JsonNode delta = c.path("delta");
-                        String token = delta.path("content").asText(null);
-                        if (token != null) {
-                            outputs.add(token);
+    /**
+     * Store the streamed answer once the upstream completes normally
+     */
+    private Flux<String> cacheOnComplete(Flux<String> tokens, CacheKey cacheKey) {
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            return tokens
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        String text = answer.toString().trim();
+                        if (!text.isEmpty()) {
+                            responseCache.put(cacheKey, new ChatResponse(UUID.randomUUID().toString(), text));
                         }
-                    }
-                }
-            }
-            return Flux.fromIterable(outputs);
-        } catch (Exception e) {
-            log.error("Failed to parse SSE line: {}", raw, e);
-            return Flux.empty();
-        }
+                    });
+        });
+    }
+
+    private CacheKey cacheKeyFor(ChatRequest request, RequestOptions options, List<ChatMessage> messages) {
+        if (!responseCache.isEnabled() || Boolean.TRUE.equals(request.getBypassCache())) return null;
+        return responseCache.keyFor(options.model(), options.temperature(), options.maxTokens(), messages);
     }
 
     /**
      * Convert frontend request into ChatGPT messages array
      */
-    private List<Map<String, String>> prepareMessages(ChatRequest request) {
-        List<Map<String, String>> messages = new ArrayList<>();
+    List<ChatMessage> prepareMessages(ChatRequest request) {
+        return prepareMessages(request, List.of());
+    }
+
+    /**
+     * Retrieved document chunks go into the latest user message, see {@link RetrievalService#withContext}
+     */
+    List<ChatMessage> prepareMessages(ChatRequest request, List<RetrievedChunk> retrieved) {
+        List<ChatMessage> history = request.getMessages();
+        boolean hasHistory = history != null && !history.isEmpty();
+        if (hasHistory && history.size() > maxMessages) {
+            throw new RequestTooLargeException("Conversation has " + history.size()
+                    + " messages, at most " + maxMessages + " are accepted");
+        }
+        List<ChatMessage> messages = new ArrayList<>(hasHistory ? history.size() + 1 : 2);
 
-        messages.add(Map.of(
-                "role", "system",
-                "content", "You are a helpful assistant. Provide concise answers."
-        ));
+        messages.add(request.getSystemPrompt() != null
+                ? new ChatMessage("system", request.getSystemPrompt())
+                : DEFAULT_SYSTEM_MESSAGE);
 
-        if (request.getMessages() != null && !request.getMessages().isEmpty()) {
-            for (ChatMessage m : request.getMessages()) {
-                messages.add(Map.of("role", m.getRole(), "content", m.getContent()));
-            }
+        if (hasHistory) {
+            messages.addAll(history);
         } else {
-            messages.add(Map.of("role", "user", "content", request.getPrompt()));
+            messages.add(new ChatMessage("user", request.getPrompt()));
         }
 
+        int last = messages.size() - 1;
+        if (!retrieved.isEmpty() && "user".equals(messages.get(last).getRole())) {
+            messages.set(last, RetrievalService.withContext(messages.get(last), retrieved));
+        }
         return messages;
     }
 }
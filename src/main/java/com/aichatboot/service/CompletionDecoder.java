@@ -0,0 +1,201 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatChoice;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.Usage;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.exception.UpstreamResponseTooLargeException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Incremental decoder for sync {@code /chat/completions} responses.
+ * <p>
+ * Network buffers go straight into Jackson's non-blocking parser and are released as soon as they
+ * are parsed, so the raw body is never held as a whole. Only the id, each choice's
+ * {@code message.content} and {@code finish_reason}, and {@code usage} are materialized; a body
+ * over {@code maxBytes} fails with {@link UpstreamResponseTooLargeException} once the limit is
+ * crossed, not after it was buffered.
+ */
+public class CompletionDecoder {
+
+    private final JsonFactory jsonFactory;
+    private final long maxBytes;
+
+    public CompletionDecoder(JsonFactory jsonFactory, long maxBytes) {
+        this.jsonFactory = jsonFactory;
+        this.maxBytes = maxBytes;
+    }
+
+    public Mono<ChatResponse> decode(Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            ResponseReader reader = new ResponseReader();
+            return body
+                    .doOnNext(reader::feed)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .then(Mono.fromCallable(reader::finish))
+                    .doFinally(signal -> reader.close());
+        });
+    }
+
+    /**
+     * Per-response parsing state; fields are recognised by their position in the parser's context
+     * chain, as tokens of one value may arrive in different buffers
+     */
+    final class ResponseReader {
+
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private long bytes;
+        private boolean complete;
+
+        private String id;
+        private final List<ChatChoice> choices = new ArrayList<>(1);
+        private Usage usage;
+        private String error;
+
+        ResponseReader() {
+            try {
+                this.parser = jsonFactory.createNonBlockingByteBufferParser();
+            } catch (IOException e) {
+                throw new IllegalStateException("Jackson cannot create a non-blocking parser", e);
+            }
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        void feed(DataBuffer buffer) {
+            try {
+                bytes += buffer.readableByteCount();
+                if (bytes > maxBytes) {
+                    throw new UpstreamResponseTooLargeException("Upstream response exceeds " + maxBytes + " bytes");
+                }
+                try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                    while (chunks.hasNext()) {
+                        feeder.feedInput(chunks.next());
+                        readAvailable();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UpstreamException("Malformed upstream response", e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        ChatResponse finish() {
+            if (bytes == 0) throw new UpstreamException("Empty response from upstream");
+            feeder.endOfInput();
+            try {
+                readAvailable();
+            } catch (JsonEOFException e) {
+                throw new UpstreamException("Truncated upstream response", e);
+            } catch (IOException e) {
+                throw new UpstreamException("Malformed upstream response", e);
+            }
+            if (error != null) throw new UpstreamException("Upstream error: " + error);
+            if (!complete) throw new UpstreamException("Truncated upstream response");
+
+            ChatChoice first = choices.isEmpty() ? null : choices.get(0);
+            ChatResponse response = new ChatResponse(
+                    id != null ? id : UUID.randomUUID().toString(),
+                    first != null && first.getText() != null ? first.getText().trim() : "");
+            if (first != null) response.setFinishReason(first.getFinishReason());
+            if (choices.size() > 1) response.setChoices(choices);
+            response.setUsage(usage);
+            return response;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+                // nothing is left to release
+            }
+        }
+
+        private void readAvailable() throws IOException {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                if (token == JsonToken.END_OBJECT && parser.getParsingContext().inRoot()) {
+                    complete = true;
+                } else if (token.isScalarValue()) {
+                    readValue(token);
+                }
+            }
+        }
+
+        private void readValue(JsonToken token) throws IOException {
+            JsonStreamContext object = parser.getParsingContext();
+            if (!object.inObject()) return;
+            String field = object.getCurrentName();
+            JsonStreamContext parent = object.getParent();
+
+            if (parent.inRoot()) {
+                if ("id".equals(field) && token == JsonToken.VALUE_STRING) id = parser.getText();
+            } else if (isTopLevel(object, "usage")) {
+                if (token == JsonToken.VALUE_NUMBER_INT) readUsage(field);
+            } else if (isTopLevel(object, "error")) {
+                if ("message".equals(field) && token == JsonToken.VALUE_STRING) error = parser.getText();
+            } else if (isChoice(object)) {
+                if ("finish_reason".equals(field) && token == JsonToken.VALUE_STRING) {
+                    choice(parent.getCurrentIndex()).setFinishReason(parser.getText());
+                }
+            } else if (isChoice(parent) && "message".equals(parent.getCurrentName())) {
+                if ("content".equals(field) && token == JsonToken.VALUE_STRING) {
+                    choice(parent.getParent().getCurrentIndex()).setText(parser.getText());
+                }
+            } else if (isTopLevel(parent, "usage") && "prompt_tokens_details".equals(parent.getCurrentName())) {
+                if ("cached_tokens".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    usage().setCachedTokens(parser.getLongValue());
+                }
+            }
+        }
+
+        private void readUsage(String field) throws IOException {
+            switch (field) {
+                case "prompt_tokens" -> usage().setPromptTokens(parser.getLongValue());
+                case "completion_tokens" -> usage().setCompletionTokens(parser.getLongValue());
+                case "total_tokens" -> usage().setTotalTokens(parser.getLongValue());
+                default -> { }
+            }
+        }
+
+        private Usage usage() {
+            if (usage == null) usage = new Usage();
+            return usage;
+        }
+
+        private ChatChoice choice(int index) {
+            while (choices.size() <= index) choices.add(new ChatChoice(choices.size(), null, null));
+            return choices.get(index);
+        }
+
+        /** The object value of the top-level field {@code name} */
+        private static boolean isTopLevel(JsonStreamContext context, String name) {
+            JsonStreamContext top = context.getParent();
+            return context.inObject() && top.inObject() && top.getParent().inRoot()
+                    && name.equals(top.getCurrentName());
+        }
+
+        /** An element of the top-level {@code choices} array */
+        private static boolean isChoice(JsonStreamContext context) {
+            JsonStreamContext array = context.getParent();
+            if (!context.inObject() || !array.inArray()) return false;
+            JsonStreamContext top = array.getParent();
+            return top.inObject() && top.getParent().inRoot() && "choices".equals(top.getCurrentName());
+        }
+    }
+}
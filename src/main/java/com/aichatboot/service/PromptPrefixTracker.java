@@ -0,0 +1,104 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.Usage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Tells whether each turn of a conversation starts with the previous turn's prompt unchanged,
+ * which is what lets the provider serve that part from its prompt cache, and records how much of
+ * each prompt the provider reports as cached.
+ * <p>
+ * Prompts are compared by a rolling hash over the messages, so no prompt text is kept; the last
+ * prompt hash of at most {@code maxConversations} conversations is remembered, least recently used
+ * first out.
+ */
+@Component
+public class PromptPrefixTracker {
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private record Prefix(int messages, long hash) {
+    }
+
+    private final int maxConversations;
+    private final Map<String, Prefix> lastPrompts;
+    private final Counter extended;
+    private final Counter changed;
+    private final Counter started;
+    private final DistributionSummary hitRatio;
+
+    public PromptPrefixTracker(MeterRegistry meterRegistry,
+                               @Value("${chat.prompt-cache.max-conversations:10000}") int maxConversations) {
+        this.maxConversations = maxConversations;
+        this.lastPrompts = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Prefix> eldest) {
+                return size() > PromptPrefixTracker.this.maxConversations;
+            }
+        };
+        this.extended = prefixCounter(meterRegistry, "extended");
+        this.changed = prefixCounter(meterRegistry, "changed");
+        this.started = prefixCounter(meterRegistry, "new");
+        this.hitRatio = DistributionSummary.builder("chat.prompt.cache.hit.ratio")
+                .description("Share of the prompt the provider served from its prompt cache, per upstream call")
+                .register(meterRegistry);
+    }
+
+    private static Counter prefixCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("chat.prompt.prefix")
+                .description("Conversation turns by whether they kept the previous prompt as their prefix")
+                .tag("outcome", outcome).register(meterRegistry);
+    }
+
+    /**
+     * Compare the prompt of a conversation turn with the one before it
+     *
+     * @return true when the previous prompt is an unchanged prefix of this one
+     */
+    public boolean observe(String conversationKey, List<ChatMessage> messages) {
+        long[] hashes = prefixHashes(messages);
+        if (hashes.length == 0) return false;
+        Prefix previous;
+        synchronized (lastPrompts) {
+            previous = lastPrompts.put(conversationKey, new Prefix(hashes.length, hashes[hashes.length - 1]));
+        }
+        if (previous == null) {
+            started.increment();
+            return false;
+        }
+        boolean kept = previous.messages() <= hashes.length && hashes[previous.messages() - 1] == previous.hash();
+        (kept ? extended : changed).increment();
+        return kept;
+    }
+
+    public void recordUsage(Usage usage) {
+        if (usage.getPromptTokens() > 0) {
+            hitRatio.record(Math.min(1.0, usage.getCachedTokens() / (double) usage.getPromptTokens()));
+        }
+    }
+
+    /**
+     * Hash of {@code messages[0..i]} for every {@code i}, in one pass over the prompt
+     */
+    static long[] prefixHashes(List<ChatMessage> messages) {
+        long[] hashes = new long[messages.size()];
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < hashes.length; i++) {
+            ChatMessage message = messages.get(i);
+            hash = (hash ^ Objects.hashCode(message.getRole())) * PRIME;
+            hash = (hash ^ Objects.hashCode(message.getContent())) * PRIME;
+            hashes[i] = hash;
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,123 @@
+package com.aichatboot.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight deduplication of identical in-flight upstream calls.
+ * <p>
+ * The first caller for a key (the leader) subscribes to the upstream; concurrent callers with the
+ * same key (followers) attach to the same exchange. Streams are replayed from the first token to
+ * late joiners and the upstream is only cancelled once every subscriber has gone away. Keys compare
+ * by value; ChatService uses the serialized upstream request.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<Object, Mono<?>> inFlightMonos = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, Flux<?>> inFlightFluxes = new ConcurrentHashMap<>();
+
+    private final Counter syncLeaders;
+    private final Counter syncFollowers;
+    private final Counter streamLeaders;
+    private final Counter streamFollowers;
+
+    public RequestCoalescer(@Value("${chat.coalescing.enabled:true}") boolean enabled,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.syncLeaders = counter(meterRegistry, "sync", "leader");
+        this.syncFollowers = counter(meterRegistry, "sync", "follower");
+        this.streamLeaders = counter(meterRegistry, "stream", "leader");
+        this.streamFollowers = counter(meterRegistry, "stream", "follower");
+
+        Gauge.builder("chat.coalescing.in.flight", this, c -> c.inFlightMonos.size() + c.inFlightFluxes.size())
+                .register(meterRegistry);
+        Gauge.builder("chat.coalescing.ratio", this, RequestCoalescer::coalescingRatio)
+                .description("Share of requests that joined an already running upstream call")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Share one upstream {@link Mono} between all concurrent callers with the same key.
+     * The shared call is not cancelled when an individual caller gives up.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> coalesce(Object key, Supplier<Mono<T>> upstream) {
+        if (!enabled) return upstream.get();
+
+        Mono<?> existing = inFlightMonos.get(key);
+        if (existing != null) {
+            syncFollowers.increment();
+            return (Mono<T>) existing;
+        }
+
+        AtomicReference<Mono<T>> self = new AtomicReference<>();
+        Mono<T> shared = Mono.defer(upstream)
+                .doFinally(signal -> inFlightMonos.remove(key, self.get()))
+                .share();
+        self.set(shared);
+
+        Mono<?> raced = inFlightMonos.putIfAbsent(key, shared);
+        if (raced != null) {
+            syncFollowers.increment();
+            return (Mono<T>) raced;
+        }
+        syncLeaders.increment();
+        return shared;
+    }
+
+    /**
+     * Multicast one upstream {@link Flux} to all concurrent callers with the same key.
+     * Late joiners receive the elements emitted so far; the upstream is cancelled only when the
+     * last subscriber cancels.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> coalesceStream(Object key, Supplier<Flux<T>> upstream) {
+        if (!enabled) return upstream.get();
+
+        Flux<?> existing = inFlightFluxes.get(key);
+        if (existing != null) {
+            streamFollowers.increment();
+            return (Flux<T>) existing;
+        }
+
+        AtomicReference<Flux<T>> self = new AtomicReference<>();
+        Flux<T> shared = Flux.defer(upstream)
+                .doFinally(signal -> inFlightFluxes.remove(key, self.get()))
+                .replay()
+                .refCount(1);
+        self.set(shared);
+
+        Flux<?> raced = inFlightFluxes.putIfAbsent(key, shared);
+        if (raced != null) {
+            streamFollowers.increment();
+            return (Flux<T>) raced;
+        }
+        streamLeaders.increment();
+        return shared;
+    }
+
+    public double coalescingRatio() {
+        double followers = syncFollowers.count() + streamFollowers.count();
+        double total = followers + syncLeaders.count() + streamLeaders.count();
+        return total == 0 ? 0.0 : followers / total;
+    }
+
+    private static Counter counter(MeterRegistry registry, String type, String role) {
+        return Counter.builder("chat.coalescing.requests")
+                .tag("type", type)
+                .tag("role", role)
+                .register(registry);
+    }
+}
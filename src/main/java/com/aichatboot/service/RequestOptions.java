@@ -0,0 +1,22 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatRequest;
+
+/**
+ * Model options of one upstream call: the configured defaults, or a copy with the request's overrides.
+ */
+record RequestOptions(String model, double temperature, int maxTokens) {
+
+    /**
+     * @return this instance when the request overrides nothing
+     */
+    RequestOptions with(ChatRequest request) {
+        if (request.getModel() == null && request.getTemperature() == null && request.getMaxTokens() == null) {
+            return this;
+        }
+        return new RequestOptions(
+                request.getModel() != null ? request.getModel() : model,
+                request.getTemperature() != null ? request.getTemperature() : temperature,
+                request.getMaxTokens() != null ? request.getMaxTokens() : maxTokens);
+    }
+}
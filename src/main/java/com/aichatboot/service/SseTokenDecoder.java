@@ -0,0 +1,352 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.Usage;
+import com.aichatboot.exception.UpstreamException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Incremental decoder for OpenAI chat completion SSE streams.
+ * <p>
+ * Network frames are appended to one reusable byte array per stream, so events split across
+ * frames are reassembled without building intermediate Strings. Each event's data is parsed in
+ * place with Jackson's streaming {@link JsonParser}; only {@code choices[].delta.content} values
+ * are materialized, plus the final {@code usage} object when the request asked for it
+ * ({@code stream_options.include_usage}). {@code [DONE]} completes the stream, an {@code error} payload fails it, and a
+ * malformed event is skipped on its own.
+ */
+public class SseTokenDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(SseTokenDecoder.class);
+
+    /** Marker appended after [DONE]; compared by identity, never emitted. */
+    private static final String DONE = new String("[DONE]");
+
+    private static final byte[] DATA_FIELD = "data".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT_FIELD = "event".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE_BYTES = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR_BYTES = "error".getBytes(StandardCharsets.US_ASCII);
+
+    private final JsonFactory jsonFactory;
+
+    public SseTokenDecoder(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    public Flux<String> decode(Flux<DataBuffer> body) {
+        return decode(body, null);
+    }
+
+    /**
+     * @param usageListener receives the token usage chunk, if the upstream sends one; may be null
+     */
+    @SuppressWarnings("StringEquality")
+    public Flux<String> decode(Flux<DataBuffer> body, Consumer<Usage> usageListener) {
+        return Flux.defer(() -> {
+            EventReader reader = new EventReader(usageListener);
+            return body
+                    .concatMapIterable(reader::feed)
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(reader.finish())))
+                    .takeWhile(token -> token != DONE);
+        });
+    }
+
+    /**
+     * Per-stream parsing state. Offsets are relative to {@code buf}; bytes before {@code eventStart}
+     * belong to events that were already dispatched and are dropped on compaction.
+     */
+    final class EventReader {
+
+        private final Consumer<Usage> usageListener;
+
+        private byte[] buf = new byte[4096];
+        private int limit;          // end of valid bytes
+        private int scan;           // next byte to look at for a line terminator
+        private int lineStart;      // start of the line being scanned
+        private int eventStart;     // start of the current, not yet dispatched event
+
+        private int dataStart = -1; // single data line kept in place
+        private int dataLength;
+        private byte[] joined;      // only used for multi-line data fields
+        private int joinedLength;
+        private boolean errorEvent;
+        private boolean skipLf;
+        private boolean done;
+
+        EventReader(Consumer<Usage> usageListener) {
+            this.usageListener = usageListener;
+        }
+
+        List<String> feed(DataBuffer buffer) {
+            try {
+                if (done) return Collections.emptyList();
+                append(buffer);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+            List<String> tokens = readLines(null);
+            compact();
+            return tokens == null ? Collections.emptyList() : tokens;
+        }
+
+        List<String> finish() {
+            if (done) return Collections.emptyList();
+            List<String> tokens = null;
+            if (lineStart < limit) {
+                tokens = processLine(lineStart, limit, null);
+            }
+            tokens = dispatch(tokens);
+            return tokens == null ? Collections.emptyList() : tokens;
+        }
+
+        private void append(DataBuffer buffer) {
+            int readable = buffer.readableByteCount();
+            if (limit + readable > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, limit + readable));
+            }
+            buffer.read(buf, limit, readable);
+            limit += readable;
+        }
+
+        private List<String> readLines(List<String> tokens) {
+            while (scan < limit && !done) {
+                byte b = buf[scan];
+                if (skipLf) {
+                    skipLf = false;
+                    if (b == '\n') {
+                        scan++;
+                        lineStart = scan;
+                        continue;
+                    }
+                }
+                if (b == '\n' || b == '\r') {
+                    tokens = processLine(lineStart, scan, tokens);
+                    skipLf = b == '\r';
+                    scan++;
+                    lineStart = scan;
+                } else {
+                    scan++;
+                }
+            }
+            return tokens;
+        }
+
+        private List<String> processLine(int start, int end, List<String> tokens) {
+            if (start == end) {
+                tokens = dispatch(tokens);
+                eventStart = end + 1;
+                return tokens;
+            }
+            if (buf[start] == ':') return tokens; // comment / keep-alive
+
+            int colon = indexOf((byte) ':', start, end);
+            int nameEnd = colon < 0 ? end : colon;
+            int valueStart = colon < 0 ? end : colon + 1;
+            if (valueStart < end && buf[valueStart] == ' ') valueStart++;
+
+            if (matches(DATA_FIELD, start, nameEnd)) {
+                addData(valueStart, end);
+            } else if (matches(EVENT_FIELD, start, nameEnd)) {
+                errorEvent = matches(ERROR_BYTES, valueStart, end);
+            }
+            return tokens;
+        }
+
+        private void addData(int start, int end) {
+            if (dataStart < 0 && joined == null) {
+                dataStart = start;
+                dataLength = end - start;
+                return;
+            }
+            int needed = (joined == null ? dataLength : joinedLength) + 1 + (end - start);
+            if (joined == null) {
+                joined = new byte[Math.max(256, needed)];
+                System.arraycopy(buf, dataStart, joined, 0, dataLength);
+                joinedLength = dataLength;
+            } else if (needed > joined.length) {
+                joined = Arrays.copyOf(joined, Math.max(joined.length * 2, needed));
+            }
+            joined[joinedLength++] = '\n';
+            System.arraycopy(buf, start, joined, joinedLength, end - start);
+            joinedLength += end - start;
+        }
+
+        private List<String> dispatch(List<String> tokens) {
+            byte[] data = joined != null ? joined : buf;
+            int offset = joined != null ? 0 : dataStart;
+            int length = joined != null ? joinedLength : dataLength;
+            boolean hasData = joined != null || dataStart >= 0;
+            boolean error = errorEvent;
+
+            dataStart = -1;
+            dataLength = 0;
+            joined = null;
+            joinedLength = 0;
+            errorEvent = false;
+
+            if (!hasData) return tokens;
+
+            if (rangeEquals(data, offset, length, DONE_BYTES)) {
+                done = true;
+                if (tokens == null) tokens = new ArrayList<>(1);
+                tokens.add(DONE);
+                return tokens;
+            }
+            if (error) {
+                throw new UpstreamException("Upstream stream error: "
+                        + new String(data, offset, length, StandardCharsets.UTF_8));
+            }
+
+            try {
+                tokens = parseChunk(data, offset, length, tokens);
+            } catch (IOException e) {
+                log.warn("Skipping malformed SSE event ({} bytes): {}", length, e.getMessage());
+            }
+            return tokens;
+        }
+
+        private List<String> parseChunk(byte[] data, int offset, int length, List<String> tokens) throws IOException {
+            try (JsonParser parser = jsonFactory.createParser(data, offset, length)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("SSE data is not a JSON object");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            tokens = readChoice(parser, tokens);
+                        }
+                    } else if ("error".equals(field) && value == JsonToken.START_OBJECT) {
+                        throw new UpstreamException("Upstream stream error: " + readErrorMessage(parser));
+                    } else if ("usage".equals(field) && value == JsonToken.START_OBJECT && usageListener != null) {
+                        usageListener.accept(readUsage(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            return tokens;
+        }
+
+        private List<String> readChoice(JsonParser parser, List<String> tokens) throws IOException {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("delta".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String deltaField = parser.currentName();
+                        JsonToken deltaValue = parser.nextToken();
+                        if ("content".equals(deltaField) && deltaValue == JsonToken.VALUE_STRING) {
+                            if (tokens == null) tokens = new ArrayList<>(4);
+                            tokens.add(parser.getText());
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return tokens;
+        }
+
+        private Usage readUsage(JsonParser parser) throws IOException {
+            Usage usage = new Usage();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NUMBER_INT) {
+                    switch (field) {
+                        case "prompt_tokens" -> usage.setPromptTokens(parser.getLongValue());
+                        case "completion_tokens" -> usage.setCompletionTokens(parser.getLongValue());
+                        case "total_tokens" -> usage.setTotalTokens(parser.getLongValue());
+                        default -> { }
+                    }
+                } else if ("prompt_tokens_details".equals(field) && value == JsonToken.START_OBJECT) {
+                    usage.setCachedTokens(readCachedTokens(parser));
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return usage;
+        }
+
+        private long readCachedTokens(JsonParser parser) throws IOException {
+            long cached = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("cached_tokens".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    cached = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return cached;
+        }
+
+        private String readErrorMessage(JsonParser parser) throws IOException {
+            String message = "unknown error";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("message".equals(field) && value == JsonToken.VALUE_STRING) {
+                    message = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return message;
+        }
+
+        /**
+         * Drop bytes of dispatched events so the buffer only holds the event in progress.
+         */
+        private void compact() {
+            int shift = Math.min(eventStart, lineStart);
+            if (shift == 0) return;
+            int remaining = limit - shift;
+            if (remaining > 0) System.arraycopy(buf, shift, buf, 0, remaining);
+            limit = remaining;
+            scan -= shift;
+            lineStart -= shift;
+            eventStart -= shift;
+            if (dataStart >= 0) dataStart -= shift;
+        }
+
+        private int indexOf(byte b, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (buf[i] == b) return i;
+            }
+            return -1;
+        }
+
+        private boolean matches(byte[] expected, int start, int end) {
+            return rangeEquals(buf, start, end - start, expected);
+        }
+
+        private boolean rangeEquals(byte[] data, int offset, int length, byte[] expected) {
+            if (length != expected.length) return false;
+            for (int i = 0; i < length; i++) {
+                if (data[offset + i] != expected[i]) return false;
+            }
+            return true;
+        }
+    }
+}
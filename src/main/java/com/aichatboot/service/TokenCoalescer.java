@@ -0,0 +1,89 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups streamed tokens into fewer, larger frames so each SSE event and flush carries several tokens.
+ * <p>
+ * The first token is passed through on its own so time-to-first-token is unchanged. After that a
+ * batch is cut when it holds {@code max-tokens} tokens or the window elapses, and is split into
+ * frames of at most {@code max-bytes}.
+ */
+@Component
+public class TokenCoalescer {
+
+    private final boolean enabledByDefault;
+    private final int maxTokens;
+    private final int maxBytes;
+    private final Duration window;
+
+    public TokenCoalescer(@Value("${chat.stream.coalescing.enabled-by-default:false}") boolean enabledByDefault,
+                          @Value("${chat.stream.coalescing.max-tokens:16}") int maxTokens,
+                          @Value("${chat.stream.coalescing.max-bytes:1024}") int maxBytes,
+                          @Value("${chat.stream.coalescing.window:30ms}") Duration window) {
+        this.enabledByDefault = enabledByDefault;
+        this.maxTokens = maxTokens;
+        this.maxBytes = maxBytes;
+        this.window = window;
+    }
+
+    /**
+     * The request's {@code coalesce} flag wins; otherwise the server default applies
+     */
+    public boolean appliesTo(ChatRequest request) {
+        Boolean requested = request.getCoalesce();
+        return requested != null ? requested : enabledByDefault;
+    }
+
+    public Flux<String> coalesce(Flux<String> tokens) {
+        if (maxTokens <= 1 || window.isZero()) return tokens;
+        return tokens.switchOnFirst((first, all) -> {
+            if (!first.hasValue()) return all;
+            return Flux.concat(
+                    Flux.just(first.get()),
+                    all.skip(1)
+                            .bufferTimeout(maxTokens, window, true)
+                            .concatMapIterable(this::frames));
+        });
+    }
+
+    /**
+     * Join one batch into frames of at most {@code maxBytes} UTF-8 bytes; a single larger token stays whole
+     */
+    List<String> frames(List<String> batch) {
+        List<String> frames = new ArrayList<>(1);
+        StringBuilder frame = new StringBuilder();
+        int frameBytes = 0;
+        for (String token : batch) {
+            int bytes = utf8Length(token);
+            if (frameBytes > 0 && frameBytes + bytes > maxBytes) {
+                frames.add(frame.toString());
+                frame.setLength(0);
+                frameBytes = 0;
+            }
+            frame.append(token);
+            frameBytes += bytes;
+        }
+        if (frameBytes > 0 || frames.isEmpty()) frames.add(frame.toString());
+        return frames;
+    }
+
+    private static int utf8Length(String s) {
+        int bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) bytes++;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isHighSurrogate(c)) { bytes += 4; i++; }
+            else bytes += 3;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,54 @@
+package com.aichatboot.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A serialized {@code /chat/completions} body. Equal bytes mean an identical upstream call, which
+ * is what request coalescing keys on.
+ */
+final class UpstreamRequest {
+
+    private final byte[] json;
+    private final int modelEnd;
+    private final boolean defaultModel;
+    private final int hash;
+
+    /**
+     * @param modelEnd     offset just past the leading {@code {"model":"..."}} value
+     * @param defaultModel whether the model is the configured one, which endpoints may swap for their own
+     */
+    UpstreamRequest(byte[] json, int modelEnd, boolean defaultModel) {
+        this.json = json;
+        this.modelEnd = modelEnd;
+        this.defaultModel = defaultModel;
+        this.hash = Arrays.hashCode(json);
+    }
+
+    byte[] json() {
+        return json;
+    }
+
+    int modelEnd() {
+        return modelEnd;
+    }
+
+    boolean defaultModel() {
+        return defaultModel;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof UpstreamRequest that && hash == that.hash && Arrays.equals(json, that.json);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatMessage;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes {@code /chat/completions} bodies without building an intermediate map.
+ * <p>
+ * The header for the configured options ({@code model}, {@code temperature}, {@code max_tokens},
+ * {@code stream}) is rendered to bytes once; per request only the messages go through Jackson's
+ * streaming generator, into a per-thread buffer reused across requests. A body then costs one
+ * exact-size byte array. Requests that override options get their header rendered on the spot.
+ */
+final class UpstreamRequestWriter {
+
+    /** Buffers that grew past this (huge prompts) are not kept around */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int MAX_MODEL_FIELDS = 64;
+
+    private static final byte[] MODEL_FIELD = ascii("{\"model\":");
+    private static final byte[] SYNC_TAIL = ascii("}");
+    // adds a final chunk with token usage, used to settle the tenant's quota
+    private static final byte[] STREAM_TAIL = ascii(",\"stream_options\":{\"include_usage\":true}}");
+
+    private final JsonFactory jsonFactory;
+    private final RequestOptions defaults;
+    private final byte[] syncHeader;
+    private final byte[] streamHeader;
+    private final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(4096));
+    private final ConcurrentHashMap<String, byte[]> modelFields = new ConcurrentHashMap<>();
+
+    UpstreamRequestWriter(JsonFactory jsonFactory, RequestOptions defaults) {
+        this.jsonFactory = jsonFactory;
+        this.defaults = defaults;
+        this.syncHeader = header(defaults, false);
+        this.streamHeader = header(defaults, true);
+    }
+
+    UpstreamRequest write(List<ChatMessage> messages, RequestOptions options, boolean stream) throws IOException {
+        byte[] header = options == defaults ? (stream ? streamHeader : syncHeader) : header(options, stream);
+        ByteArrayBuilder buffer = buffers.get();
+        boolean retain = true;
+        try {
+            buffer.write(header);
+            try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+                generator.writeStartArray();
+                for (ChatMessage message : messages) {
+                    generator.writeStartObject();
+                    generator.writeStringField("role", message.getRole());
+                    generator.writeStringField("content", message.getContent());
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            buffer.write(stream ? STREAM_TAIL : SYNC_TAIL);
+            retain = buffer.size() <= MAX_RETAINED_BUFFER;
+            return new UpstreamRequest(buffer.toByteArray(), modelFieldFor(options.model()).length,
+                    options.model().equals(defaults.model()));
+        } finally {
+            if (retain) {
+                buffer.reset();
+            } else {
+                buffers.remove();
+            }
+        }
+    }
+
+    /**
+     * The body to send to an endpoint pinned to {@code endpointModel}; only requests on the
+     * configured model are re-targeted, an explicit model from the client is kept
+     */
+    byte[] forEndpoint(UpstreamRequest request, String endpointModel) {
+        if (endpointModel == null || !request.defaultModel() || endpointModel.equals(defaults.model())) {
+            return request.json();
+        }
+        byte[] field = modelFieldFor(endpointModel);
+        byte[] json = request.json();
+        byte[] body = new byte[field.length + json.length - request.modelEnd()];
+        System.arraycopy(field, 0, body, 0, field.length);
+        System.arraycopy(json, request.modelEnd(), body, field.length, json.length - request.modelEnd());
+        return body;
+    }
+
+    /**
+     * {@code {"model":"name"} up to and including the closing quote; client-chosen names are only
+     * remembered up to {@code MAX_MODEL_FIELDS}
+     */
+    private byte[] modelFieldFor(String model) {
+        byte[] cached = modelFields.get(model);
+        if (cached != null) return cached;
+        byte[] quoted = JsonStringEncoder.getInstance().quoteAsUTF8(model);
+        byte[] field = new byte[MODEL_FIELD.length + quoted.length + 2];
+        System.arraycopy(MODEL_FIELD, 0, field, 0, MODEL_FIELD.length);
+        field[MODEL_FIELD.length] = '"';
+        System.arraycopy(quoted, 0, field, MODEL_FIELD.length + 1, quoted.length);
+        field[field.length - 1] = '"';
+        if (modelFields.size() < MAX_MODEL_FIELDS) modelFields.putIfAbsent(model, field);
+        return field;
+    }
+
+    private byte[] header(RequestOptions options, boolean stream) {
+        byte[] model = modelFieldFor(options.model());
+        byte[] rest = ascii(",\"temperature\":" + options.temperature()
+                + ",\"max_tokens\":" + options.maxTokens()
+                + ",\"stream\":" + stream
+                + ",\"messages\":");
+        byte[] header = new byte[model.length + rest.length];
+        System.arraycopy(model, 0, header, 0, model.length);
+        System.arraycopy(rest, 0, header, model.length, rest.length);
+        return header;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
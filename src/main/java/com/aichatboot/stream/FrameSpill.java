@@ -0,0 +1,85 @@
+package com.aichatboot.stream;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped overflow file for frames that fell out of a {@link StreamJournal}'s ring.
+ * <p>
+ * Frames arrive in offset order starting at 0 and are stored as length-prefixed UTF-8 records in
+ * a file of at most {@code maxBytes}; once that is full further frames are not kept. The page
+ * cache holds the data, so spilled frames cost no heap beyond a 4-byte index entry.
+ */
+final class FrameSpill implements AutoCloseable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int[] positions = new int[256];
+    private int count;
+    private boolean full;
+    private boolean closed;
+
+    FrameSpill(Path directory, String streamId, int maxBytes) throws IOException {
+        Files.createDirectories(directory);
+        this.file = directory.resolve(streamId + ".frames");
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+    }
+
+    /**
+     * @param offset must be the next frame in order, i.e. the number of frames appended so far
+     * @return false when the file is full (or closed) and the frame was not kept
+     */
+    synchronized boolean append(long offset, String frame) {
+        if (closed || full || offset != count) return false;
+        byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < Integer.BYTES + bytes.length) {
+            full = true;
+            return false;
+        }
+        if (count == positions.length) positions = Arrays.copyOf(positions, count * 2);
+        positions[count++] = buffer.position();
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+        return true;
+    }
+
+    /**
+     * @return the frame, or null when it was never spilled
+     */
+    synchronized String read(long offset) {
+        if (closed || offset < 0 || offset >= count) return null;
+        int position = positions[(int) offset];
+        int length = buffer.getInt(position);
+        byte[] bytes = new byte[length];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Close and delete the file; the mapping itself is released when the buffer is collected
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // best effort: the directory is scratch space
+        }
+    }
+}
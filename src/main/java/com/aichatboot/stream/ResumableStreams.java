@@ -0,0 +1,175 @@
+package com.aichatboot.stream;
+
+import com.aichatboot.exception.StreamNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of {@link StreamJournal}s, so a client whose SSE connection dropped can reconnect with
+ * {@code Last-Event-ID} and get the frames it missed instead of paying for the completion again.
+ * <p>
+ * Event ids are {@code <streamId>:<offset>}. Journals are kept in memory, at most
+ * {@code maxStreams}; finished ones are dropped {@code retention} after they end, or earlier when
+ * room is needed for a new stream. Running streams are never dropped for room: with
+ * {@code maxStreams} of them in flight, new streams are served without a journal.
+ */
+@Component
+public class ResumableStreams {
+
+    private final Logger log = LoggerFactory.getLogger(ResumableStreams.class);
+
+    private final boolean enabled;
+    private final int maxStreams;
+    private final int bufferFrames;
+    private final long retentionMillis;
+    private final Duration detachTimeout;
+    private final boolean spillEnabled;
+    private final Path spillDir;
+    private final int spillMaxBytes;
+    private final Scheduler scheduler;
+    private final LongSupplier clockMillis;
+
+    private final LinkedHashMap<String, StreamJournal> streams = new LinkedHashMap<>();
+
+    @Autowired
+    public ResumableStreams(@Value("${chat.stream.resume.enabled:true}") boolean enabled,
+                            @Value("${chat.stream.resume.max-streams:1000}") int maxStreams,
+                            @Value("${chat.stream.resume.buffer-frames:512}") int bufferFrames,
+                            @Value("${chat.stream.resume.retention:5m}") Duration retention,
+                            @Value("${chat.stream.resume.detach-timeout:30s}") Duration detachTimeout,
+                            @Value("${chat.stream.resume.spill.enabled:false}") boolean spillEnabled,
+                            @Value("${chat.stream.resume.spill.dir:${java.io.tmpdir}/aichatboot-streams}") String spillDir,
+                            @Value("${chat.stream.resume.spill.max-bytes:1MB}") DataSize spillMaxBytes) {
+        this(enabled, maxStreams, bufferFrames, retention, detachTimeout, spillEnabled, Path.of(spillDir),
+                (int) Math.min(Integer.MAX_VALUE, spillMaxBytes.toBytes()), Schedulers.parallel(),
+                System::currentTimeMillis);
+    }
+
+    ResumableStreams(boolean enabled, int maxStreams, int bufferFrames, Duration retention, Duration detachTimeout,
+                     boolean spillEnabled, Path spillDir, int spillMaxBytes, Scheduler scheduler,
+                     LongSupplier clockMillis) {
+        this.enabled = enabled;
+        this.maxStreams = Math.max(1, maxStreams);
+        this.bufferFrames = bufferFrames;
+        this.retentionMillis = retention.toMillis();
+        this.detachTimeout = detachTimeout;
+        this.spillEnabled = spillEnabled;
+        this.spillDir = spillDir;
+        this.spillMaxBytes = spillMaxBytes;
+        this.scheduler = scheduler;
+        this.clockMillis = clockMillis;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journal {@code frames} under a new stream id; the upstream is subscribed right away
+     *
+     * @return empty, with {@code frames} not subscribed, when {@code maxStreams} streams are still
+     *         running; the caller then streams without resume support
+     */
+    public Optional<StreamJournal> start(String owner, Flux<String> frames) {
+        String id = UUID.randomUUID().toString();
+        StreamJournal journal = new StreamJournal(id, owner, bufferFrames, openSpill(id), detachTimeout,
+                scheduler, clockMillis);
+        List<StreamJournal> dropped = new ArrayList<>();
+        boolean admitted;
+        synchronized (streams) {
+            evict(clockMillis.getAsLong());
+            // make room by forgetting the oldest finished streams early
+            Iterator<StreamJournal> oldest = streams.values().iterator();
+            while (streams.size() >= maxStreams && oldest.hasNext()) {
+                StreamJournal candidate = oldest.next();
+                if (candidate.isFinished()) {
+                    oldest.remove();
+                    dropped.add(candidate);
+                }
+            }
+            admitted = streams.size() < maxStreams;
+            if (admitted) streams.put(id, journal);
+        }
+        dropped.forEach(StreamJournal::close);
+        if (!admitted) {
+            log.debug("{} streams running, serving a new one without a journal", maxStreams);
+            journal.close();
+            return Optional.empty();
+        }
+        journal.attach(frames);
+        return Optional.of(journal);
+    }
+
+    /**
+     * @throws StreamNotFoundException when the id is unknown, expired or belongs to another tenant
+     */
+    public StreamJournal get(String id, String owner) {
+        StreamJournal journal;
+        synchronized (streams) {
+            evict(clockMillis.getAsLong());
+            journal = streams.get(id);
+        }
+        if (journal == null || !journal.getOwner().equals(owner)) throw new StreamNotFoundException(id);
+        return journal;
+    }
+
+    public static String eventId(String streamId, long offset) {
+        return streamId + ":" + offset;
+    }
+
+    /**
+     * First offset to send for a {@code Last-Event-ID}; a missing or foreign id starts over at 0
+     */
+    public static long resumeOffset(String streamId, String lastEventId) {
+        String prefix = streamId + ":";
+        if (lastEventId == null || !lastEventId.startsWith(prefix)) return 0;
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.substring(prefix.length())) + 1);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private FrameSpill openSpill(String id) {
+        if (!spillEnabled) return null;
+        try {
+            return new FrameSpill(spillDir, id, spillMaxBytes);
+        } catch (IOException e) {
+            log.warn("Cannot spill stream {} to {}, keeping the ring only: {}", id, spillDir, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Drop streams that finished more than {@code retention} ago; caller holds the lock
+     */
+    private void evict(long now) {
+        Iterator<Map.Entry<String, StreamJournal>> it = streams.entrySet().iterator();
+        while (it.hasNext()) {
+            StreamJournal journal = it.next().getValue();
+            if (journal.isFinished() && now - journal.finishedAt() > retentionMillis) {
+                it.remove();
+                journal.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.aichatboot.stream;
+
+import com.aichatboot.exception.StreamExpiredException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Frames of one streamed completion, numbered from 0, kept so a client can reconnect and continue
+ * where it left off.
+ * <p>
+ * The journal subscribes to the upstream itself, so a client dropping off does not cancel the
+ * completion. The last {@code capacity} frames stay in a ring; older ones move to an optional
+ * {@link FrameSpill}, else they are gone. Once no client has been reading for
+ * {@code detachTimeout} the upstream is cancelled, so abandoned answers are not paid for in full.
+ */
+public class StreamJournal {
+
+    public record Frame(long offset, String text) {
+    }
+
+    private final String id;
+    private final String owner;
+    private final String[] ring;
+    private final FrameSpill spill;
+    private final Duration detachTimeout;
+    private final Scheduler scheduler;
+    private final LongSupplier clockMillis;
+
+    private final List<Reader> readers = new ArrayList<>();
+    private long next;
+    private boolean finished;
+    private Throwable error;
+    private long finishedAt;
+    private Disposable upstream;
+    private Disposable detachTimer;
+
+    StreamJournal(String id, String owner, int capacity, FrameSpill spill, Duration detachTimeout,
+                  Scheduler scheduler, LongSupplier clockMillis) {
+        this.id = id;
+        this.owner = owner;
+        this.ring = new String[Math.max(1, capacity)];
+        this.spill = spill;
+        this.detachTimeout = detachTimeout;
+        this.scheduler = scheduler;
+        this.clockMillis = clockMillis;
+    }
+
+    public String getId() { return id; }
+    public String getOwner() { return owner; }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    synchronized long finishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Start consuming the upstream frames; until a reader attaches the detach timer runs
+     */
+    void attach(Flux<String> frames) {
+        synchronized (this) {
+            if (readers.isEmpty()) scheduleDetach();
+        }
+        Disposable subscription = frames.subscribe(
+                this::append,
+                this::finish,
+                () -> finish(null));
+        synchronized (this) {
+            if (!finished) {
+                upstream = subscription;
+                return;
+            }
+        }
+        subscription.dispose();
+    }
+
+    /**
+     * Journaled frames from {@code from} on, then live ones as they arrive; ends like the upstream did
+     */
+    public Flux<Frame> read(long from) {
+        return Flux.create(sink -> {
+            Reader reader = new Reader(sink, Math.max(0, from));
+            synchronized (this) {
+                readers.add(reader);
+                if (detachTimer != null) {
+                    detachTimer.dispose();
+                    detachTimer = null;
+                }
+            }
+            sink.onRequest(n -> reader.drain());
+            sink.onDispose(() -> detach(reader));
+            reader.drain();
+        });
+    }
+
+    /**
+     * Fail fast, before any response is committed, when a resume point is already gone
+     *
+     * @throws StreamExpiredException when {@code from} is neither in the ring nor spilled
+     */
+    public void checkAvailable(long from) {
+        frameAt(Math.max(0, from));
+    }
+
+    /**
+     * Stop the upstream and drop spilled frames; readers still attached get the stream expired
+     */
+    void close() {
+        Disposable running;
+        synchronized (this) {
+            running = upstream;
+            upstream = null;
+        }
+        if (running != null) running.dispose();
+        finish(new StreamExpiredException("Stream is no longer available"));
+        if (spill != null) spill.close();
+    }
+
+    private void append(String text) {
+        List<Reader> waiting;
+        synchronized (this) {
+            if (finished) return;
+            int slot = (int) (next % ring.length);
+            if (next >= ring.length && spill != null) spill.append(next - ring.length, ring[slot]);
+            ring[slot] = text;
+            next++;
+            waiting = new ArrayList<>(readers);
+        }
+        waiting.forEach(Reader::drain);
+    }
+
+    private void finish(Throwable failure) {
+        List<Reader> waiting;
+        synchronized (this) {
+            if (finished) return;
+            finished = true;
+            error = failure;
+            finishedAt = clockMillis.getAsLong();
+            upstream = null;
+            if (detachTimer != null) detachTimer.dispose();
+            waiting = new ArrayList<>(readers);
+        }
+        waiting.forEach(Reader::drain);
+    }
+
+    /**
+     * @return the frame, or null when it has not been produced yet
+     * @throws StreamExpiredException when it was dropped from the ring and not spilled
+     */
+    private synchronized Frame frameAt(long offset) {
+        if (offset >= next) return null;
+        if (offset >= next - ring.length) return new Frame(offset, ring[(int) (offset % ring.length)]);
+        String spilled = spill != null ? spill.read(offset) : null;
+        if (spilled == null) {
+            throw new StreamExpiredException("Frames before " + (next - ring.length) + " are no longer available");
+        }
+        return new Frame(offset, spilled);
+    }
+
+    private synchronized boolean endsAt(long offset) {
+        return finished && offset >= next;
+    }
+
+    private synchronized Throwable error() {
+        return error;
+    }
+
+    private void detach(Reader reader) {
+        synchronized (this) {
+            readers.remove(reader);
+            if (readers.isEmpty() && !finished) scheduleDetach();
+        }
+    }
+
+    /** Caller holds the lock */
+    private void scheduleDetach() {
+        if (detachTimer != null) detachTimer.dispose();
+        detachTimer = scheduler.schedule(this::abandonIfDetached, detachTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void abandonIfDetached() {
+        Disposable running;
+        synchronized (this) {
+            if (!readers.isEmpty() || finished) return;
+            running = upstream;
+        }
+        if (running != null) running.dispose();
+        finish(new StreamExpiredException("Stream was abandoned by its client"));
+    }
+
+    /** One subscriber's position; drained from whichever thread appended, requested or finished */
+    private final class Reader {
+        private final FluxSink<Frame> sink;
+        private final AtomicInteger wip = new AtomicInteger();
+        private long cursor;
+
+        Reader(FluxSink<Frame> sink, long from) {
+            this.sink = sink;
+            this.cursor = from;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            int missed = 1;
+            do {
+                while (!sink.isCancelled() && sink.requestedFromDownstream() > 0) {
+                    Frame frame;
+                    try {
+                        frame = frameAt(cursor);
+                    } catch (StreamExpiredException e) {
+                        sink.error(e);
+                        return;
+                    }
+                    if (frame == null) break;
+                    cursor++;
+                    sink.next(frame);
+                }
+                if (!sink.isCancelled() && endsAt(cursor)) {
+                    Throwable failure = error();
+                    if (failure != null) {
+                        sink.error(failure);
+                    } else {
+                        sink.complete();
+                    }
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
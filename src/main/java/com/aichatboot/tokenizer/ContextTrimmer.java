@@ -0,0 +1,101 @@
+package com.aichatboot.tokenizer;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.exception.PromptTooLongException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fits system prompt + history + {@code max_tokens} into the model's context window before
+ * dispatch, so over-long conversations are shortened locally instead of failing upstream.
+ * <p>
+ * Leading system messages and the latest message are always kept; the oldest turns in between are
+ * dropped first, and the kept history never opens on an assistant turn.
+ * <p>
+ * Turns are dropped in steps of {@code trimStepTokens}: the cut then stays put for the next turns
+ * of a growing conversation instead of moving every turn, so their prompts keep sharing a prefix
+ * the provider can serve from its prompt cache.
+ */
+@Component
+public class ContextTrimmer {
+
+    private final TokenCounter tokenCounter;
+    private final boolean enabled;
+    private final int windowTokens;
+    private final int maxPromptTokens;
+    private final int safetyMargin;
+    private final int trimStepTokens;
+
+    public ContextTrimmer(TokenCounter tokenCounter,
+                          @Value("${chat.context.trimming.enabled:true}") boolean enabled,
+                          @Value("${spring.ai.openai.chat.options.model:gpt-4.1-mini}") String model,
+                          @Value("${chat.context.window-tokens:0}") int windowTokens,
+                          @Value("${chat.context.max-prompt-tokens:0}") int maxPromptTokens,
+                          @Value("${chat.context.safety-margin-tokens:64}") int safetyMargin,
+                          @Value("${chat.context.trim-step-tokens:1024}") int trimStepTokens) {
+        this.tokenCounter = tokenCounter;
+        this.enabled = enabled;
+        this.windowTokens = windowTokens > 0 ? windowTokens : windowFor(model);
+        this.maxPromptTokens = maxPromptTokens;
+        this.safetyMargin = safetyMargin;
+        this.trimStepTokens = trimStepTokens;
+    }
+
+    /**
+     * Context window of known OpenAI model families; conservative 8k for anything else
+     */
+    static int windowFor(String model) {
+        String m = model.toLowerCase();
+        if (m.startsWith("gpt-4.1")) return 1_047_576;
+        if (m.startsWith("gpt-5")) return 400_000;
+        if (m.matches("o\\d.*")) return 200_000;
+        if (m.startsWith("gpt-4o") || m.startsWith("chatgpt-4o") || m.startsWith("gpt-4-turbo")
+                || m.startsWith("gpt-4.5")) return 128_000;
+        if (m.startsWith("gpt-3.5-turbo")) return 16_385;
+        return 8_192;
+    }
+
+    /**
+     * @throws PromptTooLongException when even the mandatory messages exceed the budget
+     */
+    public TrimResult trim(List<ChatMessage> messages, int maxTokens) {
+        int[] counts = new int[messages.size()];
+        int total = TokenCounter.REPLY_PRIMING_TOKENS;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = tokenCounter.countMessage(messages.get(i).getContent());
+            total += counts[i];
+        }
+
+        int budget = windowTokens - maxTokens - safetyMargin;
+        if (maxPromptTokens > 0) budget = Math.min(budget, maxPromptTokens);
+        if (!enabled || total <= budget) return new TrimResult(messages, total, 0);
+
+        int firstTurn = 0;
+        while (firstTurn < messages.size() - 1 && "system".equals(messages.get(firstTurn).getRole())) firstTurn++;
+        int last = messages.size() - 1;
+
+        // history only grows at the end, so a cut at a multiple of the step lands on the same turn
+        // until the overflow reaches the next step
+        int target = total - roundUp(total - budget, trimStepTokens);
+        int from = firstTurn;
+        while (from < last && (total > target || !"user".equals(messages.get(from).getRole()))) {
+            total -= counts[from++];
+        }
+        if (total > budget) {
+            throw new PromptTooLongException("Prompt needs " + total + " tokens but only " + budget
+                    + " fit the context window with max_tokens=" + maxTokens);
+        }
+
+        List<ChatMessage> kept = new ArrayList<>(firstTurn + last - from + 1);
+        kept.addAll(messages.subList(0, firstTurn));
+        kept.addAll(messages.subList(from, messages.size()));
+        return new TrimResult(kept, total, from - firstTurn);
+    }
+
+    static int roundUp(int tokens, int step) {
+        return step > 0 ? (tokens + step - 1) / step * step : tokens;
+    }
+}
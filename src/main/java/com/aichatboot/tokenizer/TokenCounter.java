@@ -0,0 +1,99 @@
+package com.aichatboot.tokenizer;
+
+import com.aichatboot.dto.ChatMessage;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local BPE token counts with the encoding of the configured model (o200k_base for the gpt-4o,
+ * gpt-4.1, gpt-5 and o-series families, cl100k_base otherwise).
+ * <p>
+ * Counts of longer texts are cached so a conversation's history is only tokenized once: two
+ * generations of maps, the older one dropped wholesale when the newer fills up, which gives LRU-like
+ * retention without per-lookup bookkeeping.
+ */
+@Component
+public class TokenCounter {
+
+    /** Chat format overhead per message (start, role, separator) and for priming the reply */
+    static final int TOKENS_PER_MESSAGE = 4;
+    static final int REPLY_PRIMING_TOKENS = 3;
+
+    private static final int MIN_CACHED_LENGTH = 64;
+
+    private final Encoding encoding;
+    private final int maxCachedEntries;
+
+    private volatile ConcurrentHashMap<String, Integer> current = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> previous = Map.of();
+
+    public TokenCounter(@Value("${spring.ai.openai.chat.options.model:gpt-4.1-mini}") String model,
+                        @Value("${chat.tokenizer.encoding:}") String encodingName,
+                        @Value("${chat.tokenizer.cache-entries:10000}") int maxCachedEntries) {
+        EncodingType type = encodingName == null || encodingName.isBlank()
+                ? encodingFor(model)
+                : EncodingType.fromName(encodingName).orElseThrow(
+                        () -> new IllegalArgumentException("Unknown chat.tokenizer.encoding: " + encodingName));
+        this.encoding = Encodings.newLazyEncodingRegistry().getEncoding(type);
+        this.maxCachedEntries = maxCachedEntries;
+    }
+
+    static EncodingType encodingFor(String model) {
+        String m = model.toLowerCase();
+        if (m.startsWith("gpt-4o") || m.startsWith("chatgpt-4o") || m.startsWith("gpt-4.1") || m.startsWith("gpt-4.5")
+                || m.startsWith("gpt-5") || m.matches("o\\d.*")) {
+            return EncodingType.O200K_BASE;
+        }
+        return EncodingType.CL100K_BASE;
+    }
+
+    public String encodingName() {
+        return encoding.getName();
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        if (text.length() < MIN_CACHED_LENGTH) return encoding.countTokens(text);
+
+        Integer tokens = current.get(text);
+        if (tokens != null) return tokens;
+        tokens = previous.get(text);
+        if (tokens == null) tokens = encoding.countTokens(text);
+
+        current.put(text, tokens);
+        if (current.size() > maxCachedEntries) rotate();
+        return tokens;
+    }
+
+    /** For one-off texts such as document chunks, which would only crowd the cache */
+    public int countUncached(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokens(text);
+    }
+
+    /** One chat message including its framing */
+    public int countMessage(String content) {
+        return TOKENS_PER_MESSAGE + count(content);
+    }
+
+    /** A whole prompt as sent to /chat/completions */
+    public int countPrompt(List<ChatMessage> messages) {
+        int tokens = REPLY_PRIMING_TOKENS;
+        for (ChatMessage message : messages) {
+            tokens += countMessage(message.getContent());
+        }
+        return tokens;
+    }
+
+    private synchronized void rotate() {
+        if (current.size() <= maxCachedEntries) return;
+        previous = current;
+        current = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,15 @@
+package com.aichatboot.tokenizer;
+
+import com.aichatboot.dto.ChatMessage;
+
+import java.util.List;
+
+/**
+ * Messages that fit the context window.
+ *
+ * @param messages        what will be sent, in order
+ * @param promptTokens    their token count including chat framing
+ * @param droppedMessages how many older messages were left out
+ */
+public record TrimResult(List<ChatMessage> messages, int promptTokens, int droppedMessages) {
+}
@@ -0,0 +1,383 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit on concurrent OpenAI calls.
+ * <p>
+ * The limit follows a gradient algorithm: while latency stays within {@code rttTolerance} of its
+ * long-term average and the limit is actually used, it grows by about sqrt(limit) per sample; when
+ * latency rises it shrinks proportionally. 429/503 answers and timeouts cut it multiplicatively
+ * (AIMD backoff), and a {@code Retry-After} from the upstream pauses dispatch until it expires.
+ * The timeout is applied here, to the call holding the permit ({@code callTimeout}: the whole exchange
+ * for sync calls, the first token for streams), so that a slow upstream counts as a drop; a timeout
+ * further out would only cancel the permit.
+ * <p>
+ * Calls over the limit wait in a bounded queue, interactive streams ahead of sync calls ahead of
+ * batch API items. Bulk calls may only use {@code bulkMaxShare} of the limit, so the rest is always
+ * free for chat traffic. A full queue or a wait longer than {@code maxQueueWait} fails fast with
+ * {@link UpstreamOverloadedException}.
+ * Streams report time-to-first-token as their latency sample, sync calls the full exchange.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double LONG_RTT_WINDOW = 600;
+    private static final double SMOOTHING = 0.2;
+    private static final Duration MAX_PAUSE = Duration.ofSeconds(60);
+
+    private final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final Duration maxQueueWait;
+    private final Duration callTimeout;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final double bulkMaxShare;
+    private final LongSupplier clock;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Waiter>[] queues;
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double longRttNanos;
+    private long pausedUntilNanos;
+
+    private final Counter queueFull;
+    private final Counter queueTimeout;
+    private final Counter drops;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(@Value("${upstream.limiter.enabled:true}") boolean enabled,
+                                      @Value("${upstream.limiter.initial-limit:50}") int initialLimit,
+                                      @Value("${upstream.limiter.min-limit:5}") int minLimit,
+                                      @Value("${upstream.limiter.max-limit:500}") int maxLimit,
+                                      @Value("${upstream.limiter.max-queue:200}") int maxQueue,
+                                      @Value("${upstream.limiter.max-queue-wait:10s}") Duration maxQueueWait,
+                                      @Value("${upstream.limiter.call-timeout:45s}") Duration callTimeout,
+                                      @Value("${upstream.limiter.rtt-tolerance:1.5}") double rttTolerance,
+                                      @Value("${upstream.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${upstream.limiter.bulk-max-share:0.5}") double bulkMaxShare,
+                                      MeterRegistry meterRegistry) {
+        this(enabled, initialLimit, minLimit, maxLimit, maxQueue, maxQueueWait, callTimeout, rttTolerance,
+                backoffRatio, bulkMaxShare, meterRegistry, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    AdaptiveConcurrencyLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                               Duration maxQueueWait, Duration callTimeout, double rttTolerance, double backoffRatio,
+                               double bulkMaxShare, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.enabled = enabled;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxQueueWait = maxQueueWait;
+        this.callTimeout = callTimeout;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.bulkMaxShare = bulkMaxShare;
+        this.clock = clock;
+        this.pausedUntilNanos = clock.getAsLong();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        this.queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+
+        this.queueFull = Counter.builder("chat.upstream.rejections").tag("reason", "queue_full").register(meterRegistry);
+        this.queueTimeout = Counter.builder("chat.upstream.rejections").tag("reason", "queue_timeout").register(meterRegistry);
+        this.drops = Counter.builder("chat.upstream.drops")
+                .description("Calls answered with 429/503 or timed out")
+                .register(meterRegistry);
+        Gauge.builder("chat.upstream.limit", this, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("chat.upstream.in.flight", this, AdaptiveConcurrencyLimiter::getInFlight).register(meterRegistry);
+        Gauge.builder("chat.upstream.queued", this, AdaptiveConcurrencyLimiter::getQueued).register(meterRegistry);
+    }
+
+    /**
+     * Fail fast, before any response is committed, when a new call would be rejected anyway.
+     *
+     * @throws UpstreamOverloadedException when the queue is full or the upstream asked us to back off
+     */
+    public void checkAdmission() {
+        if (!enabled) return;
+        synchronized (lock) {
+            long pausedNanos = pausedUntilNanos - clock.getAsLong();
+            if (pausedNanos > maxQueueWait.toNanos()) {
+                queueFull.increment();
+                throw new UpstreamOverloadedException("Upstream asked to back off", seconds(pausedNanos));
+            }
+            if (inFlight >= (int) limit && queued >= maxQueue) {
+                queueFull.increment();
+                throw new UpstreamOverloadedException("Upstream queue is full", seconds(maxQueueWait.toNanos()));
+            }
+        }
+    }
+
+    /**
+     * Run a single-response upstream call under the limit; it fails with a {@link TimeoutException}
+     * when not answered within {@code callTimeout}
+     */
+    public <T> Mono<T> run(Priority priority, Supplier<Mono<T>> call) {
+        if (!enabled) return Mono.defer(call);
+        return acquire(priority).flatMap(permit -> Mono.defer(call)
+                .timeout(callTimeout)
+                .doOnSuccess(value -> permit.sample())
+                .doOnError(permit::failed)
+                .doFinally(signal -> permit.release()));
+    }
+
+    /**
+     * Run a streaming upstream call under the limit; the permit is held until the stream ends. It fails
+     * with a {@link TimeoutException} when the first element takes longer than {@code callTimeout}.
+     */
+    public <T> Flux<T> stream(Priority priority, Supplier<Flux<T>> call) {
+        if (!enabled) return Flux.defer(call);
+        return acquire(priority).flatMapMany(permit -> Flux.defer(call)
+                .timeout(Mono.delay(callTimeout), value -> Mono.never())
+                .doOnNext(value -> permit.sample())
+                .doOnError(permit::failed)
+                .doFinally(signal -> permit.release()));
+    }
+
+    public double getLimit() {
+        synchronized (lock) {
+            return limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    private Mono<Permit> acquire(Priority priority) {
+        return Mono.<Permit>create(sink -> {
+                    Waiter waiter = new Waiter(sink);
+                    sink.onCancel(() -> cancel(waiter, priority));
+                    Permit granted = null;
+                    synchronized (lock) {
+                        if (!hasWaitersAtOrAbove(priority) && canDispatch(priority)) {
+                            granted = grant();
+                        } else if (queued >= maxQueue) {
+                            queueFull.increment();
+                            sink.error(new UpstreamOverloadedException("Upstream queue is full", seconds(maxQueueWait.toNanos())));
+                            return;
+                        } else {
+                            queues[priority.ordinal()].addLast(waiter);
+                            queued++;
+                        }
+                    }
+                    if (granted != null) sink.success(granted);
+                })
+                .timeout(maxQueueWait, Mono.defer(() -> {
+                    queueTimeout.increment();
+                    return Mono.error(new UpstreamOverloadedException(
+                            "Timed out waiting for upstream capacity", seconds(maxQueueWait.toNanos())));
+                }));
+    }
+
+    private void cancel(Waiter waiter, Priority priority) {
+        Permit orphan;
+        synchronized (lock) {
+            if (queues[priority.ordinal()].remove(waiter)) {
+                queued--;
+                return;
+            }
+            orphan = waiter.permit;
+        }
+        // granted concurrently with the cancellation: nobody will use it
+        if (orphan != null) orphan.release();
+    }
+
+    private boolean canDispatch(Priority priority) {
+        int cap = priority == Priority.BULK ? Math.max(1, (int) (limit * bulkMaxShare)) : (int) limit;
+        return inFlight < cap && clock.getAsLong() - pausedUntilNanos >= 0;
+    }
+
+    private boolean hasWaitersAtOrAbove(Priority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!queues[i].isEmpty()) return true;
+        }
+        return false;
+    }
+
+    private Permit grant() {
+        inFlight++;
+        return new Permit(clock.getAsLong());
+    }
+
+    /** Hand free slots to waiters, highest priority first */
+    private void drain() {
+        while (true) {
+            Waiter next = null;
+            synchronized (lock) {
+                if (queued == 0) return;
+                for (Priority priority : Priority.values()) {
+                    ArrayDeque<Waiter> queue = queues[priority.ordinal()];
+                    if (queue.isEmpty()) continue;
+                    // lower priorities never overtake a waiter that cannot be served yet
+                    if (!canDispatch(priority)) return;
+                    next = queue.pollFirst();
+                    break;
+                }
+                if (next == null) return;
+                queued--;
+                next.permit = grant();
+            }
+            next.sink.success(next.permit);
+        }
+    }
+
+    private void onSample(long rttNanos) {
+        synchronized (lock) {
+            longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / LONG_RTT_WINDOW;
+            // latency dropped for good (e.g. upstream recovered): let the baseline follow quickly
+            if (longRttNanos > 2.0 * rttNanos) longRttNanos *= 0.95;
+
+            double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+            // only probe upwards while the limit is actually in use
+            double headroom = inFlight >= limit / 2 ? Math.sqrt(limit) : 0;
+            double target = limit * gradient + headroom;
+            limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+        }
+        drain();
+    }
+
+    private void onDrop(Throwable error) {
+        drops.increment();
+        long pauseNanos = retryAfterNanos(error);
+        synchronized (lock) {
+            limit = clamp(limit * backoffRatio);
+            if (pauseNanos > 0) {
+                pausedUntilNanos = Math.max(pausedUntilNanos, clock.getAsLong() + pauseNanos);
+            }
+        }
+        if (pauseNanos > 0) {
+            log.warn("Upstream asked to back off for {} ms, limit now {}",
+                    TimeUnit.NANOSECONDS.toMillis(pauseNanos), (int) getLimit());
+            Schedulers.parallel().schedule(this::drain, pauseNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    /**
+     * 429/503 answers and timeouts, including Reactor Netty's response timeout, which arrives wrapped
+     * in a {@link WebClientRequestException}
+     */
+    static boolean isDrop(Throwable error) {
+        if (error instanceof TimeoutException) return true;
+        if (error instanceof WebClientRequestException) {
+            for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof TimeoutException
+                        || cause instanceof io.netty.handler.timeout.TimeoutException) return true;
+            }
+            return false;
+        }
+        if (error instanceof WebClientResponseException e) {
+            return e.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                    || e.getStatusCode().value() == HttpStatus.SERVICE_UNAVAILABLE.value();
+        }
+        return false;
+    }
+
+    /**
+     * Retry-After of a 429/503 answer (delta-seconds or HTTP-date), capped at one minute; 0 if absent
+     */
+    static long retryAfterNanos(Throwable error) {
+        if (!(error instanceof WebClientResponseException e)) return 0;
+        String value = e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (value == null || value.isBlank()) return 0;
+        try {
+            Duration delay = value.chars().allMatch(Character::isDigit)
+                    ? Duration.ofSeconds(Long.parseLong(value))
+                    : Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+            if (delay.isNegative()) return 0;
+            return (delay.compareTo(MAX_PAUSE) > 0 ? MAX_PAUSE : delay).toNanos();
+        } catch (RuntimeException ex) {
+            return 0;
+        }
+    }
+
+    private static long seconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private static final class Waiter {
+        final MonoSink<Permit> sink;
+        Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * One slot of the limit. The first response (or first token) is the latency sample; the slot is
+     * given back exactly once.
+     */
+    private final class Permit {
+        private final long startNanos;
+        private final AtomicBoolean sampled = new AtomicBoolean();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void sample() {
+            if (sampled.compareAndSet(false, true)) onSample(Math.max(1, clock.getAsLong() - startNanos));
+        }
+
+        void failed(Throwable error) {
+            if (isDrop(error) && sampled.compareAndSet(false, true)) onDrop(error);
+        }
+
+        void release() {
+            if (!released.compareAndSet(false, true)) return;
+            synchronized (lock) {
+                inFlight--;
+            }
+            drain();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.aichatboot.upstream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-endpoint breaker over the outcomes of the last {@code windowSize} calls.
+ * <p>
+ * Closed: calls pass; once at least {@code minimumCalls} are recorded and the failure share reaches
+ * {@code failureRateThreshold} it opens. Open: calls fail fast for {@code openDuration}. Half-open:
+ * up to {@code halfOpenCalls} probes pass; any failure re-opens it, all succeeding closes it.
+ * Only endpoint faults count as failures (see {@link UpstreamEndpoint#isEndpointFault}).
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Settings(boolean enabled, double failureRateThreshold, int minimumCalls, int windowSize,
+                           Duration openDuration, int halfOpenCalls) {
+
+        public static final Settings DISABLED = new Settings(false, 1.0, 1, 1, Duration.ZERO, 1);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final String name;
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    private final boolean[] failures;
+    private int recorded;
+    private int next;
+    private int failed;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesInFlight;
+    private int probesSucceeded;
+
+    public CircuitBreaker(String name, Settings settings) {
+        this(name, settings, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, Settings settings, LongSupplier clock) {
+        this.name = name;
+        this.settings = settings;
+        this.clock = clock;
+        this.failures = new boolean[Math.max(1, settings.windowSize())];
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Whether a call would currently be let through, without claiming a probe slot
+     */
+    public synchronized boolean allowsRequest() {
+        if (!settings.enabled()) return true;
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> openElapsed();
+            case HALF_OPEN -> probesInFlight < settings.halfOpenCalls();
+        };
+    }
+
+    /**
+     * Claim permission for one call; after the open period this moves to half-open
+     */
+    public synchronized boolean tryAcquire() {
+        if (!settings.enabled()) return true;
+        if (state == State.OPEN) {
+            if (!openElapsed()) return false;
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= settings.halfOpenCalls()) return false;
+            probesInFlight++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (!settings.enabled()) return;
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight > 0) probesInFlight--;
+            if (++probesSucceeded >= settings.halfOpenCalls()) {
+                log.info("Circuit for upstream '{}' closed", name);
+                reset(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (!settings.enabled()) return;
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= settings.minimumCalls()
+                    && failed >= settings.failureRateThreshold() * recorded) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * The call ended without saying anything about the endpoint (cancelled, or the request's own fault)
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probesInFlight > 0) probesInFlight--;
+    }
+
+    /**
+     * Seconds until an open breaker lets a probe through, at least 1
+     */
+    public synchronized long retryAfterSeconds() {
+        long remaining = state == State.OPEN
+                ? settings.openDuration().toNanos() - (clock.getAsLong() - openedAtNanos)
+                : 0;
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private boolean openElapsed() {
+        return clock.getAsLong() - openedAtNanos >= settings.openDuration().toNanos();
+    }
+
+    private void record(boolean failure) {
+        if (recorded == failures.length) {
+            if (failures[next]) failed--;
+        } else {
+            recorded++;
+        }
+        failures[next] = failure;
+        if (failure) failed++;
+        next = (next + 1) % failures.length;
+    }
+
+    private void open() {
+        log.warn("Circuit for upstream '{}' opened for {} ms", name, settings.openDuration().toMillis());
+        reset(State.OPEN);
+        openedAtNanos = clock.getAsLong();
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        recorded = 0;
+        next = 0;
+        failed = 0;
+        probesInFlight = 0;
+        probesSucceeded = 0;
+    }
+}
@@ -0,0 +1,13 @@
+package com.aichatboot.upstream;
+
+/**
+ * Queue priority for upstream calls; lower ordinal is served first.
+ */
+public enum Priority {
+    /** A user is watching tokens arrive (SSE) */
+    INTERACTIVE,
+    /** Sync completions, where a little extra queueing is not visible token by token */
+    BATCH,
+    /** Items of the batch API; never take more than a share of the limit (see AdaptiveConcurrencyLimiter) */
+    BULK
+}
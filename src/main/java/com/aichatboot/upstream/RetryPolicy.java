@@ -0,0 +1,111 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.exception.UpstreamOverloadedException;
+import com.aichatboot.exception.UpstreamResponseTooLargeException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Retries transient upstream failures with exponential backoff and equal jitter.
+ * <p>
+ * A {@code Retry-After} from a 429/503 answer raises the delay; when it asks for more than
+ * {@code maxBackoff} the error is passed on instead. Streams are only retried until their first
+ * token, so a client never sees a partial answer followed by a fresh one. Open circuits and local
+ * overload are never retried, they would only add load.
+ */
+@Component
+public class RetryPolicy {
+
+    private final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Counter retries;
+
+    public RetryPolicy(@Value("${upstream.retry.max-attempts:3}") int maxAttempts,
+                       @Value("${upstream.retry.initial-backoff:200ms}") Duration initialBackoff,
+                       @Value("${upstream.retry.max-backoff:5s}") Duration maxBackoff,
+                       MeterRegistry meterRegistry) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.retries = Counter.builder("chat.upstream.retries")
+                .description("Upstream calls repeated after a transient failure")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> apply(Mono<T> call) {
+        if (maxAttempts == 1) return call;
+        return call.retryWhen(retry());
+    }
+
+    /**
+     * Retry a stream as long as it has not emitted anything yet
+     */
+    public <T> Flux<T> applyBeforeFirstValue(Flux<T> call) {
+        if (maxAttempts == 1) return call;
+        return Flux.defer(() -> {
+            AtomicBoolean emitted = new AtomicBoolean();
+            return call.doOnNext(value -> emitted.set(true))
+                    .retryWhen(retry(emitted));
+        });
+    }
+
+    private Retry retry() {
+        return retry(new AtomicBoolean());
+    }
+
+    private Retry retry(AtomicBoolean emitted) {
+        return Retry.from(signals -> signals.concatMap(signal -> {
+            Throwable error = signal.failure();
+            if (emitted.get() || signal.totalRetries() >= maxAttempts - 1 || !isRetryable(error)) {
+                return Mono.error(error);
+            }
+            Duration delay = backoff(signal.totalRetries(), error);
+            if (delay == null) return Mono.error(error);
+            retries.increment();
+            log.debug("Retrying upstream call in {} ms after {}", delay.toMillis(), error.toString());
+            return Mono.delay(delay);
+        }));
+    }
+
+    /**
+     * @return the delay before retry number {@code retry + 1}, or null when the upstream asked for
+     * a longer pause than we are willing to wait
+     */
+    Duration backoff(long retry, Throwable error) {
+        long ceiling = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() << Math.min(retry, 20));
+        long half = ceiling / 2;
+        long delay = half + ThreadLocalRandom.current().nextLong(half + 1);
+        long retryAfter = AdaptiveConcurrencyLimiter.retryAfterNanos(error);
+        if (retryAfter > maxBackoff.toNanos()) return null;
+        return Duration.ofNanos(Math.max(delay, retryAfter));
+    }
+
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof UpstreamOverloadedException || error instanceof UpstreamResponseTooLargeException) return false;
+        if (error instanceof TimeoutException || error instanceof WebClientRequestException
+                || error instanceof UpstreamException) return true;
+        if (error instanceof WebClientResponseException e) {
+            int status = e.getStatusCode().value();
+            return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+        }
+        return false;
+    }
+}
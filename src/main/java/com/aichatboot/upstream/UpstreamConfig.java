@@ -0,0 +1,93 @@
+package com.aichatboot.upstream;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class UpstreamConfig {
+
+    /**
+     * Comma-separated endpoint names, each configured under upstream.endpoint.&lt;name&gt;.*;
+     * empty = the single openai.api.base-url endpoint
+     */
+    @Value("${upstream.endpoints:}")
+    private String endpointNames;
+
+    @Value("${spring.ai.openai.api-key:}")
+    private String defaultApiKey;
+
+    /** weighted | least-latency */
+    @Value("${upstream.routing.strategy:weighted}")
+    private String strategy;
+
+    @Value("${upstream.hedging.enabled:false}")
+    private boolean hedgingEnabled;
+
+    @Value("${upstream.hedging.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${upstream.hedging.min-delay:50ms}")
+    private Duration hedgeMinDelay;
+
+    @Value("${upstream.hedging.initial-delay:2s}")
+    private Duration hedgeInitialDelay;
+
+    @Value("${upstream.hedging.max-ratio:0.1}")
+    private double hedgeMaxRatio;
+
+    @Value("${upstream.circuit-breaker.enabled:true}")
+    private boolean breakerEnabled;
+
+    /** Share of failed calls in the window (0-1) that opens the circuit */
+    @Value("${upstream.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRate;
+
+    @Value("${upstream.circuit-breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    @Value("${upstream.circuit-breaker.window:20}")
+    private int breakerWindow;
+
+    @Value("${upstream.circuit-breaker.open-duration:30s}")
+    private Duration breakerOpenDuration;
+
+    @Value("${upstream.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    @Bean
+    public UpstreamRouter upstreamRouter(WebClient openAiWebClient, Environment environment, MeterRegistry meterRegistry) {
+        CircuitBreaker.Settings breaker = new CircuitBreaker.Settings(breakerEnabled, breakerFailureRate,
+                breakerMinimumCalls, breakerWindow, breakerOpenDuration, breakerHalfOpenCalls);
+        List<UpstreamEndpoint> endpoints = new ArrayList<>();
+        for (String name : endpointNames.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) continue;
+            String prefix = "upstream.endpoint." + name + ".";
+            String baseUrl = environment.getProperty(prefix + "base-url");
+            if (baseUrl == null || baseUrl.isBlank()) {
+                throw new IllegalArgumentException("Missing " + prefix + "base-url");
+            }
+            // mutate() keeps the shared connection pool, codecs and timeouts
+            WebClient webClient = openAiWebClient.mutate().baseUrl(baseUrl).build();
+            endpoints.add(new UpstreamEndpoint(name, webClient,
+                    environment.getProperty(prefix + "model"),
+                    environment.getProperty(prefix + "api-key", defaultApiKey),
+                    environment.getProperty(prefix + "weight", Double.class, 1.0),
+                    new CircuitBreaker(name, breaker)));
+        }
+        if (endpoints.isEmpty()) {
+            endpoints.add(new UpstreamEndpoint("default", openAiWebClient, null, defaultApiKey, 1,
+                    new CircuitBreaker("default", breaker)));
+        }
+        return new UpstreamRouter(endpoints, UpstreamRouter.parseStrategy(strategy), hedgingEnabled,
+                hedgePercentile, hedgeMinDelay, hedgeInitialDelay, hedgeMaxRatio, meterRegistry);
+    }
+}
@@ -0,0 +1,150 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.UpstreamException;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One OpenAI-compatible deployment (region, account or model) and its live health: latency of
+ * recent sync calls and streams (time-to-first-token), an error rate, and calls in flight.
+ */
+public class UpstreamEndpoint {
+
+    private static final double ERROR_SMOOTHING = 0.1;
+
+    private final String name;
+    private final WebClient webClient;
+    private final String model;
+    private final String apiKey;
+    private final double weight;
+    private final CircuitBreaker circuitBreaker;
+
+    private final LatencyStats syncLatency = new LatencyStats();
+    private final LatencyStats streamLatency = new LatencyStats();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private double errorRate;
+
+    /**
+     * @param model model to request from this endpoint, or null for the service default
+     */
+    public UpstreamEndpoint(String name, WebClient webClient, String model, String apiKey, double weight) {
+        this(name, webClient, model, apiKey, weight, new CircuitBreaker(name, CircuitBreaker.Settings.DISABLED));
+    }
+
+    public UpstreamEndpoint(String name, WebClient webClient, String model, String apiKey, double weight,
+                            CircuitBreaker circuitBreaker) {
+        this.name = name;
+        this.webClient = webClient;
+        this.model = model;
+        this.apiKey = apiKey;
+        this.weight = weight;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public String getName() { return name; }
+    public WebClient getWebClient() { return webClient; }
+    public String getModel() { return model; }
+    public String getApiKey() { return apiKey; }
+    public double getWeight() { return weight; }
+    public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    LatencyStats latency(boolean stream) {
+        return stream ? streamLatency : syncLatency;
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    void end() {
+        inFlight.decrementAndGet();
+    }
+
+    void recordSuccess(boolean stream, long latencyNanos) {
+        latency(stream).record(latencyNanos);
+        synchronized (this) {
+            errorRate -= ERROR_SMOOTHING * errorRate;
+        }
+    }
+
+    void recordFailure() {
+        synchronized (this) {
+            errorRate += ERROR_SMOOTHING * (1 - errorRate);
+        }
+    }
+
+    /**
+     * Expected cost of sending one more call here; lower is better. Endpoints without samples
+     * score as 1 ms so they get tried.
+     */
+    double score(boolean stream) {
+        double latency = latency(stream).ewmaNanos() + 1_000_000;
+        double errors = Math.min(getErrorRate(), 0.99);
+        return latency * (inFlight.get() + 1) / (1 - errors);
+    }
+
+    /**
+     * Failures that say something about the endpoint rather than the request: timeouts, connection
+     * errors, 429 and 5xx answers and in-stream error payloads.
+     */
+    static boolean isEndpointFault(Throwable error) {
+        if (error instanceof TimeoutException || error instanceof WebClientRequestException
+                || error instanceof UpstreamException) return true;
+        if (error instanceof WebClientResponseException e) {
+            int status = e.getStatusCode().value();
+            return status == 429 || status >= 500;
+        }
+        return false;
+    }
+
+    /** Smoothed latency plus a window of recent samples for percentiles */
+    static final class LatencyStats {
+        private static final int WINDOW = 128;
+        private static final double SMOOTHING = 0.2;
+
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+        private double ewmaNanos;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+            ewmaNanos = ewmaNanos == 0 ? nanos : ewmaNanos + SMOOTHING * (nanos - ewmaNanos);
+        }
+
+        synchronized double ewmaNanos() {
+            return ewmaNanos;
+        }
+
+        synchronized int count() {
+            return count;
+        }
+
+        /**
+         * @param percentile 0-1
+         * @return the percentile of the recent window, or 0 when empty
+         */
+        synchronized long percentileNanos(double percentile) {
+            if (count == 0) return 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
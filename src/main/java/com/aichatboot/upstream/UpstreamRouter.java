@@ -0,0 +1,392 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.CircuitOpenException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads OpenAI calls over several compatible upstreams, scored from live latency and errors.
+ * <p>
+ * {@code weighted} picks at random by configured weight, discounted by each endpoint's recent error
+ * rate; {@code least-latency} picks the lowest latency x in-flight score, with a little random
+ * exploration so a once-slow endpoint gets re-measured.
+ * <p>
+ * With hedging on, a call that has not answered (sync) or produced its first token (stream) after
+ * the endpoint's recent p95 is duplicated on another endpoint; whichever produces a value first wins
+ * and the other is cancelled. Hedges draw from a budget of {@code maxHedgeRatio} of all calls so an
+ * overall slowdown cannot double the load.
+ * <p>
+ * Endpoints whose {@link CircuitBreaker} is open are skipped; with all of them open calls fail fast
+ * with {@link CircuitOpenException}.
+ * <p>
+ * Every attempt is timed per endpoint: {@code chat.upstream.latency} (full exchange or stream),
+ * {@code chat.upstream.ttft} (time to first token) and {@code chat.upstream.inter.token} (gap
+ * between tokens). Attempts cancelled by a winning hedge or a leaving client are not recorded.
+ */
+public class UpstreamRouter {
+
+    public enum Strategy { WEIGHTED, LEAST_LATENCY }
+
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final double EXPLORE_PROBABILITY = 0.02;
+    private static final double MAX_HEDGE_CREDITS = 10;
+
+    private final List<UpstreamEndpoint> endpoints;
+    private final Strategy strategy;
+    private final boolean hedgingEnabled;
+    private final double hedgePercentile;
+    private final Duration hedgeMinDelay;
+    private final Duration hedgeInitialDelay;
+    private final double maxHedgeRatio;
+    private final LongSupplier clock;
+
+    private double hedgeCredits = 1;
+
+    private final Counter hedges;
+    private final Counter hedgeWins;
+    private final Map<UpstreamEndpoint, EndpointMeters> meters = new IdentityHashMap<>();
+
+    public UpstreamRouter(List<UpstreamEndpoint> endpoints, Strategy strategy, boolean hedgingEnabled,
+                          double hedgePercentile, Duration hedgeMinDelay, Duration hedgeInitialDelay,
+                          double maxHedgeRatio, MeterRegistry meterRegistry) {
+        this(endpoints, strategy, hedgingEnabled, hedgePercentile, hedgeMinDelay, hedgeInitialDelay,
+                maxHedgeRatio, meterRegistry, System::nanoTime);
+    }
+
+    UpstreamRouter(List<UpstreamEndpoint> endpoints, Strategy strategy, boolean hedgingEnabled,
+                   double hedgePercentile, Duration hedgeMinDelay, Duration hedgeInitialDelay,
+                   double maxHedgeRatio, MeterRegistry meterRegistry, LongSupplier clock) {
+        if (endpoints.isEmpty()) throw new IllegalArgumentException("At least one upstream endpoint is required");
+        this.endpoints = List.copyOf(endpoints);
+        this.strategy = strategy;
+        this.hedgingEnabled = hedgingEnabled;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
+        this.hedgeInitialDelay = hedgeInitialDelay;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.clock = clock;
+
+        this.hedges = Counter.builder("chat.upstream.hedges").register(meterRegistry);
+        this.hedgeWins = Counter.builder("chat.upstream.hedge.wins")
+                .description("Hedged attempts that answered before the original")
+                .register(meterRegistry);
+        for (UpstreamEndpoint endpoint : this.endpoints) {
+            Gauge.builder("chat.upstream.endpoint.in.flight", endpoint, UpstreamEndpoint::getInFlight)
+                    .tag("endpoint", endpoint.getName()).register(meterRegistry);
+            Gauge.builder("chat.upstream.endpoint.error.rate", endpoint, UpstreamEndpoint::getErrorRate)
+                    .tag("endpoint", endpoint.getName()).register(meterRegistry);
+            Gauge.builder("chat.upstream.endpoint.latency", endpoint, e -> e.latency(false).ewmaNanos() / 1e6)
+                    .tag("endpoint", endpoint.getName()).baseUnit("milliseconds").register(meterRegistry);
+            Gauge.builder("chat.upstream.circuit.state", endpoint.getCircuitBreaker(), b -> b.getState().ordinal())
+                    .description("0 = closed, 1 = open, 2 = half-open")
+                    .tag("endpoint", endpoint.getName()).register(meterRegistry);
+            meters.put(endpoint, new EndpointMeters(endpoint.getName(), meterRegistry));
+        }
+    }
+
+    /**
+     * A router over one endpoint, without hedging
+     */
+    public static UpstreamRouter single(WebClient webClient, String apiKey, MeterRegistry meterRegistry) {
+        return new UpstreamRouter(List.of(new UpstreamEndpoint("default", webClient, null, apiKey, 1)),
+                Strategy.WEIGHTED, false, 0.95, Duration.ZERO, Duration.ZERO, 0, meterRegistry);
+    }
+
+    public static Strategy parseStrategy(String value) {
+        return Strategy.valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    public List<UpstreamEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Fail fast, before any response is committed, when every endpoint's breaker is open.
+     *
+     * @throws CircuitOpenException with the time until the first endpoint may be probed again
+     */
+    public void checkAvailable() {
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (endpoint.getCircuitBreaker().allowsRequest()) return;
+        }
+        throw allOpen();
+    }
+
+    /**
+     * Single-response call, hedged on the endpoint's full-response latency
+     */
+    public <T> Mono<T> exchange(Function<UpstreamEndpoint, Mono<T>> call) {
+        return Mono.defer(() -> {
+            UpstreamEndpoint primary = select(null, false);
+            if (!hedgingEnabled || !earnHedgeCredit()) return attempt(primary, call, false);
+
+            Sinks.One<Boolean> primaryDone = Sinks.one();
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            Mono<T> first = attempt(primary, call, false)
+                    .doOnSuccess(value -> {
+                        if (value == null) primaryDone.tryEmitValue(true);
+                    })
+                    .doOnError(error -> {
+                        primaryError.set(error);
+                        primaryDone.tryEmitValue(true);
+                    });
+            Mono<T> second = Mono.delay(hedgeDelay(primary, false))
+                    .takeUntilOther(primaryDone.asMono())
+                    .filter(tick -> spendHedgeCredit())
+                    .flatMap(tick -> {
+                        hedges.increment();
+                        return attempt(select(primary, false), call, false).doOnNext(value -> hedgeWins.increment());
+                    });
+
+            return Mono.firstWithValue(first, second)
+                    .onErrorResume(NoSuchElementException.class, e ->
+                            primaryError.get() != null ? Mono.error(primaryError.get()) : Mono.empty());
+        });
+    }
+
+    /**
+     * Streaming call, hedged on the endpoint's time to first token
+     */
+    public <T> Flux<T> stream(Function<UpstreamEndpoint, Flux<T>> call) {
+        return Flux.defer(() -> {
+            UpstreamEndpoint primary = select(null, true);
+            if (!hedgingEnabled || !earnHedgeCredit()) return attemptStream(primary, call);
+
+            Sinks.One<Boolean> primaryDone = Sinks.one();
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            Flux<T> first = attemptStream(primary, call)
+                    .doOnComplete(() -> primaryDone.tryEmitValue(true))
+                    .doOnError(error -> {
+                        primaryError.set(error);
+                        primaryDone.tryEmitValue(true);
+                    });
+            Flux<T> second = Mono.delay(hedgeDelay(primary, true))
+                    .takeUntilOther(primaryDone.asMono())
+                    .filter(tick -> spendHedgeCredit())
+                    .flatMapMany(tick -> {
+                        hedges.increment();
+                        AtomicBoolean won = new AtomicBoolean();
+                        return attemptStream(select(primary, true), call).doOnNext(value -> {
+                            if (won.compareAndSet(false, true)) hedgeWins.increment();
+                        });
+                    });
+
+            // once a source has emitted, its later errors pass straight through
+            return Flux.firstWithValue(first, second)
+                    .onErrorResume(NoSuchElementException.class, e ->
+                            primaryError.get() != null ? Flux.error(primaryError.get()) : Flux.empty());
+        });
+    }
+
+    /**
+     * @param exclude endpoint to avoid (the one being hedged), if another exists
+     */
+    UpstreamEndpoint select(UpstreamEndpoint exclude, boolean stream) {
+        List<UpstreamEndpoint> candidates = new ArrayList<>(endpoints.size());
+        for (UpstreamEndpoint endpoint : endpoints) {
+            if (endpoint != exclude && endpoint.getCircuitBreaker().allowsRequest()) candidates.add(endpoint);
+        }
+        if (candidates.isEmpty()) {
+            // nothing else to hedge onto: a second connection to the same endpoint still helps the tail
+            if (exclude != null && exclude.getCircuitBreaker().allowsRequest()) return exclude;
+            throw allOpen();
+        }
+        if (candidates.size() == 1) return candidates.get(0);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (strategy == Strategy.LEAST_LATENCY) {
+            if (random.nextDouble() < EXPLORE_PROBABILITY) {
+                return candidates.get(random.nextInt(candidates.size()));
+            }
+            UpstreamEndpoint best = null;
+            double bestScore = Double.MAX_VALUE;
+            for (UpstreamEndpoint endpoint : candidates) {
+                double score = endpoint.score(stream);
+                if (score < bestScore) {
+                    best = endpoint;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+
+        double total = 0;
+        double[] weights = new double[candidates.size()];
+        for (int i = 0; i < weights.length; i++) {
+            UpstreamEndpoint endpoint = candidates.get(i);
+            double health = 1 - Math.min(endpoint.getErrorRate(), 0.99);
+            weights[i] = endpoint.getWeight() * health * health;
+            total += weights[i];
+        }
+        double point = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            point -= weights[i];
+            if (weights[i] > 0 && point < 0) return candidates.get(i);
+        }
+        return candidates.get(0);
+    }
+
+    private CircuitOpenException allOpen() {
+        long retryAfter = Long.MAX_VALUE;
+        for (UpstreamEndpoint endpoint : endpoints) {
+            retryAfter = Math.min(retryAfter, endpoint.getCircuitBreaker().retryAfterSeconds());
+        }
+        return new CircuitOpenException("All upstream endpoints are failing", retryAfter);
+    }
+
+    /**
+     * Recent p{@code hedgePercentile} of the endpoint, or the initial delay until enough samples exist
+     */
+    Duration hedgeDelay(UpstreamEndpoint endpoint, boolean stream) {
+        UpstreamEndpoint.LatencyStats stats = endpoint.latency(stream);
+        if (stats.count() < MIN_HEDGE_SAMPLES) return hedgeInitialDelay;
+        Duration p = Duration.ofNanos(stats.percentileNanos(hedgePercentile));
+        return p.compareTo(hedgeMinDelay) < 0 ? hedgeMinDelay : p;
+    }
+
+    private synchronized boolean earnHedgeCredit() {
+        hedgeCredits = Math.min(MAX_HEDGE_CREDITS, hedgeCredits + maxHedgeRatio);
+        return hedgeCredits >= 1;
+    }
+
+    private synchronized boolean spendHedgeCredit() {
+        if (hedgeCredits < 1) return false;
+        hedgeCredits -= 1;
+        return true;
+    }
+
+    private <T> Mono<T> attempt(UpstreamEndpoint endpoint, Function<UpstreamEndpoint, Mono<T>> call, boolean stream) {
+        return Mono.defer(() -> {
+            CircuitBreaker breaker = endpoint.getCircuitBreaker();
+            if (!breaker.tryAcquire()) {
+                return Mono.error(new CircuitOpenException("Circuit open for upstream " + endpoint.getName(),
+                        breaker.retryAfterSeconds()));
+            }
+            EndpointMeters timers = meters.get(endpoint);
+            long start = clock.getAsLong();
+            AtomicBoolean settled = new AtomicBoolean();
+            endpoint.begin();
+            return call.apply(endpoint)
+                    .doOnSuccess(value -> {
+                        settled.set(true);
+                        long elapsed = clock.getAsLong() - start;
+                        if (value != null) endpoint.recordSuccess(stream, elapsed);
+                        breaker.onSuccess();
+                        timers.syncSuccess.record(elapsed, TimeUnit.NANOSECONDS);
+                    })
+                    .doOnError(error -> {
+                        settled.set(true);
+                        recordError(endpoint, error);
+                        timers.syncError.record(clock.getAsLong() - start, TimeUnit.NANOSECONDS);
+                    })
+                    .doFinally(signal -> {
+                        endpoint.end();
+                        if (!settled.get()) breaker.onIgnored();
+                    });
+        });
+    }
+
+    /**
+     * A stream's health outcome is decided by its first token (or failure before it)
+     */
+    private <T> Flux<T> attemptStream(UpstreamEndpoint endpoint, Function<UpstreamEndpoint, Flux<T>> call) {
+        return Flux.defer(() -> {
+            CircuitBreaker breaker = endpoint.getCircuitBreaker();
+            if (!breaker.tryAcquire()) {
+                return Flux.error(new CircuitOpenException("Circuit open for upstream " + endpoint.getName(),
+                        breaker.retryAfterSeconds()));
+            }
+            EndpointMeters timers = meters.get(endpoint);
+            long start = clock.getAsLong();
+            long[] lastToken = {start};
+            AtomicBoolean settled = new AtomicBoolean();
+            endpoint.begin();
+            return call.apply(endpoint)
+                    .doOnNext(value -> {
+                        long now = clock.getAsLong();
+                        if (settled.compareAndSet(false, true)) {
+                            endpoint.recordSuccess(true, now - start);
+                            breaker.onSuccess();
+                            timers.ttft.record(now - start, TimeUnit.NANOSECONDS);
+                        } else {
+                            timers.interToken.record(now - lastToken[0], TimeUnit.NANOSECONDS);
+                        }
+                        lastToken[0] = now;
+                    })
+                    .doOnComplete(() -> {
+                        if (settled.compareAndSet(false, true)) breaker.onSuccess();
+                        timers.streamSuccess.record(clock.getAsLong() - start, TimeUnit.NANOSECONDS);
+                    })
+                    .doOnError(error -> {
+                        if (settled.compareAndSet(false, true)) recordError(endpoint, error);
+                        else if (UpstreamEndpoint.isEndpointFault(error)) endpoint.recordFailure();
+                        timers.streamError.record(clock.getAsLong() - start, TimeUnit.NANOSECONDS);
+                    })
+                    .doFinally(signal -> {
+                        endpoint.end();
+                        if (settled.compareAndSet(false, true)) breaker.onIgnored();
+                    });
+        });
+    }
+
+    private static void recordError(UpstreamEndpoint endpoint, Throwable error) {
+        if (UpstreamEndpoint.isEndpointFault(error)) {
+            endpoint.recordFailure();
+            endpoint.getCircuitBreaker().onFailure();
+        } else {
+            endpoint.getCircuitBreaker().onIgnored();
+        }
+    }
+
+    /** Per-endpoint timers, resolved once so the token path does no registry lookups */
+    private static final class EndpointMeters {
+        final Timer syncSuccess;
+        final Timer syncError;
+        final Timer streamSuccess;
+        final Timer streamError;
+        final Timer ttft;
+        final Timer interToken;
+
+        EndpointMeters(String endpoint, MeterRegistry registry) {
+            syncSuccess = latency(endpoint, "sync", "success", registry);
+            syncError = latency(endpoint, "sync", "error", registry);
+            streamSuccess = latency(endpoint, "stream", "success", registry);
+            streamError = latency(endpoint, "stream", "error", registry);
+            ttft = Timer.builder("chat.upstream.ttft")
+                    .description("Time from sending a streaming request to its first token")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+            interToken = Timer.builder("chat.upstream.inter.token")
+                    .description("Gap between consecutive streamed tokens")
+                    .tag("endpoint", endpoint)
+                    .register(registry);
+        }
+
+        private static Timer latency(String endpoint, String mode, String outcome, MeterRegistry registry) {
+            return Timer.builder("chat.upstream.latency")
+                    .description("Upstream exchange time; for streams until the last token")
+                    .tags("endpoint", endpoint, "mode", mode, "outcome", outcome)
+                    .register(registry);
+        }
+    }
+}
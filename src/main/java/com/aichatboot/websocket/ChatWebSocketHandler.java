@@ -0,0 +1,309 @@
+package com.aichatboot.websocket;
+
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.ChatSocketMessage;
+import com.aichatboot.exception.ChatError;
+import com.aichatboot.exception.PromptTooLongException;
+import com.aichatboot.exception.QuotaExceededException;
+import com.aichatboot.exception.UpstreamOverloadedException;
+import com.aichatboot.ratelimit.RateLimitDecision;
+import com.aichatboot.ratelimit.RateLimiterBackend;
+import com.aichatboot.service.ChatService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplexes many chat streams over one WebSocket connection, each tagged by a client-chosen stream id.
+ * <p>
+ * Tokens are pulled from {@link ChatService#streamCompletion} one at a time and only while the
+ * connection's send buffer is below a watermark, so a slow client throttles its own upstream calls
+ * instead of growing server memory. Cancelling a stream, or closing the connection, cancels the
+ * upstream subscription and with it the OpenAI request.
+ */
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+
+    private static final String CONNECTION_ATTRIBUTE = "chat.connection";
+    private static final long DRAIN_POLL_MILLIS = 10;
+
+    private final Logger log = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+
+    private final ChatService chatService;
+    private final RateLimiterBackend rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final boolean streamEnabled;
+    private final int maxStreamsPerConnection;
+    private final int sendTimeLimitMillis;
+    private final int bufferSizeLimit;
+    private final int drainWatermark;
+    private final int prefetch;
+    private final int maxMessageBytes;
+    private final Scheduler sendScheduler = Schedulers.boundedElastic();
+
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final Counter cancellations;
+
+    public ChatWebSocketHandler(ChatService chatService,
+                                RateLimiterBackend rateLimiter,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry,
+                                @Value("${openai.stream.enabled:true}") boolean streamEnabled,
+                                @Value("${chat.websocket.max-streams-per-connection:16}") int maxStreamsPerConnection,
+                                @Value("${chat.websocket.send-time-limit:10s}") Duration sendTimeLimit,
+                                @Value("${chat.websocket.buffer-size-limit:524288}") int bufferSizeLimit,
+                                @Value("${chat.websocket.prefetch:8}") int prefetch,
+                                @Value("${chat.websocket.max-message-bytes:65536}") int maxMessageBytes) {
+        this.chatService = chatService;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.streamEnabled = streamEnabled;
+        this.maxStreamsPerConnection = maxStreamsPerConnection;
+        this.sendTimeLimitMillis = (int) sendTimeLimit.toMillis();
+        this.bufferSizeLimit = bufferSizeLimit;
+        // Stop pulling tokens well before the decorator's hard limit closes the connection
+        this.drainWatermark = bufferSizeLimit / 4;
+        this.prefetch = prefetch;
+        this.maxMessageBytes = maxMessageBytes;
+
+        Gauge.builder("chat.websocket.connections", openConnections, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("chat.websocket.streams", openStreams, AtomicInteger::get).register(meterRegistry);
+        this.cancellations = Counter.builder("chat.websocket.cancellations").register(meterRegistry);
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        session.setTextMessageSizeLimit(maxMessageBytes);
+        String tenant = (String) session.getAttributes().get(TenantHandshakeInterceptor.TENANT_ATTRIBUTE);
+        String clientIp = (String) session.getAttributes().get(TenantHandshakeInterceptor.CLIENT_IP_ATTRIBUTE);
+        WebSocketSession out = new ConcurrentWebSocketSessionDecorator(session, sendTimeLimitMillis, bufferSizeLimit);
+        session.getAttributes().put(CONNECTION_ATTRIBUTE, new Connection(out, tenant, clientIp != null ? clientIp : tenant));
+        openConnections.incrementAndGet();
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Connection connection = connection(session);
+        ChatSocketMessage frame;
+        try {
+            frame = objectMapper.readValue(message.getPayload(), ChatSocketMessage.class);
+        } catch (JsonProcessingException e) {
+            connection.send(ChatSocketMessage.error(null, "bad_request", "Malformed message"));
+            return;
+        }
+
+        if (ChatSocketMessage.START.equals(frame.getType())) {
+            start(connection, frame);
+        } else if (ChatSocketMessage.CANCEL.equals(frame.getType())) {
+            cancel(connection, frame.getStreamId());
+        } else {
+            connection.send(ChatSocketMessage.error(frame.getStreamId(), "bad_request",
+                    "Unknown message type: " + frame.getType()));
+        }
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("WebSocket transport error on {}: {}", session.getId(), exception.toString());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = (Connection) session.getAttributes().remove(CONNECTION_ATTRIBUTE);
+        if (connection == null) return;
+        openConnections.decrementAndGet();
+        connection.streams.values().forEach(TokenStream::dispose);
+        connection.streams.clear();
+    }
+
+    private void start(Connection connection, ChatSocketMessage frame) {
+        String streamId = frame.getStreamId();
+        ChatRequest request = frame.getRequest();
+        if (streamId == null || streamId.isBlank()) {
+            connection.send(ChatSocketMessage.error(null, "bad_request", "streamId is required"));
+            return;
+        }
+        if (request == null || (isBlank(request.getPrompt())
+                && (request.getMessages() == null || request.getMessages().isEmpty()))) {
+            connection.send(ChatSocketMessage.error(streamId, "bad_request", "request needs a prompt or messages"));
+            return;
+        }
+        if (!streamEnabled) {
+            connection.send(ChatSocketMessage.error(streamId, "streaming_disabled", "Streaming disabled on server"));
+            return;
+        }
+        if (connection.streams.size() >= maxStreamsPerConnection) {
+            connection.send(ChatSocketMessage.error(streamId, "too_many_streams",
+                    "At most " + maxStreamsPerConnection + " concurrent streams per connection"));
+            return;
+        }
+        // Reserve the id first; messages of one session are delivered one at a time
+        TokenStream stream = new TokenStream(connection, streamId);
+        if (connection.streams.putIfAbsent(streamId, stream) != null) {
+            connection.send(ChatSocketMessage.error(streamId, "duplicate_stream", "Stream id already in use"));
+            return;
+        }
+
+        RateLimitDecision decision = rateLimiter.tryConsume(connection.clientIp, 1);
+        if (!decision.allowed()) {
+            connection.streams.remove(streamId, stream);
+            reject(connection, streamId, "rate_limited", "Too many requests",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(decision.nanosToRetry() + 999_999_999L)));
+            return;
+        }
+
+        Flux<String> tokens;
+        try {
+            tokens = chatService.streamCompletion(request, connection.tenant);
+        } catch (QuotaExceededException ex) {
+            connection.streams.remove(streamId, stream);
+            reject(connection, streamId, "quota_exceeded", ex.getMessage(), ex.getRetryAfterSeconds());
+            return;
+        } catch (UpstreamOverloadedException ex) {
+            connection.streams.remove(streamId, stream);
+            rateLimiter.refund(connection.clientIp, 1);
+            reject(connection, streamId, "overloaded", ex.getMessage(), ex.getRetryAfterSeconds());
+            return;
+        } catch (PromptTooLongException ex) {
+            connection.streams.remove(streamId, stream);
+            connection.send(ChatSocketMessage.error(streamId, "prompt_too_long", ex.getMessage()));
+            return;
+        } catch (RuntimeException ex) {
+            connection.streams.remove(streamId, stream);
+            log.error("Error starting WebSocket chat stream", ex);
+            connection.send(ChatSocketMessage.error(streamId, "internal_error", ex.getMessage()));
+            return;
+        }
+
+        openStreams.incrementAndGet();
+        // Sends block on the servlet container, so keep them off the upstream's event loop
+        tokens.publishOn(sendScheduler, prefetch).subscribe(stream);
+    }
+
+    private void cancel(Connection connection, String streamId) {
+        TokenStream stream = streamId != null ? connection.streams.remove(streamId) : null;
+        if (stream == null) return;
+        cancellations.increment();
+        stream.dispose();
+    }
+
+    private void reject(Connection connection, String streamId, String code, String message, long retryAfterSeconds) {
+        ChatSocketMessage error = ChatSocketMessage.error(streamId, code, message);
+        if (retryAfterSeconds > 0) error.setRetryAfter(retryAfterSeconds);
+        connection.send(error);
+    }
+
+    private static Connection connection(WebSocketSession session) {
+        return (Connection) session.getAttributes().get(CONNECTION_ATTRIBUTE);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /** Per-connection state: the thread-safe outbound session and the streams it carries */
+    private final class Connection {
+        final WebSocketSession out;
+        final String tenant;
+        final String clientIp;
+        final Map<String, TokenStream> streams = new ConcurrentHashMap<>();
+
+        Connection(WebSocketSession out, String tenant, String clientIp) {
+            this.out = out;
+            this.tenant = tenant;
+            this.clientIp = clientIp;
+        }
+
+        int bufferedBytes() {
+            return ((ConcurrentWebSocketSessionDecorator) out).getBufferSize();
+        }
+
+        void send(ChatSocketMessage message) {
+            if (!out.isOpen()) return;
+            try {
+                out.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+            } catch (SessionLimitExceededException e) {
+                // The decorator closes the session; afterConnectionClosed cancels its streams
+                log.debug("WebSocket {} too slow, closing: {}", out.getId(), e.getMessage());
+            } catch (IOException e) {
+                log.debug("WebSocket send failed on {}: {}", out.getId(), e.toString());
+            }
+        }
+    }
+
+    /** Delivers one stream's tokens, requesting the next only once the send buffer has room */
+    private final class TokenStream extends BaseSubscriber<String> {
+        private final Connection connection;
+        private final String streamId;
+
+        TokenStream(Connection connection, String streamId) {
+            this.connection = connection;
+            this.streamId = streamId;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            demand();
+        }
+
+        @Override
+        protected void hookOnNext(String token) {
+            connection.send(ChatSocketMessage.token(streamId, token));
+            demand();
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            connection.send(ChatSocketMessage.done(streamId));
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            ChatError error = ChatError.of(throwable);
+            log.warn("WebSocket chat stream failed with {}: {}", error.code(), throwable.toString());
+            if (ChatError.isUpstreamFault(throwable)) rateLimiter.refund(connection.clientIp, 1);
+            reject(connection, streamId, error.code(), error.message(), error.retryAfterSeconds());
+        }
+
+        @Override
+        protected void hookFinally(SignalType type) {
+            connection.streams.remove(streamId, this);
+            openStreams.decrementAndGet();
+        }
+
+        private void demand() {
+            if (isDisposed()) return;
+            if (connection.bufferedBytes() < drainWatermark) {
+                request(1);
+            } else {
+                Schedulers.parallel().schedule(this::demand, DRAIN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
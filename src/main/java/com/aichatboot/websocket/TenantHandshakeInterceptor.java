@@ -0,0 +1,49 @@
+package com.aichatboot.websocket;
+
+import com.aichatboot.filter.RateLimitFilter;
+import com.aichatboot.quota.TokenQuotaService;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Resolves the tenant and client IP once, from the upgrade request, for every stream on the connection.
+ * The handshake itself has already passed {@link RateLimitFilter}.
+ */
+public class TenantHandshakeInterceptor implements HandshakeInterceptor {
+
+    static final String TENANT_ATTRIBUTE = "chat.tenant";
+    static final String CLIENT_IP_ATTRIBUTE = "chat.clientIp";
+
+    private final TokenQuotaService quotaService;
+
+    public TenantHandshakeInterceptor(TokenQuotaService quotaService) {
+        this.quotaService = quotaService;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String clientIp = null;
+        if (request instanceof ServletServerHttpRequest servletRequest) {
+            clientIp = (String) servletRequest.getServletRequest().getAttribute(RateLimitFilter.CLIENT_IP_ATTRIBUTE);
+        }
+        if (clientIp == null && request.getRemoteAddress() != null) {
+            clientIp = request.getRemoteAddress().getAddress().getHostAddress();
+        }
+        String apiKey = request.getHeaders().getFirst("X-API-Key");
+
+        if (clientIp != null) attributes.put(CLIENT_IP_ATTRIBUTE, clientIp);
+        attributes.put(TENANT_ATTRIBUTE, quotaService.tenantOf(apiKey, clientIp));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
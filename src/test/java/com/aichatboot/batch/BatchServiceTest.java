@@ -0,0 +1,178 @@
+package com.aichatboot.batch;
+
+import com.aichatboot.dto.BatchItemResult;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.exception.BatchJobNotFoundException;
+import com.aichatboot.exception.InvalidBatchException;
+import com.aichatboot.exception.QuotaExceededException;
+import com.aichatboot.exception.UpstreamOverloadedException;
+import com.aichatboot.service.ChatService;
+import com.aichatboot.upstream.Priority;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class BatchServiceTest {
+
+    private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private ChatService chatService;
+    private AtomicLong clock;
+    private BatchService batches;
+
+    @BeforeEach
+    void setUp() {
+        chatService = mock(ChatService.class);
+        clock = new AtomicLong(1_000);
+        batches = new BatchService(chatService, new ObjectMapper(), VALIDATOR, new SimpleMeterRegistry(),
+                2, 10, 2, Duration.ofMinutes(1), 2, Duration.ofMillis(1), clock::get);
+    }
+
+    private static ChatRequest prompt(String text) {
+        ChatRequest request = new ChatRequest();
+        request.setPrompt(text);
+        return request;
+    }
+
+    @Test
+    void resultsCarryTheirIndexAndPerItemErrors() {
+        when(chatService.completion(argThat(r -> r != null && "ok".equals(r.getPrompt())), eq("t"), eq(Priority.BULK)))
+                .thenReturn(Mono.just(new ChatResponse("r", "answer")));
+        when(chatService.completion(argThat(r -> r != null && "poor".equals(r.getPrompt())), eq("t"), eq(Priority.BULK)))
+                .thenThrow(new QuotaExceededException("Token quota exceeded", 60));
+
+        List<BatchItemResult> results = batches.run(List.of(prompt("ok"), prompt("poor"), prompt(" ")), "t")
+                .collectList().block();
+
+        assertEquals(3, results.size());
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        assertEquals("ok", results.get(0).getStatus());
+        assertEquals("answer", results.get(0).getResponse().getText());
+        assertEquals("quota_exceeded", results.get(1).getCode());
+        assertEquals(60L, results.get(1).getRetryAfter());
+        assertEquals("bad_request", results.get(2).getCode());
+    }
+
+    @Test
+    void itemsBreakingRequestConstraintsFailWithoutReachingTheUpstream() {
+        ChatRequest hot = prompt("a");
+        hot.setTemperature(3.0);
+        ChatRequest negative = prompt("b");
+        negative.setMaxTokens(-5);
+
+        List<BatchItemResult> results = batches.run(List.of(hot, negative), "t").collectList().block();
+
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        assertEquals("bad_request", results.get(0).getCode());
+        assertTrue(results.get(0).getMessage().startsWith("temperature "));
+        assertEquals("bad_request", results.get(1).getCode());
+        assertTrue(results.get(1).getMessage().startsWith("maxTokens "));
+        verifyNoInteractions(chatService);
+    }
+
+    @Test
+    void itemsRunWithBoundedParallelismInCompletionOrder() {
+        List<Sinks.One<ChatResponse>> calls = Collections.synchronizedList(new ArrayList<>());
+        when(chatService.completion(any(ChatRequest.class), eq("t"), eq(Priority.BULK))).thenAnswer(invocation -> {
+            Sinks.One<ChatResponse> call = Sinks.one();
+            calls.add(call);
+            return call.asMono();
+        });
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        batches.run(List.of(prompt("a"), prompt("b"), prompt("c")), "t")
+                .subscribe(result -> order.add(result.getIndex()));
+        assertEquals(2, calls.size());
+
+        calls.get(1).tryEmitValue(new ChatResponse("b", "b"));
+        assertEquals(3, calls.size());
+        calls.get(2).tryEmitValue(new ChatResponse("c", "c"));
+        calls.get(0).tryEmitValue(new ChatResponse("a", "a"));
+
+        assertEquals(List.of(1, 2, 0), order);
+    }
+
+    @Test
+    void overloadedItemIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        when(chatService.completion(any(ChatRequest.class), eq("t"), eq(Priority.BULK))).thenAnswer(invocation ->
+                attempts.incrementAndGet() == 1
+                        ? Mono.error(new UpstreamOverloadedException("Upstream busy", 1))
+                        : Mono.just(new ChatResponse("r", "answer")));
+
+        BatchItemResult result = batches.run(List.of(prompt("a")), "t").blockLast();
+
+        assertEquals("ok", result.getStatus());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void emptyOrOversizedBatchIsRejected() {
+        assertThrows(InvalidBatchException.class, () -> batches.run(List.of(), "t"));
+        List<ChatRequest> tooMany = new ArrayList<>();
+        for (int i = 0; i < 11; i++) tooMany.add(prompt("p" + i));
+        assertThrows(InvalidBatchException.class, () -> batches.run(tooMany, "t"));
+    }
+
+    @Test
+    void parsesNdjsonAndReportsTheBadLine() {
+        List<ChatRequest> requests = batches.parseNdjson("{\"prompt\":\"a\"}\n\n{\"prompt\":\"b\"}\r\n");
+        assertEquals(List.of("a", "b"), requests.stream().map(ChatRequest::getPrompt).toList());
+
+        InvalidBatchException ex = assertThrows(InvalidBatchException.class,
+                () -> batches.parseNdjson("{\"prompt\":\"a\"}\nnot json"));
+        assertTrue(ex.getMessage().contains("Line 2"));
+    }
+
+    @Test
+    void jobCollectsResultsForItsOwnerOnly() {
+        Sinks.One<ChatResponse> call = Sinks.one();
+        when(chatService.completion(any(ChatRequest.class), eq("owner"), eq(Priority.BULK)))
+                .thenReturn(call.asMono());
+
+        BatchJob job = batches.submit(List.of(prompt("a")), "owner");
+        assertEquals(BatchJob.Status.RUNNING, batches.get(job.getId(), "owner").getStatus());
+        assertThrows(BatchJobNotFoundException.class, () -> batches.get(job.getId(), "intruder"));
+
+        call.tryEmitValue(new ChatResponse("r", "answer"));
+        assertEquals(BatchJob.Status.COMPLETED, job.getStatus());
+        assertEquals(1, job.results().size());
+
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertThrows(BatchJobNotFoundException.class, () -> batches.get(job.getId(), "owner"));
+    }
+
+    @Test
+    void cancelledJobStopsAndFreesItsSlot() {
+        Sinks.One<ChatResponse> call = Sinks.one();
+        when(chatService.completion(any(ChatRequest.class), eq("t"), eq(Priority.BULK))).thenReturn(call.asMono());
+
+        BatchJob first = batches.submit(List.of(prompt("a")), "t");
+        batches.submit(List.of(prompt("b")), "t");
+        assertThrows(UpstreamOverloadedException.class, () -> batches.submit(List.of(prompt("c")), "t"));
+
+        batches.cancel(first.getId(), "t");
+        assertEquals(BatchJob.Status.CANCELLED, first.getStatus());
+        assertEquals(1, call.currentSubscriberCount());
+        assertNotNull(batches.submit(List.of(prompt("c")), "t"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.aichatboot.cache;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ResponseCache cache(int maxEntries, boolean similarity) {
+        return new ResponseCache(true, maxEntries, 1_000_000, Duration.ofSeconds(10),
+                similarity, 0.8, registry, clock::get);
+    }
+
+    private static List<ChatMessage> messages(String prompt) {
+        return List.of(
+                new ChatMessage("system", "You are a helpful assistant."),
+                new ChatMessage("user", prompt));
+    }
+
+    @Test
+    void exactHitIgnoresWhitespaceButNotOptions() {
+        ResponseCache cache = cache(10, false);
+        cache.put(cache.keyFor("gpt-4.1-mini", 0.2, 100, messages("What is Java?")), new ChatResponse("a", "A language."));
+
+        assertTrue(cache.get(cache.keyFor("gpt-4.1-mini", 0.2, 100, messages(" What  is Java? "))).isPresent());
+        assertTrue(cache.get(cache.keyFor("gpt-4.1-mini", 0.7, 100, messages("What is Java?"))).isEmpty());
+        assertTrue(cache.get(cache.keyFor("gpt-4.1", 0.2, 100, messages("What is Java?"))).isEmpty());
+
+        assertEquals(1.0, registry.get("chat.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2.0, registry.get("chat.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void entriesExpireAfterTtl() {
+        ResponseCache cache = cache(10, false);
+        CacheKey key = cache.keyFor("m", 0.2, 100, messages("hello"));
+        cache.put(key, new ChatResponse("a", "hi"));
+
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertTrue(cache.get(key).isEmpty());
+        assertEquals(0, cache.size());
+        assertEquals(1.0, registry.get("chat.cache.evictions").tag("cause", "ttl").counter().count());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        ResponseCache cache = cache(2, false);
+        CacheKey first = cache.keyFor("m", 0.2, 100, messages("one"));
+        CacheKey second = cache.keyFor("m", 0.2, 100, messages("two"));
+        CacheKey third = cache.keyFor("m", 0.2, 100, messages("three"));
+
+        cache.put(first, new ChatResponse("1", "one"));
+        cache.put(second, new ChatResponse("2", "two"));
+        cache.get(first);
+        cache.put(third, new ChatResponse("3", "three"));
+
+        assertTrue(cache.get(first).isPresent());
+        assertTrue(cache.get(second).isEmpty());
+        assertTrue(cache.get(third).isPresent());
+        assertEquals(1.0, registry.get("chat.cache.evictions").tag("cause", "size").counter().count());
+    }
+
+    @Test
+    void similarityTierReusesNearDuplicatePrompts() {
+        ResponseCache cache = cache(10, true);
+        cache.put(cache.keyFor("m", 0.2, 100, messages("How do I reset my password?")),
+                new ChatResponse("a", "Use the reset link."));
+
+        assertEquals("Use the reset link.",
+                cache.get(cache.keyFor("m", 0.2, 100, messages("how do I reset my password"))).orElseThrow().getText());
+        assertTrue(cache.get(cache.keyFor("m", 0.2, 100, messages("What are your opening hours?"))).isEmpty());
+        assertEquals(1.0, registry.get("chat.cache.requests").tag("result", "similar_hit").counter().count());
+    }
+}
@@ -0,0 +1,34 @@
+package com.aichatboot.config;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatSocketMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    NativeHintsTest() {
+        new NativeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registersJacksonBindingForDtos() {
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ChatSocketMessage.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ChatMessage.class, "getContent").test(hints));
+    }
+
+    @Test
+    void registersTheTokenizerTablesThatShipWithJtokkit() {
+        String table = "com/knuddels/jtokkit/cl100k_base.tiktoken";
+        assertNotNull(getClass().getClassLoader().getResource(table));
+        assertTrue(RuntimeHintsPredicates.resource().forResource(table).test(hints));
+    }
+}
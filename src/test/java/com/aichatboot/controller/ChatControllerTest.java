@@ -2,19 +2,32 @@ package com.aichatboot.controller;
 
 import com.aichatboot.dto.ChatRequest;
 import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.quota.TokenQuotaService;
 import com.aichatboot.service.ChatService;
+import com.aichatboot.service.TokenCoalescer;
+import com.aichatboot.stream.ResumableStreams;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 
 @WebFluxTest(ChatController.class)
+@Import({TokenCoalescer.class, ResumableStreams.class})
 class ChatControllerTest {
 
     @Autowired
@@ -23,10 +36,18 @@ class ChatControllerTest {
     @MockBean
     private ChatService chatService;
 
+    @MockBean
+    private TokenQuotaService quotaService;
+
+    @BeforeEach
+    void resolveTenant() {
+        when(quotaService.tenantOf(isNull(), any())).thenReturn("ip:127.0.0.1");
+    }
+
     @Test
     void testSyncChat() {
-        when(chatService.createCompletion(any(ChatRequest.class)))
-                .thenReturn(new ChatResponse("id-123", "Hello back!"));
+        when(chatService.completion(any(ChatRequest.class), anyString()))
+                .thenReturn(Mono.just(new ChatResponse("id-123", "Hello back!")));
 
         ChatRequest request = new ChatRequest();
         request.setPrompt("Hello");
@@ -43,7 +64,7 @@ class ChatControllerTest {
     @Test
     void testStreamChat() {
 
-        when(chatService.streamCompletion(any(ChatRequest.class)))
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
                 .thenReturn(Flux.just("token1", "token2"));
 
         ChatRequest request = new ChatRequest();
@@ -62,4 +83,63 @@ class ChatControllerTest {
                     assert body.contains("token2");
                 });
     }
+
+    @Test
+    void testStreamFailureEndsWithTypedErrorEvent() {
+
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenReturn(Flux.just("partial").concatWith(Flux.error(new UpstreamException("upstream reset"))));
+
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("Hi stream");
+
+        webTestClient.post().uri("/api/v1/chat/stream")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .consumeWith(res -> {
+                    String body = res.getResponseBody();
+                    assert body.contains("data:partial");
+                    assert body.contains("event:error");
+                    assert body.contains("\"code\":\"upstream_error\"");
+                    assert !body.contains("[[");
+                });
+    }
+
+    @Test
+    void testResumeSendsOnlyFramesAfterLastEventId() {
+
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenReturn(Flux.just("token1", "token2"));
+
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("Hi stream");
+
+        String body = webTestClient.post().uri("/api/v1/chat/stream")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult().getResponseBody();
+        Matcher firstId = Pattern.compile("id:(\\S+):0").matcher(body);
+        assert firstId.find();
+        String streamId = firstId.group(1);
+
+        webTestClient.get().uri("/api/v1/chat/stream/{id}", streamId)
+                .header("Last-Event-ID", streamId + ":0")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .consumeWith(res -> {
+                    String resumed = res.getResponseBody();
+                    assert !resumed.contains("token1");
+                    assert resumed.contains("id:" + streamId + ":1");
+                    assert resumed.contains("data:token2");
+                });
+
+        webTestClient.get().uri("/api/v1/chat/stream/{id}", "unknown")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
 }
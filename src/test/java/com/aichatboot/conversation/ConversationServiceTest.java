@@ -0,0 +1,135 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.dto.ConversationMessageRequest;
+import com.aichatboot.exception.ConversationNotFoundException;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.quota.TokenEstimator;
+import com.aichatboot.service.ChatService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ConversationServiceTest {
+
+    private ChatService chatService;
+    private InMemoryConversationStore store;
+    private ConversationService conversations;
+
+    @BeforeEach
+    void setUp() {
+        chatService = mock(ChatService.class);
+        store = new InMemoryConversationStore(100, 100, Duration.ofHours(1));
+        // 4 framing tokens + 25 for a 100 character message
+        conversations = new ConversationService(store, chatService, new TokenEstimator(),
+                new SimpleMeterRegistry(), 100, 0);
+    }
+
+    private static ConversationMessageRequest message(String content) {
+        ConversationMessageRequest request = new ConversationMessageRequest();
+        request.setContent(content);
+        return request;
+    }
+
+    @Test
+    void sendsOnlyTheTurnsThatFitTheContextBudget() {
+        Conversation conversation = conversations.create("t");
+        for (int i = 0; i < 10; i++) {
+            store.append(conversation, new ChatMessage(i % 2 == 0 ? "user" : "assistant", "x".repeat(100)));
+        }
+        when(chatService.completion(any(ChatRequest.class), eq("t")))
+                .thenReturn(Mono.just(new ChatResponse("r1", "answer")));
+
+        conversations.send(conversation.getId(), "t", message("y".repeat(100))).block();
+
+        ArgumentCaptor<ChatRequest> sent = ArgumentCaptor.forClass(ChatRequest.class);
+        verify(chatService).completion(sent.capture(), eq("t"));
+        List<ChatMessage> window = sent.getValue().getMessages();
+        // 3 messages of 29 tokens fit into 100
+        assertEquals(3, window.size());
+        assertEquals("user", window.get(0).getRole());
+        assertEquals("y".repeat(100), window.get(2).getContent());
+        assertEquals(conversation.getId(), sent.getValue().getConversationId());
+
+        assertEquals(12, conversation.size());
+        assertEquals("answer", conversation.messages().get(11).getContent());
+    }
+
+    @Test
+    void windowNeverOpensOnAnAssistantTurn() {
+        List<ChatMessage> history = List.of(
+                new ChatMessage("user", "x".repeat(100)),
+                new ChatMessage("assistant", "x".repeat(100)),
+                new ChatMessage("assistant", "x".repeat(100)),
+                new ChatMessage("user", "x".repeat(100)));
+
+        List<ChatMessage> window = conversations.contextWindow(history);
+
+        assertEquals(1, window.size());
+        assertEquals("user", window.get(0).getRole());
+    }
+
+    @Test
+    void windowCutStaysPutWhileTheConversationGrows() {
+        ConversationService stepped = new ConversationService(store, chatService, new TokenEstimator(),
+                new SimpleMeterRegistry(), 100, 60);
+        List<ChatMessage> history = new ArrayList<>();
+        for (int i = 0; i < 4; i++) history.add(new ChatMessage("user", "x".repeat(100)));
+
+        List<ChatMessage> before = List.copyOf(stepped.contextWindow(history));
+        history.add(new ChatMessage("user", "y".repeat(100)));
+        List<ChatMessage> after = stepped.contextWindow(history);
+
+        // 29 tokens each: the 16 and 45 token overflows both round up to one 60 token step
+        assertEquals(before, after.subList(0, before.size()));
+        assertEquals(before.size() + 1, after.size());
+    }
+
+    @Test
+    void failedTurnIsNotStored() {
+        Conversation conversation = conversations.create("t");
+        when(chatService.completion(any(ChatRequest.class), eq("t")))
+                .thenReturn(Mono.error(new UpstreamException("upstream down")));
+
+        assertThrows(UpstreamException.class, () -> conversations.send(conversation.getId(), "t", message("hello")).block());
+
+        assertEquals(0, conversation.size());
+    }
+
+    @Test
+    void streamedAnswerIsStoredOnCompletion() {
+        Conversation conversation = conversations.create("t");
+        when(chatService.streamCompletion(any(ChatRequest.class), eq("t")))
+                .thenReturn(Flux.just("Hel", "lo"));
+
+        StepVerifier.create(conversations.stream(conversation.getId(), "t", message("hi")))
+                .expectNext("Hel", "lo")
+                .verifyComplete();
+
+        List<ChatMessage> history = new ArrayList<>(conversation.messages());
+        assertEquals(List.of("hi", "Hello"), history.stream().map(ChatMessage::getContent).toList());
+    }
+
+    @Test
+    void otherTenantsCannotReadAConversation() {
+        Conversation conversation = conversations.create("owner");
+
+        assertThrows(ConversationNotFoundException.class, () -> conversations.get(conversation.getId(), "intruder"));
+        assertThrows(ConversationNotFoundException.class, () -> conversations.get("missing", "owner"));
+    }
+}
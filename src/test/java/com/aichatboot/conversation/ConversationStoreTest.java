@@ -0,0 +1,95 @@
+package com.aichatboot.conversation;
+
+import com.aichatboot.dto.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationStoreTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    void evictsLeastRecentlyUsedOverCapacity() {
+        InMemoryConversationStore store = new InMemoryConversationStore(2, 10, Duration.ofHours(1), now::get);
+        Conversation a = store.create("t");
+        Conversation b = store.create("t");
+        store.find(a.getId());
+        Conversation c = store.create("t");
+
+        assertTrue(store.find(a.getId()).isPresent());
+        assertTrue(store.find(b.getId()).isEmpty());
+        assertTrue(store.find(c.getId()).isPresent());
+    }
+
+    @Test
+    void idleConversationsExpireAndHistoryIsCapped() {
+        InMemoryConversationStore store = new InMemoryConversationStore(10, 3, Duration.ofMinutes(5), now::get);
+        Conversation conversation = store.create("t");
+        for (int i = 0; i < 5; i++) store.append(conversation, new ChatMessage("user", "m" + i));
+
+        assertEquals(3, conversation.size());
+        assertEquals("m2", conversation.messages().get(0).getContent());
+
+        now.addAndGet(Duration.ofMinutes(6).toMillis());
+        assertTrue(store.find(conversation.getId()).isEmpty());
+    }
+
+    @Test
+    void fileStoreReloadsHistoryAfterRestart(@TempDir Path dir) {
+        ObjectMapper mapper = new ObjectMapper();
+        FileConversationStore first = new FileConversationStore(
+                new InMemoryConversationStore(10, 10, Duration.ofHours(1)), dir, Duration.ofHours(1), mapper);
+        Conversation conversation = first.create("tenant-a");
+        first.append(conversation, new ChatMessage("user", "hello"));
+        first.append(conversation, new ChatMessage("assistant", "hi \"there\"\nsecond line"));
+
+        FileConversationStore restarted = new FileConversationStore(
+                new InMemoryConversationStore(10, 10, Duration.ofHours(1)), dir, Duration.ofHours(1), mapper);
+        Conversation loaded = restarted.find(conversation.getId()).orElseThrow();
+
+        assertTrue(loaded.isOwnedBy("tenant-a"));
+        assertFalse(loaded.isOwnedBy("tenant-b"));
+        assertEquals(2, loaded.size());
+        assertEquals("hi \"there\"\nsecond line", loaded.messages().get(1).getContent());
+
+        assertTrue(restarted.delete(conversation.getId()));
+        assertTrue(restarted.find(conversation.getId()).isEmpty());
+        assertTrue(restarted.find("../../etc/passwd").isEmpty());
+    }
+
+    @Test
+    void fileStoreKeepsOnlyAHashOfTheOwner(@TempDir Path dir) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        FileConversationStore store = new FileConversationStore(
+                new InMemoryConversationStore(10, 10, Duration.ofHours(1)), dir, Duration.ofHours(1), mapper);
+        Conversation conversation = store.create("sk-secret-key");
+
+        String file = Files.readString(dir.resolve(conversation.getId() + ".ndjson"));
+
+        assertFalse(file.contains("sk-secret-key"));
+        assertTrue(file.contains(Conversation.hashOwner("sk-secret-key")));
+    }
+
+    @Test
+    void fileWithPlainOwnerFromBeforeHashingStillLoads(@TempDir Path dir) throws Exception {
+        String id = "00000000-0000-0000-0000-000000000001";
+        Files.writeString(dir.resolve(id + ".ndjson"),
+                "{\"id\":\"" + id + "\",\"owner\":\"tenant-a\",\"createdAt\":0}\n"
+                        + "{\"role\":\"user\",\"content\":\"hello\"}\n");
+        FileConversationStore store = new FileConversationStore(
+                new InMemoryConversationStore(10, 10, Duration.ofHours(1)), dir, Duration.ofHours(1), new ObjectMapper());
+
+        Conversation loaded = store.find(id).orElseThrow();
+
+        assertTrue(loaded.isOwnedBy("tenant-a"));
+        assertEquals(1, loaded.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.aichatboot.filter;
+
+import com.aichatboot.exception.RequestTooLargeException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSizeFilterTest {
+
+    private final RequestSizeFilter filter = new RequestSizeFilter(DataSize.ofBytes(100), DataSize.ofBytes(1000));
+
+    private static MockHttpServletRequest post(String uri, int bytes) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri);
+        request.setContent(new byte[bytes]);
+        return request;
+    }
+
+    @Test
+    void declaredLengthOverTheLimitIsRefusedWithoutReadingTheBody() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(post("/api/v1/chat/completions", 101), response, chain);
+
+        assertEquals(413, response.getStatus());
+        assertTrue(response.getContentAsString().contains("exceeds 100 bytes"));
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void batchSubmissionsGetTheirOwnLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(post("/api/v1/chat/batch", 900), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void documentUploadsShareTheBatchLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(post("/api/v1/documents", 900), response, chain);
+
+        assertEquals(200, response.getStatus());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void chunkedBodyFailsOnceItCrossesTheLimit() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/v1/chat/completions") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        request.setContent(new byte[150]);
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        InputStream body = ((HttpServletRequest) chain.getRequest()).getInputStream();
+        assertEquals(100, body.readNBytes(100).length);
+        assertThrows(RequestTooLargeException.class, () -> body.read(new byte[10]));
+    }
+
+    @Test
+    void nonApiPathsAreNotLimited() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(post("/ws/chat", 10_000), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+    }
+}
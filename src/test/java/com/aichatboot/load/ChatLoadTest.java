@@ -0,0 +1,170 @@
+package com.aichatboot.load;
+
+import com.aichatboot.support.LatencyRecorder;
+import com.aichatboot.support.MockOpenAiServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * End-to-end load test: drives {@code ChatController} over HTTP against {@link MockOpenAiServer}
+ * and reports p50/p99 latency, time-to-first-token and the highest request rate that stays within
+ * the latency/error budget.
+ * <p>
+ * Tunable with system properties, e.g.
+ * {@code mvn -Pload-test test -Dload.rates=50,100,200,400 -Dload.stepSeconds=10 -Dload.ttftMs=300}
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChatLoadTest {
+
+    static {
+        System.setProperty("reactor.netty.pool.maxConnections", "4000");
+    }
+
+    private static final int[] RATES = Arrays.stream(System.getProperty("load.rates", "25,50,100,200,400").split(","))
+            .mapToInt(r -> Integer.parseInt(r.trim())).toArray();
+    private static final int STEP_SECONDS = Integer.getInteger("load.stepSeconds", 5);
+    private static final double P99_BUDGET_MS = Double.parseDouble(System.getProperty("load.p99BudgetMs", "5000"));
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_EVENT = new ParameterizedTypeReference<>() {
+    };
+    private static final double ERROR_BUDGET = Double.parseDouble(System.getProperty("load.errorBudget", "0.01"));
+
+    private static final MockOpenAiServer UPSTREAM = new MockOpenAiServer()
+            .timeToFirstToken(Duration.ofMillis(Long.getLong("load.ttftMs", 200)))
+            .interTokenDelay(Duration.ofMillis(Long.getLong("load.interTokenMs", 15)))
+            .completionTokens(Integer.getInteger("load.tokens", 40))
+            .errorRate(Double.parseDouble(System.getProperty("load.upstreamErrorRate", "0")))
+            .start();
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) {
+        registry.add("openai.api.base-url", UPSTREAM::baseUrl);
+        registry.add("spring.ai.openai.api-key", () -> "test");
+        registry.add("chat.cache.enabled", () -> "false");
+        registry.add("chat.coalescing.enabled", () -> "false");
+        registry.add("ratelimit.requests.per.minute", () -> "100000000");
+        registry.add("quota.enabled", () -> "false");
+        registry.add("upstream.limiter.enabled", () -> System.getProperty("load.limiter", "false"));
+        registry.add("logging.level.com.aichatboot", () -> "WARN");
+        registry.add("logging.level.web", () -> "WARN");
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        UPSTREAM.close();
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void syncAndStreamingCapacity() {
+        WebClient client = WebClient.create("http://localhost:" + port);
+
+        System.out.printf("%n%-8s %8s %8s %10s %10s %10s %8s%n",
+                "mode", "rps", "sent", "p50 ms", "p99 ms", "ttft p99", "errors");
+
+        int maxSync = rampUp(client, false);
+        int maxStream = rampUp(client, true);
+
+        System.out.printf("%nmax sustained rps: sync=%d stream=%d (p99 <= %.0f ms, errors <= %.1f%%)%n%n",
+                maxSync, maxStream, P99_BUDGET_MS, ERROR_BUDGET * 100);
+
+        assertTrue(maxSync > 0, "sync endpoint could not sustain the lowest configured rate");
+        assertTrue(maxStream > 0, "stream endpoint could not sustain the lowest configured rate");
+    }
+
+    /**
+     * Open-loop ramp: each step fires requests at a fixed rate regardless of how fast they complete.
+     *
+     * @return the highest rate whose p99 latency and error ratio stayed within budget
+     */
+    private int rampUp(WebClient client, boolean stream) {
+        int sustained = 0;
+        for (int rate : RATES) {
+            StepResult result = runStep(client, stream, rate);
+            System.out.printf("%-8s %8d %8d %10.1f %10.1f %10s %8d%n",
+                    stream ? "stream" : "sync", rate, result.sent, result.latency.percentileMillis(50),
+                    result.latency.percentileMillis(99),
+                    stream ? String.format("%.1f", result.ttft.percentileMillis(99)) : "-",
+                    result.errors);
+
+            boolean withinBudget = result.latency.percentileMillis(99) <= P99_BUDGET_MS
+                    && result.errors <= result.sent * ERROR_BUDGET;
+            if (!withinBudget) break;
+            sustained = rate;
+        }
+        return sustained;
+    }
+
+    private StepResult runStep(WebClient client, boolean stream, int rate) {
+        LatencyRecorder latency = new LatencyRecorder();
+        LatencyRecorder ttft = new LatencyRecorder();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicLong sequence = new AtomicLong();
+        int total = rate * STEP_SECONDS;
+
+        Flux.interval(Duration.ofNanos(1_000_000_000L / rate))
+                .take(total)
+                .flatMap(tick -> {
+                    Map<String, Object> body = Map.of("prompt", "load question " + sequence.incrementAndGet());
+                    long start = System.nanoTime();
+                    Mono<Void> call = stream ? streamCall(client, body, start, ttft) : syncCall(client, body);
+                    return call
+                            .doOnSuccess(v -> latency.record(System.nanoTime() - start))
+                            .onErrorResume(e -> {
+                                errors.incrementAndGet();
+                                return Mono.empty();
+                            });
+                }, Integer.MAX_VALUE)
+                .blockLast(Duration.ofSeconds(STEP_SECONDS + 120L));
+
+        return new StepResult(total, errors.get(), latency, ttft);
+    }
+
+    private Mono<Void> syncCall(WebClient client, Map<String, Object> body) {
+        return client.post().uri("/api/v1/chat")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .then();
+    }
+
+    private Mono<Void> streamCall(WebClient client, Map<String, Object> body, long start, LatencyRecorder ttft) {
+        return client.post().uri("/api/v1/chat/stream")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.TEXT_EVENT_STREAM)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToFlux(SSE_EVENT)
+                .index()
+                .doOnNext(event -> {
+                    if (event.getT1() == 0) ttft.record(System.nanoTime() - start);
+                    if ("error".equals(event.getT2().event())) throw new IllegalStateException(event.getT2().data());
+                })
+                .then();
+    }
+
+    private record StepResult(int sent, int errors, LatencyRecorder latency, LatencyRecorder ttft) {
+    }
+}
@@ -0,0 +1,120 @@
+package com.aichatboot.load;
+
+import com.aichatboot.Application;
+import com.aichatboot.support.MockOpenAiServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the concurrency ceiling of POST /api/v1/chat in blocking and reactive execution modes.
+ * <p>
+ * A stub upstream answers every completion after a fixed delay and records how many requests it
+ * is serving at once. With a small Tomcat pool, blocking mode can never have more upstream calls
+ * in flight than it has worker threads.
+ * <p>
+ * Run with {@code mvn -Pload-test test}.
+ */
+@Tag("load")
+class ExecutionModeLoadTest {
+
+    private static final int TOMCAT_THREADS = 32;
+    private static final int CONCURRENT_CLIENTS = 400;
+    private static final Duration UPSTREAM_LATENCY = Duration.ofMillis(500);
+
+    static {
+        // The test client uses the shared Reactor Netty pool, which defaults to 2 x cores connections
+        System.setProperty("reactor.netty.pool.maxConnections", "2000");
+    }
+
+    private MockOpenAiServer upstream;
+
+    @BeforeEach
+    void startUpstream() {
+        upstream = new MockOpenAiServer()
+                .timeToFirstToken(UPSTREAM_LATENCY)
+                .completionTokens(1)
+                .start();
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.close();
+    }
+
+    @Test
+    void reactiveModeRaisesConcurrencyCeiling() {
+        Result blocking = run("blocking");
+        Result reactive = run("reactive");
+
+        System.out.printf("%n%-10s %12s %16s %12s%n", "mode", "wall ms", "peak upstream", "errors");
+        System.out.printf("%-10s %12d %16d %12d%n", "blocking", blocking.wallMillis, blocking.peakUpstream, blocking.errors);
+        System.out.printf("%-10s %12d %16d %12d%n%n", "reactive", reactive.wallMillis, reactive.peakUpstream, reactive.errors);
+
+        assertTrue(blocking.peakUpstream <= TOMCAT_THREADS,
+                "blocking mode is bounded by the servlet thread pool");
+        assertTrue(reactive.peakUpstream > TOMCAT_THREADS * 4,
+                "reactive mode should not be bounded by the servlet thread pool");
+        assertTrue(reactive.wallMillis < blocking.wallMillis);
+    }
+
+    private Result run(String mode) {
+        upstream.resetStats();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(Map.ofEntries(
+                        Map.entry("server.port", "0"),
+                        Map.entry("server.tomcat.threads.max", String.valueOf(TOMCAT_THREADS)),
+                        Map.entry("openai.http.pool.max-connections", String.valueOf(CONCURRENT_CLIENTS * 2)),
+                        Map.entry("chat.execution.mode", mode),
+                        Map.entry("chat.cache.enabled", "false"),
+                        Map.entry("chat.coalescing.enabled", "false"),
+                        Map.entry("ratelimit.requests.per.minute", "1000000"),
+                        Map.entry("quota.enabled", "false"),
+                        Map.entry("upstream.limiter.enabled", "false"),
+                        Map.entry("openai.api.base-url", upstream.baseUrl()),
+                        Map.entry("spring.ai.openai.api-key", "test"),
+                        Map.entry("spring.devtools.restart.enabled", "false")))
+                .run();
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            WebClient client = WebClient.create("http://localhost:" + port);
+            AtomicInteger errors = new AtomicInteger();
+
+            long start = System.nanoTime();
+            Flux.range(0, CONCURRENT_CLIENTS)
+                    .flatMap(i -> client.post().uri("/api/v1/chat")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(Map.of("prompt", "question " + i))
+                            .retrieve()
+                            .bodyToMono(String.class)
+                            .onErrorResume(e -> {
+                                errors.incrementAndGet();
+                                return Mono.empty();
+                            }), CONCURRENT_CLIENTS)
+                    .blockLast(Duration.ofMinutes(2));
+            long wallMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+            return new Result(wallMillis, upstream.peakInFlight(), errors.get());
+        } finally {
+            context.close();
+        }
+    }
+
+    private record Result(long wallMillis, int peakUpstream, int errors) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.aichatboot.logging;
+
+import com.aichatboot.dto.ChatRequest;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.SignalType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChatRequestLoggerTest {
+
+    private final ChatRequestLogger logger = new ChatRequestLogger(true, 1.0, 40, true);
+
+    @Test
+    void payloadIsRedactedAndTruncated() {
+        assertEquals("mail [email] key [secret]", logger.payload("mail jane.doe@example.com key sk-abcdef1234567890"));
+        assertEquals("card [number]", logger.payload("card 4111 1111 1111 1111"));
+        assertEquals("x".repeat(40) + "…", logger.payload("x".repeat(100)));
+    }
+
+    @Test
+    void secretCutByTheLimitIsStillRedacted() {
+        assertEquals("x".repeat(30) + " [secret]", logger.payload("x".repeat(30) + " sk-abcdef1234567890"));
+        assertEquals("x".repeat(34) + " [numb…", logger.payload("x".repeat(34) + " 4111 1111 1111 1111"));
+    }
+
+    @Test
+    void apiKeyTenantsAreHashed() {
+        String label = ChatRequestLogger.tenantLabel("sk-live-secret-key");
+
+        assertTrue(label.startsWith("key:"));
+        assertFalse(label.contains("secret"));
+        assertEquals(label, ChatRequestLogger.tenantLabel("sk-live-secret-key"));
+        assertEquals("ip:10.0.0.1", ChatRequestLogger.tenantLabel("ip:10.0.0.1"));
+    }
+
+    @Test
+    void sampledRequestKeepsPromptAndStreamedAnswer() {
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("what is 2+2?");
+
+        ChatRequestLog entry = logger.start("stream", "ip:1.2.3.4", request);
+        entry.token("4");
+        entry.token(".");
+
+        assertEquals("what is 2+2?", entry.promptSample());
+        assertEquals("4.", entry.answerSample());
+        assertEquals(2, entry.tokens());
+        assertTrue(entry.firstTokenNanos() >= entry.startNanos());
+        logger.finish(entry, SignalType.ON_COMPLETE);
+    }
+
+    @Test
+    void unsampledRequestKeepsNoPayload() {
+        ChatRequestLog entry = new ChatRequestLogger(true, 0, 40, true).start("sync", "anonymous", new ChatRequest());
+        entry.token("secret answer");
+
+        assertNull(entry.promptSample());
+        assertNull(entry.answerSample());
+    }
+}
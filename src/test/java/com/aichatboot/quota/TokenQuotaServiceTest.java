@@ -0,0 +1,101 @@
+package com.aichatboot.quota;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.exception.QuotaExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenQuotaServiceTest {
+
+    private static final List<ChatMessage> PROMPT = List.of(new ChatMessage("user", "x".repeat(400)));
+
+    // 1 token/minute refill so the numbers below do not drift while the test runs
+    private final TokenQuotaService quotas = new TokenQuotaService(true, 1, 1_000,
+            Map.of("big-tenant", 10L), Set.of("key-1"), new TokenEstimator(), new SimpleMeterRegistry());
+
+    @Test
+    void reservesPromptEstimatePlusMaxTokens() {
+        QuotaReservation reservation = quotas.reserve("a", PROMPT, 200);
+
+        // 100 content tokens + 4 message framing + 3 reply priming
+        assertEquals(307, reservation.reservedTokens());
+        assertEquals(1_000 - 307, quotas.availableTokens("a"));
+    }
+
+    @Test
+    void settlementRefundsOverestimateAndChargesUnderestimate() {
+        quotas.reserve("a", PROMPT, 200).settle(150);
+        assertEquals(850, quotas.availableTokens("a"));
+
+        quotas.reserve("a", PROMPT, 200).settle(400);
+        assertEquals(450, quotas.availableTokens("a"));
+
+        QuotaReservation released = quotas.reserve("a", PROMPT, 200);
+        released.release();
+        released.settle(300); // settling twice has no effect
+        assertEquals(450, quotas.availableTokens("a"));
+    }
+
+    @Test
+    void exhaustedTenantIsRejectedWithoutAffectingOthers() {
+        quotas.reserve("heavy", PROMPT, 600);
+
+        QuotaExceededException ex = assertThrows(QuotaExceededException.class,
+                () -> quotas.reserve("heavy", PROMPT, 600));
+        assertTrue(ex.getRetryAfterSeconds() > 0);
+
+        assertDoesNotThrow(() -> quotas.reserve("light", PROMPT, 600));
+    }
+
+    @Test
+    void requestLargerThanBudgetNeverFits() {
+        QuotaExceededException ex = assertThrows(QuotaExceededException.class,
+                () -> quotas.reserve("a", PROMPT, 5_000));
+        assertEquals(-1, ex.getRetryAfterSeconds());
+    }
+
+    @Test
+    void tenantOverridesScaleTheBurst() {
+        // 10 tokens/minute with the default 1000:1 burst ratio
+        assertEquals(10_000, quotas.availableTokens("big-tenant"));
+        assertEquals(1_000, quotas.availableTokens("someone-else"));
+    }
+
+    @Test
+    void resolvesTenantFromConfiguredApiKeyThenIp() {
+        assertEquals("key-1", quotas.tenantOf(" key-1 ", "10.0.0.1"));
+        assertEquals("big-tenant", quotas.tenantOf("big-tenant", "10.0.0.1"));
+        assertEquals("ip:10.0.0.1", quotas.tenantOf(null, "10.0.0.1"));
+        assertEquals("ip:10.0.0.1", quotas.tenantOf("made-up", "10.0.0.1"));
+        assertEquals(TokenQuotaService.ANONYMOUS, quotas.tenantOf("", null));
+    }
+
+    @Test
+    void rotatingUnknownKeysDoesNotBuyANewBudget() {
+        for (int i = 0; i < 3; i++) {
+            quotas.reserve(quotas.tenantOf("random-" + i, "10.0.0.9"), PROMPT, 200);
+        }
+
+        assertThrows(QuotaExceededException.class,
+                () -> quotas.reserve(quotas.tenantOf("random-3", "10.0.0.9"), PROMPT, 200));
+        assertEquals(1_000 - 3 * 307, quotas.availableTokens("ip:10.0.0.9"));
+    }
+
+    @Test
+    void parsesApiKeys() {
+        assertEquals(Set.of("k1", "k2"), TokenQuotaService.parseApiKeys(" k1,,k2 "));
+        assertTrue(TokenQuotaService.parseApiKeys("").isEmpty());
+    }
+
+    @Test
+    void parsesTenantLimits() {
+        assertEquals(Map.of("k1", 100L, "k2", 2000L), TokenQuotaService.parseTenantLimits("k1=100, k2 = 2000"));
+        assertTrue(TokenQuotaService.parseTenantLimits("").isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package com.aichatboot.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalRateLimiterBackendTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void keyCountStaysBoundedUnderIpChurn() {
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(10, Duration.ofMinutes(1), 100,
+                Duration.ofMinutes(2), registry, now::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(backend.tryConsume("10.0." + (i >> 8) + "." + (i & 0xff), 1).allowed());
+        }
+
+        assertTrue(backend.trackedKeys() <= 100);
+        assertTrue(registry.get("ratelimit.evictions").tag("cause", "capacity").counter().count() > 0);
+    }
+
+    @Test
+    void idleBucketsAreSwept() {
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(10, Duration.ofMinutes(1), 100,
+                Duration.ofMinutes(2), registry, now::get);
+        backend.tryConsume("a", 1);
+        backend.tryConsume("b", 1);
+
+        now.addAndGet(Duration.ofMinutes(3).toNanos());
+        backend.tryConsume("c", 1);
+
+        assertEquals(1, backend.trackedKeys());
+        assertEquals(2, registry.get("ratelimit.evictions").tag("cause", "idle").counter().count());
+    }
+
+    @Test
+    void deniedDecisionCarriesRetryHint() {
+        LocalRateLimiterBackend backend = new LocalRateLimiterBackend(1, Duration.ofMinutes(1), 100,
+                Duration.ofMinutes(2), registry, now::get);
+
+        assertTrue(backend.tryConsume("a", 1).allowed());
+        RateLimitDecision denied = backend.tryConsume("a", 1);
+
+        assertFalse(denied.allowed());
+        assertEquals(1, denied.limit());
+        assertTrue(denied.nanosToRetry() > 0);
+    }
+}
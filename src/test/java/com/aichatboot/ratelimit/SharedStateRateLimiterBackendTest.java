@@ -0,0 +1,125 @@
+package com.aichatboot.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedStateRateLimiterBackendTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final InMemoryRateLimitStateStore store = new InMemoryRateLimitStateStore(now::get);
+
+    private SharedStateRateLimiterBackend backend(long capacity) {
+        return new SharedStateRateLimiterBackend(store, capacity, Duration.ofMinutes(1), now::get);
+    }
+
+    @Test
+    void nodesSharingAStoreShareTheLimit() {
+        SharedStateRateLimiterBackend nodeA = backend(4);
+        SharedStateRateLimiterBackend nodeB = backend(4);
+
+        assertTrue(nodeA.tryConsume("1.2.3.4", 1).allowed());
+        assertTrue(nodeB.tryConsume("1.2.3.4", 1).allowed());
+        assertTrue(nodeA.tryConsume("1.2.3.4", 1).allowed());
+        RateLimitDecision last = nodeB.tryConsume("1.2.3.4", 1);
+        assertTrue(last.allowed());
+        assertEquals(0, last.remaining());
+
+        RateLimitDecision denied = nodeA.tryConsume("1.2.3.4", 1);
+        assertFalse(denied.allowed());
+        // 4 per minute refills one token every 15s
+        assertEquals(TimeUnit.SECONDS.toNanos(15), denied.nanosToRetry(), TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(nodeB.tryConsume("5.6.7.8", 1).allowed());
+    }
+
+    @Test
+    void refillsContinuouslyAndHonoursRefunds() {
+        SharedStateRateLimiterBackend backend = backend(2);
+        backend.tryConsume("k", 2);
+        assertFalse(backend.tryConsume("k", 1).allowed());
+
+        now.addAndGet(30_000);
+        assertTrue(backend.tryConsume("k", 1).allowed());
+        assertFalse(backend.tryConsume("k", 1).allowed());
+
+        backend.refund("k", 1);
+        assertTrue(backend.tryConsume("k", 1).allowed());
+    }
+
+    @Test
+    void idleKeysExpireFromTheStore() {
+        SharedStateRateLimiterBackend backend = backend(2);
+        backend.tryConsume("a", 1);
+        backend.tryConsume("b", 1);
+        assertEquals(2, backend.trackedKeys());
+
+        now.addAndGet(Duration.ofMinutes(2).toMillis());
+        backend.tryConsume("c", 1); // triggers the sweep
+        assertEquals(1, backend.trackedKeys());
+    }
+
+    @Test
+    void contendedKeyIsDeniedWithAShortRetry() {
+        RateLimitStateStore alwaysRaced = new RateLimitStateStore() {
+            @Override
+            public BucketState get(String key) {
+                return store.get(key);
+            }
+
+            @Override
+            public boolean compareAndSet(String key, BucketState expected, BucketState update, Duration ttl) {
+                return false; // another node always wins
+            }
+
+            @Override
+            public long size() {
+                return store.size();
+            }
+        };
+        SharedStateRateLimiterBackend backend =
+                new SharedStateRateLimiterBackend(alwaysRaced, 4, Duration.ofMinutes(1), now::get);
+
+        RateLimitDecision decision = backend.tryConsume("hot", 1);
+
+        assertFalse(decision.allowed());
+        assertTrue(decision.nanosToRetry() > 0 && decision.nanosToRetry() <= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, backend.contendedDenials());
+    }
+
+    @Test
+    void concurrentNodesNeverAdmitMoreThanTheCapacity() throws Exception {
+        int nodes = 8;
+        int requestsPerNode = 200;
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            SharedStateRateLimiterBackend node = backend(100);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int r = 0; r < requestsPerNode; r++) {
+                    if (node.tryConsume("hot", 1).allowed()) allowed.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        // the clock does not move, so nothing refills while the nodes race
+        assertTrue(allowed.get() <= 100, "admitted " + allowed.get());
+    }
+}
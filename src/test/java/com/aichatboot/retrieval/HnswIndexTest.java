@@ -0,0 +1,118 @@
+package com.aichatboot.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    @TempDir
+    Path dir;
+
+    private HnswIndex open() throws Exception {
+        return new HnswIndex(new MappedVectors(dir.resolve("vectors.bin"), DIMENSIONS), dir.resolve("graph.bin"),
+                16, 100, 42);
+    }
+
+    private static List<float[]> randomVectors(int count, long seed) {
+        Random random = new Random(seed);
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSIONS];
+            for (int d = 0; d < DIMENSIONS; d++) vector[d] = (float) random.nextGaussian();
+            vectors.add(HnswIndex.normalize(vector));
+        }
+        return vectors;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) sum += a[i] * b[i];
+        return sum;
+    }
+
+    @Test
+    void findsMostOfTheExactTopTen() throws Exception {
+        List<float[]> vectors = randomVectors(3000, 1);
+        List<float[]> queries = randomVectors(50, 2);
+        int found = 0;
+        try (HnswIndex index = open()) {
+            for (float[] vector : vectors) index.add(vector);
+            for (float[] query : queries) {
+                Set<Integer> exact = new HashSet<>(IntStream.range(0, vectors.size()).boxed()
+                        .sorted(Comparator.comparingDouble(id -> -dot(vectors.get(id), query)))
+                        .limit(10).toList());
+                for (HnswIndex.Hit hit : index.search(query, 10, 64)) {
+                    if (exact.contains(hit.id())) found++;
+                }
+            }
+        }
+        assertTrue(found >= 0.9 * 10 * queries.size(), "recall@10 was " + found / (10.0 * queries.size()));
+    }
+
+    @Test
+    void storedVectorIsItsOwnNearestNeighbour() throws Exception {
+        List<float[]> vectors = randomVectors(500, 3);
+        try (HnswIndex index = open()) {
+            for (float[] vector : vectors) index.add(vector);
+
+            List<HnswIndex.Hit> hits = index.search(vectors.get(123), 3, 32);
+
+            assertEquals(3, hits.size());
+            assertEquals(123, hits.get(0).id());
+            assertEquals(1.0f, hits.get(0).score(), 1e-4);
+            assertTrue(hits.get(1).score() <= hits.get(0).score());
+        }
+    }
+
+    @Test
+    void reopenedIndexAnswersLikeBefore() throws Exception {
+        List<float[]> vectors = randomVectors(1000, 4);
+        float[] query = randomVectors(1, 5).get(0);
+        List<HnswIndex.Hit> before;
+        try (HnswIndex index = open()) {
+            for (float[] vector : vectors) index.add(vector);
+            before = index.search(query, 5, 64);
+        }
+        assertTrue(Files.exists(dir.resolve("graph.bin")));
+
+        try (HnswIndex index = open()) {
+            assertEquals(1000, index.size());
+            assertEquals(before, index.search(query, 5, 64));
+        }
+    }
+
+    @Test
+    void lostGraphIsRebuiltFromTheVectors() throws Exception {
+        List<float[]> vectors = randomVectors(300, 6);
+        try (HnswIndex index = open()) {
+            for (float[] vector : vectors) index.add(vector);
+        }
+        Files.delete(dir.resolve("graph.bin"));
+
+        try (HnswIndex index = open()) {
+            assertEquals(300, index.size());
+            assertEquals(42, index.search(vectors.get(42), 1, 32).get(0).id());
+        }
+    }
+
+    @Test
+    void emptyIndexFindsNothing() throws Exception {
+        try (HnswIndex index = open()) {
+            assertEquals(List.of(), index.search(randomVectors(1, 7).get(0), 5, 16));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.aichatboot.retrieval;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.exception.DocumentExistsException;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.support.MockOpenAiServer;
+import com.aichatboot.tokenizer.TokenCounter;
+import com.aichatboot.upstream.RetryPolicy;
+import com.aichatboot.upstream.UpstreamRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetrievalServiceTest {
+
+    private static final int DIMENSIONS = 64;
+    private static final TokenCounter TOKEN_COUNTER = new TokenCounter("gpt-4.1-mini", "", 100);
+    private static MockOpenAiServer upstream;
+
+    @TempDir
+    Path dir;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private RetrievalService service;
+
+    @BeforeAll
+    static void startUpstream() {
+        upstream = new MockOpenAiServer().start();
+    }
+
+    @AfterAll
+    static void stopUpstream() {
+        upstream.close();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        if (service != null) service.close();
+    }
+
+    private EmbeddingClient embeddingClient(String baseUrl) {
+        return new EmbeddingClient(UpstreamRouter.single(WebClient.create(baseUrl), "test-key", registry),
+                new RetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(5), registry), new ObjectMapper(),
+                "text-embedding-3-small", DIMENSIONS, 4, DataSize.ofMegabytes(1));
+    }
+
+    private RetrievalService open(EmbeddingClient embeddingClient) {
+        return new RetrievalService(embeddingClient, TOKEN_COUNTER, registry, true, dir, 2, 0.2, 40, 8,
+                8, 50, 32, Duration.ofMinutes(1), () -> 0L);
+    }
+
+    private static ChatRequest ask(String prompt) {
+        ChatRequest request = new ChatRequest();
+        request.setPrompt(prompt);
+        return request;
+    }
+
+    private void ingestSamples() {
+        service.ingest("refunds", "Refunds for physical goods are issued within 30 days of delivery. "
+                + "Digital goods can be refunded within 14 days if they were not downloaded.").block();
+        service.ingest("shipping", "Orders ship from the Rotterdam warehouse. "
+                + "Express shipping arrives the next working day.").block();
+        service.ingest("hours", "The support desk is open from nine to five on weekdays.").block();
+    }
+
+    @Test
+    void retrievesTheChunksSharingTheQuestionsWords() {
+        service = open(embeddingClient(upstream.baseUrl()));
+        ingestSamples();
+
+        List<RetrievedChunk> found = service.retrieve("When are digital goods refunded?", 2).block();
+
+        assertFalse(found.isEmpty());
+        assertEquals("refunds", found.get(0).documentId());
+        assertTrue(found.get(0).text().contains("Digital goods"));
+        for (RetrievedChunk chunk : found) assertTrue(chunk.score() >= 0.2f);
+        assertEquals(3.0, registry.get("chat.retrieval.chunks").gauge().value());
+    }
+
+    @Test
+    void duplicateDocumentIsRejected() {
+        service = open(embeddingClient(upstream.baseUrl()));
+        ingestSamples();
+
+        assertThrows(DocumentExistsException.class, () -> service.ingest("hours", "Closed on Sundays."));
+        assertEquals(3, service.size());
+    }
+
+    @Test
+    void indexSurvivesARestart() throws Exception {
+        service = open(embeddingClient(upstream.baseUrl()));
+        ingestSamples();
+        service.close();
+
+        service = open(embeddingClient(upstream.baseUrl()));
+
+        assertEquals(3, service.size());
+        assertEquals("shipping", service.retrieve("Where do orders ship from?", 1).block().get(0).documentId());
+        assertThrows(DocumentExistsException.class, () -> service.ingest("refunds", "Again."));
+    }
+
+    @Test
+    void requestsCanDeclineRetrieval() {
+        service = open(embeddingClient(upstream.baseUrl()));
+        assertFalse(service.appliesTo(ask("When is the desk open?")), "nothing indexed yet");
+        ingestSamples();
+
+        ChatRequest declined = ask("When is the desk open?");
+        declined.setRetrieval(false);
+        ChatRequest answeredByAssistant = new ChatRequest();
+        answeredByAssistant.setMessages(List.of(new ChatMessage("user", "Hi"), new ChatMessage("assistant", "Hello")));
+
+        assertTrue(service.appliesTo(ask("When is the desk open?")));
+        assertFalse(service.appliesTo(declined));
+        assertFalse(service.appliesTo(answeredByAssistant));
+    }
+
+    @Test
+    void failedLookupAnswersWithoutContext() throws Exception {
+        service = open(embeddingClient(upstream.baseUrl()));
+        ingestSamples();
+        service.close();
+        MockOpenAiServer stopped = new MockOpenAiServer().start();
+        String unreachable = stopped.baseUrl();
+        stopped.close();
+
+        service = open(embeddingClient(unreachable));
+
+        assertEquals(List.of(), service.contextFor(ask("When is the desk open?")).block());
+        assertEquals(1.0, registry.get("chat.retrieval.requests").tag("outcome", "failed").counter().count());
+    }
+
+    @Test
+    void contextGoesInFrontOfTheQuestion() {
+        ChatMessage question = RetrievalService.withContext(new ChatMessage("user", "Open on Sunday?"), List.of(
+                new RetrievedChunk("hours", 0, "Open from nine to five on weekdays.", 0.9f),
+                new RetrievedChunk("holidays", 3, "Closed on public holidays.", 0.5f)));
+
+        assertEquals("user", question.getRole());
+        assertEquals("""
+                Answer using the following excerpts where they are relevant.
+
+                [1] hours
+                Open from nine to five on weekdays.
+
+                [2] holidays
+                Closed on public holidays.
+
+                Question: Open on Sunday?""", question.getContent());
+    }
+
+    @Test
+    void embeddingsAreReadAsBase64OrNumberArrays() throws Exception {
+        EmbeddingClient client = new EmbeddingClient(null, null, new ObjectMapper(), "m", 2, 8, DataSize.ofKilobytes(1));
+        // 1.0f and -2.0f, little-endian
+        String json = """
+                {"data":[{"index":1,"embedding":[0.5,0.25]},{"index":0,"embedding":"AACAPwAAAMA="}],"usage":{}}
+                """;
+
+        float[][] vectors = client.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 2);
+
+        assertArrayEquals(new float[]{1.0f, -2.0f}, vectors[0]);
+        assertArrayEquals(new float[]{0.5f, 0.25f}, vectors[1]);
+        assertThrows(UpstreamException.class, () -> client.parse(new ByteArrayInputStream(
+                "{\"data\":[{\"index\":0,\"embedding\":[1,2,3]}]}".getBytes(StandardCharsets.UTF_8)), 1));
+        UpstreamException error = assertThrows(UpstreamException.class, () -> client.parse(new ByteArrayInputStream(
+                "{\"error\":{\"message\":\"bad model\"}}".getBytes(StandardCharsets.UTF_8)), 1));
+        assertTrue(error.getMessage().contains("bad model"));
+    }
+}
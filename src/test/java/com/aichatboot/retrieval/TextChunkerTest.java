@@ -0,0 +1,54 @@
+package com.aichatboot.retrieval;
+
+import com.aichatboot.tokenizer.TokenCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextChunkerTest {
+
+    private final TokenCounter tokenCounter = new TokenCounter("gpt-4.1-mini", "", 100);
+    private final TextChunker chunker = new TextChunker(tokenCounter, 40, 12);
+
+    @Test
+    void shortDocumentIsOneChunk() {
+        assertEquals(List.of("Refunds take five days.\n\nContact support for help."),
+                chunker.chunk("  Refunds take five days.\n\n\nContact support for help.\n"));
+    }
+
+    @Test
+    void chunksStayWithinTheLimitAndOverlap() {
+        String text = IntStream.range(0, 30)
+                .mapToObj(i -> "Sentence number " + i + " talks about topic " + i + ".")
+                .collect(Collectors.joining(" "));
+
+        List<String> chunks = chunker.chunk(text);
+
+        assertTrue(chunks.size() > 3);
+        for (String chunk : chunks) {
+            assertTrue(tokenCounter.countUncached(chunk) <= 44, chunk);
+        }
+        for (int i = 1; i < chunks.size(); i++) {
+            String previous = chunks.get(i - 1);
+            String lastSentence = previous.substring(previous.lastIndexOf("Sentence"));
+            assertTrue(chunks.get(i).startsWith(lastSentence), chunks.get(i));
+        }
+        assertTrue(chunks.get(0).startsWith("Sentence number 0 "));
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("topic 29."));
+    }
+
+    @Test
+    void sentenceLongerThanAChunkIsSplitIntoWordRuns() {
+        String sentence = IntStream.range(0, 200).mapToObj(i -> "word" + i).collect(Collectors.joining(" "));
+
+        List<String> chunks = chunker.chunk(sentence);
+
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.get(0).startsWith("word0 word1 "));
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("word199"));
+    }
+}
@@ -1,17 +1,47 @@
 package com.aichatboot.service;
 
+import com.aichatboot.cache.ResponseCache;
+import com.aichatboot.dto.ChatMessage;
 import com.aichatboot.dto.ChatRequest;
 import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.exception.RequestTooLargeException;
+import com.aichatboot.exception.UpstreamResponseTooLargeException;
+import com.aichatboot.logging.ChatRequestLogger;
+import com.aichatboot.quota.TokenEstimator;
+import com.aichatboot.quota.TokenQuotaService;
+import com.aichatboot.retrieval.RetrievalService;
+import com.aichatboot.retrieval.RetrievedChunk;
+import com.aichatboot.tokenizer.ContextTrimmer;
+import com.aichatboot.tokenizer.TokenCounter;
+import com.aichatboot.upstream.AdaptiveConcurrencyLimiter;
+import com.aichatboot.upstream.RetryPolicy;
+import com.aichatboot.upstream.UpstreamRouter;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -23,7 +53,11 @@ class ChatServiceTest {
     private WebClient.RequestHeadersSpec<?> headersSpec;
     private WebClient.ResponseSpec responseSpec;
 
+    private RequestCoalescer coalescer;
+    private TokenQuotaService quotaService;
+    private RetrievalService retrievalService;
     private ChatService chatService;
+    private SimpleMeterRegistry registry;
 
     @BeforeEach
     void setUp() {
@@ -35,6 +69,7 @@ class ChatServiceTest {
 
         when(webClient.post()).thenReturn(requestBody);
         when(requestBody.uri(anyString())).thenReturn(requestBody);
+        when(requestBody.header(anyString(), any(String[].class))).thenReturn(requestBody);
         when(requestBody.contentType(any(MediaType.class))).thenReturn(requestBody);
         when(requestBody.accept(any())).thenReturn(requestBody);
 
@@ -43,8 +78,27 @@ class ChatServiceTest {
 
         when(headersSpec.retrieve()).thenReturn(responseSpec);
 
-        chatService = new ChatService(webClient, new ObjectMapper(),
-                "gpt-4.1-mini", 50, 0.1);
+        registry = new SimpleMeterRegistry();
+        ResponseCache responseCache = new ResponseCache(true, 100, 1_000_000, Duration.ofMinutes(5),
+                false, 0.9, registry);
+        coalescer = new RequestCoalescer(true, registry);
+
+        // refill of 1 token/minute keeps budget assertions exact
+        quotaService = new TokenQuotaService(true, 1, 10_000, "", "", new TokenEstimator(), registry);
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 10, 1, 100, 10,
+                Duration.ofSeconds(5), Duration.ofSeconds(30), 1.5, 0.9, 0.5, registry);
+
+        ContextTrimmer trimmer = new ContextTrimmer(new TokenCounter("gpt-4.1-mini", "", 1000), true,
+                "gpt-4.1-mini", 0, 0, 64, 1024);
+
+        RetryPolicy retryPolicy = new RetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(10), registry);
+
+        retrievalService = mock(RetrievalService.class);
+
+        chatService = new ChatService(UpstreamRouter.single(webClient, "test-key", registry), new ObjectMapper(), responseCache, coalescer, quotaService,
+                limiter, retryPolicy, trimmer, new PromptPrefixTracker(registry, 100), retrievalService, registry, new ChatRequestLogger(true, 0, 500, true), "gpt-4.1-mini", 50, 0.1,
+                5, DataSize.ofKilobytes(64));
     }
 
     @Test
@@ -59,8 +113,8 @@ class ChatServiceTest {
             }
             """;
 
-        when(responseSpec.bodyToMono(String.class))
-                .thenReturn(Mono.just(openAiResponse));
+        when(responseSpec.bodyToFlux(DataBuffer.class))
+                .thenReturn(Flux.just(buffer(openAiResponse)));
 
         ChatRequest req = new ChatRequest();
         req.setPrompt("Hello!");
@@ -79,8 +133,8 @@ class ChatServiceTest {
         // Streaming uses same body() signature → mock again
         when(requestBody.body(any(BodyInserter.class))).thenReturn(headersSpec);
 
-        when(responseSpec.bodyToFlux(String.class))
-                .thenReturn(Flux.just(sse, "data: [DONE]"));
+        when(responseSpec.bodyToFlux(DataBuffer.class))
+                .thenReturn(Flux.just(buffer(sse + "\n\n"), buffer("data: [DONE]\n\n")));
 
         ChatRequest request = new ChatRequest();
         request.setPrompt("test");
@@ -89,4 +143,248 @@ class ChatServiceTest {
                 .expectNext("Hello!")
                 .verifyComplete();
     }
+
+    @Test
+    void testRepeatedPromptServedFromCache() {
+
+        String openAiResponse = "{\"id\":\"cached-id\",\"choices\":[{\"message\":{\"content\":\"42\"}}]}";
+
+        when(responseSpec.bodyToFlux(DataBuffer.class))
+                .thenReturn(Flux.just(buffer(openAiResponse)));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("What is the answer?");
+
+        assertFalse(chatService.createCompletion(req).isCached());
+
+        req.setPrompt("  What is   the answer? ");
+        ChatResponse second = chatService.createCompletion(req);
+
+        assertTrue(second.isCached());
+        assertEquals("42", second.getText());
+        verify(webClient, times(1)).post();
+
+        StepVerifier.create(chatService.streamCompletion(req))
+                .expectNext("42")
+                .verifyComplete();
+        verify(webClient, times(1)).post();
+    }
+
+    @Test
+    void testConcurrentIdenticalStreamsShareOneUpstreamCall() {
+
+        Sinks.Many<DataBuffer> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(upstream.asFlux());
+
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("trending question");
+
+        List<String> first = new CopyOnWriteArrayList<>();
+        List<String> second = new CopyOnWriteArrayList<>();
+
+        Disposable leader = chatService.streamCompletion(request).subscribe(first::add);
+        upstream.tryEmitNext(buffer("data: {\"choices\":[{\"delta\":{\"content\":\"Hel\"}}]}\n\n"));
+
+        // late joiner gets the already emitted token replayed
+        chatService.streamCompletion(request).subscribe(second::add);
+
+        // the leader going away must not cancel the shared upstream
+        leader.dispose();
+        upstream.tryEmitNext(buffer("data: {\"choices\":[{\"delta\":{\"content\":\"lo\"}}]}\n\n"));
+        upstream.tryEmitNext(buffer("data: [DONE]\n\n"));
+        upstream.tryEmitComplete();
+
+        assertEquals(List.of("Hel"), first);
+        assertEquals(List.of("Hel", "lo"), second);
+        verify(webClient, times(1)).post();
+        assertEquals(0.5, coalescer.coalescingRatio());
+    }
+
+    @Test
+    void testQuotaSettledAgainstReportedUsage() {
+
+        String openAiResponse = "{\"id\":\"u1\",\"choices\":[{\"message\":{\"content\":\"ok\"}}],"
+                + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3,\"total_tokens\":15,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":8}}}";
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.just(buffer(openAiResponse)));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("count my tokens");
+
+        ChatResponse response = chatService.createCompletion(req, "tenant-a");
+
+        assertEquals(15, response.getUsage().getTotalTokens());
+        assertEquals(8, response.getUsage().getCachedTokens());
+        assertEquals(10_000 - 15, quotaService.availableTokens("tenant-a"));
+        // cache hits are free
+        chatService.createCompletion(req, "tenant-a");
+        assertEquals(10_000 - 15, quotaService.availableTokens("tenant-a"));
+    }
+
+    @Test
+    void testStreamQuotaSettledFromUsageChunk() {
+
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.just(
+                buffer("data: {\"choices\":[{\"delta\":{\"content\":\"Hi\"}}],\"usage\":null}\n\n"),
+                buffer("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":20,\"completion_tokens\":1,\"total_tokens\":21,"
+                        + "\"prompt_tokens_details\":{\"cached_tokens\":16,\"audio_tokens\":0}}}\n\n"),
+                buffer("data: [DONE]\n\n")));
+
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("stream please");
+        request.setBypassCache(true);
+
+        StepVerifier.create(chatService.streamCompletion(request, "tenant-b"))
+                .expectNext("Hi")
+                .verifyComplete();
+
+        assertEquals(10_000 - 21, quotaService.availableTokens("tenant-b"));
+        assertEquals(20, registry.get("chat.tokens").tag("type", "prompt").counter().count());
+        assertEquals(1, registry.get("chat.tokens").tag("type", "completion").counter().count());
+        assertEquals(16, registry.get("chat.tokens").tag("type", "cached").counter().count());
+        assertEquals(0.8, registry.get("chat.prompt.cache.hit.ratio").summary().mean(), 1e-9);
+        assertEquals(0, registry.get("chat.requests.in.flight").tag("mode", "stream").gauge().value());
+    }
+
+    @Test
+    void testFailedUpstreamCallIsNotCharged() {
+
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.error(new IllegalStateException("boom")));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("will fail");
+
+        assertThrows(IllegalStateException.class, () -> chatService.createCompletion(req, "tenant-c"));
+        assertEquals(10_000, quotaService.availableTokens("tenant-c"));
+    }
+
+    @Test
+    void testTransientSyncFailureIsRetried() {
+
+        AtomicInteger calls = new AtomicInteger();
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.defer(() -> calls.incrementAndGet() == 1
+                ? Flux.error(unavailable())
+                : Flux.just(buffer("{\"id\":\"r\",\"choices\":[{\"message\":{\"content\":\"recovered\"}}]}"))));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("flaky");
+
+        assertEquals("recovered", chatService.createCompletion(req, "tenant-d").getText());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testStreamIsRetriedOnlyBeforeTheFirstToken() {
+
+        AtomicInteger calls = new AtomicInteger();
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.defer(() -> calls.incrementAndGet() == 1
+                ? Flux.error(unavailable())
+                : Flux.just(buffer("data: {\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}\n\n"))
+                        .concatWith(Flux.error(unavailable()))));
+
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("flaky stream");
+        request.setBypassCache(true);
+
+        StepVerifier.create(chatService.streamCompletion(request, "tenant-e"))
+                .expectNext("Hi")
+                .expectError(WebClientResponseException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testOversizedUpstreamResponseFailsWithoutRetry() {
+
+        AtomicInteger calls = new AtomicInteger();
+        String huge = "{\"id\":\"big\",\"choices\":[{\"message\":{\"content\":\"" + "x".repeat(70_000) + "\"}}]}";
+        when(responseSpec.bodyToFlux(DataBuffer.class)).thenReturn(Flux.defer(() -> {
+            calls.incrementAndGet();
+            return Flux.just(buffer(huge.substring(0, 40_000)), buffer(huge.substring(40_000)));
+        }));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("write a novel");
+
+        assertThrows(UpstreamResponseTooLargeException.class, () -> chatService.createCompletion(req, "tenant-f"));
+        assertEquals(1, calls.get());
+        assertEquals(10_000, quotaService.availableTokens("tenant-f"));
+    }
+
+    @Test
+    void testTooManyMessagesAreRejectedBeforeTheUpstream() {
+
+        ChatRequest req = new ChatRequest();
+        req.setMessages(IntStream.range(0, 6)
+                .mapToObj(i -> new ChatMessage(i % 2 == 0 ? "user" : "assistant", "turn " + i))
+                .toList());
+
+        assertThrows(RequestTooLargeException.class, () -> chatService.completion(req, "tenant-g"));
+        assertThrows(RequestTooLargeException.class, () -> chatService.streamCompletion(req, "tenant-g"));
+        verify(webClient, never()).post();
+    }
+
+    @Test
+    void requestOverridesReachTheUpstreamBody() throws Exception {
+        ChatRequest request = new ChatRequest();
+        request.setPrompt("Hello!");
+        request.setSystemPrompt("Answer in French.");
+        request.setTemperature(0.7);
+        request.setMaxTokens(20);
+
+        RequestOptions options = chatService.optionsFor(request);
+        JsonNode body = new ObjectMapper().readTree(
+                chatService.buildRequest(chatService.prepareMessages(request), options, false).json());
+
+        assertEquals("gpt-4.1-mini", body.path("model").asText());
+        assertEquals(0.7, body.path("temperature").asDouble());
+        assertEquals(20, body.path("max_tokens").asInt());
+        assertEquals("Answer in French.", body.path("messages").path(0).path("content").asText());
+        assertEquals("Hello!", body.path("messages").path(1).path("content").asText());
+
+        assertSame(chatService.optionsFor(new ChatRequest()), chatService.optionsFor(new ChatRequest()));
+    }
+
+    @Test
+    void retrievedChunksGoInFrontOfTheLatestUserMessage() {
+        ChatRequest request = new ChatRequest();
+        request.setMessages(List.of(
+                new ChatMessage("user", "What is the refund window?"),
+                new ChatMessage("assistant", "30 days."),
+                new ChatMessage("user", "And for digital goods?")));
+        List<RetrievedChunk> chunks = List.of(new RetrievedChunk("policy", 2, "Digital goods: 14 days.", 0.8f));
+
+        List<ChatMessage> messages = chatService.prepareMessages(request, chunks);
+
+        assertEquals(4, messages.size());
+        assertEquals("What is the refund window?", messages.get(1).getContent());
+        String question = messages.get(3).getContent();
+        assertEquals("user", messages.get(3).getRole());
+        assertTrue(question.contains("[1] policy\nDigital goods: 14 days."));
+        assertTrue(question.endsWith("Question: And for digital goods?"));
+    }
+
+    @Test
+    void completionWaitsForRetrievedContext() {
+        when(retrievalService.appliesTo(any())).thenReturn(true);
+        when(retrievalService.contextFor(any()))
+                .thenReturn(Mono.just(List.of(new RetrievedChunk("faq", 0, "Opening hours are 9 to 5.", 0.7f))));
+        when(responseSpec.bodyToFlux(DataBuffer.class))
+                .thenReturn(Flux.just(buffer("{\"id\":\"r\",\"choices\":[{\"message\":{\"content\":\"9 to 5\"}}]}")));
+
+        ChatRequest req = new ChatRequest();
+        req.setPrompt("When are you open?");
+
+        assertEquals("9 to 5", chatService.createCompletion(req).getText());
+        verify(retrievalService).contextFor(req);
+    }
+
+    private static WebClientResponseException unavailable() {
+        return WebClientResponseException.create(503, "Service Unavailable", new HttpHeaders(), new byte[0], null);
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
 }
@@ -0,0 +1,110 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatResponse;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.exception.UpstreamResponseTooLargeException;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionDecoderTest {
+
+    private static final String COMPLETION = """
+            {
+              "id": "chatcmpl-1",
+              "object": "chat.completion",
+              "choices": [
+                { "index": 0, "message": { "role": "assistant", "content": " Grüße, wörld ",
+                  "tool_calls": [ { "content": "not this" } ] }, "finish_reason": "stop" },
+                { "index": 1, "message": { "role": "assistant", "content": "Second" }, "finish_reason": "length" }
+              ],
+              "usage": { "prompt_tokens": 12, "completion_tokens": 7, "total_tokens": 19,
+                         "prompt_tokens_details": { "cached_tokens": 8 } },
+              "metadata": { "usage": { "total_tokens": 99 }, "id": "nested" }
+            }
+            """;
+
+    private final CompletionDecoder decoder = new CompletionDecoder(new JsonFactory(), 64 * 1024);
+
+    /** {@code json} as buffers of {@code size} bytes, so multi-byte characters and tokens get split */
+    private static Flux<DataBuffer> chunks(String json, int size) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += size) {
+            buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(
+                    Arrays.copyOfRange(bytes, i, Math.min(bytes.length, i + size))));
+        }
+        return Flux.fromIterable(buffers);
+    }
+
+    @Test
+    void decodesChoicesUsageAndFinishReasonAcrossSplitBuffers() {
+        for (int size : new int[]{1, 3, 17, 4096}) {
+            ChatResponse response = decoder.decode(chunks(COMPLETION, size)).block();
+
+            assertNotNull(response);
+            assertEquals("chatcmpl-1", response.getId());
+            assertEquals("Grüße, wörld", response.getText());
+            assertEquals("stop", response.getFinishReason());
+            assertEquals(2, response.getChoices().size());
+            assertEquals("Second", response.getChoices().get(1).getText());
+            assertEquals("length", response.getChoices().get(1).getFinishReason());
+            assertEquals(1, response.getChoices().get(1).getIndex());
+            assertEquals(12, response.getUsage().getPromptTokens());
+            assertEquals(7, response.getUsage().getCompletionTokens());
+            assertEquals(19, response.getUsage().getTotalTokens());
+            assertEquals(8, response.getUsage().getCachedTokens());
+        }
+    }
+
+    @Test
+    void singleChoiceLeavesChoicesUnset() {
+        ChatResponse response = decoder.decode(chunks(
+                "{\"choices\":[{\"message\":{\"content\":\"only\"}}]}", 8)).block();
+
+        assertNotNull(response);
+        assertEquals("only", response.getText());
+        assertNull(response.getChoices());
+        assertNull(response.getUsage());
+        assertFalse(response.getId().isEmpty());
+    }
+
+    @Test
+    void failsOnceTheBodyCrossesTheLimit() {
+        CompletionDecoder small = new CompletionDecoder(new JsonFactory(), 100);
+
+        StepVerifier.create(small.decode(chunks(COMPLETION, 64)))
+                .expectError(UpstreamResponseTooLargeException.class)
+                .verify();
+    }
+
+    @Test
+    void rejectsEmptyTruncatedAndMalformedBodies() {
+        StepVerifier.create(decoder.decode(Flux.empty()))
+                .expectErrorMessage("Empty response from upstream")
+                .verify();
+        StepVerifier.create(decoder.decode(chunks(COMPLETION.substring(0, COMPLETION.length() / 2), 16)))
+                .expectErrorMessage("Truncated upstream response")
+                .verify();
+        StepVerifier.create(decoder.decode(chunks("{\"choices\": [}", 4)))
+                .expectError(UpstreamException.class)
+                .verify();
+    }
+
+    @Test
+    void surfacesUpstreamErrorObject() {
+        StepVerifier.create(decoder.decode(chunks("{\"error\":{\"message\":\"model overloaded\",\"code\":null}}", 5)))
+                .expectErrorMessage("Upstream error: model overloaded")
+                .verify();
+    }
+}
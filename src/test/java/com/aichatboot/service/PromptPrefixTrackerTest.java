@@ -0,0 +1,60 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptPrefixTrackerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final PromptPrefixTracker tracker = new PromptPrefixTracker(registry, 2);
+
+    private static final ChatMessage SYSTEM = new ChatMessage("system", "be brief");
+
+    private double count(String outcome) {
+        return registry.get("chat.prompt.prefix").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    void followUpTurnExtendsThePreviousPrompt() {
+        assertFalse(tracker.observe("c", List.of(SYSTEM, new ChatMessage("user", "hi"))));
+        assertTrue(tracker.observe("c", List.of(SYSTEM, new ChatMessage("user", "hi"),
+                new ChatMessage("assistant", "hello"), new ChatMessage("user", "more"))));
+
+        assertEquals(1, count("new"));
+        assertEquals(1, count("extended"));
+    }
+
+    @Test
+    void droppedOrEditedTurnChangesThePrefix() {
+        tracker.observe("c", List.of(SYSTEM, new ChatMessage("user", "a"), new ChatMessage("assistant", "b")));
+
+        assertFalse(tracker.observe("c", List.of(SYSTEM, new ChatMessage("assistant", "b"), new ChatMessage("user", "c"))));
+        assertFalse(tracker.observe("c", List.of(new ChatMessage("system", "be verbose"), new ChatMessage("user", "d"))));
+        assertEquals(2, count("changed"));
+    }
+
+    @Test
+    void forgetsLeastRecentlyUsedConversations() {
+        List<ChatMessage> prompt = List.of(SYSTEM, new ChatMessage("user", "hi"));
+        tracker.observe("a", prompt);
+        tracker.observe("b", prompt);
+        tracker.observe("c", prompt);
+
+        assertFalse(tracker.observe("a", prompt));
+        assertEquals(4, count("new"));
+    }
+
+    @Test
+    void prefixHashesDependOnRoleAndContent() {
+        long[] user = PromptPrefixTracker.prefixHashes(List.of(new ChatMessage("user", "x")));
+        long[] assistant = PromptPrefixTracker.prefixHashes(List.of(new ChatMessage("assistant", "x")));
+        assertNotEquals(user[0], assistant[0]);
+        assertEquals(user[0], PromptPrefixTracker.prefixHashes(List.of(new ChatMessage("user", "x"),
+                new ChatMessage("user", "y")))[0]);
+    }
+}
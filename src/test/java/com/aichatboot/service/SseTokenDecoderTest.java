@@ -0,0 +1,90 @@
+package com.aichatboot.service;
+
+import com.aichatboot.exception.UpstreamException;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+
+class SseTokenDecoderTest {
+
+    private final SseTokenDecoder decoder = new SseTokenDecoder(new JsonFactory());
+
+    private static String chunk(String content) {
+        return "data: {\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"}}]}\n\n";
+    }
+
+    private static Flux<DataBuffer> frames(String... frames) {
+        return Flux.fromArray(frames)
+                .map(f -> DefaultDataBufferFactory.sharedInstance.wrap(f.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void reassemblesEventsSplitAcrossFrames() {
+        String payload = chunk("Hel") + chunk("lo") + chunk(" wörld") + "data: [DONE]\n\n";
+        int third = payload.length() / 3;
+
+        StepVerifier.create(decoder.decode(frames(
+                        payload.substring(0, 7),
+                        payload.substring(7, third),
+                        payload.substring(third, 2 * third),
+                        payload.substring(2 * third))))
+                .expectNext("Hel", "lo", " wörld")
+                .verifyComplete();
+    }
+
+    @Test
+    void handlesCrLfAndKeepAliveComments() {
+        StepVerifier.create(decoder.decode(frames(
+                        ": keep-alive\r\n\r\n",
+                        chunk("a").replace("\n", "\r\n"),
+                        "data: [DONE]\r\n\r\n")))
+                .expectNext("a")
+                .verifyComplete();
+    }
+
+    @Test
+    void stopsAtDoneMarker() {
+        StepVerifier.create(decoder.decode(frames(chunk("a") + "data: [DONE]\n\n" + chunk("ignored"))))
+                .expectNext("a")
+                .verifyComplete();
+    }
+
+    @Test
+    void skipsOnlyTheMalformedEvent() {
+        StepVerifier.create(decoder.decode(frames(chunk("a"), "data: {\"choices\":[{\"delta\n\n", chunk("b"))))
+                .expectNext("a", "b")
+                .verifyComplete();
+    }
+
+    @Test
+    void ignoresRoleAndFinishChunks() {
+        StepVerifier.create(decoder.decode(frames(
+                        "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"},\"finish_reason\":null}]}\n\n",
+                        chunk("x"),
+                        "data: {\"choices\":[{\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n")))
+                .expectNext("x")
+                .verifyComplete();
+    }
+
+    @Test
+    void errorPayloadFailsTheStream() {
+        StepVerifier.create(decoder.decode(frames(
+                        chunk("a"),
+                        "data: {\"error\":{\"message\":\"overloaded\",\"type\":\"server_error\"}}\n\n")))
+                .expectNext("a")
+                .expectErrorMatches(e -> e instanceof UpstreamException && e.getMessage().contains("overloaded"))
+                .verify();
+    }
+
+    @Test
+    void flushesTrailingEventWithoutBlankLine() {
+        StepVerifier.create(decoder.decode(frames("data: {\"choices\":[{\"delta\":{\"content\":\"end\"}}]}")))
+                .expectNext("end")
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,59 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatRequest;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenCoalescerTest {
+
+    private final TokenCoalescer coalescer = new TokenCoalescer(false, 4, 8, Duration.ofMillis(30));
+
+    @Test
+    void firstTokenIsNotDelayed() {
+        StepVerifier.withVirtualTime(() -> coalescer.coalesce(Flux.just("a", "b", "c").concatWith(Flux.never())))
+                .expectSubscription()
+                .expectNext("a")
+                .expectNoEvent(Duration.ofMillis(29))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("bc")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void batchesByTokenCountAndFlushesOnComplete() {
+        StepVerifier.create(coalescer.coalesce(Flux.range(1, 10).map(String::valueOf)))
+                .expectNext("1", "2345", "6789", "10")
+                .verifyComplete();
+    }
+
+    @Test
+    void splitsBatchesAtTheByteLimit() {
+        assertEquals(List.of("abcdefg", "hi"), coalescer.frames(List.of("abcd", "efg", "hi")));
+        assertEquals(List.of("éééé", "é"), coalescer.frames(List.of("é", "é", "é", "é", "é")));
+        assertEquals(List.of("a", "0123456789"), coalescer.frames(List.of("a", "0123456789")));
+    }
+
+    @Test
+    void emptyStreamStaysEmpty() {
+        StepVerifier.create(coalescer.coalesce(Flux.empty())).verifyComplete();
+    }
+
+    @Test
+    void requestFlagOverridesServerDefault() {
+        ChatRequest request = new ChatRequest();
+        assertFalse(coalescer.appliesTo(request));
+
+        request.setCoalesce(true);
+        assertTrue(coalescer.appliesTo(request));
+
+        request.setCoalesce(false);
+        assertFalse(new TokenCoalescer(true, 4, 8, Duration.ofMillis(30)).appliesTo(request));
+    }
+}
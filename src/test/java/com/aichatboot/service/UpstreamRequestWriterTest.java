@@ -0,0 +1,87 @@
+package com.aichatboot.service;
+
+import com.aichatboot.dto.ChatMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamRequestWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final RequestOptions defaults = new RequestOptions("gpt-4.1-mini", 0.2, 1500);
+    private final UpstreamRequestWriter writer = new UpstreamRequestWriter(mapper.getFactory(), defaults);
+
+    private static final List<ChatMessage> MESSAGES = List.of(
+            new ChatMessage("system", "Be brief."),
+            new ChatMessage("user", "Say \"hi\"\nand ünïcödé"));
+
+    @Test
+    void writesTheSameBodyAsTheOpenAiFormat() throws Exception {
+        JsonNode body = mapper.readTree(writer.write(MESSAGES, defaults, false).json());
+
+        assertEquals("gpt-4.1-mini", body.path("model").asText());
+        assertEquals(0.2, body.path("temperature").asDouble());
+        assertEquals(1500, body.path("max_tokens").asInt());
+        assertFalse(body.path("stream").asBoolean());
+        assertTrue(body.path("stream_options").isMissingNode());
+        assertEquals("Say \"hi\"\nand ünïcödé", body.path("messages").path(1).path("content").asText());
+        assertEquals("system", body.path("messages").path(0).path("role").asText());
+    }
+
+    @Test
+    void streamBodyAsksForUsage() throws Exception {
+        JsonNode body = mapper.readTree(writer.write(MESSAGES, defaults, true).json());
+
+        assertTrue(body.path("stream").asBoolean());
+        assertTrue(body.path("stream_options").path("include_usage").asBoolean());
+    }
+
+    @Test
+    void identicalRequestsAreEqualKeys() throws Exception {
+        UpstreamRequest first = writer.write(MESSAGES, defaults, false);
+        UpstreamRequest second = writer.write(List.copyOf(MESSAGES), defaults, false);
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, writer.write(MESSAGES, defaults, true));
+    }
+
+    @Test
+    void overridesReplaceTheDefaults() throws Exception {
+        RequestOptions options = new RequestOptions("gpt-4o", 0.9, 42);
+        JsonNode body = mapper.readTree(writer.write(MESSAGES, options, false).json());
+
+        assertEquals("gpt-4o", body.path("model").asText());
+        assertEquals(0.9, body.path("temperature").asDouble());
+        assertEquals(42, body.path("max_tokens").asInt());
+    }
+
+    @Test
+    void pinnedEndpointModelReplacesOnlyTheDefaultModel() throws Exception {
+        UpstreamRequest request = writer.write(MESSAGES, defaults, true);
+        JsonNode retargeted = mapper.readTree(writer.forEndpoint(request, "gpt-4o-eu"));
+
+        assertEquals("gpt-4o-eu", retargeted.path("model").asText());
+        assertEquals(mapper.readTree(request.json()).path("messages"), retargeted.path("messages"));
+        assertTrue(retargeted.path("stream_options").path("include_usage").asBoolean());
+        assertSame(request.json(), writer.forEndpoint(request, null));
+
+        UpstreamRequest explicit = writer.write(MESSAGES, new RequestOptions("o3", 0.2, 1500), false);
+        assertSame(explicit.json(), writer.forEndpoint(explicit, "gpt-4o-eu"));
+    }
+
+    @Test
+    void largeBodiesAreWrittenCompletely() throws Exception {
+        String big = "x".repeat(200_000);
+        JsonNode body = mapper.readTree(writer.write(List.of(new ChatMessage("user", big)), defaults, false).json());
+        assertEquals(big, body.path("messages").path(0).path("content").asText());
+
+        // the next request on this thread starts from a clean buffer
+        JsonNode next = mapper.readTree(writer.write(MESSAGES, defaults, false).json());
+        assertEquals(2, next.path("messages").size());
+    }
+}
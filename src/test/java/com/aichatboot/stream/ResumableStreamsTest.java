@@ -0,0 +1,66 @@
+package com.aichatboot.stream;
+
+import com.aichatboot.exception.StreamNotFoundException;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResumableStreamsTest {
+
+    @Test
+    void resumeOffsetFollowsTheLastEventOfTheSameStream() {
+        assertEquals(0, ResumableStreams.resumeOffset("s", null));
+        assertEquals(5, ResumableStreams.resumeOffset("s", ResumableStreams.eventId("s", 4)));
+        assertEquals(0, ResumableStreams.resumeOffset("s", "other:4"));
+        assertEquals(0, ResumableStreams.resumeOffset("s", "s:x"));
+    }
+
+    @Test
+    void streamsAreScopedToTheirOwnerAndExpireAfterRetention() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ResumableStreams streams = new ResumableStreams(true, 10, 8, Duration.ofMinutes(1), Duration.ofSeconds(30),
+                false, Path.of("unused"), 0, Schedulers.parallel(), clock::get);
+
+        StreamJournal journal = streams.start("owner", Flux.just("a")).orElseThrow();
+        assertSame(journal, streams.get(journal.getId(), "owner"));
+        assertThrows(StreamNotFoundException.class, () -> streams.get(journal.getId(), "intruder"));
+
+        clock.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertThrows(StreamNotFoundException.class, () -> streams.get(journal.getId(), "owner"));
+    }
+
+    @Test
+    void runningStreamIsNotDroppedWhenFull() {
+        ResumableStreams streams = new ResumableStreams(true, 1, 8, Duration.ofMinutes(1), Duration.ofSeconds(30),
+                false, Path.of("unused"), 0, Schedulers.parallel(), () -> 0L);
+        AtomicBoolean subscribed = new AtomicBoolean();
+
+        StreamJournal first = streams.start("t", Flux.never()).orElseThrow();
+        Optional<StreamJournal> second = streams.start("t", Flux.<String>never().doOnSubscribe(s -> subscribed.set(true)));
+
+        assertTrue(second.isEmpty());
+        assertFalse(subscribed.get(), "the caller streams it without a journal");
+        assertFalse(first.isFinished());
+        assertSame(first, streams.get(first.getId(), "t"));
+    }
+
+    @Test
+    void oldestFinishedStreamMakesRoomWhenFull() {
+        ResumableStreams streams = new ResumableStreams(true, 1, 8, Duration.ofMinutes(1), Duration.ofSeconds(30),
+                false, Path.of("unused"), 0, Schedulers.parallel(), () -> 0L);
+
+        StreamJournal first = streams.start("t", Flux.just("a")).orElseThrow();
+        StreamJournal second = streams.start("t", Flux.never()).orElseThrow();
+
+        assertThrows(StreamNotFoundException.class, () -> streams.get(first.getId(), "t"));
+        assertSame(second, streams.get(second.getId(), "t"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.aichatboot.stream;
+
+import com.aichatboot.exception.StreamExpiredException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamJournalTest {
+
+    private static StreamJournal journal(int capacity, FrameSpill spill) {
+        return new StreamJournal("s", "t", capacity, spill, Duration.ofMinutes(1), Schedulers.parallel(), () -> 0L);
+    }
+
+    @Test
+    void replaysJournaledFramesThenFollowsLiveOnes() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        StreamJournal journal = journal(8, null);
+        journal.attach(upstream.asFlux());
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+
+        StepVerifier.create(journal.read(1).map(StreamJournal.Frame::text))
+                .expectNext("b")
+                .then(() -> upstream.tryEmitNext("c"))
+                .expectNext("c")
+                .then(upstream::tryEmitComplete)
+                .verifyComplete();
+
+        StepVerifier.create(journal.read(0).map(StreamJournal.Frame::offset))
+                .expectNext(0L, 1L, 2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void clientDisconnectDoesNotCancelTheUpstream() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        StreamJournal journal = journal(8, null);
+        journal.attach(upstream.asFlux());
+
+        journal.read(0).take(1).subscribe();
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+
+        assertEquals(1, upstream.currentSubscriberCount());
+        StepVerifier.create(journal.read(1).map(StreamJournal.Frame::text))
+                .expectNext("b")
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    void framesOutOfTheRingAreExpired() {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        StreamJournal journal = journal(2, null);
+        journal.attach(upstream.asFlux());
+        upstream.tryEmitNext("a");
+        upstream.tryEmitNext("b");
+        upstream.tryEmitNext("c");
+
+        assertThrows(StreamExpiredException.class, () -> journal.checkAvailable(0));
+        journal.checkAvailable(1);
+        StepVerifier.create(journal.read(0)).verifyError(StreamExpiredException.class);
+    }
+
+    @Test
+    void evictedFramesAreReadBackFromTheSpill(@TempDir Path dir) throws Exception {
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        FrameSpill spill = new FrameSpill(dir, "s", 4096);
+        StreamJournal journal = journal(2, spill);
+        journal.attach(upstream.asFlux());
+        for (String frame : new String[]{"a", "b", "ç", "d"}) upstream.tryEmitNext(frame);
+        upstream.tryEmitComplete();
+
+        assertEquals(2, spill.size());
+        StepVerifier.create(journal.read(0).map(StreamJournal.Frame::text))
+                .expectNext("a", "b", "ç", "d")
+                .verifyComplete();
+
+        journal.close();
+        assertFalse(dir.resolve("s.frames").toFile().exists());
+    }
+
+    @Test
+    void upstreamIsCancelledOnceNobodyReads() {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+        StreamJournal journal = new StreamJournal("s", "t", 8, null, Duration.ofSeconds(30), scheduler, () -> 0L);
+        journal.attach(upstream.asFlux());
+
+        journal.read(0).subscribe().dispose();
+        scheduler.advanceTimeBy(Duration.ofSeconds(29));
+        assertEquals(1, upstream.currentSubscriberCount());
+
+        scheduler.advanceTimeBy(Duration.ofSeconds(1));
+        assertEquals(0, upstream.currentSubscriberCount());
+        assertTrue(journal.isFinished());
+        StepVerifier.create(journal.read(0)).verifyError(StreamExpiredException.class);
+    }
+}
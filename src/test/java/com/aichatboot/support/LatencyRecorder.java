@@ -0,0 +1,37 @@
+package com.aichatboot.support;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe collector of latency samples (nanoseconds) with exact percentiles.
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return the sample at the given percentile in milliseconds, or 0 when empty
+     */
+    public synchronized double percentileMillis(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+    }
+}
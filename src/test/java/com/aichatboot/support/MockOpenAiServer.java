@@ -0,0 +1,197 @@
+package com.aichatboot.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded OpenAI-compatible {@code POST /chat/completions} for load and integration tests.
+ * <p>
+ * Serves both plain JSON and SSE streaming answers with tunable time-to-first-token, inter-token
+ * delay, completion size and failure rate. Point {@code openai.api.base-url} at {@link #baseUrl()}.
+ * <p>
+ * {@code POST /embeddings} answers instantly with hashed bag-of-words vectors, so texts sharing
+ * words come out similar and the same text always gets the same vector.
+ */
+public class MockOpenAiServer implements AutoCloseable {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private volatile Duration timeToFirstToken = Duration.ofMillis(200);
+    private volatile Duration interTokenDelay = Duration.ofMillis(20);
+    private volatile int completionTokens = 50;
+    private volatile String tokenText = " lorem";
+    private volatile double errorRate;
+    private volatile int errorStatus = 500;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong embeddingRequests = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    private DisposableServer server;
+
+    public MockOpenAiServer start() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/chat/completions", this::handle)
+                        .post("/embeddings", this::embeddings))
+                .bindNow();
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public MockOpenAiServer timeToFirstToken(Duration value) { this.timeToFirstToken = value; return this; }
+    public MockOpenAiServer interTokenDelay(Duration value) { this.interTokenDelay = value; return this; }
+    public MockOpenAiServer completionTokens(int value) { this.completionTokens = value; return this; }
+    public MockOpenAiServer tokenText(String value) { this.tokenText = value; return this; }
+    public MockOpenAiServer errorRate(double value) { this.errorRate = value; return this; }
+    public MockOpenAiServer errorStatus(int value) { this.errorStatus = value; return this; }
+
+    public long requestCount() { return requests.get(); }
+    public long embeddingRequestCount() { return embeddingRequests.get(); }
+    public long errorCount() { return errors.get(); }
+    public int peakInFlight() { return peakInFlight.get(); }
+
+    public void resetStats() {
+        requests.set(0);
+        errors.set(0);
+        peakInFlight.set(inFlight.get());
+    }
+
+    @Override
+    public void close() {
+        if (server != null) server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        requests.incrementAndGet();
+        peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+        return request.receive().aggregate().asString()
+                .defaultIfEmpty("{}")
+                .flatMap(body -> respond(body, response))
+                .doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    private Mono<Void> respond(String body, HttpServerResponse response) {
+        JsonNode request = readBody(body);
+        boolean stream = request.path("stream").asBoolean(false);
+        boolean includeUsage = request.path("stream_options").path("include_usage").asBoolean(false);
+        Duration ttft = timeToFirstToken;
+        Duration gap = interTokenDelay;
+        int tokens = completionTokens;
+        String token = tokenText;
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            return response.status(HttpResponseStatus.valueOf(errorStatus))
+                    .header("Content-Type", "application/json")
+                    .sendString(Mono.delay(ttft).thenReturn(
+                            "{\"error\":{\"message\":\"mock failure\",\"type\":\"server_error\"}}"))
+                    .then();
+        }
+
+        String id = "chatcmpl-mock-" + requests.get();
+
+        if (!stream) {
+            Duration total = ttft.plus(gap.multipliedBy(Math.max(0, tokens - 1)));
+            String json = "{\"id\":\"" + id + "\",\"object\":\"chat.completion\",\"choices\":[{\"index\":0,"
+                    + "\"message\":{\"role\":\"assistant\",\"content\":\"" + token.repeat(tokens) + "\"},"
+                    + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":20,\"completion_tokens\":" + tokens
+                    + ",\"total_tokens\":" + (20 + tokens) + "}}";
+            return response.header("Content-Type", "application/json")
+                    .sendString(Mono.delay(total).thenReturn(json))
+                    .then();
+        }
+
+        String chunk = "data: {\"id\":\"" + id + "\",\"object\":\"chat.completion.chunk\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"content\":\"" + token + "\"},\"finish_reason\":null}]}\n\n";
+        String usage = includeUsage
+                ? "data: {\"id\":\"" + id + "\",\"choices\":[],\"usage\":{\"prompt_tokens\":20,\"completion_tokens\":"
+                        + tokens + ",\"total_tokens\":" + (20 + tokens) + "}}\n\n"
+                : "";
+        Flux<String> events = Flux.range(0, tokens)
+                .concatMap(i -> Mono.delay(i == 0 ? ttft : gap).thenReturn(chunk))
+                .concatWith(Mono.just("data: {\"id\":\"" + id + "\",\"choices\":[{\"index\":0,\"delta\":{},"
+                        + "\"finish_reason\":\"stop\"}]}\n\n" + usage + "data: [DONE]\n\n"));
+
+        return response.header("Content-Type", "text/event-stream")
+                .sendString(events)
+                .then();
+    }
+
+    private Mono<Void> embeddings(HttpServerRequest request, HttpServerResponse response) {
+        embeddingRequests.incrementAndGet();
+        return request.receive().aggregate().asString()
+                .defaultIfEmpty("{}")
+                .flatMap(body -> {
+                    JsonNode json = readBody(body);
+                    int dimensions = json.path("dimensions").asInt(256);
+                    boolean base64 = "base64".equals(json.path("encoding_format").asText());
+                    StringBuilder out = new StringBuilder("{\"object\":\"list\",\"data\":[");
+                    JsonNode input = json.path("input");
+                    for (int i = 0; i < input.size(); i++) {
+                        float[] vector = embed(input.get(i).asText(), dimensions);
+                        if (i > 0) out.append(',');
+                        out.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":");
+                        if (base64) {
+                            ByteBuffer bytes = ByteBuffer.allocate(dimensions * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                            for (float v : vector) bytes.putFloat(v);
+                            out.append('"').append(Base64.getEncoder().encodeToString(bytes.array())).append('"');
+                        } else {
+                            out.append(Arrays.toString(vector));
+                        }
+                        out.append('}');
+                    }
+                    out.append("],\"model\":\"mock-embedding\",\"usage\":{\"prompt_tokens\":0,\"total_tokens\":0}}");
+                    return response.header("Content-Type", "application/json")
+                            .sendString(Mono.just(out.toString()))
+                            .then();
+                });
+    }
+
+    /**
+     * Each lower-cased word adds one to a bucket picked by its hash; unit length
+     */
+    static float[] embed(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) vector[Math.floorMod(word.hashCode(), dimensions)] += 1;
+        }
+        double norm = 0;
+        for (float v : vector) norm += v * v;
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static JsonNode readBody(String body) {
+        try {
+            return MAPPER.readTree(body);
+        } catch (Exception e) {
+            return MAPPER.missingNode();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.aichatboot.tokenizer;
+
+import com.aichatboot.dto.ChatMessage;
+import com.aichatboot.exception.PromptTooLongException;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContextTrimmerTest {
+
+    private final TokenCounter counter = new TokenCounter("gpt-4o", "", 100);
+
+    /** n tokens: the pre-tokenizer splits on word boundaries */
+    private static String words(int n) {
+        return "hello" + " hello".repeat(n - 1);
+    }
+
+    private static ChatMessage message(String role, int tokens) {
+        return new ChatMessage(role, words(tokens));
+    }
+
+    private ContextTrimmer trimmer(int window) {
+        return new ContextTrimmer(counter, true, "gpt-4o", window, 0, 0, 0);
+    }
+
+    @Test
+    void picksEncodingFromModel() {
+        assertEquals(EncodingType.O200K_BASE, TokenCounter.encodingFor("gpt-4.1-mini"));
+        assertEquals(EncodingType.O200K_BASE, TokenCounter.encodingFor("o3-mini"));
+        assertEquals(EncodingType.CL100K_BASE, TokenCounter.encodingFor("gpt-3.5-turbo"));
+        assertEquals(2, counter.count("hello world"));
+        assertEquals(200, counter.count(words(200)));
+        assertEquals(200, counter.count(words(200))); // served from the count cache
+    }
+
+    @Test
+    void keepsEverythingThatFits() {
+        List<ChatMessage> messages = List.of(message("system", 10), message("user", 10));
+
+        TrimResult result = trimmer(1_000).trim(messages, 100);
+
+        assertSame(messages, result.messages());
+        assertEquals(3 + 2 * (4 + 10), result.promptTokens());
+        assertEquals(0, result.droppedMessages());
+    }
+
+    @Test
+    void dropsOldestTurnsButKeepsSystemPromptAndLatestMessage() {
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(message("system", 10));
+        for (int i = 0; i < 5; i++) {
+            messages.add(message("user", 46));
+            messages.add(message("assistant", 46));
+        }
+        messages.add(message("user", 46));
+
+        // each message is 50 tokens; the 300 token budget keeps the system prompt (14) and the last 5
+        TrimResult result = trimmer(400).trim(messages, 100);
+
+        assertEquals("system", result.messages().get(0).getRole());
+        assertEquals("user", result.messages().get(1).getRole());
+        assertSame(messages.get(messages.size() - 1), result.messages().get(result.messages().size() - 1));
+        assertEquals(messages.size() - result.messages().size(), result.droppedMessages());
+        assertTrue(result.promptTokens() <= 300);
+        assertEquals(result.promptTokens(), counter.countPrompt(result.messages()));
+    }
+
+    @Test
+    void rejectsALatestMessageThatCannotFit() {
+        List<ChatMessage> messages = List.of(message("system", 10), message("user", 500));
+
+        assertThrows(PromptTooLongException.class, () -> trimmer(400).trim(messages, 100));
+    }
+
+    @Test
+    void knowsCommonModelWindows() {
+        assertEquals(1_047_576, ContextTrimmer.windowFor("gpt-4.1-mini"));
+        assertEquals(128_000, ContextTrimmer.windowFor("gpt-4o-mini"));
+        assertEquals(8_192, ContextTrimmer.windowFor("some-local-model"));
+    }
+}
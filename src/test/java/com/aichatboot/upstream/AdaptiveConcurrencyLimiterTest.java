@@ -0,0 +1,166 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.UpstreamOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static AdaptiveConcurrencyLimiter limiter(int initial, int min, int max, int maxQueue) {
+        return new AdaptiveConcurrencyLimiter(true, initial, min, max, maxQueue, Duration.ofSeconds(5),
+                Duration.ofSeconds(30), 1.5, 0.5, 0.5, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void queuedInteractiveCallsRunBeforeBatch() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10);
+        Sinks.One<String> busy = Sinks.one();
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        limiter.run(Priority.BATCH, busy::asMono).subscribe();
+        limiter.run(Priority.BATCH, () -> Mono.fromRunnable(() -> order.add("batch"))).subscribe();
+        limiter.run(Priority.INTERACTIVE, () -> Mono.fromRunnable(() -> order.add("interactive"))).subscribe();
+        assertEquals(2, limiter.getQueued());
+
+        busy.tryEmitValue("done");
+
+        assertEquals(List.of("interactive", "batch"), order);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void bulkCallsNeverTakeMoreThanTheirShare() {
+        AdaptiveConcurrencyLimiter limiter = limiter(4, 4, 4, 10);
+        List<Sinks.One<String>> bulk = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Sinks.One<String> call = Sinks.one();
+            bulk.add(call);
+            limiter.run(Priority.BULK, call::asMono).subscribe();
+        }
+        // half of 4: the third bulk call waits although two slots are free
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueued());
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        limiter.run(Priority.INTERACTIVE, () -> Mono.fromRunnable(() -> order.add("interactive"))).subscribe();
+        limiter.run(Priority.BATCH, () -> Mono.fromRunnable(() -> order.add("batch"))).subscribe();
+        assertEquals(List.of("interactive", "batch"), order);
+        assertEquals(1, limiter.getQueued());
+
+        bulk.get(0).tryEmitValue("done");
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    void fullQueueFailsFast() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 1);
+        limiter.run(Priority.BATCH, () -> Sinks.<String>one().asMono()).subscribe();
+        limiter.run(Priority.BATCH, () -> Sinks.<String>one().asMono()).subscribe();
+
+        assertThrows(UpstreamOverloadedException.class, limiter::checkAdmission);
+        StepVerifier.create(limiter.run(Priority.INTERACTIVE, () -> Mono.just("x")))
+                .expectError(UpstreamOverloadedException.class)
+                .verify();
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, 1, 10);
+        Sinks.One<String> busy = Sinks.one();
+        limiter.run(Priority.BATCH, busy::asMono).subscribe();
+
+        limiter.run(Priority.BATCH, () -> Mono.just("never")).subscribe().dispose();
+        assertEquals(0, limiter.getQueued());
+
+        busy.tryEmitValue("done");
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void tooManyRequestsShrinksLimitAndHonoursRetryAfter() {
+        AdaptiveConcurrencyLimiter limiter = limiter(40, 5, 100, 10);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "30");
+        WebClientResponseException tooMany = WebClientResponseException.create(429, "Too Many Requests",
+                headers, new byte[0], StandardCharsets.UTF_8);
+
+        StepVerifier.create(limiter.run(Priority.BATCH, () -> Mono.error(tooMany)))
+                .expectError(WebClientResponseException.class)
+                .verify();
+
+        assertEquals(20, limiter.getLimit(), 0.001);
+        // paused for longer than the 5s queue wait: reject straight away
+        UpstreamOverloadedException ex = assertThrows(UpstreamOverloadedException.class, limiter::checkAdmission);
+        assertTrue(ex.getRetryAfterSeconds() > 5);
+    }
+
+    @Test
+    void limitGrowsWhileSaturatedAndLatencyIsStable() {
+        // frozen clock: every call sees the same latency
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 4, 1, 100, 100,
+                Duration.ofSeconds(5), Duration.ofSeconds(30), 1.5, 0.5, 0.5, new SimpleMeterRegistry(), () -> 0L);
+        double before = limiter.getLimit();
+
+        for (int round = 0; round < 20; round++) {
+            List<Sinks.One<String>> calls = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < (int) limiter.getLimit(); i++) {
+                Sinks.One<String> call = Sinks.one();
+                calls.add(call);
+                limiter.run(Priority.BATCH, call::asMono).subscribe();
+            }
+            calls.forEach(c -> c.tryEmitValue("ok"));
+        }
+
+        assertTrue(limiter.getLimit() > before * 2, "limit should have grown, was " + limiter.getLimit());
+    }
+
+    @Test
+    void timedOutCallShrinksTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(true, 40, 5, 100, 10,
+                Duration.ofSeconds(5), Duration.ofMillis(50), 1.5, 0.5, 0.5, new SimpleMeterRegistry());
+
+        StepVerifier.create(limiter.run(Priority.INTERACTIVE, Mono::never))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(20, limiter.getLimit(), 0.001);
+
+        // a stream that never sends its first token
+        StepVerifier.create(limiter.stream(Priority.INTERACTIVE, Flux::never))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(10, limiter.getLimit(), 0.001);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void responseTimeoutOfTheHttpClientIsADrop() {
+        WebClientRequestException timedOut = new WebClientRequestException(ReadTimeoutException.INSTANCE,
+                HttpMethod.POST, URI.create("http://upstream/v1/chat/completions"), new HttpHeaders());
+        WebClientRequestException refused = new WebClientRequestException(new ConnectException("refused"),
+                HttpMethod.POST, URI.create("http://upstream/v1/chat/completions"), new HttpHeaders());
+
+        assertTrue(AdaptiveConcurrencyLimiter.isDrop(timedOut));
+        assertFalse(AdaptiveConcurrencyLimiter.isDrop(refused));
+    }
+}
@@ -0,0 +1,76 @@
+package com.aichatboot.upstream;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker("test",
+            new CircuitBreaker.Settings(true, 0.5, 4, 10, Duration.ofSeconds(30), 2), now::get);
+
+    @Test
+    void opensOnceTheFailureRateIsReached() {
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(30, breaker.retryAfterSeconds());
+    }
+
+    @Test
+    void staysClosedBelowTheMinimumNumberOfCalls() {
+        for (int i = 0; i < 3; i++) breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void halfOpenProbesCloseItAgain() {
+        for (int i = 0; i < 4; i++) breaker.onFailure();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+
+        assertTrue(breaker.allowsRequest());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire(), "only two probes at a time");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        breaker.onSuccess();
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedProbeReopens() {
+        for (int i = 0; i < 4; i++) breaker.onFailure();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertTrue(breaker.tryAcquire());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowsRequest());
+    }
+
+    @Test
+    void disabledBreakerNeverOpens() {
+        CircuitBreaker disabled = new CircuitBreaker("off", CircuitBreaker.Settings.DISABLED, now::get);
+        for (int i = 0; i < 100; i++) disabled.onFailure();
+
+        assertTrue(disabled.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, disabled.getState());
+    }
+}
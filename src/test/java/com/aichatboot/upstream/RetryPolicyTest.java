@@ -0,0 +1,107 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.CircuitOpenException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RetryPolicy policy = new RetryPolicy(3, Duration.ofMillis(100), Duration.ofSeconds(5), registry);
+
+    @Test
+    void retriesTransientFailuresUpToMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> policy.apply(Mono.defer(() -> {
+                    calls.incrementAndGet();
+                    return Mono.<String>error(status(503, null));
+                })))
+                .thenAwait(Duration.ofSeconds(10))
+                .expectError(WebClientResponseException.class)
+                .verify();
+
+        assertEquals(3, calls.get());
+        assertEquals(2, registry.get("chat.upstream.retries").counter().count());
+    }
+
+    @Test
+    void doesNotRetryClientErrorsOrOpenCircuits() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(policy.apply(Mono.defer(() -> {
+                    calls.incrementAndGet();
+                    return Mono.<String>error(status(400, null));
+                })))
+                .expectError(WebClientResponseException.class)
+                .verify();
+        StepVerifier.create(policy.apply(Mono.defer(() -> {
+                    calls.incrementAndGet();
+                    return Mono.<String>error(new CircuitOpenException("open", 30));
+                })))
+                .expectError(CircuitOpenException.class)
+                .verify();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void honoursRetryAfter() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> policy.apply(Mono.defer(() -> calls.incrementAndGet() == 1
+                        ? Mono.error(status(429, "2"))
+                        : Mono.just("ok"))))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(1999))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("ok")
+                .verifyComplete();
+    }
+
+    @Test
+    void givesUpWhenRetryAfterExceedsTheMaxBackoff() {
+        assertNull(policy.backoff(0, status(503, "30")));
+    }
+
+    @Test
+    void backoffGrowsExponentiallyWithJitter() {
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoff(0, status(503, null)).toMillis();
+            long third = policy.backoff(2, status(503, null)).toMillis();
+            assertTrue(first >= 50 && first <= 100, "first " + first);
+            assertTrue(third >= 200 && third <= 400, "third " + third);
+        }
+    }
+
+    @Test
+    void streamIsNotRetriedAfterItsFirstValue() {
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> policy.applyBeforeFirstValue(Flux.defer(() -> {
+                    calls.incrementAndGet();
+                    return Flux.just("token").concatWith(Flux.error(status(503, null)));
+                })))
+                .expectNext("token")
+                .expectError(WebClientResponseException.class)
+                .verify();
+
+        assertEquals(1, calls.get());
+    }
+
+    private static WebClientResponseException status(int status, String retryAfter) {
+        HttpHeaders headers = new HttpHeaders();
+        if (retryAfter != null) headers.set(HttpHeaders.RETRY_AFTER, retryAfter);
+        return WebClientResponseException.create(status, "status " + status, headers, new byte[0], null);
+    }
+}
@@ -0,0 +1,218 @@
+package com.aichatboot.upstream;
+
+import com.aichatboot.exception.CircuitOpenException;
+import com.aichatboot.exception.UpstreamException;
+import com.aichatboot.support.MockOpenAiServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamRouterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // b has no weight of its own: it is only ever picked as the hedge target
+    private final UpstreamEndpoint a = new UpstreamEndpoint("a", null, null, "key", 1);
+    private final UpstreamEndpoint b = new UpstreamEndpoint("b", null, null, "key", 0);
+
+    private UpstreamRouter hedgingRouter(UpstreamEndpoint... endpoints) {
+        return new UpstreamRouter(List.of(endpoints), UpstreamRouter.Strategy.WEIGHTED, true, 0.95,
+                Duration.ofMillis(10), Duration.ofMillis(100), 1.0, registry);
+    }
+
+    @Test
+    void slowCallIsHedgedAndTheFasterAnswerWins() {
+        UpstreamRouter router = hedgingRouter(a, b);
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        StepVerifier.withVirtualTime(() -> router.exchange(endpoint -> endpoint == a
+                        ? Mono.delay(Duration.ofSeconds(5)).thenReturn("a").doOnCancel(() -> primaryCancelled.set(true))
+                        : Mono.delay(Duration.ofMillis(20)).thenReturn("b")))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(119))
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext("b")
+                .verifyComplete();
+
+        assertTrue(primaryCancelled.get());
+        assertEquals(1, registry.get("chat.upstream.hedge.wins").counter().count());
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        UpstreamRouter router = hedgingRouter(a, b);
+        AtomicInteger secondaryCalls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> router.exchange(endpoint -> {
+                    if (endpoint == b) secondaryCalls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(50)).thenReturn(endpoint.getName());
+                }))
+                .thenAwait(Duration.ofMillis(50))
+                .expectNext("a")
+                .verifyComplete();
+
+        assertEquals(0, secondaryCalls.get());
+        assertEquals(0, registry.get("chat.upstream.hedges").counter().count());
+    }
+
+    @Test
+    void earlyFailureIsReportedWithoutWaitingForTheHedge() {
+        UpstreamRouter router = hedgingRouter(a, b);
+        AtomicInteger secondaryCalls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> router.<String>exchange(endpoint -> {
+                    if (endpoint == b) secondaryCalls.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(10)).then(Mono.error(new UpstreamException("boom")));
+                }))
+                .thenAwait(Duration.ofMillis(10))
+                .expectErrorMessage("boom")
+                .verify();
+
+        assertEquals(0, secondaryCalls.get());
+        assertTrue(a.getErrorRate() > 0);
+    }
+
+    @Test
+    void streamIsHedgedOnTimeToFirstToken() {
+        UpstreamRouter router = hedgingRouter(a, b);
+
+        StepVerifier.withVirtualTime(() -> router.stream(endpoint -> endpoint == a
+                        ? Mono.delay(Duration.ofSeconds(5)).thenMany(Flux.just("slow"))
+                        : Flux.just("fast", "tokens").delaySubscription(Duration.ofMillis(10))))
+                .thenAwait(Duration.ofMillis(110))
+                .expectNext("fast", "tokens")
+                .verifyComplete();
+    }
+
+    @Test
+    void hedgeDelayFollowsTheRecentPercentile() {
+        UpstreamRouter router = hedgingRouter(a, b);
+        assertEquals(Duration.ofMillis(100), router.hedgeDelay(a, false));
+
+        for (int i = 1; i <= 100; i++) a.recordSuccess(false, TimeUnit.MILLISECONDS.toNanos(i));
+
+        assertEquals(Duration.ofMillis(95), router.hedgeDelay(a, false));
+    }
+
+    @Test
+    void leastLatencyPrefersTheFasterEndpoint() {
+        UpstreamEndpoint slow = new UpstreamEndpoint("slow", null, null, "key", 1);
+        UpstreamEndpoint fast = new UpstreamEndpoint("fast", null, null, "key", 1);
+        UpstreamRouter router = new UpstreamRouter(List.of(slow, fast), UpstreamRouter.Strategy.LEAST_LATENCY,
+                false, 0.95, Duration.ZERO, Duration.ZERO, 0, registry);
+        for (int i = 0; i < 10; i++) {
+            slow.recordSuccess(false, TimeUnit.MILLISECONDS.toNanos(400));
+            fast.recordSuccess(false, TimeUnit.MILLISECONDS.toNanos(40));
+        }
+
+        int picks = 0;
+        for (int i = 0; i < 1000; i++) if (router.select(null, false) == fast) picks++;
+
+        assertTrue(picks > 900, "fast endpoint picked " + picks + " times");
+    }
+
+    @Test
+    void weightedSelectionAvoidsFailingEndpoints() {
+        UpstreamEndpoint failing = new UpstreamEndpoint("failing", null, null, "key", 1);
+        UpstreamEndpoint healthy = new UpstreamEndpoint("healthy", null, null, "key", 1);
+        UpstreamRouter router = new UpstreamRouter(List.of(failing, healthy), UpstreamRouter.Strategy.WEIGHTED,
+                false, 0.95, Duration.ZERO, Duration.ZERO, 0, registry);
+        for (int i = 0; i < 20; i++) failing.recordFailure();
+
+        int picks = 0;
+        for (int i = 0; i < 1000; i++) if (router.select(null, false) == healthy) picks++;
+
+        assertTrue(picks > 900, "healthy endpoint picked " + picks + " times");
+    }
+
+    @Test
+    void streamsAreTimedPerEndpoint() {
+        UpstreamRouter router = new UpstreamRouter(List.of(a), UpstreamRouter.Strategy.WEIGHTED,
+                false, 0.95, Duration.ZERO, Duration.ZERO, 0, registry);
+
+        StepVerifier.create(router.stream(endpoint -> Flux.just("x", "y", "z")))
+                .expectNext("x", "y", "z")
+                .verifyComplete();
+
+        assertEquals(1, registry.get("chat.upstream.ttft").tag("endpoint", "a").timer().count());
+        assertEquals(2, registry.get("chat.upstream.inter.token").tag("endpoint", "a").timer().count());
+        assertEquals(1, registry.get("chat.upstream.latency")
+                .tags("endpoint", "a", "mode", "stream", "outcome", "success").timer().count());
+    }
+
+    @Test
+    void endpointWithOpenCircuitIsSkipped() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(true, 0.5, 2, 4, Duration.ofSeconds(30), 1);
+        UpstreamEndpoint down = new UpstreamEndpoint("down", null, null, "key", 100, new CircuitBreaker("down", settings));
+        UpstreamEndpoint up = new UpstreamEndpoint("up", null, null, "key", 1, new CircuitBreaker("up", settings));
+        UpstreamRouter router = new UpstreamRouter(List.of(down, up), UpstreamRouter.Strategy.WEIGHTED,
+                false, 0.95, Duration.ZERO, Duration.ZERO, 0, registry);
+        down.getCircuitBreaker().onFailure();
+        down.getCircuitBreaker().onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, down.getCircuitBreaker().getState());
+
+        for (int i = 0; i < 100; i++) assertSame(up, router.select(null, false));
+    }
+
+    @Test
+    void allCircuitsOpenFailsFast() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(true, 0.5, 1, 1, Duration.ofSeconds(30), 1);
+        UpstreamEndpoint only = new UpstreamEndpoint("only", null, null, "key", 1, new CircuitBreaker("only", settings));
+        UpstreamRouter router = new UpstreamRouter(List.of(only), UpstreamRouter.Strategy.WEIGHTED,
+                false, 0.95, Duration.ZERO, Duration.ZERO, 0, registry);
+        AtomicInteger calls = new AtomicInteger();
+
+        StepVerifier.create(router.<String>exchange(endpoint -> {
+                    calls.incrementAndGet();
+                    return Mono.error(new UpstreamException("boom"));
+                }))
+                .expectError(UpstreamException.class)
+                .verify();
+
+        CircuitOpenException open = assertThrows(CircuitOpenException.class, router::checkAvailable);
+        assertEquals(30, open.getRetryAfterSeconds());
+        StepVerifier.create(router.<String>exchange(endpoint -> {
+                    calls.incrementAndGet();
+                    return Mono.just("never");
+                }))
+                .expectError(CircuitOpenException.class)
+                .verify();
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void hedgingAgainstLocalStubUpstreamsCutsTheTail() {
+        try (MockOpenAiServer slow = new MockOpenAiServer().timeToFirstToken(Duration.ofSeconds(2)).completionTokens(1).start();
+             MockOpenAiServer fast = new MockOpenAiServer().timeToFirstToken(Duration.ofMillis(20)).completionTokens(1).start()) {
+            UpstreamRouter router = hedgingRouter(
+                    new UpstreamEndpoint("slow", WebClient.create(slow.baseUrl()), null, "key", 1),
+                    new UpstreamEndpoint("fast", WebClient.create(fast.baseUrl()), null, "key", 0));
+
+            long start = System.nanoTime();
+            String answer = router.exchange(endpoint -> endpoint.getWebClient().post()
+                            .uri("/chat/completions")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue("{\"stream\":false}")
+                            .retrieve()
+                            .bodyToMono(String.class))
+                    .block(Duration.ofSeconds(5));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertNotNull(answer);
+            assertTrue(elapsedMillis < 1500, "took " + elapsedMillis + " ms");
+            assertEquals(1, slow.requestCount());
+            assertEquals(1, fast.requestCount());
+        }
+    }
+}
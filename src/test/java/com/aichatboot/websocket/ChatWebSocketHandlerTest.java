@@ -0,0 +1,141 @@
+package com.aichatboot.websocket;
+
+import com.aichatboot.dto.ChatRequest;
+import com.aichatboot.exception.QuotaExceededException;
+import com.aichatboot.ratelimit.LocalRateLimiterBackend;
+import com.aichatboot.service.ChatService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ChatWebSocketHandlerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ChatService chatService = mock(ChatService.class);
+    private final List<JsonNode> sent = new CopyOnWriteArrayList<>();
+    private final WebSocketSession session = mock(WebSocketSession.class);
+    private ChatWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        handler = new ChatWebSocketHandler(chatService,
+                new LocalRateLimiterBackend(1000, Duration.ofMinutes(1), 100, Duration.ofMinutes(2), registry),
+                mapper, registry, true, 2, Duration.ofSeconds(5), 64 * 1024, 4, 64 * 1024);
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(TenantHandshakeInterceptor.TENANT_ATTRIBUTE, "tenant-a");
+        attributes.put(TenantHandshakeInterceptor.CLIENT_IP_ATTRIBUTE, "10.0.0.1");
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(inv -> {
+            WebSocketMessage<?> message = inv.getArgument(0);
+            sent.add(mapper.readTree((String) message.getPayload()));
+            return null;
+        }).when(session).sendMessage(any());
+
+        handler.afterConnectionEstablished(session);
+    }
+
+    private void receive(String json) throws Exception {
+        handler.handleMessage(session, new TextMessage(json));
+    }
+
+    private void awaitMessages(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(sent.size() >= count, "expected " + count + " messages, got " + sent);
+    }
+
+    @Test
+    void streamsTokensTaggedByStreamId() throws Exception {
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenReturn(Flux.just("Hel", "lo"));
+
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"hi\"}}");
+        awaitMessages(3);
+
+        assertEquals("token", sent.get(0).get("type").asText());
+        assertEquals("a", sent.get(0).get("streamId").asText());
+        assertEquals("Hel", sent.get(0).get("data").asText());
+        assertEquals("lo", sent.get(1).get("data").asText());
+        assertEquals("done", sent.get(2).get("type").asText());
+        verify(chatService).streamCompletion(any(ChatRequest.class), eq("tenant-a"));
+    }
+
+    @Test
+    void cancelStopsTheUpstreamStream() throws Exception {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenReturn(Flux.<String>never().doOnCancel(() -> cancelled.set(true)));
+
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"hi\"}}");
+        receive("{\"type\":\"cancel\",\"streamId\":\"a\"}");
+
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void closingTheConnectionCancelsEveryStream() throws Exception {
+        AtomicBoolean first = new AtomicBoolean();
+        AtomicBoolean second = new AtomicBoolean();
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenReturn(Flux.<String>never().doOnCancel(() -> first.set(true)))
+                .thenReturn(Flux.<String>never().doOnCancel(() -> second.set(true)));
+
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"one\"}}");
+        receive("{\"type\":\"start\",\"streamId\":\"b\",\"request\":{\"prompt\":\"two\"}}");
+        handler.afterConnectionClosed(session, CloseStatus.GOING_AWAY);
+
+        assertTrue(first.get());
+        assertTrue(second.get());
+    }
+
+    @Test
+    void rejectsStreamsBeyondThePerConnectionLimit() throws Exception {
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString())).thenReturn(Flux.never());
+
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"1\"}}");
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"dup\"}}");
+        receive("{\"type\":\"start\",\"streamId\":\"b\",\"request\":{\"prompt\":\"2\"}}");
+        receive("{\"type\":\"start\",\"streamId\":\"c\",\"request\":{\"prompt\":\"3\"}}");
+
+        awaitMessages(2);
+        assertEquals("duplicate_stream", sent.get(0).get("code").asText());
+        assertEquals("too_many_streams", sent.get(1).get("code").asText());
+        assertEquals("c", sent.get(1).get("streamId").asText());
+    }
+
+    @Test
+    void quotaRejectionIsReportedOnTheStream() throws Exception {
+        when(chatService.streamCompletion(any(ChatRequest.class), anyString()))
+                .thenThrow(new QuotaExceededException("Token quota exceeded", 12));
+
+        receive("{\"type\":\"start\",\"streamId\":\"a\",\"request\":{\"prompt\":\"hi\"}}");
+
+        awaitMessages(1);
+        assertEquals("error", sent.get(0).get("type").asText());
+        assertEquals("quota_exceeded", sent.get(0).get("code").asText());
+        assertEquals(12, sent.get(0).get("retryAfter").asLong());
+    }
+}